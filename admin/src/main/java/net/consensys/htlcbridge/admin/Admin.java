@@ -1,7 +1,12 @@
 package net.consensys.htlcbridge.admin;
 
+import net.consensys.htlcbridge.admin.commands.AuthoriseERC20ForReceiver;
+import net.consensys.htlcbridge.admin.commands.AuthoriseERC20ForTransfer;
 import net.consensys.htlcbridge.admin.commands.DeployERC20Contract;
 import net.consensys.htlcbridge.admin.commands.DeployTransferContract;
+import net.consensys.htlcbridge.admin.commands.ExportTransferHistory;
+import net.consensys.htlcbridge.admin.commands.ReindexTransferHistory;
+import net.consensys.htlcbridge.admin.commands.RunBatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -16,12 +21,35 @@ public class Admin {
 
     String cmd = args[0];
 
+    if (cmd.equalsIgnoreCase("batch")) {
+      RunBatch.run(args);
+    }
+    else {
+      runCommand(args);
+    }
+  }
+
+  public static void runCommand(String[] args) throws Exception {
+    String cmd = args[0];
+
     if (cmd.equalsIgnoreCase("deptx")) {
       DeployTransferContract.deploy(args);
     }
     else if (cmd.equalsIgnoreCase("deperc20")) {
       DeployERC20Contract.deploy(args);
     }
+    else if (cmd.equalsIgnoreCase("authrx")) {
+      AuthoriseERC20ForReceiver.authorise(args);
+    }
+    else if (cmd.equalsIgnoreCase("authtx")) {
+      AuthoriseERC20ForTransfer.authorise(args);
+    }
+    else if (cmd.equalsIgnoreCase("export")) {
+      ExportTransferHistory.export(args);
+    }
+    else if (cmd.equalsIgnoreCase("reindex")) {
+      ReindexTransferHistory.reindex(args);
+    }
     else {
       LOG.info("Unknown command");
       showHelp();
@@ -33,6 +61,15 @@ public class Admin {
   public static void showHelp() {
     LOG.info("Bridge Admin command line options:");
     LOG.info("deptx: Deploy Tranfer contract");
+    LOG.info("deperc20: Deploy ERC 20 contract");
+    LOG.info("authrx: Authorise ERC 20 contract on Transfer contract as a receiver");
+    LOG.info("authtx: Authorise ERC 20 contract on Transfer contract for transfers");
+    LOG.info("export <uri> <transfer contract> <directory> [confirmations] [from block]: Export the transfer");
+    LOG.info("  events to compressed columnar files, appending to any previous export in the directory");
+    LOG.info("reindex <uri,uri,...> <transfer contract> <directory> [confirmations] [from block] [workers per uri]:");
+    LOG.info("  Export the transfer events in parallel partitions across several nodes. Rerun to resume.");
+    LOG.info("batch <file>: Run the commands in a file, one per line. Commands for different");
+    LOG.info("  private keys or export directories run concurrently. Set htlcbridge.blocking.mode=VIRTUAL to use virtual threads.");
   }
 
 }
\ No newline at end of file
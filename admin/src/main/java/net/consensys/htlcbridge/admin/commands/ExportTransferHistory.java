@@ -0,0 +1,48 @@
+package net.consensys.htlcbridge.admin.commands;
+
+import net.consensys.htlcbridge.admin.Admin;
+import net.consensys.htlcbridge.admin.export.TransferHistoryExporter;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import okhttp3.OkHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+public class ExportTransferHistory {
+  private static final Logger LOG = LogManager.getLogger(ExportTransferHistory.class);
+
+  private static final int DEFAULT_CONFIRMATIONS = 6;
+
+  public static void export(String[] args) throws Exception {
+    LOG.info("Export Transfer History");
+
+    if (args.length < 4 || args.length > 6) {
+      Admin.showHelp();
+      return;
+    }
+    String blockchainUri = args[1];
+    String transferContractAddress = args[2];
+    String outputDirectory = args[3];
+    int confirmations = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_CONFIRMATIONS;
+    long fromBlock = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+    OkHttpClient httpClient = new OkHttpClient.Builder().readTimeout(60, TimeUnit.SECONDS).build();
+    Web3j web3j = Web3j.build(new HttpService(blockchainUri, httpClient));
+    try {
+      long toBlock = web3j.ethBlockNumber().send().getBlockNumber().longValue() - confirmations;
+      TransferLogFetcher fetcher = new TransferLogFetcher(httpClient, blockchainUri, transferContractAddress);
+      new TransferHistoryExporter(Paths.get(outputDirectory), fetcher).export(fromBlock, toBlock);
+    }
+    catch (Exception ex) {
+      LOG.error("Exception while exporting transfer history: {}", ex.getMessage());
+      throw ex;
+    }
+    finally {
+      web3j.shutdown();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package net.consensys.htlcbridge.admin.commands;
+
+import net.consensys.htlcbridge.admin.Admin;
+import net.consensys.htlcbridge.admin.export.HistoryReindexer;
+import net.consensys.htlcbridge.common.BlockingExecutors;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import okhttp3.OkHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ReindexTransferHistory {
+  private static final Logger LOG = LogManager.getLogger(ReindexTransferHistory.class);
+
+  private static final int DEFAULT_CONFIRMATIONS = 6;
+  private static final int DEFAULT_WORKERS_PER_ENDPOINT = 4;
+
+  public static void reindex(String[] args) throws Exception {
+    LOG.info("Reindex Transfer History");
+
+    if (args.length < 4 || args.length > 7) {
+      Admin.showHelp();
+      return;
+    }
+    List<String> blockchainUris = Arrays.asList(args[1].split(","));
+    String transferContractAddress = args[2];
+    String outputDirectory = args[3];
+    int confirmations = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_CONFIRMATIONS;
+    long fromBlock = args.length > 5 ? Long.parseLong(args[5]) : 0;
+    int workersPerEndpoint = args.length > 6 ? Integer.parseInt(args[6]) : DEFAULT_WORKERS_PER_ENDPOINT;
+
+    OkHttpClient httpClient = new OkHttpClient.Builder().readTimeout(60, TimeUnit.SECONDS).build();
+    // Only reindex blocks that every endpoint has, so that a lagging endpoint doesn't
+    // silently return no events for a partition.
+    long toBlock = Long.MAX_VALUE;
+    for (String uri: blockchainUris) {
+      Web3j web3j = Web3j.build(new HttpService(uri, httpClient));
+      try {
+        toBlock = Math.min(toBlock, web3j.ethBlockNumber().send().getBlockNumber().longValue() - confirmations);
+      }
+      finally {
+        web3j.shutdown();
+      }
+    }
+
+    HistoryReindexer reindexer = new HistoryReindexer(Paths.get(outputDirectory), transferContractAddress,
+        blockchainUris, uri -> new TransferLogFetcher(httpClient, uri, transferContractAddress),
+        workersPerEndpoint, HistoryReindexer.DEFAULT_PARTITION_SIZE);
+    ExecutorService executor = BlockingExecutors.newExecutor("admin-reindex", reindexer.getNumWorkers());
+    try {
+      reindexer.reindex(fromBlock, toBlock, executor);
+    }
+    catch (Exception ex) {
+      LOG.error("Exception while reindexing transfer history: {}", ex.getMessage());
+      throw ex;
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package net.consensys.htlcbridge.admin.commands;
+
+import net.consensys.htlcbridge.admin.Admin;
+import net.consensys.htlcbridge.common.BlockingExecutors;
+import net.consensys.htlcbridge.common.TaskScope;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs a file of admin commands, one command per line, with the same arguments as on the
+ * command line. Blank lines and lines starting with # are ignored.<p>
+ * Commands with the same run key are run in order, and commands with different run keys
+ * run concurrently. The commands that send transactions are keyed by their private key,
+ * as they would otherwise use the same nonces. The export and reindex commands are keyed
+ * by their output directory, as each run appends to the previous one. Any other command
+ * runs on its own.
+ */
+public class RunBatch {
+  private static final Logger LOG = LogManager.getLogger(RunBatch.class);
+
+  // Argument holding the private key of transaction commands, and the directory of exports.
+  private static final int KEY_ARG = 3;
+  // Number of private keys processed concurrently when using platform threads.
+  private static final int PLATFORM_THREADS = 8;
+
+  public static void run(String[] args) throws Exception {
+    LOG.info("Run Batch");
+
+    if (args.length != 2) {
+      Admin.showHelp();
+      return;
+    }
+    String batchFile = args[1];
+
+    Map<String, List<String[]>> commandsByKey = new LinkedHashMap<>();
+    int numCommands = 0;
+    List<String> lines = Files.readAllLines(Paths.get(batchFile), StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] commandArgs = line.split("\\s+");
+      commandsByKey.computeIfAbsent(runKey(commandArgs, i), k -> new ArrayList<>()).add(commandArgs);
+      numCommands++;
+    }
+    LOG.info(" {} commands in {} runs, using {} threads", numCommands, commandsByKey.size(), BlockingExecutors.getMode());
+
+    ExecutorService executor = BlockingExecutors.newExecutor("admin-batch", PLATFORM_THREADS);
+    try (TaskScope<Void> scope = new TaskScope<>(executor)) {
+      for (List<String[]> commands: commandsByKey.values()) {
+        scope.fork(() -> {
+          for (String[] command: commands) {
+            Admin.runCommand(command);
+          }
+          return null;
+        });
+      }
+      scope.join();
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Returns the key of the run the command belongs to. The key is prefixed with the kind
+   * of resource it names, so that a private key and a directory never share a run.
+   *
+   * @param commandArgs The command and its arguments.
+   * @param lineNumber The line of the command in the batch file.
+   */
+  static String runKey(String[] commandArgs, int lineNumber) {
+    String cmd = commandArgs[0].toLowerCase(Locale.ROOT);
+    if (commandArgs.length > KEY_ARG) {
+      switch (cmd) {
+        case "deptx":
+        case "deperc20":
+        case "authrx":
+        case "authtx":
+          return "account:" + commandArgs[KEY_ARG];
+        case "export":
+        case "reindex":
+          return "directory:" + Paths.get(commandArgs[KEY_ARG]).toAbsolutePath().normalize();
+        default:
+          break;
+      }
+    }
+    return "line:" + lineNumber;
+  }
+}
@@ -0,0 +1,182 @@
+package net.consensys.htlcbridge.admin.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A block of rows held column by column, written to a file with each column compressed
+ * separately.<p>
+ * File format: the magic bytes HTLCCOL1, the number of rows (int), the number of columns
+ * (short), and then for each column: its name (modified UTF-8), the width of its values in
+ * bytes (short), its encoding (byte), the length of its compressed data (int), and the
+ * values compressed with Deflate. All numbers are big endian. Values of delta encoded
+ * columns are longs, stored as the difference from the previous row's value.
+ */
+public class ColumnarChunk {
+  static final byte[] MAGIC = "HTLCCOL1".getBytes(StandardCharsets.US_ASCII);
+  public static final byte PLAIN = 0;
+  public static final byte DELTA = 1;
+
+  public static class Column {
+    private final String name;
+    private final int width;
+    private final byte encoding;
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private final byte[] scratch = new byte[8];
+    private long previous;
+
+    private Column(String name, int width, byte encoding) {
+      this.name = name;
+      this.width = width;
+      this.encoding = encoding;
+    }
+
+    public void putLong(long value) {
+      long stored = value;
+      if (this.encoding == DELTA) {
+        stored = value - this.previous;
+        this.previous = value;
+      }
+      ByteBuffer.wrap(this.scratch).putLong(0, stored);
+      this.data.write(this.scratch, 0, 8);
+    }
+
+    public void putInt(int value) {
+      ByteBuffer.wrap(this.scratch).putInt(0, value);
+      this.data.write(this.scratch, 0, 4);
+    }
+
+    public void putByte(byte value) {
+      this.data.write(value);
+    }
+
+    public void putBytes(byte[] bytes, int offset) {
+      this.data.write(bytes, offset, this.width);
+    }
+
+    public String getName() {
+      return this.name;
+    }
+  }
+
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+  private int numRows;
+
+  public Column addColumn(String name, int width, byte encoding) {
+    if (encoding == DELTA && width != 8) {
+      throw new IllegalArgumentException("Delta encoded columns must be longs: " + name);
+    }
+    Column column = new Column(name, width, encoding);
+    this.columns.put(name, column);
+    return column;
+  }
+
+  /**
+   * Indicate that a value has been put in each column for a row.
+   */
+  public void endRow() {
+    this.numRows++;
+  }
+
+  public int getNumRows() {
+    return this.numRows;
+  }
+
+  /**
+   * Write the chunk to a file, via a temporary file so that a partly written file is
+   * never seen, and then empty the chunk.
+   */
+  public void write(Path file) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+      out.write(MAGIC);
+      out.writeInt(this.numRows);
+      out.writeShort(this.columns.size());
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      for (Column column: this.columns.values()) {
+        if (column.data.size() != this.numRows * column.width) {
+          throw new IllegalStateException("Column " + column.name + " has " + column.data.size() / column.width +
+              " values for " + this.numRows + " rows");
+        }
+        compressed.reset();
+        // Closing the stream doesn't free a Deflater passed to it, so end it explicitly.
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (OutputStream deflaterOut = new DeflaterOutputStream(compressed, deflater)) {
+          column.data.writeTo(deflaterOut);
+        } finally {
+          deflater.end();
+        }
+        out.writeUTF(column.name);
+        out.writeShort(column.width);
+        out.writeByte(column.encoding);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    clear();
+  }
+
+  public void clear() {
+    for (Column column: this.columns.values()) {
+      column.data.reset();
+      column.previous = 0;
+    }
+    this.numRows = 0;
+  }
+
+  /**
+   * Read a file written by write.
+   *
+   * @return The values of each column, decoded, with numRows * width bytes per column.
+   */
+  public static Map<String, byte[]> read(Path file) throws IOException {
+    Map<String, byte[]> result = new LinkedHashMap<>();
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a columnar export file: " + file);
+      }
+      int numRows = in.readInt();
+      int numColumns = in.readShort();
+      for (int i = 0; i < numColumns; i++) {
+        String name = in.readUTF();
+        int width = in.readShort();
+        byte encoding = in.readByte();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        byte[] values = new byte[numRows * width];
+        try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+          new DataInputStream(inflater).readFully(values);
+        }
+        if (encoding == DELTA) {
+          ByteBuffer buf = ByteBuffer.wrap(values);
+          long value = 0;
+          for (int row = 0; row < numRows; row++) {
+            value += buf.getLong(row * 8);
+            buf.putLong(row * 8, value);
+          }
+        }
+        result.put(name, values);
+      }
+    }
+    return result;
+  }
+}
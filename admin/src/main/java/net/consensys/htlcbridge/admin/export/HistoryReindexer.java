@@ -0,0 +1,174 @@
+package net.consensys.htlcbridge.admin.export;
+
+import net.consensys.htlcbridge.common.TaskScope;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Rebuilds the transfer history of a contract from a range of blocks, using several
+ * Ethereum clients at once.<p>
+ * The block range is split into fixed size partitions, aligned to multiples of the
+ * partition size, and each partition is exported to its own sub-directory by a
+ * TransferHistoryExporter. The exporter's manifest is the partition's checkpoint: a rerun
+ * skips the blocks each partition has already exported, and discards files written after
+ * its last checkpoint, so the output is the same however often the reindex is interrupted.<p>
+ * Each worker is bound to one endpoint, and takes the next partition from a shared queue
+ * when it finishes one, so faster endpoints process more partitions. A partition that
+ * fails is put back on the queue for another worker, which may use a different endpoint.
+ */
+public class HistoryReindexer {
+  private static final Logger LOG = LogManager.getLogger(HistoryReindexer.class);
+
+  public static final String MANIFEST_FILE = "reindex.properties";
+  public static final long DEFAULT_PARTITION_SIZE = 100_000;
+  // Number of times a partition is attempted before the reindex fails.
+  public static final int MAX_ATTEMPTS = 3;
+
+  private static final String CONTRACT_KEY = "contract";
+  private static final String PARTITION_SIZE_KEY = "partitionSize";
+
+  private static class Partition {
+    final long startBlock;
+    final long endBlock;
+    int attempts;
+
+    Partition(long startBlock, long endBlock) {
+      this.startBlock = startBlock;
+      this.endBlock = endBlock;
+    }
+  }
+
+  private final Path directory;
+  private final String contractAddress;
+  private final List<String> endpoints;
+  private final Function<String, TransferLogFetcher> fetcherFactory;
+  private final int workersPerEndpoint;
+  private final long partitionSize;
+
+  /**
+   * @param endpoints URIs of the Ethereum clients to fetch events from.
+   * @param fetcherFactory Creates a fetcher for the contract's events on the given endpoint.
+   */
+  public HistoryReindexer(Path directory, String contractAddress, List<String> endpoints,
+                          Function<String, TransferLogFetcher> fetcherFactory, int workersPerEndpoint, long partitionSize) {
+    if (endpoints.isEmpty() || workersPerEndpoint < 1 || partitionSize < 1) {
+      throw new IllegalArgumentException("Need at least one endpoint, worker and block per partition");
+    }
+    this.directory = directory;
+    this.contractAddress = contractAddress;
+    this.endpoints = endpoints;
+    this.fetcherFactory = fetcherFactory;
+    this.workersPerEndpoint = workersPerEndpoint;
+    this.partitionSize = partitionSize;
+  }
+
+  public int getNumWorkers() {
+    return this.endpoints.size() * this.workersPerEndpoint;
+  }
+
+  /**
+   * Export the events from fromBlock to toBlock inclusive.
+   *
+   * @param executor Runs the workers. Needs at least getNumWorkers threads for them all to run at once.
+   * @return Number of events exported by this run.
+   */
+  public long reindex(long fromBlock, long toBlock, ExecutorService executor) throws Exception {
+    Files.createDirectories(this.directory);
+    checkManifest();
+
+    ConcurrentLinkedQueue<Partition> queue = new ConcurrentLinkedQueue<>();
+    for (long start = fromBlock - fromBlock % this.partitionSize; start <= toBlock; start += this.partitionSize) {
+      queue.add(new Partition(Math.max(start, fromBlock), Math.min(toBlock, start + this.partitionSize - 1)));
+    }
+    int numPartitions = queue.size();
+    AtomicInteger remaining = new AtomicInteger(numPartitions);
+    LOG.info("Reindexing blocks {} to {} in {} partitions, using {} workers on {} endpoints",
+        fromBlock, toBlock, numPartitions, getNumWorkers(), this.endpoints.size());
+
+    long exported = 0;
+    try (TaskScope<Long> scope = new TaskScope<>(executor)) {
+      for (String endpoint: this.endpoints) {
+        for (int i = 0; i < this.workersPerEndpoint; i++) {
+          scope.fork(() -> work(endpoint, queue, remaining));
+        }
+      }
+      for (Long count: scope.join()) {
+        exported += count;
+      }
+    }
+    // Don't report success with gaps in the output, whatever happened to the workers.
+    if (remaining.get() != 0) {
+      throw new IOException(remaining.get() + " of " + numPartitions + " partitions were not reindexed");
+    }
+    LOG.info("Reindexed {} partitions, exporting {} events", numPartitions, exported);
+    return exported;
+  }
+
+  private long work(String endpoint, ConcurrentLinkedQueue<Partition> queue, AtomicInteger remaining) throws IOException {
+    TransferLogFetcher fetcher = this.fetcherFactory.apply(endpoint);
+    long exported = 0;
+    Partition partition;
+    // Stop taking partitions once the reindex has been cancelled because another worker failed.
+    while (!Thread.currentThread().isInterrupted() && (partition = queue.poll()) != null) {
+      // Partitions are named by their aligned first block, so that a later reindex to a
+      // higher block extends the last partition rather than creating a new one.
+      long alignedStart = partition.startBlock - partition.startBlock % this.partitionSize;
+      Path partitionDirectory = this.directory.resolve(String.format("blocks-%012d", alignedStart));
+      try {
+        exported += new TransferHistoryExporter(partitionDirectory, fetcher).export(partition.startBlock, partition.endBlock);
+      } catch (IOException | RuntimeException ex) {
+        if (++partition.attempts >= MAX_ATTEMPTS) {
+          throw new IOException("Blocks " + partition.startBlock + " to " + partition.endBlock +
+              " failed " + partition.attempts + " times, last on " + endpoint, ex);
+        }
+        LOG.warn("Blocks {} to {} failed on {}, retrying: {}", partition.startBlock, partition.endBlock, endpoint, ex.toString());
+        queue.add(partition);
+        continue;
+      }
+      LOG.info("Blocks {} to {} done, {} partitions remaining", partition.startBlock, partition.endBlock,
+          remaining.decrementAndGet());
+    }
+    return exported;
+  }
+
+  /**
+   * Check that the directory holds a reindex of the same contract with the same partitions,
+   * or record them if the directory is new.
+   */
+  private void checkManifest() throws IOException {
+    Path file = this.directory.resolve(MANIFEST_FILE);
+    Properties manifest = new Properties();
+    if (Files.exists(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        manifest.load(in);
+      }
+      if (!this.contractAddress.equalsIgnoreCase(manifest.getProperty(CONTRACT_KEY))) {
+        throw new IllegalArgumentException("Directory " + this.directory + " holds a reindex of contract " +
+            manifest.getProperty(CONTRACT_KEY));
+      }
+      if (Long.parseLong(manifest.getProperty(PARTITION_SIZE_KEY)) != this.partitionSize) {
+        throw new IllegalArgumentException("Directory " + this.directory + " was reindexed with " +
+            manifest.getProperty(PARTITION_SIZE_KEY) + " blocks per partition");
+      }
+      return;
+    }
+    manifest.setProperty(CONTRACT_KEY, this.contractAddress);
+    manifest.setProperty(PARTITION_SIZE_KEY, Long.toString(this.partitionSize));
+    try (OutputStream out = Files.newOutputStream(file)) {
+      manifest.store(out, "Transfer history reindex");
+    }
+  }
+}
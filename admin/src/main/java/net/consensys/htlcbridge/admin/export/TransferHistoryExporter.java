@@ -0,0 +1,237 @@
+package net.consensys.htlcbridge.admin.export;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogDecoder;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Exports the events of a transfer contract to columnar files in a directory. There are
+ * four kinds of file: source files hold SourceTransferInit events, dest files hold
+ * DestTransferCompleted events, posted files hold DestTransferInit events, and settled
+ * files hold the SourceTransferCompleted, SourceTransferRefunded and DestTransferRefunded
+ * events, which only have a commitment, with the TransferSettledLog.Event ordinal.<p>
+ * Each run appends files for the blocks after the last block exported, which is recorded
+ * in a manifest file in the directory. Events are decoded as they stream in from the
+ * Ethereum client, a range of blocks at a time, and written out once a file's worth of
+ * rows has been collected, so memory use doesn't depend on the length of the history.
+ */
+public class TransferHistoryExporter implements TransferLogHandler {
+  private static final Logger LOG = LogManager.getLogger(TransferHistoryExporter.class);
+
+  public static final String MANIFEST_FILE = "export.properties";
+  public static final int DEFAULT_BLOCKS_PER_REQUEST = 1000;
+  public static final int DEFAULT_ROWS_PER_FILE = 65536;
+
+  private static final String CONTRACT_KEY = "contract";
+  private static final String LAST_BLOCK_KEY = "lastBlock";
+  private static final Pattern CHUNK_FILE = Pattern.compile("(source|dest|posted|settled)-(\\d+)-(\\d+)\\.col");
+  private static final String[] TOPICS = {
+      TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_REFUNDED_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_REFUNDED_TOPIC};
+
+  private final Path directory;
+  private final TransferLogFetcher fetcher;
+  private final int blocksPerRequest;
+  private final int rowsPerFile;
+
+  private final ColumnarChunk source = new ColumnarChunk();
+  private final ColumnarChunk.Column sourceBlock = this.source.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+  private final ColumnarChunk.Column sourceLogIndex = this.source.addColumn("logIndex", 4, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column sourceCommitment = this.source.addColumn("commitment", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column sourceSender = this.source.addColumn("sender", 20, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column sourceToken = this.source.addColumn("tokenContract", 20, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column sourceAmount = this.source.addColumn("amount", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column sourceTimeLock = this.source.addColumn("timeLock", 8, ColumnarChunk.DELTA);
+
+  private final ColumnarChunk dest = new ColumnarChunk();
+  private final ColumnarChunk.Column destBlock = this.dest.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+  private final ColumnarChunk.Column destLogIndex = this.dest.addColumn("logIndex", 4, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column destCommitment = this.dest.addColumn("commitment", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column destPreimage = this.dest.addColumn("preimage", 32, ColumnarChunk.PLAIN);
+
+  private final ColumnarChunk posted = new ColumnarChunk();
+  private final ColumnarChunk.Column postedBlock = this.posted.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+  private final ColumnarChunk.Column postedLogIndex = this.posted.addColumn("logIndex", 4, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedCommitment = this.posted.addColumn("commitment", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedRelayer = this.posted.addColumn("relayer", 20, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedRecipient = this.posted.addColumn("recipient", 20, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedToken = this.posted.addColumn("otherBlockchainTokenContract", 20, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedAmount = this.posted.addColumn("amount", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column postedTimeLock = this.posted.addColumn("timeLock", 8, ColumnarChunk.DELTA);
+
+  private final ColumnarChunk settled = new ColumnarChunk();
+  private final ColumnarChunk.Column settledBlock = this.settled.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+  private final ColumnarChunk.Column settledLogIndex = this.settled.addColumn("logIndex", 4, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column settledCommitment = this.settled.addColumn("commitment", 32, ColumnarChunk.PLAIN);
+  private final ColumnarChunk.Column settledEvent = this.settled.addColumn("event", 1, ColumnarChunk.PLAIN);
+
+  public TransferHistoryExporter(Path directory, TransferLogFetcher fetcher) {
+    this(directory, fetcher, DEFAULT_BLOCKS_PER_REQUEST, DEFAULT_ROWS_PER_FILE);
+  }
+
+  public TransferHistoryExporter(Path directory, TransferLogFetcher fetcher, int blocksPerRequest, int rowsPerFile) {
+    this.directory = directory;
+    this.fetcher = fetcher;
+    this.blocksPerRequest = blocksPerRequest;
+    this.rowsPerFile = rowsPerFile;
+  }
+
+  /**
+   * Export the events up to toBlock, starting after the last block exported, or at
+   * fromBlock if nothing has been exported to the directory yet.
+   *
+   * @return Number of events exported.
+   */
+  public long export(long fromBlock, long toBlock) throws IOException {
+    Files.createDirectories(this.directory);
+    long lastBlock = readLastBlock(fromBlock - 1);
+    removeUnrecordedFiles(lastBlock);
+    LOG.info("Exporting blocks {} to {} to {}", lastBlock + 1, toBlock, this.directory);
+
+    long exported = 0;
+    long chunkStart = lastBlock + 1;
+    for (long start = lastBlock + 1; start <= toBlock; start += this.blocksPerRequest) {
+      long end = Math.min(toBlock, start + this.blocksPerRequest - 1);
+      this.fetcher.fetch(start, end, this, TOPICS);
+      int rows = this.source.getNumRows() + this.dest.getNumRows() + this.posted.getNumRows() + this.settled.getNumRows();
+      if (rows >= this.rowsPerFile || end == toBlock) {
+        exported += rows;
+        writeChunks(chunkStart, end);
+        chunkStart = end + 1;
+      }
+    }
+    LOG.info("Exported {} events", exported);
+    return exported;
+  }
+
+  @Override
+  public void onSourceTransferInit(SourceTransferInitLog log) {
+    byte[] data = log.rawData();
+    this.sourceBlock.putLong(log.getBlockNumber());
+    this.sourceLogIndex.putInt(log.getLogIndex());
+    this.sourceCommitment.putBytes(data, 0);
+    this.sourceSender.putBytes(data, 32);
+    this.sourceToken.putBytes(data, 52);
+    this.sourceAmount.putBytes(data, 72);
+    this.sourceTimeLock.putLong(log.getTimeLock());
+    this.source.endRow();
+  }
+
+  @Override
+  public void onDestTransferCompleted(DestTransferCompletedLog log) {
+    byte[] data = log.rawData();
+    this.destBlock.putLong(log.getBlockNumber());
+    this.destLogIndex.putInt(log.getLogIndex());
+    this.destCommitment.putBytes(data, 0);
+    this.destPreimage.putBytes(data, 32);
+    this.dest.endRow();
+  }
+
+  @Override
+  public void onDestTransferInit(DestTransferInitLog log) {
+    byte[] data = log.rawData();
+    this.postedBlock.putLong(log.getBlockNumber());
+    this.postedLogIndex.putInt(log.getLogIndex());
+    this.postedCommitment.putBytes(data, 0);
+    this.postedRelayer.putBytes(data, 32);
+    this.postedRecipient.putBytes(data, 52);
+    this.postedToken.putBytes(data, 72);
+    this.postedAmount.putBytes(data, 92);
+    this.postedTimeLock.putLong(log.getTimeLock());
+    this.posted.endRow();
+  }
+
+  @Override
+  public void onTransferSettled(TransferSettledLog log) {
+    this.settledBlock.putLong(log.getBlockNumber());
+    this.settledLogIndex.putInt(log.getLogIndex());
+    this.settledCommitment.putBytes(log.getCommitment(), 0);
+    this.settledEvent.putByte((byte) log.getEvent().ordinal());
+    this.settled.endRow();
+  }
+
+  private void writeChunks(long startBlock, long endBlock) throws IOException {
+    if (this.source.getNumRows() > 0) {
+      this.source.write(this.directory.resolve(chunkFileName("source", startBlock, endBlock)));
+    }
+    if (this.dest.getNumRows() > 0) {
+      this.dest.write(this.directory.resolve(chunkFileName("dest", startBlock, endBlock)));
+    }
+    if (this.posted.getNumRows() > 0) {
+      this.posted.write(this.directory.resolve(chunkFileName("posted", startBlock, endBlock)));
+    }
+    if (this.settled.getNumRows() > 0) {
+      this.settled.write(this.directory.resolve(chunkFileName("settled", startBlock, endBlock)));
+    }
+    writeLastBlock(endBlock);
+  }
+
+  static String chunkFileName(String type, long startBlock, long endBlock) {
+    return String.format("%s-%012d-%012d.col", type, startBlock, endBlock);
+  }
+
+  private long readLastBlock(long defaultLastBlock) throws IOException {
+    Path file = this.directory.resolve(MANIFEST_FILE);
+    if (!Files.exists(file)) {
+      return defaultLastBlock;
+    }
+    Properties manifest = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      manifest.load(in);
+    }
+    String contract = manifest.getProperty(CONTRACT_KEY);
+    if (contract != null && !contract.equalsIgnoreCase(this.fetcher.getContractAddress())) {
+      throw new IllegalArgumentException("Directory " + this.directory + " holds an export of contract " + contract);
+    }
+    return Long.parseLong(manifest.getProperty(LAST_BLOCK_KEY));
+  }
+
+  private void writeLastBlock(long lastBlock) throws IOException {
+    Properties manifest = new Properties();
+    manifest.setProperty(CONTRACT_KEY, this.fetcher.getContractAddress());
+    manifest.setProperty(LAST_BLOCK_KEY, Long.toString(lastBlock));
+    Path file = this.directory.resolve(MANIFEST_FILE);
+    Path tmp = this.directory.resolve(MANIFEST_FILE + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      manifest.store(out, "Transfer history export");
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Remove files for blocks after the last block in the manifest, written by an export
+   * which stopped before updating the manifest. They are exported again.
+   */
+  private void removeUnrecordedFiles(long lastBlock) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+      for (Path file: files) {
+        Matcher matcher = CHUNK_FILE.matcher(file.getFileName().toString());
+        if (matcher.matches() && Long.parseLong(matcher.group(2)) > lastBlock) {
+          LOG.info("Removing {}, which was written after the last recorded block {}", file, lastBlock);
+          Files.delete(file);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package net.consensys.htlcbridge.admin.commands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RunBatchTest {
+  private static String[] args(String line) {
+    return line.split("\\s+");
+  }
+
+  @Test
+  public void transactionCommandsAreKeyedByPrivateKey() {
+    assertEquals(
+        RunBatch.runKey(args("deptx http://a 1 KEY1 2000 100 50"), 0),
+        RunBatch.runKey(args("AUTHTX http://b 2 KEY1 2000 0x01 0x02"), 5));
+    assertNotEquals(
+        RunBatch.runKey(args("deptx http://a 1 KEY1 2000 100 50"), 0),
+        RunBatch.runKey(args("deptx http://a 1 KEY2 2000 100 50"), 1));
+  }
+
+  @Test
+  public void exportsAreKeyedByDirectory() {
+    assertEquals(
+        RunBatch.runKey(args("export http://a 0x01 out/history"), 0),
+        RunBatch.runKey(args("reindex http://a,http://b 0x01 out/./history"), 1));
+    assertNotEquals(
+        RunBatch.runKey(args("export http://a 0x01 out/a"), 0),
+        RunBatch.runKey(args("export http://a 0x01 out/b"), 1));
+  }
+
+  @Test
+  public void directoryAndPrivateKeyNeverShareARun() {
+    assertNotEquals(
+        RunBatch.runKey(args("export http://a 0x01 KEY1"), 0),
+        RunBatch.runKey(args("deptx http://a 1 KEY1 2000 100 50"), 1));
+  }
+
+  @Test
+  public void otherCommandsRunOnTheirOwn() {
+    assertNotEquals(
+        RunBatch.runKey(args("unknown a b c"), 0),
+        RunBatch.runKey(args("unknown a b c"), 1));
+    assertNotEquals(
+        RunBatch.runKey(args("deptx"), 0),
+        RunBatch.runKey(args("deptx"), 1));
+  }
+}
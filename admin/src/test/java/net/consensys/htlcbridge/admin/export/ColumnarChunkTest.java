@@ -0,0 +1,74 @@
+package net.consensys.htlcbridge.admin.export;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ColumnarChunkTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws IOException {
+    ColumnarChunk chunk = new ColumnarChunk();
+    ColumnarChunk.Column blocks = chunk.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+    ColumnarChunk.Column indexes = chunk.addColumn("logIndex", 4, ColumnarChunk.PLAIN);
+    ColumnarChunk.Column flags = chunk.addColumn("flag", 1, ColumnarChunk.PLAIN);
+    ColumnarChunk.Column hashes = chunk.addColumn("hash", 32, ColumnarChunk.PLAIN);
+    byte[] hash = new byte[40];
+    for (int row = 0; row < 1000; row++) {
+      blocks.putLong(5_000_000L + row * 3);
+      indexes.putInt(row % 7);
+      flags.putByte((byte) row);
+      hash[row % 40] = (byte) row;
+      hashes.putBytes(hash, 8);
+      chunk.endRow();
+    }
+    Path file = this.folder.getRoot().toPath().resolve("chunk.col");
+    chunk.write(file);
+    assertEquals(0, chunk.getNumRows());
+
+    Map<String, byte[]> columns = ColumnarChunk.read(file);
+    assertEquals(4, columns.size());
+    ByteBuffer blockValues = ByteBuffer.wrap(columns.get("blockNumber"));
+    ByteBuffer indexValues = ByteBuffer.wrap(columns.get("logIndex"));
+    byte[] flagValues = columns.get("flag");
+    for (int row = 0; row < 1000; row++) {
+      assertEquals(5_000_000L + row * 3, blockValues.getLong(row * 8));
+      assertEquals(row % 7, indexValues.getInt(row * 4));
+      assertEquals((byte) row, flagValues[row]);
+    }
+    assertEquals(1000 * 32, columns.get("hash").length);
+    byte[] lastHash = new byte[32];
+    System.arraycopy(hash, 8, lastHash, 0, 32);
+    assertArrayEquals(lastHash, Arrays.copyOfRange(columns.get("hash"), 999 * 32, 1000 * 32));
+    assertFalse(Files.exists(file.resolveSibling("chunk.col.tmp")));
+  }
+
+  @Test
+  public void reusedAfterWrite() throws IOException {
+    ColumnarChunk chunk = new ColumnarChunk();
+    ColumnarChunk.Column blocks = chunk.addColumn("blockNumber", 8, ColumnarChunk.DELTA);
+    Path first = this.folder.getRoot().toPath().resolve("first.col");
+    Path second = this.folder.getRoot().toPath().resolve("second.col");
+    blocks.putLong(100);
+    chunk.endRow();
+    chunk.write(first);
+    // The delta encoding restarts in each file.
+    blocks.putLong(200);
+    chunk.endRow();
+    chunk.write(second);
+    assertEquals(200, ByteBuffer.wrap(ColumnarChunk.read(second).get("blockNumber")).getLong(0));
+  }
+}
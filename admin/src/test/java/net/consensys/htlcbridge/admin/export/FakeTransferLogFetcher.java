@@ -0,0 +1,64 @@
+package net.consensys.htlcbridge.admin.export;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a made up history, rather than fetching logs from an Ethereum client: every tenth
+ * block has one of each kind of transfer event.
+ */
+class FakeTransferLogFetcher extends TransferLogFetcher {
+  static final String CONTRACT = "0x1234567890123456789012345678901234567890";
+  static final int BLOCK_INTERVAL = 10;
+  static final int EVENTS_PER_BLOCK = 4;
+
+  // Number of fetches which fail before the next one succeeds.
+  final AtomicInteger failures = new AtomicInteger();
+  final AtomicInteger fetches = new AtomicInteger();
+
+  FakeTransferLogFetcher() {
+    super(null, "http://unused", CONTRACT);
+  }
+
+  @Override
+  public int fetch(long fromBlock, long toBlock, TransferLogHandler handler, String... eventTopics) throws IOException {
+    this.fetches.incrementAndGet();
+    if (this.failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+      throw new IOException("node unavailable");
+    }
+    int logs = 0;
+    for (long block = fromBlock; block <= toBlock; block++) {
+      if (block % BLOCK_INTERVAL != 0) {
+        continue;
+      }
+      byte[] commitment = new byte[32];
+      commitment[0] = (byte) (block >> 8);
+      commitment[1] = (byte) block;
+
+      byte[] source = new byte[104];
+      System.arraycopy(commitment, 0, source, 0, 32);
+      source[103] = 1;
+      handler.onSourceTransferInit(SourceTransferInitLog.fromRawData(block, 0, 1000 + block, source));
+
+      byte[] posted = new byte[124];
+      System.arraycopy(commitment, 0, posted, 0, 32);
+      posted[123] = 1;
+      handler.onDestTransferInit(DestTransferInitLog.fromRawData(block, 1, 1000 + block, posted));
+
+      byte[] completed = new byte[64];
+      System.arraycopy(commitment, 0, completed, 0, 32);
+      handler.onDestTransferCompleted(DestTransferCompletedLog.fromRawData(block, 2, completed));
+
+      handler.onTransferSettled(new TransferSettledLog(TransferSettledLog.Event.SOURCE_TRANSFER_REFUNDED, block, 3, commitment));
+      logs += EVENTS_PER_BLOCK;
+    }
+    return logs;
+  }
+}
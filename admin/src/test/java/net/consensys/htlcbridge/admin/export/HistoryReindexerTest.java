@@ -0,0 +1,120 @@
+package net.consensys.htlcbridge.admin.export;
+
+import net.consensys.htlcbridge.common.BlockingExecutors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HistoryReindexerTest {
+  static final long PARTITION_SIZE = 100;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ExecutorService executor = BlockingExecutors.newExecutor("reindex-test", 4);
+  private final Map<String, FakeTransferLogFetcher> fetchers = new LinkedHashMap<>();
+
+  @After
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+
+  HistoryReindexer reindexer(Path directory, String... endpoints) {
+    for (String endpoint: endpoints) {
+      this.fetchers.computeIfAbsent(endpoint, e -> new FakeTransferLogFetcher());
+    }
+    return new HistoryReindexer(directory, FakeTransferLogFetcher.CONTRACT, Arrays.asList(endpoints),
+        this.fetchers::get, 2, PARTITION_SIZE);
+  }
+
+  static int countSourceRows(Path directory) throws IOException {
+    int rows = 0;
+    List<Path> partitions;
+    try (Stream<Path> files = Files.list(directory)) {
+      partitions = files.filter(Files::isDirectory).collect(Collectors.toList());
+    }
+    for (Path partition: partitions) {
+      rows += TransferHistoryExporterTest.countRows(partition, "source", 8, "blockNumber");
+    }
+    return rows;
+  }
+
+  @Test
+  public void reindexAcrossEndpoints() throws Exception {
+    Path directory = this.folder.getRoot().toPath();
+    long exported = reindexer(directory, "a", "b").reindex(50, 999, this.executor);
+    // Blocks 50, 60, ... 990.
+    assertEquals(95 * FakeTransferLogFetcher.EVENTS_PER_BLOCK, exported);
+    assertEquals(95, countSourceRows(directory));
+    assertTrue(Files.isDirectory(directory.resolve(String.format("blocks-%012d", 0))));
+    assertTrue(Files.isDirectory(directory.resolve(String.format("blocks-%012d", 900))));
+  }
+
+  @Test
+  public void failedPartitionsAreRetried() throws Exception {
+    Path directory = this.folder.getRoot().toPath();
+    HistoryReindexer reindexer = reindexer(directory, "a", "b");
+    this.fetchers.get("a").failures.set(HistoryReindexer.MAX_ATTEMPTS - 1);
+    reindexer.reindex(0, 999, this.executor);
+    assertEquals(100, countSourceRows(directory));
+  }
+
+  @Test
+  public void failsWhenAPartitionKeepsFailing() throws Exception {
+    Path directory = this.folder.getRoot().toPath();
+    HistoryReindexer reindexer = reindexer(directory, "a");
+    this.fetchers.get("a").failures.set(Integer.MAX_VALUE);
+    try {
+      reindexer.reindex(0, 999, this.executor);
+      fail("Expected the reindex to fail");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void rerunResumesFromCheckpoints() throws Exception {
+    Path directory = this.folder.getRoot().toPath();
+    HistoryReindexer failing = reindexer(directory, "down");
+    this.fetchers.get("down").failures.set(Integer.MAX_VALUE);
+    try {
+      failing.reindex(0, 999, this.executor);
+      fail("Expected the reindex to fail");
+    } catch (ExecutionException ex) {
+      // Expected: nothing has been exported.
+    }
+
+    HistoryReindexer reindexer = reindexer(directory, "a");
+    assertEquals(100 * FakeTransferLogFetcher.EVENTS_PER_BLOCK, reindexer.reindex(0, 999, this.executor));
+    // Running again on the same instance only fetches blocks which haven't been reindexed.
+    int fetches = this.fetchers.get("a").fetches.get();
+    assertEquals(5 * FakeTransferLogFetcher.EVENTS_PER_BLOCK, reindexer.reindex(0, 1049, this.executor));
+    assertEquals(fetches + 1, this.fetchers.get("a").fetches.get());
+    assertEquals(105, countSourceRows(directory));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void partitionSizeIsChecked() throws Exception {
+    Path directory = this.folder.getRoot().toPath();
+    reindexer(directory, "a").reindex(0, 99, this.executor);
+    new HistoryReindexer(directory, FakeTransferLogFetcher.CONTRACT, Arrays.asList("a"),
+        this.fetchers::get, 1, PARTITION_SIZE * 2).reindex(0, 99, this.executor);
+  }
+}
@@ -0,0 +1,60 @@
+package net.consensys.htlcbridge.admin.export;
+
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransferHistoryExporterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static int countRows(Path directory, String type, int width, String column) throws IOException {
+    int rows = 0;
+    for (Path file: chunkFiles(directory, type)) {
+      rows += ColumnarChunk.read(file).get(column).length / width;
+    }
+    return rows;
+  }
+
+  static List<Path> chunkFiles(Path directory, String type) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(p -> p.getFileName().toString().startsWith(type + "-")).sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void exportsEveryEventType() throws IOException {
+    Path directory = this.folder.getRoot().toPath();
+    TransferHistoryExporter exporter = new TransferHistoryExporter(directory, new FakeTransferLogFetcher(), 25, 20);
+    assertEquals(10 * FakeTransferLogFetcher.EVENTS_PER_BLOCK, exporter.export(0, 99));
+
+    assertEquals(10, countRows(directory, "source", 8, "blockNumber"));
+    assertEquals(10, countRows(directory, "dest", 8, "blockNumber"));
+    assertEquals(10, countRows(directory, "posted", 8, "blockNumber"));
+    assertEquals(10, countRows(directory, "settled", 8, "blockNumber"));
+    byte[] events = ColumnarChunk.read(chunkFiles(directory, "settled").get(0)).get("event");
+    assertEquals(TransferSettledLog.Event.SOURCE_TRANSFER_REFUNDED.ordinal(), events[0]);
+  }
+
+  @Test
+  public void rerunAppends() throws IOException {
+    Path directory = this.folder.getRoot().toPath();
+    new TransferHistoryExporter(directory, new FakeTransferLogFetcher(), 25, 20).export(0, 99);
+    FakeTransferLogFetcher fetcher = new FakeTransferLogFetcher();
+    assertEquals(5 * FakeTransferLogFetcher.EVENTS_PER_BLOCK,
+        new TransferHistoryExporter(directory, fetcher, 25, 20).export(0, 149));
+    // Only blocks 100 to 149 are fetched.
+    assertEquals(2, fetcher.fetches.get());
+    assertEquals(15, countRows(directory, "source", 8, "blockNumber"));
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares drawing preimage salts from 8 threads at once from the single shared DRBG that
+ * PRNG used before, with DrbgPool with and without prefetch.<p>
+ * Run with: gradle :common:jmh. Vary the thread count with -t on the JMH arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class DrbgPoolBenchmark {
+  final SecureRandom shared = PRNG.createPRNG();
+  final DrbgPool striped = new DrbgPool(false);
+  final DrbgPool prefetched = new DrbgPool(true);
+
+  @Benchmark
+  public Bytes32 sharedDrbg() {
+    return Bytes32.random(this.shared);
+  }
+
+  @Benchmark
+  public Bytes32 stripedDrbgs() {
+    return this.striped.nextBytes32();
+  }
+
+  @Benchmark
+  public Bytes32 stripedWithPrefetch() {
+    return this.prefetched.nextBytes32();
+  }
+}
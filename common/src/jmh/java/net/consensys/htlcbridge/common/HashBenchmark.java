@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares hashing a batch of 104 byte commitment preimages by looking up a MessageDigest
+ * through the JCA for each one, as Hash did before, with the thread local engines of Hash.<p>
+ * Run with: gradle :common:jmh. Add -prof gc to the JMH arguments to see allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class HashBenchmark {
+  static final int PREIMAGE_LENGTH = 104;
+
+  @Param({"1", "1000"})
+  int batchSize;
+
+  byte[] packed;
+  byte[][] inputs;
+  Bytes[] bytes;
+  byte[] output;
+
+  @Setup
+  public void setup() {
+    // The JCA path needs the provider Hash registers. Register it here too, as the
+    // benchmark may run before Hash is loaded.
+    Security.addProvider(new BouncyCastleProvider());
+    Random random = new Random(1);
+    this.packed = new byte[this.batchSize * PREIMAGE_LENGTH];
+    random.nextBytes(this.packed);
+    this.inputs = new byte[this.batchSize][];
+    this.bytes = new Bytes[this.batchSize];
+    for (int i = 0; i < this.batchSize; i++) {
+      this.inputs[i] = new byte[PREIMAGE_LENGTH];
+      System.arraycopy(this.packed, i * PREIMAGE_LENGTH, this.inputs[i], 0, PREIMAGE_LENGTH);
+      this.bytes[i] = Bytes.wrap(this.inputs[i]);
+    }
+    this.output = new byte[this.batchSize * Hash.HASH_LENGTH];
+  }
+
+  @Benchmark
+  public void messageDigestPerHash(Blackhole blackhole) throws Exception {
+    for (Bytes input: this.bytes) {
+      MessageDigest digest = MessageDigest.getInstance(Hash.KECCAK256_ALG);
+      input.update(digest);
+      blackhole.consume(Bytes32.wrap(digest.digest()));
+    }
+  }
+
+  @Benchmark
+  public void threadLocalBytes32(Blackhole blackhole) {
+    for (Bytes input: this.bytes) {
+      blackhole.consume(Hash.keccak256(input));
+    }
+  }
+
+  @Benchmark
+  public byte[] threadLocalArrays() {
+    Hash.keccak256(this.inputs, this.output);
+    return this.output;
+  }
+
+  @Benchmark
+  public byte[] threadLocalPacked() {
+    Hash.keccak256(this.packed, PREIMAGE_LENGTH, this.batchSize, this.output);
+    return this.output;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for code which blocks on web3j's send(), such as admin commands,
+ * integration test users and gas price discovery.<p>
+ * In VIRTUAL mode, each task runs on its own virtual thread, so thousands of concurrent
+ * blocking flows are cheap. Virtual threads need Java 21 or later; the code base targets
+ * earlier versions, so they are created reflectively, and PLATFORM mode is used if they are
+ * not available. In PLATFORM mode, tasks run on a fixed size pool of daemon threads.<p>
+ * The mode is chosen with the system property htlcbridge.blocking.mode: PLATFORM (the
+ * default) or VIRTUAL.
+ */
+public abstract class BlockingExecutors {
+  private static final Logger LOG = LogManager.getLogger(BlockingExecutors.class);
+
+  public enum Mode {
+    PLATFORM,
+    VIRTUAL
+  }
+
+  public static final String MODE_PROPERTY = "htlcbridge.blocking.mode";
+
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_FACTORY;
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    Method newThreadPerTaskExecutor = null;
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builder.getMethod("name", String.class, long.class);
+      factory = builder.getMethod("factory");
+      newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    } catch (ReflectiveOperationException ex) {
+      // Virtual threads are not supported by this JVM.
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = name;
+    BUILDER_FACTORY = factory;
+    NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+  }
+
+  private static volatile Mode mode = modeFromSystemProperty();
+
+  private BlockingExecutors() {
+  }
+
+  public static boolean virtualThreadsSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  public static Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Change the mode used for executors created after this call.
+   */
+  public static void setMode(Mode newMode) {
+    if (newMode == Mode.VIRTUAL && !virtualThreadsSupported()) {
+      LOG.warn("Virtual threads are not supported by this JVM ({}). Using platform threads.",
+          System.getProperty("java.version"));
+      newMode = Mode.PLATFORM;
+    }
+    mode = newMode;
+  }
+
+  /**
+   * Create an executor for blocking tasks.
+   *
+   * @param name Prefix for the names of the threads.
+   * @param platformThreads Number of threads to use in PLATFORM mode. In VIRTUAL mode there is
+   *   one thread per task.
+   */
+  public static ExecutorService newExecutor(String name, int platformThreads) {
+    if (mode == Mode.VIRTUAL) {
+      try {
+        Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+        ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+      } catch (ReflectiveOperationException ex) {
+        LOG.warn("Unable to create virtual thread executor: {}. Using platform threads.", ex.toString());
+      }
+    }
+    return Executors.newFixedThreadPool(platformThreads, daemonThreadFactory(name));
+  }
+
+  private static ThreadFactory daemonThreadFactory(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static Mode modeFromSystemProperty() {
+    String value = System.getProperty(MODE_PROPERTY, Mode.PLATFORM.name());
+    Mode requested;
+    try {
+      requested = Mode.valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException ex) {
+      LOG.warn("Unknown value for {}: {}. Using platform threads.", MODE_PROPERTY, value);
+      return Mode.PLATFORM;
+    }
+    if (requested == Mode.VIRTUAL && !virtualThreadsSupported()) {
+      LOG.warn("Virtual threads are not supported by this JVM ({}). Using platform threads.",
+          System.getProperty("java.version"));
+      return Mode.PLATFORM;
+    }
+    return requested;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.tuweni.bytes.Bytes32;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A set of independently seeded DRBGs, so that threads drawing random bytes at the same
+ * time don't all wait on the lock of a single SecureRandom.<p>
+ * Each thread uses the stripe selected by its thread id. The DRBGs are created by
+ * PRNG.createPRNG, so they have the same personalisation and reseed behaviour as a single
+ * DRBG. Striping rather than a DRBG per thread keeps the number of instances bounded when
+ * many short lived or virtual threads are used.<p>
+ * If prefetch is enabled, each stripe also holds a ring of ready random bytes, from which
+ * 32 byte values are handed out. When a ring is used up it is swapped with a spare ring
+ * which a background thread has filled in the meantime, so the DRBG rarely runs on the
+ * caller's thread. Prefetch is only suitable for public values such as preimage salts:
+ * use get() to obtain a DRBG for private keys.
+ */
+public class DrbgPool {
+  // Number of 32 byte values held by each ring.
+  public static final int DEFAULT_RING_VALUES = 64;
+
+  private static final int VALUE_LEN = 32;
+
+  private final class Stripe {
+    final SecureRandom prng;
+    // Ring being handed out: the bytes from next onwards haven't been used.
+    byte[] ring;
+    int next;
+    // Ring filled in the background, ready to be swapped in, or null.
+    byte[] prefetched;
+    // Ring which can be filled in the background, or null if it is being filled.
+    byte[] spare;
+    // Incremented by reseedKick, so that rings filled before a reseed are discarded.
+    int generation;
+
+    Stripe(SecureRandom prng, int ringBytes) {
+      this.prng = prng;
+      this.ring = new byte[ringBytes];
+      this.next = ringBytes;
+      this.spare = new byte[ringBytes];
+    }
+
+    synchronized void take(byte[] out) {
+      if (this.next == this.ring.length) {
+        if (this.prefetched != null) {
+          byte[] used = this.ring;
+          this.ring = this.prefetched;
+          this.prefetched = null;
+          this.spare = used;
+        }
+        else {
+          this.prng.nextBytes(this.ring);
+        }
+        this.next = 0;
+        prefetch();
+      }
+      System.arraycopy(this.ring, this.next, out, 0, VALUE_LEN);
+      this.next += VALUE_LEN;
+    }
+
+    // Must be called holding the stripe's lock.
+    private void prefetch() {
+      if (this.spare == null || this.prefetched != null) {
+        return;
+      }
+      byte[] buffer = this.spare;
+      int generation = this.generation;
+      this.spare = null;
+      DrbgPool.this.prefetcher.execute(() -> {
+        // The DRBG does its own locking, so the ring is filled without holding the stripe.
+        this.prng.nextBytes(buffer);
+        synchronized (this) {
+          if (generation == this.generation) {
+            this.prefetched = buffer;
+          }
+          else {
+            this.spare = buffer;
+          }
+        }
+      });
+    }
+
+    synchronized void reseedKick() {
+      this.prng.setSeed(System.nanoTime());
+      this.generation++;
+      this.next = this.ring.length;
+      if (this.prefetched != null) {
+        this.spare = this.prefetched;
+        this.prefetched = null;
+      }
+    }
+  }
+
+  // Stripes are created on first use, as each DRBG seeds itself from the system's entropy source.
+  private final AtomicReferenceArray<Stripe> stripes;
+  private final int ringBytes;
+  private final boolean prefetch;
+  private final ExecutorService prefetcher;
+
+  /**
+   * Create a pool with two stripes per processor.
+   *
+   * @param prefetch true to generate 32 byte values ahead of time.
+   */
+  public DrbgPool(boolean prefetch) {
+    this(2 * Runtime.getRuntime().availableProcessors(), prefetch, DEFAULT_RING_VALUES);
+  }
+
+  public DrbgPool(int numStripes, boolean prefetch, int ringValues) {
+    if (numStripes < 1 || ringValues < 1) {
+      throw new IllegalArgumentException("Need at least one stripe and one value per ring");
+    }
+    this.stripes = new AtomicReferenceArray<>(numStripes);
+    this.ringBytes = ringValues * VALUE_LEN;
+    this.prefetch = prefetch;
+    this.prefetcher = prefetch ? Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "drbg-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
+  }
+
+  private Stripe stripe() {
+    int index = (int) (Thread.currentThread().getId() % this.stripes.length());
+    Stripe stripe = this.stripes.get(index);
+    if (stripe == null) {
+      this.stripes.compareAndSet(index, null, new Stripe(PRNG.createPRNG(), this.ringBytes));
+      stripe = this.stripes.get(index);
+    }
+    return stripe;
+  }
+
+  /**
+   * @return The DRBG of the calling thread's stripe. Values drawn from it directly are
+   *   never prefetched.
+   */
+  public SecureRandom get() {
+    return stripe().prng;
+  }
+
+  /**
+   * @return 32 random bytes, from the calling thread's stripe.
+   */
+  public Bytes32 nextBytes32() {
+    byte[] value = new byte[VALUE_LEN];
+    nextBytes32(value);
+    return Bytes32.wrap(value);
+  }
+
+  /**
+   * Fill a 32 byte array with random bytes, from the calling thread's stripe.
+   */
+  public void nextBytes32(byte[] out) {
+    if (this.prefetch) {
+      stripe().take(out);
+    }
+    else {
+      stripe().prng.nextBytes(out);
+    }
+  }
+
+  /**
+   * Mix the current time into every stripe's DRBG, as PRNG.reseedKick does for a single
+   * DRBG. Values prefetched before the call are discarded.
+   */
+  public void reseedKick() {
+    for (int i = 0; i < this.stripes.length(); i++) {
+      Stripe stripe = this.stripes.get(i);
+      if (stripe != null) {
+        stripe.reseedKick();
+      }
+    }
+  }
+
+  public int getNumStripes() {
+    return this.stripes.length();
+  }
+}
@@ -12,10 +12,14 @@ import org.web3j.protocol.core.methods.response.Transaction;
 import org.web3j.tx.gas.ContractGasProvider;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 public class DynamicGasProvider implements ContractGasProvider {
   public enum Strategy {
@@ -29,8 +33,14 @@ public class DynamicGasProvider implements ContractGasProvider {
 
   private static final Logger LOG = LogManager.getLogger(DynamicGasProvider.class);
 
+  // Number of transactions fetched concurrently when using platform threads.
+  private static final int PLATFORM_THREADS = 4;
+  // Executor used to fetch the transactions in a block, unless one is supplied.
+  public static final ExecutorService DEFAULT_EXECUTOR = BlockingExecutors.newExecutor("gas-oracle", PLATFORM_THREADS);
+
   Web3j web3j;
   String uri;
+  Executor executor;
   Strategy pricingStrategy;
 
   BigInteger lowest;
@@ -38,6 +48,8 @@ public class DynamicGasProvider implements ContractGasProvider {
   BigInteger average;
   BigInteger median;
   BigInteger ethGasPrice;
+  // Set once the gas prices have been determined.
+  private volatile boolean initialised;
 
   public DynamicGasProvider(Web3j web3j, String uri, String pricingStrategy) throws IOException {
     this(web3j, uri, Strategy.valueOf(pricingStrategy));
@@ -45,10 +57,34 @@ public class DynamicGasProvider implements ContractGasProvider {
 
 
   public DynamicGasProvider(Web3j web3j, String uri, Strategy pricingStrategy) throws IOException {
+    this(web3j, uri, pricingStrategy, DEFAULT_EXECUTOR);
+  }
+
+  public DynamicGasProvider(Web3j web3j, String uri, String pricingStrategy, Executor executor) throws IOException {
+    this(web3j, uri, Strategy.valueOf(pricingStrategy), executor);
+  }
+
+  public DynamicGasProvider(Web3j web3j, String uri, Strategy pricingStrategy, Executor executor) throws IOException {
+    this(web3j, uri, pricingStrategy, executor, false);
+  }
+
+  public DynamicGasProvider(Web3j web3j, String uri, String pricingStrategy, Executor executor, boolean lazy) throws IOException {
+    this(web3j, uri, Strategy.valueOf(pricingStrategy), executor, lazy);
+  }
+
+  /**
+   * @param lazy If true, the gas prices are determined when first needed rather than by the
+   *   constructor. If they can't be determined from the latest block, the node's eth_gasPrice
+   *   is used instead.
+   */
+  public DynamicGasProvider(Web3j web3j, String uri, Strategy pricingStrategy, Executor executor, boolean lazy) throws IOException {
     this.pricingStrategy = pricingStrategy;
     this.uri = uri;
     this.web3j = web3j;
-    detertermineNewGasPrice();
+    this.executor = executor;
+    if (!lazy) {
+      detertermineNewGasPrice();
+    }
   }
 
   public void changeStrategy(Strategy pricingStrategy) throws IOException {
@@ -57,8 +93,29 @@ public class DynamicGasProvider implements ContractGasProvider {
   }
 
 
-  private void detertermineNewGasPrice() throws IOException {
+  private void ensureInitialised() {
+    if (this.initialised) {
+      return;
+    }
+    synchronized (this) {
+      if (this.initialised) {
+        return;
+      }
+      try {
+        detertermineNewGasPrice();
+      } catch (IOException ex) {
+        if (this.ethGasPrice == null) {
+          // Not initialised: try again on the next call.
+          throw new UncheckedIOException("Unable to determine gas price for " + this.uri, ex);
+        }
+        useEthGasPrice("Error fetching the transactions in the last block: " + ex.toString());
+      }
+    }
+  }
+
+  private synchronized void detertermineNewGasPrice() throws IOException {
     if (this.pricingStrategy == Strategy.FREE) {
+      this.initialised = true;
       return;
     }
 
@@ -71,22 +128,39 @@ public class DynamicGasProvider implements ContractGasProvider {
     BigInteger txCount = transactionCountByHash.getTransactionCount();
 
     if (txCount.compareTo(BigInteger.ZERO) == 0) {
-      throw new RuntimeException("No transactions in the last block. Can't work out gas price");
+      useEthGasPrice("No transactions in the last block");
+      return;
+    }
+
+    // Fetch the transactions in the block concurrently.
+    List<BigInteger> sortedList;
+    try (TaskScope<BigInteger> scope = new TaskScope<>(this.executor)) {
+      for (BigInteger transactionIndex = BigInteger.ZERO;
+           transactionIndex.compareTo(txCount) < 0;
+           transactionIndex = transactionIndex.add(BigInteger.ONE)) {
+        final BigInteger index = transactionIndex;
+        scope.fork(() -> {
+          EthTransaction ethTransaction = this.web3j.ethGetTransactionByBlockHashAndIndex(blockHash, index).send();
+          Optional<Transaction> transaction = ethTransaction.getTransaction();
+          assert(transaction.isPresent());
+          return transaction.get().getGasPrice();
+        });
+      }
+      sortedList = scope.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted fetching transactions for block " + blockHash);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException("Error fetching transactions for block " + blockHash, ex.getCause());
     }
 
-    List<BigInteger> sortedList = new ArrayList<>();
     BigInteger total = BigInteger.ZERO;
     this.highest = BigInteger.ZERO;
     this.lowest = BigInteger.TWO.pow(256);
-    BigInteger transactionIndex = BigInteger.ZERO;
-    do {
-      EthTransaction ethTransaction = this.web3j.ethGetTransactionByBlockHashAndIndex(blockHash, transactionIndex).send();
-      Optional<Transaction> transaction = ethTransaction.getTransaction();
-      assert(transaction.isPresent());
-      BigInteger gasPrice = transaction.get().getGasPrice();
-
-      sortedList.add(gasPrice);
-
+    for (BigInteger gasPrice: sortedList) {
       total = total.add(gasPrice);
 
       if (gasPrice.compareTo(this.highest) > 0) {
@@ -95,10 +169,7 @@ public class DynamicGasProvider implements ContractGasProvider {
       if (gasPrice.compareTo(this.lowest) < 0) {
         this.lowest = gasPrice;
       }
-
-      // Increment for the next time through the loop.
-      transactionIndex = transactionIndex.add(BigInteger.ONE);
-    } while (transactionIndex.compareTo(txCount) != 0);
+    }
 
     this.average = total.divide(txCount);
 
@@ -112,6 +183,17 @@ public class DynamicGasProvider implements ContractGasProvider {
     LOG.info(" Median:      {}", this.median);
     LOG.info(" Highest:     {}", this.highest);
     LOG.info(" Strategy selected: {}", this.pricingStrategy);
+    this.initialised = true;
+  }
+
+  // Fallback when the gas prices can't be worked out from the transactions in the last block.
+  private void useEthGasPrice(String reason) {
+    this.lowest = this.ethGasPrice;
+    this.highest = this.ethGasPrice;
+    this.average = this.ethGasPrice;
+    this.median = this.ethGasPrice;
+    LOG.warn("Gas Price for Ethereum network: {}: {}. Using EthGasPrice: {}", this.uri, reason, this.ethGasPrice);
+    this.initialised = true;
   }
 
   @Override
@@ -121,6 +203,7 @@ public class DynamicGasProvider implements ContractGasProvider {
 
   @Override
   public BigInteger getGasPrice() {
+    ensureInitialised();
     switch (this.pricingStrategy) {
       case ETH_GAS_PRICE:
         return this.ethGasPrice;
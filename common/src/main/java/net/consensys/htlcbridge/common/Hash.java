@@ -1,18 +1,39 @@
 package net.consensys.htlcbridge.common;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.security.Security;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+/**
+ * Keccak-256 and SHA2-256 digests.<p>
+ * Each thread reuses its own digest engines, rather than looking up a MessageDigest through
+ * the JCA for every hash. The methods which take arrays or buffers write the digest into a
+ * caller supplied array, and don't allocate.
+ */
 public abstract class Hash {
   public static final String KECCAK256_ALG = "KECCAK-256";
-  private static final String SHA256_ALG = "SHA-256";
+
+  // Length in bytes of a digest.
+  public static final int HASH_LENGTH = 32;
+  // Size of the per-thread buffer used to copy data out of direct byte buffers.
+  private static final int SCRATCH_SIZE = 256;
+
+  private static final class Engines {
+    final KeccakDigest keccak256 = new KeccakDigest(256);
+    final SHA256Digest sha256 = new SHA256Digest();
+    final byte[] scratch = new byte[SCRATCH_SIZE];
+  }
+
+  private static final ThreadLocal<Engines> ENGINES = ThreadLocal.withInitial(Engines::new);
 
   static {
+    // Keep the JCA provider registered for code using MessageDigest.getInstance(KECCAK256_ALG).
     Security.addProvider(new BouncyCastleProvider());
   }
 
@@ -26,7 +47,7 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes32 sha256(final Bytes input) {
-    return Bytes32.wrap(digestUsingAlgorithm(input, SHA256_ALG));
+    return Bytes32.wrap(digest(ENGINES.get().sha256, input));
   }
 
   /**
@@ -36,24 +57,131 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes32 keccak256(final Bytes input) {
-    return Bytes32.wrap(digestUsingAlgorithm(input, KECCAK256_ALG));
+    return Bytes32.wrap(digest(ENGINES.get().keccak256, input));
   }
 
+  /**
+   * Digest part of an array using keccak-256.
+   *
+   * @param output Array to write the 32 byte digest to, starting at outputOffset.
+   */
+  public static void keccak256(final byte[] input, final int offset, final int length, final byte[] output, final int outputOffset) {
+    digest(ENGINES.get().keccak256, input, offset, length, output, outputOffset);
+  }
 
   /**
-   * Helper method to generate a digest using the provided algorithm.
+   * Digest the remaining bytes of a buffer using keccak-256. The buffer's position is
+   * advanced to its limit.
    *
-   * @param input The input bytes to produce the digest for.
-   * @param alg   The name of the digest algorithm to use.
-   * @return A digest.
+   * @param output Array to write the 32 byte digest to, starting at outputOffset.
    */
-  private static byte[] digestUsingAlgorithm(final Bytes input, final String alg) {
-    try {
-      final MessageDigest digest = MessageDigest.getInstance(alg);
-      input.update(digest);
-      return digest.digest();
-    } catch (final NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
+  public static void keccak256(final ByteBuffer input, final byte[] output, final int outputOffset) {
+    Engines engines = ENGINES.get();
+    digest(engines.keccak256, engines.scratch, input, output, outputOffset);
+  }
+
+  /**
+   * Digest each of a number of inputs using keccak-256.
+   *
+   * @param output Array to write the digests to, one after the other: the digest of inputs[i]
+   *   is written at offset i * 32.
+   */
+  public static void keccak256(final byte[][] inputs, final byte[] output) {
+    KeccakDigest keccak256 = ENGINES.get().keccak256;
+    for (int i = 0; i < inputs.length; i++) {
+      digest(keccak256, inputs[i], 0, inputs[i].length, output, i * HASH_LENGTH);
+    }
+  }
+
+  /**
+   * Digest each of a number of fixed length inputs, stored one after the other in an array,
+   * using keccak-256.
+   *
+   * @param inputs Array holding the inputs: input i is at offset i * inputLength.
+   * @param inputLength Length of each input.
+   * @param count Number of inputs.
+   * @param output Array to write the digests to: the digest of input i is written at offset i * 32.
+   */
+  public static void keccak256(final byte[] inputs, final int inputLength, final int count, final byte[] output) {
+    KeccakDigest keccak256 = ENGINES.get().keccak256;
+    for (int i = 0; i < count; i++) {
+      digest(keccak256, inputs, i * inputLength, inputLength, output, i * HASH_LENGTH);
+    }
+  }
+
+  /**
+   * Digest part of an array using SHA2-256.
+   *
+   * @param output Array to write the 32 byte digest to, starting at outputOffset.
+   */
+  public static void sha256(final byte[] input, final int offset, final int length, final byte[] output, final int outputOffset) {
+    digest(ENGINES.get().sha256, input, offset, length, output, outputOffset);
+  }
+
+  /**
+   * Digest the remaining bytes of a buffer using SHA2-256. The buffer's position is
+   * advanced to its limit.
+   *
+   * @param output Array to write the 32 byte digest to, starting at outputOffset.
+   */
+  public static void sha256(final ByteBuffer input, final byte[] output, final int outputOffset) {
+    Engines engines = ENGINES.get();
+    digest(engines.sha256, engines.scratch, input, output, outputOffset);
+  }
+
+  /**
+   * Digest each of a number of inputs using SHA2-256.
+   *
+   * @param output Array to write the digests to: the digest of inputs[i] is written at offset i * 32.
+   */
+  public static void sha256(final byte[][] inputs, final byte[] output) {
+    SHA256Digest sha256 = ENGINES.get().sha256;
+    for (int i = 0; i < inputs.length; i++) {
+      digest(sha256, inputs[i], 0, inputs[i].length, output, i * HASH_LENGTH);
+    }
+  }
+
+  private static byte[] digest(final Digest digest, final Bytes input) {
+    byte[] output = new byte[HASH_LENGTH];
+    // toArrayUnsafe doesn't copy when the Bytes wraps a whole array.
+    byte[] data = input.toArrayUnsafe();
+    digest(digest, data, 0, data.length, output, 0);
+    return output;
+  }
+
+  private static void digest(final Digest digest, final byte[] input, final int offset, final int length,
+                             final byte[] output, final int outputOffset) {
+    // Check the bounds up front, so that a bad call can't leave partial input in the thread's engine.
+    if (offset < 0 || length < 0 || offset > input.length - length) {
+      throw new IndexOutOfBoundsException("Input of " + length + " bytes from offset " + offset +
+          " exceeds array of " + input.length);
+    }
+    checkOutput(output, outputOffset);
+    digest.update(input, offset, length);
+    // doFinal resets the engine for the next digest.
+    digest.doFinal(output, outputOffset);
+  }
+
+  private static void digest(final Digest digest, final byte[] scratch, final ByteBuffer input,
+                             final byte[] output, final int outputOffset) {
+    if (input.hasArray()) {
+      int length = input.remaining();
+      digest(digest, input.array(), input.arrayOffset() + input.position(), length, output, outputOffset);
+      input.position(input.limit());
+      return;
+    }
+    checkOutput(output, outputOffset);
+    while (input.hasRemaining()) {
+      int length = Math.min(scratch.length, input.remaining());
+      input.get(scratch, 0, length);
+      digest.update(scratch, 0, length);
+    }
+    digest.doFinal(output, outputOffset);
+  }
+
+  private static void checkOutput(final byte[] output, final int outputOffset) {
+    if (outputOffset < 0 || output.length - outputOffset < HASH_LENGTH) {
+      throw new IndexOutOfBoundsException("Output needs " + HASH_LENGTH + " bytes from offset " + outputOffset);
     }
   }
-}
\ No newline at end of file
+}
@@ -40,11 +40,10 @@ public class KeyPairGen {
   private final KeyPairGenerator keyPairGenerator;
 
   public KeyPairGen() {
-    // TODO don't create a PRNG each call
     try {
       this.keyPairGenerator = KeyPairGenerator.getInstance("EC");
       final ECGenParameterSpec ecGenParameterSpec = new ECGenParameterSpec("secp256k1");
-      this.keyPairGenerator.initialize(ecGenParameterSpec, PRNG.privatePRNG);
+      this.keyPairGenerator.initialize(ecGenParameterSpec, PRNG.getPrivatePRNG());
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
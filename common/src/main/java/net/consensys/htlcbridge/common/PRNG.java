@@ -29,15 +29,23 @@ import java.util.Enumeration;
 import static java.security.DrbgParameters.Capability.RESEED_ONLY;
 
 public class PRNG {
-  static SecureRandom publicPRNG = createPRNG();
-  static SecureRandom privatePRNG = createPRNG();
+  // Salts are public once a transfer is completed, so can be generated ahead of time.
+  static final DrbgPool publicPRNGs = new DrbgPool(true);
+  static final DrbgPool privatePRNGs = new DrbgPool(false);
 
   public static Bytes32 getPublicRandomBytes32() {
-    return Bytes32.random(publicPRNG);
+    return publicPRNGs.nextBytes32();
   }
 
   public static void reseedKick() {
-    publicPRNG.setSeed(System.nanoTime());
+    publicPRNGs.reseedKick();
+  }
+
+  /**
+   * @return A DRBG for generating private values such as keys.
+   */
+  public static SecureRandom getPrivatePRNG() {
+    return privatePRNGs.get();
   }
 
 
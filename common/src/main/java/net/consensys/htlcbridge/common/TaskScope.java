@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans out related tasks and fans their results back in, in the style of structured
+ * concurrency: tasks are forked inside the scope, join waits for all of them, and no task
+ * outlives the scope: close cancels the tasks which have not completed, and waits for those
+ * already running to return. If a task fails, the other tasks are cancelled and join throws
+ * the first failure.<p>
+ * Use with try-with-resources:
+ * <pre>
+ *   try (TaskScope&lt;BigInteger&gt; scope = new TaskScope&lt;&gt;(executor)) {
+ *     for (...) {
+ *       scope.fork(() -&gt; ...);
+ *     }
+ *     List&lt;BigInteger&gt; results = scope.join();
+ *   }
+ * </pre>
+ * This is not thread safe: fork and join must be called by the thread which owns the scope.
+ */
+public class TaskScope<T> implements AutoCloseable {
+  private final Executor executor;
+  private final List<FutureTask<T>> tasks = new ArrayList<>();
+  private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+  // Number of tasks being run by the executor. Guarded by tasks.
+  private int running;
+  private boolean closed;
+
+  public TaskScope(Executor executor) {
+    this.executor = executor;
+  }
+
+  public Future<T> fork(Callable<T> task) {
+    if (this.closed) {
+      throw new IllegalStateException("Task scope is closed");
+    }
+    FutureTask<T> future = new FutureTask<T>(task) {
+      @Override
+      protected void setException(Throwable th) {
+        // Record the failure before completing the task: completing it wakes join, which
+        // must then see the failure.
+        boolean first = firstFailure.compareAndSet(null, th);
+        super.setException(th);
+        if (first) {
+          cancelAll();
+        }
+      }
+    };
+    synchronized (this.tasks) {
+      this.tasks.add(future);
+    }
+    this.executor.execute(() -> {
+      // Counted before the task starts, so that close either cancels it before it starts or
+      // waits for it.
+      synchronized (this.tasks) {
+        this.running++;
+      }
+      try {
+        future.run();
+      } finally {
+        synchronized (this.tasks) {
+          if (--this.running == 0) {
+            this.tasks.notifyAll();
+          }
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Wait for all forked tasks to complete.
+   *
+   * @return The results of the tasks, in the order they were forked.
+   * @throws ExecutionException If any task failed. The cause is the first failure.
+   * @throws InterruptedException If the calling thread was interrupted. The tasks are cancelled.
+   */
+  public List<T> join() throws InterruptedException, ExecutionException {
+    List<T> results = new ArrayList<>(this.tasks.size());
+    try {
+      for (FutureTask<T> task: this.tasks) {
+        try {
+          results.add(task.get());
+        } catch (CancellationException ex) {
+          if (this.firstFailure.get() == null) {
+            // Cancelled using the future returned by fork, rather than because a task failed.
+            throw ex;
+          }
+          break;
+        } catch (ExecutionException ex) {
+          this.firstFailure.compareAndSet(null, ex.getCause());
+          break;
+        }
+      }
+    } catch (InterruptedException ex) {
+      cancelAll();
+      throw ex;
+    }
+    Throwable failure = this.firstFailure.get();
+    if (failure != null) {
+      throw new ExecutionException(failure);
+    }
+    return results;
+  }
+
+  /**
+   * Cancel any tasks which have not completed, and wait for the tasks which are running to
+   * return. Running tasks are interrupted, and should stop promptly when they are. If the
+   * calling thread is interrupted while waiting, it still waits, and its interrupt status is
+   * set on return.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    cancelAll();
+    boolean interrupted = false;
+    synchronized (this.tasks) {
+      while (this.running != 0) {
+        try {
+          this.tasks.wait();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void cancelAll() {
+    // Called from the thread of a failing task, so copy the list.
+    List<FutureTask<T>> toCancel;
+    synchronized (this.tasks) {
+      toCancel = new ArrayList<>(this.tasks);
+    }
+    for (FutureTask<T> task: toCancel) {
+      task.cancel(true);
+    }
+  }
+}
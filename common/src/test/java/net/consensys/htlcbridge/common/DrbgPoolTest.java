@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class DrbgPoolTest {
+  @Test
+  public void prefetchedValuesAreDistinct() {
+    // Small rings, so that many are swapped in and refilled.
+    DrbgPool pool = new DrbgPool(2, true, 4);
+    Set<Bytes32> values = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(pool.nextBytes32());
+    }
+    assertEquals(1000, values.size());
+    assertFalse(values.contains(Bytes32.ZERO));
+  }
+
+  @Test
+  public void reseedDiscardsPrefetchedValues() {
+    DrbgPool pool = new DrbgPool(1, true, 4);
+    Set<Bytes32> values = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(pool.nextBytes32());
+      if (i % 7 == 0) {
+        pool.reseedKick();
+      }
+    }
+    assertEquals(100, values.size());
+  }
+
+  @Test
+  public void concurrentThreads() throws Exception {
+    DrbgPool pool = new DrbgPool(3, true, 8);
+    ExecutorService executor = BlockingExecutors.newExecutor("drbg-test", 8);
+    List<Bytes32> values = new ArrayList<>();
+    try (TaskScope<List<Bytes32>> scope = new TaskScope<>(executor)) {
+      for (int i = 0; i < 8; i++) {
+        scope.fork(() -> {
+          List<Bytes32> drawn = new ArrayList<>();
+          for (int j = 0; j < 500; j++) {
+            drawn.add(pool.nextBytes32());
+          }
+          return drawn;
+        });
+      }
+      for (List<Bytes32> drawn: scope.join()) {
+        values.addAll(drawn);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(4000, new HashSet<>(values).size());
+  }
+
+  @Test
+  public void withoutPrefetch() {
+    DrbgPool pool = new DrbgPool(false);
+    byte[] value = new byte[32];
+    pool.nextBytes32(value);
+    assertFalse(Bytes32.wrap(value).isZero());
+    assertSame(pool.get(), pool.get());
+  }
+}
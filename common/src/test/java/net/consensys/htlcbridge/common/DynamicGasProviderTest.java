@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.junit.Test;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class DynamicGasProviderTest {
+  private static final Pattern ID_AND_METHOD = Pattern.compile("\"id\":(\\d+).*\"method\":\"(\\w+)\"|\"method\":\"(\\w+)\".*\"id\":(\\d+)");
+  private static final String BLOCK_HASH = "0x" + repeat("ab", 32);
+
+  /**
+   * Answers the calls made by the gas provider for a latest block containing the given
+   * gas prices.
+   */
+  private static class FakeNode extends Service {
+    final long[] txGasPrices;
+    final AtomicInteger calls = new AtomicInteger();
+
+    FakeNode(long... txGasPrices) {
+      super(false);
+      this.txGasPrices = txGasPrices;
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+      this.calls.incrementAndGet();
+      Matcher m = ID_AND_METHOD.matcher(payload);
+      if (!m.find()) {
+        throw new IOException("Unexpected request: " + payload);
+      }
+      String id = m.group(1) != null ? m.group(1) : m.group(4);
+      String method = m.group(2) != null ? m.group(2) : m.group(3);
+      String result;
+      switch (method) {
+        case "eth_gasPrice":
+          result = "\"0x64\"";
+          break;
+        case "eth_getBlockByNumber":
+          result = "{\"number\":\"0x10\",\"hash\":\"" + BLOCK_HASH + "\",\"transactions\":[]}";
+          break;
+        case "eth_getBlockTransactionCountByHash":
+          result = "\"0x" + Integer.toHexString(this.txGasPrices.length) + "\"";
+          break;
+        case "eth_getTransactionByBlockHashAndIndex":
+          Matcher index = Pattern.compile("\"(0x[0-9a-f]+)\"\\]").matcher(payload);
+          index.find();
+          int i = Integer.decode(index.group(1));
+          result = "{\"hash\":\"" + BLOCK_HASH + "\",\"gasPrice\":\"0x" + Long.toHexString(this.txGasPrices[i]) + "\"}";
+          break;
+        default:
+          throw new IOException("Unexpected method: " + method);
+      }
+      String response = "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":" + result + "}";
+      return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  public void gasPricesFromLatestBlock() throws Exception {
+    FakeNode node = new FakeNode(10, 30, 20);
+    DynamicGasProvider gasProvider = new DynamicGasProvider(Web3j.build(node), "fake", DynamicGasProvider.Strategy.AVERAGE);
+    assertEquals(BigInteger.valueOf(20), gasProvider.getGasPrice());
+    gasProvider.changeStrategy(DynamicGasProvider.Strategy.HIGHEST);
+    assertEquals(BigInteger.valueOf(30), gasProvider.getGasPrice());
+  }
+
+  @Test
+  public void emptyBlockFallsBackToEthGasPrice() throws Exception {
+    FakeNode node = new FakeNode();
+    DynamicGasProvider gasProvider = new DynamicGasProvider(Web3j.build(node), "fake", DynamicGasProvider.Strategy.LOWEST);
+    assertEquals(BigInteger.valueOf(100), gasProvider.getGasPrice());
+  }
+
+  @Test
+  public void lazyInitialisationOnFirstUse() throws Exception {
+    FakeNode node = new FakeNode(10, 30, 20);
+    DynamicGasProvider gasProvider = new DynamicGasProvider(Web3j.build(node), "fake",
+        DynamicGasProvider.Strategy.LOWEST, DynamicGasProvider.DEFAULT_EXECUTOR, true);
+    assertEquals(0, node.calls.get());
+    assertEquals(BigInteger.valueOf(10), gasProvider.getGasPrice());
+    int calls = node.calls.get();
+    assertEquals(BigInteger.valueOf(10), gasProvider.getGasPrice());
+    assertEquals(calls, node.calls.get());
+  }
+
+  private static String repeat(String s, int n) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
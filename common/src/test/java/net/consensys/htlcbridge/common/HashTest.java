@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashTest {
+  static final String KECCAK256_EMPTY = "0xc5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470";
+  static final String SHA256_EMPTY = "0xe3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+  static byte[] random(int length, int seed) {
+    byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+  static byte[] jca(String alg, byte[] data, int offset, int length) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance(alg);
+    digest.update(data, offset, length);
+    return digest.digest();
+  }
+
+  @Test
+  public void knownDigests() {
+    assertEquals(Bytes32.fromHexString(KECCAK256_EMPTY), Hash.keccak256(Bytes.EMPTY));
+    assertEquals(Bytes32.fromHexString(SHA256_EMPTY), Hash.sha256(Bytes.EMPTY));
+  }
+
+  @Test
+  public void matchesMessageDigest() throws Exception {
+    byte[] data = random(1000, 1);
+    byte[] output = new byte[40];
+    for (int length: new int[]{0, 1, 104, 135, 136, 137, 500}) {
+      Hash.keccak256(data, 7, length, output, 8);
+      assertArrayEquals(jca(Hash.KECCAK256_ALG, data, 7, length), Arrays.copyOfRange(output, 8, 40));
+      assertArrayEquals(jca(Hash.KECCAK256_ALG, data, 7, length),
+          Hash.keccak256(Bytes.wrap(data, 7, length)).toArray());
+      Hash.sha256(data, 7, length, output, 8);
+      assertArrayEquals(jca("SHA-256", data, 7, length), Arrays.copyOfRange(output, 8, 40));
+    }
+  }
+
+  @Test
+  public void byteBuffers() throws Exception {
+    byte[] data = random(1000, 2);
+    byte[] output = new byte[32];
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data);
+    direct.position(3);
+    Hash.keccak256(direct, output, 0);
+    assertArrayEquals(jca(Hash.KECCAK256_ALG, data, 3, 997), output);
+    assertEquals(direct.limit(), direct.position());
+
+    ByteBuffer heap = ByteBuffer.wrap(data, 10, 100).slice();
+    Hash.sha256(heap, output, 0);
+    assertArrayEquals(jca("SHA-256", data, 10, 100), output);
+    assertEquals(0, heap.remaining());
+  }
+
+  @Test
+  public void batches() throws Exception {
+    byte[] packed = random(104 * 5, 3);
+    byte[][] inputs = new byte[5][];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = Arrays.copyOfRange(packed, i * 104, (i + 1) * 104);
+    }
+    byte[] fromPacked = new byte[5 * 32];
+    byte[] fromArrays = new byte[5 * 32];
+    Hash.keccak256(packed, 104, 5, fromPacked);
+    Hash.keccak256(inputs, fromArrays);
+    assertArrayEquals(fromPacked, fromArrays);
+    for (int i = 0; i < inputs.length; i++) {
+      assertArrayEquals(jca(Hash.KECCAK256_ALG, inputs[i], 0, 104), Arrays.copyOfRange(fromPacked, i * 32, (i + 1) * 32));
+    }
+  }
+
+  @Test
+  public void badBoundsLeaveEngineUsable() {
+    byte[] data = random(10, 4);
+    try {
+      Hash.keccak256(data, 5, 10, new byte[32], 0);
+      fail("Expected an IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException ex) {
+      assertTrue(ex.getMessage().contains("offset 5"));
+    }
+    assertEquals(Bytes32.fromHexString(KECCAK256_EMPTY), Hash.keccak256(Bytes.EMPTY));
+  }
+}
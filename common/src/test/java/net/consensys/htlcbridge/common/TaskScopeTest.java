@@ -0,0 +1,163 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.common;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskScopeTest {
+
+  @Test
+  public void joinReturnsResultsInForkOrder() throws Exception {
+    ExecutorService executor = BlockingExecutors.newExecutor("test", 4);
+    try (TaskScope<Integer> scope = new TaskScope<>(executor)) {
+      for (int i = 0; i < 4; i++) {
+        int value = i;
+        scope.fork(() -> {
+          // Later tasks finish first.
+          Thread.sleep((4 - value) * 10);
+          return value;
+        });
+      }
+      assertEquals(Arrays.asList(0, 1, 2, 3), scope.join());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void failureCancelsOtherTasks() throws Exception {
+    ExecutorService executor = BlockingExecutors.newExecutor("test", 4);
+    CountDownLatch started = new CountDownLatch(1);
+    Future<Integer> blocked;
+    try (TaskScope<Integer> scope = new TaskScope<>(executor)) {
+      blocked = scope.fork(() -> {
+        started.countDown();
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        return 1;
+      });
+      started.await();
+      scope.fork(() -> {
+        throw new IOException("node unavailable");
+      });
+      try {
+        scope.join();
+        fail("join should have thrown");
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof IOException);
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertTrue(blocked.isCancelled());
+  }
+
+  @Test
+  public void failureOfTaskJoinIsWaitingOn() throws Exception {
+    // join is blocked on the first task when it fails, so wakes as the task completes.
+    // Repeat to give a race between completing the task and recording the failure a
+    // chance to show.
+    ExecutorService executor = BlockingExecutors.newExecutor("test", 2);
+    try {
+      for (int i = 0; i < 2000; i++) {
+        try (TaskScope<Integer> scope = new TaskScope<>(executor)) {
+          scope.fork(() -> {
+            throw new IOException("node unavailable");
+          });
+          scope.fork(() -> 1);
+          try {
+            scope.join();
+            fail("join should have thrown");
+          } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+          }
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void closeWaitsForCancelledTasks() throws Exception {
+    ExecutorService executor = BlockingExecutors.newExecutor("test", 4);
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicBoolean finished = new AtomicBoolean();
+    try {
+      try (TaskScope<Integer> scope = new TaskScope<>(executor)) {
+        scope.fork(() -> {
+          started.countDown();
+          try {
+            Thread.sleep(10000);
+          } catch (InterruptedException ex) {
+            // Clean up slowly after being cancelled.
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            while (System.nanoTime() < end) {
+              Thread.yield();
+            }
+            finished.set(true);
+          }
+          return 1;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+      }
+      assertTrue(finished.get());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void manyConcurrentBlockingFlows() throws Exception {
+    // With virtual threads, a thousand sleeping flows complete in about the time of one.
+    // With platform threads the pool is sized to the number of flows for this test.
+    int numFlows = 1000;
+    ExecutorService executor = BlockingExecutors.newExecutor("test", numFlows);
+    long start = System.nanoTime();
+    List<Integer> results;
+    try (TaskScope<Integer> scope = new TaskScope<>(executor)) {
+      for (int i = 0; i < numFlows; i++) {
+        int value = i;
+        scope.fork(() -> {
+          Thread.sleep(100);
+          return value;
+        });
+      }
+      results = scope.join();
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertEquals(numFlows, results.size());
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+  }
+}
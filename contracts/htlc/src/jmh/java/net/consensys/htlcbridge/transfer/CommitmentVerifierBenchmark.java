@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how CommitmentVerifier scales with the parallelism of its fork join pool, for
+ * a million commitments.<p>
+ * Run with: gradle :htlc:jmh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitmentVerifierBenchmark {
+  static final int COUNT = 1_000_000;
+
+  @Param({"1", "2", "4", "8"})
+  int parallelism;
+
+  byte[] salts;
+  byte[] users;
+  byte[] tokens;
+  byte[] amounts;
+  byte[] commitments;
+  ForkJoinPool pool;
+  CommitmentVerifier verifier;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1);
+    this.salts = new byte[COUNT * 32];
+    this.users = new byte[COUNT * 20];
+    this.tokens = new byte[COUNT * 20];
+    this.amounts = new byte[COUNT * 32];
+    this.commitments = new byte[COUNT * 32];
+    random.nextBytes(this.salts);
+    random.nextBytes(this.users);
+    random.nextBytes(this.tokens);
+    for (int i = 0; i < COUNT; i++) {
+      this.amounts[i * 32 + 31] = (byte) i;
+      CommitmentCalculator.calculate(this.salts, i * 32, this.users, i * 20, this.tokens, i * 20,
+          this.amounts, i * 32, this.commitments, i * 32);
+    }
+    this.pool = new ForkJoinPool(this.parallelism);
+    this.verifier = new CommitmentVerifier(this.pool, CommitmentVerifier.DEFAULT_ROWS_PER_TASK);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+
+  @Benchmark
+  public BitSet verify() {
+    return this.verifier.verify(this.salts, this.users, this.tokens, this.amounts, this.commitments, COUNT);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.web3j.abi.EventValues;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.tx.Contract;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding an eth_getLogs response of SourceTransferInit logs using web3j's
+ * generic object mapping and ABI decoding with the streaming TransferLogDecoder.<p>
+ * Run with: gradle :htlc:jmh. Add -prof gc to the JMH arguments to see allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferLogDecoderBenchmark {
+  @Param({"100", "1000"})
+  int numLogs;
+
+  byte[] response;
+
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[");
+    for (int i = 0; i < this.numLogs; i++) {
+      if (i != 0) {
+        json.append(',');
+      }
+      json.append("{\"address\":\"0x1234567890123456789012345678901234567890\",\"topics\":[\"")
+          .append(TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC)
+          .append("\",\"0x").append(String.format("%064x", i))
+          .append("\",\"0x000000000000000000000000a1b2c3d4e5f60718293a4b5c6d7e8f9012345678\"],")
+          .append("\"data\":\"0x00000000000000000000000011223344556677889900aabbccddeeff00112233")
+          .append(String.format("%064x", i + 1))
+          .append("0000000000000000000000000000000000000000000000000000000061a8c0b0\",")
+          .append("\"blockNumber\":\"0x").append(Integer.toHexString(1000 + i / 10))
+          .append("\",\"transactionHash\":\"0x").append(String.format("%064x", i))
+          .append("\",\"transactionIndex\":\"0x0\",\"blockHash\":\"0x").append(String.format("%064x", i / 10))
+          .append("\",\"logIndex\":\"0x").append(Integer.toHexString(i % 10)).append("\",\"removed\":false}");
+    }
+    json.append("]}");
+    this.response = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void generic(Blackhole bh) throws Exception {
+    EthLog ethLog = ObjectMapperFactory.getObjectMapper().readValue(new ByteArrayInputStream(this.response), EthLog.class);
+    for (EthLog.LogResult<?> result : ethLog.getLogs()) {
+      EventValues values = Contract.staticExtractEventParameters(Erc20HtlcTransfer.SOURCETRANSFERINIT_EVENT, (Log) result.get());
+      bh.consume(values.getIndexedValues().get(0).getValue());
+      bh.consume(values.getIndexedValues().get(1).getValue());
+      bh.consume(values.getNonIndexedValues().get(0).getValue());
+      bh.consume(values.getNonIndexedValues().get(1).getValue());
+      bh.consume(values.getNonIndexedValues().get(2).getValue());
+    }
+  }
+
+  @Benchmark
+  public void streaming(Blackhole bh) throws Exception {
+    TransferLogDecoder.decodeResponse(new ByteArrayInputStream(this.response), new TransferLogHandler() {
+      @Override
+      public void onSourceTransferInit(SourceTransferInitLog log) {
+        bh.consume(log);
+      }
+    });
+  }
+}
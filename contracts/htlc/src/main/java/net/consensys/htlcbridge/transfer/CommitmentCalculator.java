@@ -20,28 +20,148 @@ import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
+/**
+ * Calculates transfer commitments: the keccak256 of abi.encodePacked(preimageSalt,
+ * userAddress, tokenAddress, amount), as checked by preimageMatchesCommitment in the
+ * transfer contract.<p>
+ * The methods which take arrays encode the fields straight into a per-thread 104 byte
+ * preimage buffer, and write the commitment into the caller's array, so that generating
+ * or verifying commitments at volume doesn't allocate.
+ */
 public class CommitmentCalculator {
   private static final Logger LOG = LogManager.getLogger(CommitmentCalculator.class);
 
+  public static final int SALT_LEN = 32;
+  public static final int ADDRESS_LEN = 20;
+  public static final int UINT256_LEN = 32;
+  // Offsets of the fields in the packed preimage.
+  public static final int SALT_OFFSET = 0;
+  public static final int USER_OFFSET = SALT_OFFSET + SALT_LEN;
+  public static final int TOKEN_OFFSET = USER_OFFSET + ADDRESS_LEN;
+  public static final int AMOUNT_OFFSET = TOKEN_OFFSET + ADDRESS_LEN;
+  public static final int PREIMAGE_LEN = AMOUNT_OFFSET + UINT256_LEN;
+
+  private static final ThreadLocal<byte[]> PREIMAGE = ThreadLocal.withInitial(() -> new byte[PREIMAGE_LEN]);
+
   // Preimage Salt MUST be 32 bytes.
   public static Bytes calculate(Bytes preimageSalt, String userAddress, String tokenAddress, BigInteger amount) throws Exception {
-    Bytes userAddressBytes = addressToFixedLengthByteArray(userAddress);
-    Bytes tokenAddressBytes = addressToFixedLengthByteArray(tokenAddress);
-    Bytes amountBytes = numberToFixedLengthByteArray(amount);
+    if (amount.signum() < 0) {
+      throw new Exception("Amount negative");
+    }
+    if (preimageSalt.size() != SALT_LEN) {
+      Bytes preimage = Bytes.concatenate(preimageSalt, addressToFixedLengthByteArray(userAddress),
+          addressToFixedLengthByteArray(tokenAddress), numberToFixedLengthByteArray(amount));
+      LOG.trace("Preimage: {}", preimage);
+      return Hash.keccak256(preimage);
+    }
+    byte[] commitment = new byte[Hash.HASH_LENGTH];
+    calculate(preimageSalt.toArrayUnsafe(), 0, userAddress, tokenAddress, amount, commitment, 0);
+    return Bytes.wrap(commitment);
+  }
+
+  /**
+   * Calculate a commitment without allocating, for amounts less than 2^63.
+   *
+   * @param preimageSalt Array holding the 32 byte salt at saltOffset.
+   * @param userAddress Hex address, with or without a 0x prefix.
+   * @param tokenAddress Hex address, with or without a 0x prefix.
+   * @param commitment Array to write the 32 byte commitment to, at commitmentOffset.
+   */
+  public static void calculate(byte[] preimageSalt, int saltOffset, String userAddress, String tokenAddress,
+                               BigInteger amount, byte[] commitment, int commitmentOffset) {
+    byte[] preimage = PREIMAGE.get();
+    encodePreimage(preimageSalt, saltOffset, userAddress, tokenAddress, amount, preimage, 0);
+    Hash.keccak256(preimage, 0, PREIMAGE_LEN, commitment, commitmentOffset);
+  }
+
+  /**
+   * Calculate a commitment from fields which are already binary, for example columns of
+   * decoded logs. Doesn't allocate.
+   *
+   * @param amount Array holding the amount as a 32 byte big endian uint256 at amountOffset.
+   * @param commitment Array to write the 32 byte commitment to, at commitmentOffset.
+   */
+  public static void calculate(byte[] preimageSalt, int saltOffset, byte[] userAddress, int userOffset,
+                               byte[] tokenAddress, int tokenOffset, byte[] amount, int amountOffset,
+                               byte[] commitment, int commitmentOffset) {
+    byte[] preimage = PREIMAGE.get();
+    System.arraycopy(preimageSalt, saltOffset, preimage, SALT_OFFSET, SALT_LEN);
+    System.arraycopy(userAddress, userOffset, preimage, USER_OFFSET, ADDRESS_LEN);
+    System.arraycopy(tokenAddress, tokenOffset, preimage, TOKEN_OFFSET, ADDRESS_LEN);
+    System.arraycopy(amount, amountOffset, preimage, AMOUNT_OFFSET, UINT256_LEN);
+    Hash.keccak256(preimage, 0, PREIMAGE_LEN, commitment, commitmentOffset);
+  }
+
+  /**
+   * Write abi.encodePacked(preimageSalt, userAddress, tokenAddress, amount) to a buffer.
+   * Addresses are left padded with zeros if they are short, and only their last 20 bytes
+   * are used if they are long, as is the amount. Only amounts of 2^63 or more allocate.
+   *
+   * @param preimage Array to write the 104 byte preimage to, at offset.
+   */
+  public static void encodePreimage(byte[] preimageSalt, int saltOffset, String userAddress, String tokenAddress,
+                                    BigInteger amount, byte[] preimage, int offset) {
+    if (amount.signum() < 0) {
+      throw new IllegalArgumentException("Amount negative");
+    }
+    System.arraycopy(preimageSalt, saltOffset, preimage, offset + SALT_OFFSET, SALT_LEN);
+    decodeHex(userAddress, preimage, offset + USER_OFFSET, ADDRESS_LEN);
+    decodeHex(tokenAddress, preimage, offset + TOKEN_OFFSET, ADDRESS_LEN);
+
+    int amountStart = offset + AMOUNT_OFFSET;
+    if (amount.bitLength() < Long.SIZE) {
+      long value = amount.longValue();
+      Arrays.fill(preimage, amountStart, amountStart + UINT256_LEN - Long.BYTES, (byte) 0);
+      for (int i = amountStart + UINT256_LEN - 1; i >= amountStart + UINT256_LEN - Long.BYTES; i--) {
+        preimage[i] = (byte) value;
+        value >>>= 8;
+      }
+    }
+    else {
+      // toByteArray may have a leading sign byte, which is dropped along with anything
+      // above 256 bits.
+      byte[] bytes = amount.toByteArray();
+      int len = Math.min(bytes.length, UINT256_LEN);
+      Arrays.fill(preimage, amountStart, amountStart + UINT256_LEN - len, (byte) 0);
+      System.arraycopy(bytes, bytes.length - len, preimage, amountStart + UINT256_LEN - len, len);
+    }
+  }
+
+  /**
+   * Decode a hex string into a fixed length field, right aligned, without allocating.
+   */
+  private static void decodeHex(String hex, byte[] out, int offset, int fixedLen) {
+    int start = hex.startsWith("0x") || hex.startsWith("0X") ? 2 : 0;
+    int digits = hex.length() - start;
+    if ((digits & 1) == 1) {
+      throw new IllegalArgumentException("Invalid odd-length hex binary representation");
+    }
+    int len = digits / 2;
+    // Skip leading bytes which don't fit, and zero the padding if the value is short.
+    int skip = Math.max(0, len - fixedLen);
+    int pad = Math.max(0, fixedLen - len);
+    Arrays.fill(out, offset, offset + pad, (byte) 0);
+    for (int i = 0; i < len - skip; i++) {
+      int pos = start + (skip + i) * 2;
+      out[offset + pad + i] = (byte) ((hexDigit(hex, pos) << 4) | hexDigit(hex, pos + 1));
+    }
+  }
 
-    Bytes preimage = Bytes.concatenate(preimageSalt, userAddressBytes, tokenAddressBytes, amountBytes);
-    LOG.trace("Preimage: {}", preimage);
-    return Hash.keccak256(preimage);
+  private static int hexDigit(String hex, int pos) {
+    int digit = Character.digit(hex.charAt(pos), 16);
+    if (digit < 0) {
+      throw new IllegalArgumentException("Illegal character '" + hex.charAt(pos) + "' found at index " + pos + " in hex binary representation");
+    }
+    return digit;
   }
 
   public static Bytes addressToFixedLengthByteArray(String address) {
-    final int ADDRESS_LEN = 20;
     return hexStringToFixedLengthByteArray(address, ADDRESS_LEN);
   }
 
   public static Bytes numberToFixedLengthByteArray(BigInteger number) throws Exception {
-    final int UINT256_LEN = 32;
     if (number.compareTo(BigInteger.ZERO) < 0) {
       throw new Exception("Amount negative");
     }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer;
+
+import net.consensys.htlcbridge.common.Hash;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks large numbers of commitments against their preimages in parallel.<p>
+ * The inputs are columns: for row i, the salt, user address, token address, uint256 amount
+ * and commitment are at i times the field's length in their arrays. The rows are split
+ * into ranges which are verified by a fork join pool. Each range is a multiple of 64 rows,
+ * so tasks set bits in separate words of the result, and don't need to synchronise.
+ */
+public class CommitmentVerifier {
+  public static final int DEFAULT_ROWS_PER_TASK = 4096;
+
+  private static final int ROWS_PER_WORD = Long.SIZE;
+
+  private final ForkJoinPool pool;
+  private final int rowsPerTask;
+
+  /**
+   * Verify using the common fork join pool.
+   */
+  public CommitmentVerifier() {
+    this(ForkJoinPool.commonPool(), DEFAULT_ROWS_PER_TASK);
+  }
+
+  /**
+   * @param rowsPerTask Ranges of at most this many rows are verified without being split
+   *   further. Rounded up to a multiple of 64.
+   */
+  public CommitmentVerifier(ForkJoinPool pool, int rowsPerTask) {
+    if (rowsPerTask < 1) {
+      throw new IllegalArgumentException("Rows per task must be positive: " + rowsPerTask);
+    }
+    this.pool = pool;
+    this.rowsPerTask = (rowsPerTask + ROWS_PER_WORD - 1) / ROWS_PER_WORD * ROWS_PER_WORD;
+  }
+
+  /**
+   * Verify that each commitment is the keccak256 of abi.encodePacked(salt, user, token, amount).
+   *
+   * @param salts 32 bytes per row.
+   * @param users 20 bytes per row.
+   * @param tokens 20 bytes per row.
+   * @param amounts 32 bytes per row, big endian.
+   * @param commitments 32 bytes per row.
+   * @param count Number of rows.
+   * @return The rows whose commitment matches.
+   */
+  public BitSet verify(byte[] salts, byte[] users, byte[] tokens, byte[] amounts, byte[] commitments, int count) {
+    checkLength("salts", salts, CommitmentCalculator.SALT_LEN, count);
+    checkLength("users", users, CommitmentCalculator.ADDRESS_LEN, count);
+    checkLength("tokens", tokens, CommitmentCalculator.ADDRESS_LEN, count);
+    checkLength("amounts", amounts, CommitmentCalculator.UINT256_LEN, count);
+    checkLength("commitments", commitments, Hash.HASH_LENGTH, count);
+
+    long[] matches = new long[(count + ROWS_PER_WORD - 1) / ROWS_PER_WORD];
+    this.pool.invoke(new VerifyTask(salts, users, tokens, amounts, commitments, matches, 0, count));
+    return BitSet.valueOf(matches);
+  }
+
+  private static void checkLength(String column, byte[] values, int width, int count) {
+    if (count < 0 || values.length / width < count) {
+      throw new IllegalArgumentException("Column " + column + " has " + values.length / width +
+          " rows, but " + count + " were requested");
+    }
+  }
+
+  private class VerifyTask extends RecursiveAction {
+    private final byte[] salts;
+    private final byte[] users;
+    private final byte[] tokens;
+    private final byte[] amounts;
+    private final byte[] commitments;
+    private final long[] matches;
+    // Start is a multiple of 64.
+    private final int start;
+    private final int end;
+
+    VerifyTask(byte[] salts, byte[] users, byte[] tokens, byte[] amounts, byte[] commitments,
+               long[] matches, int start, int end) {
+      this.salts = salts;
+      this.users = users;
+      this.tokens = tokens;
+      this.amounts = amounts;
+      this.commitments = commitments;
+      this.matches = matches;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = this.end - this.start;
+      if (rows > CommitmentVerifier.this.rowsPerTask) {
+        // Split on a word boundary.
+        int mid = this.start + (rows / 2 + ROWS_PER_WORD - 1) / ROWS_PER_WORD * ROWS_PER_WORD;
+        invokeAll(
+            new VerifyTask(this.salts, this.users, this.tokens, this.amounts, this.commitments, this.matches, this.start, mid),
+            new VerifyTask(this.salts, this.users, this.tokens, this.amounts, this.commitments, this.matches, mid, this.end));
+        return;
+      }
+
+      byte[] calculated = new byte[Hash.HASH_LENGTH];
+      for (int row = this.start; row < this.end; row++) {
+        CommitmentCalculator.calculate(
+            this.salts, row * CommitmentCalculator.SALT_LEN,
+            this.users, row * CommitmentCalculator.ADDRESS_LEN,
+            this.tokens, row * CommitmentCalculator.ADDRESS_LEN,
+            this.amounts, row * CommitmentCalculator.UINT256_LEN,
+            calculated, 0);
+        int offset = row * Hash.HASH_LENGTH;
+        if (Arrays.equals(calculated, 0, Hash.HASH_LENGTH, this.commitments, offset, offset + Hash.HASH_LENGTH)) {
+          this.matches[row / ROWS_PER_WORD] |= 1L << row;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.util.Arrays;
+
+/**
+ * Compact representation of a DestTransferCompleted event log. The commitment and
+ * preimage salt are held in one 64 byte array.
+ */
+public class DestTransferCompletedLog {
+  static final int COMMITMENT_OFS = 0;
+  static final int PREIMAGE_OFS = 32;
+  static final int LEN = 64;
+
+  private final long blockNumber;
+  private final int logIndex;
+  private final byte[] data;
+
+  DestTransferCompletedLog(long blockNumber, int logIndex, byte[] data) {
+    this.blockNumber = blockNumber;
+    this.logIndex = logIndex;
+    this.data = data;
+  }
+
+  /**
+   * Recreate a log from the values returned by its getters and rawData, for example
+   * after it has been sent between verticles or stored.
+   */
+  public static DestTransferCompletedLog fromRawData(long blockNumber, int logIndex, byte[] data) {
+    if (data.length != LEN) {
+      throw new IllegalArgumentException("DestTransferCompleted data must be " + LEN + " bytes: " + data.length);
+    }
+    return new DestTransferCompletedLog(blockNumber, logIndex, data);
+  }
+
+  public long getBlockNumber() {
+    return blockNumber;
+  }
+
+  public int getLogIndex() {
+    return logIndex;
+  }
+
+  public byte[] getCommitment() {
+    return Arrays.copyOfRange(this.data, COMMITMENT_OFS, COMMITMENT_OFS + 32);
+  }
+
+  public byte[] getPreimage() {
+    return Arrays.copyOfRange(this.data, PREIMAGE_OFS, PREIMAGE_OFS + 32);
+  }
+
+  /**
+   * Access the packed commitment and preimage without copying. The caller must not
+   * modify the returned array.
+   */
+  public byte[] rawData() {
+    return this.data;
+  }
+
+  @Override
+  public String toString() {
+    return
+        "Block: " + this.blockNumber +
+        ", LogIndex: " + this.logIndex +
+        ", Commitment: " + LogHex.toHexString(this.data, COMMITMENT_OFS, 32) +
+        ", Preimage: " + LogHex.toHexString(this.data, PREIMAGE_OFS, 32);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Compact representation of a DestTransferInit event log: a relayer posting a transfer
+ * to the destination blockchain.<p>
+ * The commitment, relayer, recipient, token contract on the other blockchain and amount
+ * are held in one array: commitment (32 bytes), relayer (20 bytes), recipient (20 bytes),
+ * token contract (20 bytes), amount (32 bytes).
+ */
+public class DestTransferInitLog {
+  static final int COMMITMENT_OFS = 0;
+  static final int RELAYER_OFS = 32;
+  static final int RECIPIENT_OFS = 52;
+  static final int TOKEN_OFS = 72;
+  static final int AMOUNT_OFS = 92;
+  static final int LEN = 124;
+
+  private final long blockNumber;
+  private final int logIndex;
+  private final long timeLock;
+  private final byte[] data;
+
+  DestTransferInitLog(long blockNumber, int logIndex, long timeLock, byte[] data) {
+    this.blockNumber = blockNumber;
+    this.logIndex = logIndex;
+    this.timeLock = timeLock;
+    this.data = data;
+  }
+
+  /**
+   * Recreate a log from the values returned by its getters and rawData, for example
+   * after it has been sent between verticles or stored.
+   */
+  public static DestTransferInitLog fromRawData(long blockNumber, int logIndex, long timeLock, byte[] data) {
+    if (data.length != LEN) {
+      throw new IllegalArgumentException("DestTransferInit data must be " + LEN + " bytes: " + data.length);
+    }
+    return new DestTransferInitLog(blockNumber, logIndex, timeLock, data);
+  }
+
+  public long getBlockNumber() {
+    return blockNumber;
+  }
+
+  public int getLogIndex() {
+    return logIndex;
+  }
+
+  public long getTimeLock() {
+    return timeLock;
+  }
+
+  public byte[] getCommitment() {
+    return Arrays.copyOfRange(this.data, COMMITMENT_OFS, COMMITMENT_OFS + 32);
+  }
+
+  public String getRelayerAddress() {
+    return LogHex.toHexString(this.data, RELAYER_OFS, 20);
+  }
+
+  public String getRecipientAddress() {
+    return LogHex.toHexString(this.data, RECIPIENT_OFS, 20);
+  }
+
+  public String getTokenContract() {
+    return LogHex.toHexString(this.data, TOKEN_OFS, 20);
+  }
+
+  public BigInteger getAmount() {
+    return new BigInteger(1, Arrays.copyOfRange(this.data, AMOUNT_OFS, AMOUNT_OFS + 32));
+  }
+
+  /**
+   * @return true if the recipient is the sender of the source transfer.
+   */
+  public boolean recipientMatches(SourceTransferInitLog source) {
+    return Arrays.equals(this.data, RECIPIENT_OFS, RECIPIENT_OFS + 20,
+        source.rawData(), SourceTransferInitLog.SENDER_OFS, SourceTransferInitLog.SENDER_OFS + 20);
+  }
+
+  /**
+   * @return true if the token contract is the token contract of the source transfer.
+   */
+  public boolean tokenMatches(SourceTransferInitLog source) {
+    return Arrays.equals(this.data, TOKEN_OFS, TOKEN_OFS + 20,
+        source.rawData(), SourceTransferInitLog.TOKEN_OFS, SourceTransferInitLog.TOKEN_OFS + 20);
+  }
+
+  /**
+   * @return true if the amount is the amount of the source transfer.
+   */
+  public boolean amountMatches(SourceTransferInitLog source) {
+    return Arrays.equals(this.data, AMOUNT_OFS, AMOUNT_OFS + 32,
+        source.rawData(), SourceTransferInitLog.AMOUNT_OFS, SourceTransferInitLog.AMOUNT_OFS + 32);
+  }
+
+  /**
+   * Access the packed fields without copying. The caller must not modify the returned array.
+   */
+  public byte[] rawData() {
+    return this.data;
+  }
+
+  @Override
+  public String toString() {
+    return
+        "Block: " + this.blockNumber +
+        ", LogIndex: " + this.logIndex +
+        ", Commitment: " + LogHex.toHexString(this.data, COMMITMENT_OFS, 32) +
+        ", Relayer: " + getRelayerAddress() +
+        ", Recipient: " + getRecipientAddress() +
+        ", Token: " + getTokenContract() +
+        ", Amount: " + getAmount() +
+        ", Timelock: " + this.timeLock;
+  }
+}
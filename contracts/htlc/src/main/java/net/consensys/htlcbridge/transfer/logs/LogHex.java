@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.io.IOException;
+
+/**
+ * Hex conversion directly between JSON character buffers and byte arrays, avoiding the
+ * intermediate Strings that the generic JSON RPC decoding creates.
+ */
+abstract class LogHex {
+  private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+  private LogHex() {
+  }
+
+  /**
+   * Decode a 0x prefixed hex value, writing it right aligned into out[outOfs, outOfs+outLen).
+   * Leading bytes which don't fit must be zero.
+   */
+  static void decode(char[] chars, int ofs, int len, byte[] out, int outOfs, int outLen) throws IOException {
+    int start = skipPrefix(chars, ofs, len);
+    int end = ofs + len;
+    int outPos = outOfs + outLen - 1;
+    int pos = end;
+    while (pos > start) {
+      int low = nibble(chars[--pos]);
+      int high = pos > start ? nibble(chars[--pos]) : 0;
+      int b = (high << 4) | low;
+      if (outPos < outOfs) {
+        if (b != 0) {
+          throw new IOException("Hex value too long: " + new String(chars, ofs, len));
+        }
+      }
+      else {
+        out[outPos--] = (byte) b;
+      }
+    }
+    while (outPos >= outOfs) {
+      out[outPos--] = 0;
+    }
+  }
+
+  /**
+   * Decode a 0x prefixed hex quantity into a long.
+   */
+  static long decodeLong(char[] chars, int ofs, int len) throws IOException {
+    int start = skipPrefix(chars, ofs, len);
+    int end = ofs + len;
+    if (end - start > 16) {
+      throw new IOException("Quantity too large: " + new String(chars, ofs, len));
+    }
+    long val = 0;
+    for (int i = start; i < end; i++) {
+      val = (val << 4) | nibble(chars[i]);
+    }
+    return val;
+  }
+
+  /**
+   * Compare a 0x prefixed hex value to a byte array.
+   */
+  static boolean matches(char[] chars, int ofs, int len, byte[] expected) throws IOException {
+    int start = skipPrefix(chars, ofs, len);
+    if ((ofs + len - start) != expected.length * 2) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      int b = (nibble(chars[start + 2 * i]) << 4) | nibble(chars[start + 2 * i + 1]);
+      if ((byte) b != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static String toHexString(byte[] data, int ofs, int len) {
+    char[] chars = new char[2 + len * 2];
+    chars[0] = '0';
+    chars[1] = 'x';
+    for (int i = 0; i < len; i++) {
+      int b = data[ofs + i] & 0xff;
+      chars[2 + 2 * i] = HEX_CHARS[b >>> 4];
+      chars[3 + 2 * i] = HEX_CHARS[b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  private static int skipPrefix(char[] chars, int ofs, int len) {
+    if (len >= 2 && chars[ofs] == '0' && (chars[ofs + 1] == 'x' || chars[ofs + 1] == 'X')) {
+      return ofs + 2;
+    }
+    return ofs;
+  }
+
+  private static int nibble(char c) throws IOException {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    throw new IOException("Invalid hex character: " + c);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Compact representation of a SourceTransferInit event log.<p>
+ * The commitment, sender, token contract and amount are held in one array using the
+ * same layout as the commitment preimage (without the salt): commitment (32 bytes),
+ * sender (20 bytes), token contract (20 bytes), amount (32 bytes).
+ */
+public class SourceTransferInitLog {
+  static final int COMMITMENT_OFS = 0;
+  static final int SENDER_OFS = 32;
+  static final int TOKEN_OFS = 52;
+  static final int AMOUNT_OFS = 72;
+  static final int LEN = 104;
+
+  private final long blockNumber;
+  private final int logIndex;
+  private final long timeLock;
+  private final byte[] data;
+
+  SourceTransferInitLog(long blockNumber, int logIndex, long timeLock, byte[] data) {
+    this.blockNumber = blockNumber;
+    this.logIndex = logIndex;
+    this.timeLock = timeLock;
+    this.data = data;
+  }
+
+  /**
+   * Recreate a log from the values returned by its getters and rawData, for example
+   * after it has been sent between verticles or stored.
+   */
+  public static SourceTransferInitLog fromRawData(long blockNumber, int logIndex, long timeLock, byte[] data) {
+    if (data.length != LEN) {
+      throw new IllegalArgumentException("SourceTransferInit data must be " + LEN + " bytes: " + data.length);
+    }
+    return new SourceTransferInitLog(blockNumber, logIndex, timeLock, data);
+  }
+
+  public long getBlockNumber() {
+    return blockNumber;
+  }
+
+  public int getLogIndex() {
+    return logIndex;
+  }
+
+  public long getTimeLock() {
+    return timeLock;
+  }
+
+  public byte[] getCommitment() {
+    return Arrays.copyOfRange(this.data, COMMITMENT_OFS, COMMITMENT_OFS + 32);
+  }
+
+  public String getSenderAddress() {
+    return LogHex.toHexString(this.data, SENDER_OFS, 20);
+  }
+
+  public String getTokenContract() {
+    return LogHex.toHexString(this.data, TOKEN_OFS, 20);
+  }
+
+  public BigInteger getAmount() {
+    return new BigInteger(1, Arrays.copyOfRange(this.data, AMOUNT_OFS, AMOUNT_OFS + 32));
+  }
+
+  public boolean isAmountZero() {
+    for (int i = AMOUNT_OFS; i < AMOUNT_OFS + 32; i++) {
+      if (this.data[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Access the packed commitment, sender, token and amount without copying. The
+   * caller must not modify the returned array.
+   */
+  public byte[] rawData() {
+    return this.data;
+  }
+
+  @Override
+  public String toString() {
+    return
+        "Block: " + this.blockNumber +
+        ", LogIndex: " + this.logIndex +
+        ", Commitment: " + LogHex.toHexString(this.data, COMMITMENT_OFS, 32) +
+        ", Sender: " + getSenderAddress() +
+        ", Token: " + getTokenContract() +
+        ", Amount: " + getAmount() +
+        ", Timelock: " + this.timeLock;
+  }
+}
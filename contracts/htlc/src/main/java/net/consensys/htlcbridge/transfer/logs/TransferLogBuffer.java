@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Holds decoded logs, so that they can be passed to another handler later, in the order
+ * they were decoded. For example, to apply the logs of block ranges fetched concurrently
+ * in block order, or to make blocking calls for each log once the response has been read.
+ */
+public class TransferLogBuffer implements TransferLogHandler {
+  private final List<Consumer<TransferLogHandler>> logs = new ArrayList<>();
+
+  @Override
+  public void onSourceTransferInit(SourceTransferInitLog log) {
+    this.logs.add(h -> h.onSourceTransferInit(log));
+  }
+
+  @Override
+  public void onDestTransferCompleted(DestTransferCompletedLog log) {
+    this.logs.add(h -> h.onDestTransferCompleted(log));
+  }
+
+  @Override
+  public void onDestTransferInit(DestTransferInitLog log) {
+    this.logs.add(h -> h.onDestTransferInit(log));
+  }
+
+  @Override
+  public void onTransferSettled(TransferSettledLog log) {
+    this.logs.add(h -> h.onTransferSettled(log));
+  }
+
+  /**
+   * Pass the logs held to the handler.
+   *
+   * @return The number of logs.
+   */
+  public int replay(TransferLogHandler handler) {
+    for (Consumer<TransferLogHandler> log: this.logs) {
+      log.accept(handler);
+    }
+    return this.logs.size();
+  }
+
+  public int size() {
+    return this.logs.size();
+  }
+}
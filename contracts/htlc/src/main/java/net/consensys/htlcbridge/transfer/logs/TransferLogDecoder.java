@@ -0,0 +1,281 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.web3j.abi.EventEncoder;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for eth_getLogs responses containing Erc20HtlcTransfer logs.<p>
+ * The generic path (Jackson object mapping into Log objects, followed by ABI decoding
+ * using TypeReferences) creates many intermediate objects per log. The transfer events
+ * have a fixed layout, so this decoder reads the JSON token stream and decodes the hex
+ * topics and data straight into compact records. Logs for other events, such as votes,
+ * and logs marked as removed, are skipped.
+ */
+public class TransferLogDecoder {
+  public static final String SOURCE_TRANSFER_INIT_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.SOURCETRANSFERINIT_EVENT);
+  public static final String DEST_TRANSFER_COMPLETED_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.DESTTRANSFERCOMPLETED_EVENT);
+  public static final String DEST_TRANSFER_INIT_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.DESTTRANSFERINIT_EVENT);
+  public static final String SOURCE_TRANSFER_COMPLETED_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.SOURCETRANSFERCOMPLETED_EVENT);
+  public static final String SOURCE_TRANSFER_REFUNDED_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.SOURCETRANSFERREFUNDED_EVENT);
+  public static final String DEST_TRANSFER_REFUNDED_TOPIC = EventEncoder.encode(Erc20HtlcTransfer.DESTTRANSFERREFUNDED_EVENT);
+
+  // Signatures of the events, indexed by kind.
+  private static final byte[][] SIGS = {
+      null,
+      Numeric.hexStringToByteArray(SOURCE_TRANSFER_INIT_TOPIC),
+      Numeric.hexStringToByteArray(DEST_TRANSFER_COMPLETED_TOPIC),
+      Numeric.hexStringToByteArray(DEST_TRANSFER_INIT_TOPIC),
+      Numeric.hexStringToByteArray(SOURCE_TRANSFER_COMPLETED_TOPIC),
+      Numeric.hexStringToByteArray(SOURCE_TRANSFER_REFUNDED_TOPIC),
+      Numeric.hexStringToByteArray(DEST_TRANSFER_REFUNDED_TOPIC),
+  };
+
+  private static final int KIND_UNKNOWN = 0;
+  private static final int KIND_SOURCE_TRANSFER_INIT = 1;
+  private static final int KIND_DEST_TRANSFER_COMPLETED = 2;
+  private static final int KIND_DEST_TRANSFER_INIT = 3;
+  private static final int KIND_SOURCE_TRANSFER_COMPLETED = 4;
+  private static final int KIND_SOURCE_TRANSFER_REFUNDED = 5;
+  private static final int KIND_DEST_TRANSFER_REFUNDED = 6;
+
+  // Largest data field of the events decoded: tokenContract, amount and timeLock.
+  private static final int MAX_DATA_LEN = 96;
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // Per log scratch space, reused for all logs in a response.
+  private int kind;
+  private int numTopics;
+  private final byte[] topic1 = new byte[32];
+  private final byte[] topic2 = new byte[32];
+  private final byte[] topic3 = new byte[32];
+  private final byte[] data = new byte[MAX_DATA_LEN];
+  private int dataLen;
+  private long blockNumber;
+  private int logIndex;
+  private boolean removed;
+
+  /**
+   * Decode a JSON RPC eth_getLogs response.
+   *
+   * @param in Stream containing the HTTP response body.
+   * @param handler Called for each transfer event log.
+   * @return The number of logs in the response, including logs which were skipped.
+   * @throws IOException If the stream can not be read or parsed, or the response is a JSON RPC error.
+   */
+  public static int decodeResponse(InputStream in, TransferLogHandler handler) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+      return new TransferLogDecoder().decodeResponse(parser, handler);
+    }
+  }
+
+  private int decodeResponse(JsonParser parser, TransferLogHandler handler) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Expected JSON RPC response object");
+    }
+    int numLogs = -1;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("result".equals(name) && value == JsonToken.START_ARRAY) {
+        numLogs = decodeLogArray(parser, handler);
+      }
+      else if ("error".equals(name) && value == JsonToken.START_OBJECT) {
+        throw new IOException("JSON RPC error: " + readError(parser));
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+    if (numLogs < 0) {
+      throw new IOException("JSON RPC response has no result");
+    }
+    return numLogs;
+  }
+
+  private int decodeLogArray(JsonParser parser, TransferLogHandler handler) throws IOException {
+    int numLogs = 0;
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+      decodeLog(parser, handler);
+      numLogs++;
+    }
+    if (token != JsonToken.END_ARRAY) {
+      throw new IOException("Expected log object, found: " + token);
+    }
+    return numLogs;
+  }
+
+  private void decodeLog(JsonParser parser, TransferLogHandler handler) throws IOException {
+    this.kind = KIND_UNKNOWN;
+    this.numTopics = 0;
+    this.dataLen = -1;
+    this.blockNumber = -1;
+    this.logIndex = -1;
+    this.removed = false;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (name) {
+        case "topics":
+          decodeTopics(parser, value);
+          break;
+        case "data":
+          if (value == JsonToken.VALUE_STRING) {
+            int len = parser.getTextLength();
+            int numBytes = (len - 2) / 2;
+            if (numBytes <= MAX_DATA_LEN) {
+              LogHex.decode(parser.getTextCharacters(), parser.getTextOffset(), len, this.data, 0, numBytes);
+              this.dataLen = numBytes;
+            }
+          }
+          break;
+        case "blockNumber":
+          if (value == JsonToken.VALUE_STRING) {
+            this.blockNumber = LogHex.decodeLong(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+          }
+          break;
+        case "logIndex":
+          if (value == JsonToken.VALUE_STRING) {
+            this.logIndex = (int) LogHex.decodeLong(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+          }
+          break;
+        case "removed":
+          this.removed = value == JsonToken.VALUE_TRUE;
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    if (this.removed) {
+      return;
+    }
+    if (this.kind == KIND_SOURCE_TRANSFER_INIT && this.numTopics == 3 && this.dataLen == MAX_DATA_LEN) {
+      byte[] packed = new byte[SourceTransferInitLog.LEN];
+      System.arraycopy(this.topic1, 0, packed, SourceTransferInitLog.COMMITMENT_OFS, 32);
+      System.arraycopy(this.topic2, 12, packed, SourceTransferInitLog.SENDER_OFS, 20);
+      System.arraycopy(this.data, 12, packed, SourceTransferInitLog.TOKEN_OFS, 20);
+      System.arraycopy(this.data, 32, packed, SourceTransferInitLog.AMOUNT_OFS, 32);
+      handler.onSourceTransferInit(new SourceTransferInitLog(this.blockNumber, this.logIndex, uint256ToLong(this.data, 64), packed));
+    }
+    else if (this.kind == KIND_DEST_TRANSFER_COMPLETED && this.numTopics == 2 && this.dataLen == 32) {
+      byte[] packed = new byte[DestTransferCompletedLog.LEN];
+      System.arraycopy(this.topic1, 0, packed, DestTransferCompletedLog.COMMITMENT_OFS, 32);
+      System.arraycopy(this.data, 0, packed, DestTransferCompletedLog.PREIMAGE_OFS, 32);
+      handler.onDestTransferCompleted(new DestTransferCompletedLog(this.blockNumber, this.logIndex, packed));
+    }
+    else if (this.kind == KIND_DEST_TRANSFER_INIT && this.numTopics == 4 && this.dataLen == MAX_DATA_LEN) {
+      byte[] packed = new byte[DestTransferInitLog.LEN];
+      System.arraycopy(this.topic1, 0, packed, DestTransferInitLog.COMMITMENT_OFS, 32);
+      System.arraycopy(this.topic2, 12, packed, DestTransferInitLog.RELAYER_OFS, 20);
+      System.arraycopy(this.topic3, 12, packed, DestTransferInitLog.RECIPIENT_OFS, 20);
+      System.arraycopy(this.data, 12, packed, DestTransferInitLog.TOKEN_OFS, 20);
+      System.arraycopy(this.data, 32, packed, DestTransferInitLog.AMOUNT_OFS, 32);
+      handler.onDestTransferInit(new DestTransferInitLog(this.blockNumber, this.logIndex, uint256ToLong(this.data, 64), packed));
+    }
+    else if (this.kind >= KIND_SOURCE_TRANSFER_COMPLETED && this.numTopics == 2 && this.dataLen == 0) {
+      TransferSettledLog.Event event =
+          this.kind == KIND_SOURCE_TRANSFER_COMPLETED ? TransferSettledLog.Event.SOURCE_TRANSFER_COMPLETED :
+          this.kind == KIND_SOURCE_TRANSFER_REFUNDED ? TransferSettledLog.Event.SOURCE_TRANSFER_REFUNDED :
+          TransferSettledLog.Event.DEST_TRANSFER_REFUNDED;
+      handler.onTransferSettled(new TransferSettledLog(event, this.blockNumber, this.logIndex, this.topic1.clone()));
+    }
+  }
+
+  private void decodeTopics(JsonParser parser, JsonToken value) throws IOException {
+    if (value != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+      char[] chars = parser.getTextCharacters();
+      int ofs = parser.getTextOffset();
+      int len = parser.getTextLength();
+      switch (this.numTopics) {
+        case 0:
+          for (int kind = KIND_SOURCE_TRANSFER_INIT; kind < SIGS.length; kind++) {
+            if (LogHex.matches(chars, ofs, len, SIGS[kind])) {
+              this.kind = kind;
+              break;
+            }
+          }
+          break;
+        case 1:
+          if (this.kind != KIND_UNKNOWN) {
+            LogHex.decode(chars, ofs, len, this.topic1, 0, 32);
+          }
+          break;
+        case 2:
+          if (this.kind != KIND_UNKNOWN) {
+            LogHex.decode(chars, ofs, len, this.topic2, 0, 32);
+          }
+          break;
+        case 3:
+          if (this.kind != KIND_UNKNOWN) {
+            LogHex.decode(chars, ofs, len, this.topic3, 0, 32);
+          }
+          break;
+        default:
+          break;
+      }
+      this.numTopics++;
+    }
+  }
+
+  private static String readError(JsonParser parser) throws IOException {
+    long code = 0;
+    String message = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+      if ("code".equals(name)) {
+        code = parser.getLongValue();
+      }
+      else if ("message".equals(name)) {
+        message = parser.getText();
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+    return "Code: " + code + ", Message: " + message;
+  }
+
+  // Time locks are seconds since the epoch, so always fit in a long. Saturate rather than
+  // wrap if a value doesn't.
+  private static long uint256ToLong(byte[] buf, int ofs) {
+    for (int i = ofs; i < ofs + 24; i++) {
+      if (buf[i] != 0) {
+        return Long.MAX_VALUE;
+      }
+    }
+    long val = 0;
+    for (int i = ofs + 24; i < ofs + 32; i++) {
+      val = (val << 8) | (buf[i] & 0xff);
+    }
+    return val < 0 ? Long.MAX_VALUE : val;
+  }
+}
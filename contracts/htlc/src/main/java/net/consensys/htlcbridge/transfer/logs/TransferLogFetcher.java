@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches Erc20HtlcTransfer event logs for a block range using eth_getLogs, and decodes
+ * the response as it streams in using TransferLogDecoder.
+ */
+public class TransferLogFetcher {
+  private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+  private final OkHttpClient httpClient;
+  private final String uri;
+  private final String contractAddress;
+  private final AtomicLong nextId = new AtomicLong(1);
+
+  public TransferLogFetcher(OkHttpClient httpClient, String uri, String contractAddress) {
+    this.httpClient = httpClient;
+    this.uri = uri;
+    this.contractAddress = contractAddress;
+  }
+
+  public List<SourceTransferInitLog> fetchSourceTransferInit(long fromBlock, long toBlock) throws IOException {
+    final List<SourceTransferInitLog> logs = new ArrayList<>();
+    fetch(fromBlock, toBlock, true, false, new TransferLogHandler() {
+      @Override
+      public void onSourceTransferInit(SourceTransferInitLog log) {
+        logs.add(log);
+      }
+    });
+    return logs;
+  }
+
+  public List<DestTransferCompletedLog> fetchDestTransferCompleted(long fromBlock, long toBlock) throws IOException {
+    final List<DestTransferCompletedLog> logs = new ArrayList<>();
+    fetch(fromBlock, toBlock, false, true, new TransferLogHandler() {
+      @Override
+      public void onDestTransferCompleted(DestTransferCompletedLog log) {
+        logs.add(log);
+      }
+    });
+    return logs;
+  }
+
+  /**
+   * Fetch the logs for the block range fromBlock to toBlock inclusive.
+   *
+   * @return The number of logs returned by the Ethereum client.
+   */
+  public int fetch(long fromBlock, long toBlock, boolean sourceTransferInit, boolean destTransferCompleted,
+                   TransferLogHandler handler) throws IOException {
+    List<String> topics = new ArrayList<>();
+    if (sourceTransferInit) {
+      topics.add(TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC);
+    }
+    if (destTransferCompleted) {
+      topics.add(TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC);
+    }
+    return fetch(fromBlock, toBlock, handler, topics.toArray(new String[0]));
+  }
+
+  /**
+   * Fetch the logs of the events with the given topics, from TransferLogDecoder, for the
+   * block range fromBlock to toBlock inclusive.
+   *
+   * @return The number of logs returned by the Ethereum client.
+   */
+  public int fetch(long fromBlock, long toBlock, TransferLogHandler handler, String... eventTopics) throws IOException {
+    Request request = new Request.Builder()
+        .url(this.uri)
+        .post(RequestBody.create(getLogsRequest(fromBlock, toBlock, eventTopics), JSON_MEDIA_TYPE))
+        .build();
+
+    try (Response response = this.httpClient.newCall(request).execute()) {
+      ResponseBody body = response.body();
+      if (!response.isSuccessful() || body == null) {
+        throw new IOException("eth_getLogs failed: HTTP status: " + response.code());
+      }
+      return TransferLogDecoder.decodeResponse(body.byteStream(), handler);
+    }
+  }
+
+  public String getContractAddress() {
+    return this.contractAddress;
+  }
+
+  private String getLogsRequest(long fromBlock, long toBlock, String[] eventTopics) {
+    StringBuilder topics = new StringBuilder();
+    for (String topic: eventTopics) {
+      if (topics.length() != 0) {
+        topics.append(',');
+      }
+      topics.append('"').append(topic).append('"');
+    }
+    return "{\"jsonrpc\":\"2.0\",\"method\":\"eth_getLogs\",\"params\":[{" +
+        "\"address\":\"" + this.contractAddress + "\"," +
+        "\"fromBlock\":\"0x" + Long.toHexString(fromBlock) + "\"," +
+        "\"toBlock\":\"0x" + Long.toHexString(toBlock) + "\"," +
+        "\"topics\":[[" + topics + "]]}]," +
+        "\"id\":" + this.nextId.getAndIncrement() + "}";
+  }
+}
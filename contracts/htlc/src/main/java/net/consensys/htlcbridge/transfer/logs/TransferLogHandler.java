@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+/**
+ * Receives the transfer event logs decoded by TransferLogDecoder, in the order they
+ * appear in the JSON RPC response.
+ */
+public interface TransferLogHandler {
+  default void onSourceTransferInit(SourceTransferInitLog log) {
+  }
+
+  default void onDestTransferCompleted(DestTransferCompletedLog log) {
+  }
+
+  default void onDestTransferInit(DestTransferInitLog log) {
+  }
+
+  default void onTransferSettled(TransferSettledLog log) {
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import java.util.Arrays;
+
+/**
+ * A SourceTransferCompleted, SourceTransferRefunded or DestTransferRefunded event log.
+ * These events only have the commitment of the transfer.
+ */
+public class TransferSettledLog {
+  public enum Event {
+    SOURCE_TRANSFER_COMPLETED,
+    SOURCE_TRANSFER_REFUNDED,
+    DEST_TRANSFER_REFUNDED
+  }
+
+  private final Event event;
+  private final long blockNumber;
+  private final int logIndex;
+  private final byte[] commitment;
+
+  public TransferSettledLog(Event event, long blockNumber, int logIndex, byte[] commitment) {
+    if (commitment.length != 32) {
+      throw new IllegalArgumentException("Commitment must be 32 bytes: " + commitment.length);
+    }
+    this.event = event;
+    this.blockNumber = blockNumber;
+    this.logIndex = logIndex;
+    this.commitment = commitment;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+
+  public long getBlockNumber() {
+    return blockNumber;
+  }
+
+  public int getLogIndex() {
+    return logIndex;
+  }
+
+  public byte[] getCommitment() {
+    return Arrays.copyOf(this.commitment, 32);
+  }
+
+  @Override
+  public String toString() {
+    return
+        this.event +
+        ": Block: " + this.blockNumber +
+        ", LogIndex: " + this.logIndex +
+        ", Commitment: " + LogHex.toHexString(this.commitment, 0, 32);
+  }
+}
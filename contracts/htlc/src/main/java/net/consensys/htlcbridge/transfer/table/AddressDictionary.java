@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of addresses: each distinct address is stored once, and referred
+ * to by its id, in the order addresses were first seen.
+ */
+class AddressDictionary {
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> addresses = new ArrayList<>();
+
+  /**
+   * @return The id of the address, adding it to the dictionary if it is new.
+   */
+  int encode(String address) {
+    String normalised = address.toLowerCase(Locale.ROOT);
+    Integer id = this.ids.get(normalised);
+    if (id == null) {
+      id = this.addresses.size();
+      this.ids.put(normalised, id);
+      this.addresses.add(normalised);
+    }
+    return id;
+  }
+
+  /**
+   * @return The id of the address, or -1 if it isn't in the dictionary.
+   */
+  int find(String address) {
+    Integer id = this.ids.get(address.toLowerCase(Locale.ROOT));
+    return id == null ? -1 : id;
+  }
+
+  String decode(int id) {
+    return id < 0 ? null : this.addresses.get(id);
+  }
+
+  int size() {
+    return this.addresses.size();
+  }
+}
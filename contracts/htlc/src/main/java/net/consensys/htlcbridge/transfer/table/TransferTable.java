@@ -0,0 +1,491 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.table;
+
+import net.consensys.htlcbridge.transfer.ReceiverInfo;
+import net.consensys.htlcbridge.transfer.TransferInfo;
+import net.consensys.htlcbridge.transfer.TransferState;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.web3j.tuples.generated.Tuple6;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory table of transfers, stored column by column rather than as TransferInfo or
+ * ReceiverInfo objects, for scanning large numbers of transfers.<p>
+ * Addresses are dictionary encoded as ints, amounts are held as the low and high 64 bits
+ * of a 128 bit value, and states as bytes. Amounts of 2^128 or more are rare, and are held
+ * separately. Filters scan a single column in a tight loop and return the selected rows as
+ * a BitSet, which can be combined with BitSet.and and passed to the aggregations.<p>
+ * Rows are keyed by commitment: adding a transfer that is already in the table updates
+ * its row. The table isn't thread safe.
+ */
+public class TransferTable implements TransferLogHandler {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int COMMITMENT_LEN = 32;
+  // Layout of SourceTransferInitLog.rawData.
+  private static final int LOG_COMMITMENT_OFS = 0;
+  private static final int LOG_AMOUNT_OFS = 72;
+  private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+  private static final TransferState[] STATES = TransferState.values();
+
+  private final AddressDictionary addresses = new AddressDictionary();
+  private int size;
+  private byte[] commitments;
+  // Sender of source transfers, recipient of destination transfers.
+  private int[] accounts;
+  private int[] tokens;
+  // Relayer which posted a destination transfer, or -1.
+  private int[] relayers;
+  private long[] amountsLow;
+  private long[] amountsHigh;
+  private long[] timeLocks;
+  private byte[] states;
+  // Block the transfer was initiated in, or -1 if not known.
+  private long[] blockNumbers;
+  // Amounts too large for amountsLow and amountsHigh, which are zero for these rows.
+  private final Map<Integer, BigInteger> largeAmounts = new HashMap<>();
+  // Open addressing index from commitment to row + 1. Zero marks an empty slot.
+  private int[] index;
+
+  public TransferTable() {
+    this(INITIAL_CAPACITY);
+  }
+
+  public TransferTable(int expectedRows) {
+    int capacity = Math.max(16, expectedRows);
+    this.commitments = new byte[capacity * COMMITMENT_LEN];
+    this.accounts = new int[capacity];
+    this.tokens = new int[capacity];
+    this.relayers = new int[capacity];
+    this.amountsLow = new long[capacity];
+    this.amountsHigh = new long[capacity];
+    this.timeLocks = new long[capacity];
+    this.states = new byte[capacity];
+    this.blockNumbers = new long[capacity];
+    this.index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+  }
+
+  /**
+   * Load the SourceTransferInit events of a contract for a range of blocks. The rows are
+   * OPEN, as the events don't say whether the transfers have since been finalised or
+   * refunded: use refreshStates for that.
+   *
+   * @param blocksPerRequest Number of blocks to request logs for at a time.
+   */
+  public static TransferTable loadFromChain(TransferLogFetcher fetcher, long fromBlock, long toBlock,
+                                            int blocksPerRequest) throws IOException {
+    TransferTable table = new TransferTable();
+    for (long start = fromBlock; start <= toBlock; start += blocksPerRequest) {
+      fetcher.fetch(start, Math.min(toBlock, start + blocksPerRequest - 1), true, false, table);
+    }
+    return table;
+  }
+
+  /**
+   * Update the state and timeLock of the open transfers from a source transfer contract.
+   * Makes a blocking call per open transfer.
+   *
+   * @return The number of transfers which are no longer open.
+   */
+  public int refreshStates(Erc20HtlcTransfer sourceContract) throws Exception {
+    int changed = 0;
+    BitSet open = selectState(TransferState.OPEN);
+    for (int row = open.nextSetBit(0); row >= 0; row = open.nextSetBit(row + 1)) {
+      Tuple6<String, String, BigInteger, byte[], BigInteger, BigInteger> info =
+          sourceContract.getSourceInfo(getCommitment(row)).send();
+      TransferState state = TransferState.create(info.component6());
+      this.timeLocks[row] = info.component5().longValue();
+      if (state != TransferState.OPEN) {
+        this.states[row] = (byte) state.ordinal();
+        changed++;
+      }
+    }
+    return changed;
+  }
+
+  @Override
+  public void onSourceTransferInit(SourceTransferInitLog log) {
+    byte[] data = log.rawData();
+    int row = row(data, LOG_COMMITMENT_OFS);
+    this.accounts[row] = this.addresses.encode(log.getSenderAddress());
+    this.tokens[row] = this.addresses.encode(log.getTokenContract());
+    this.relayers[row] = -1;
+    setAmount(row, data, LOG_AMOUNT_OFS);
+    this.timeLocks[row] = log.getTimeLock();
+    this.blockNumbers[row] = log.getBlockNumber();
+  }
+
+  public int add(TransferInfo info) {
+    return add(info.getCommitment(), info.getSenderAddress(), info.getTokenContract(), null,
+        info.getAmount(), info.getTimeLock().longValue(), info.getState(), -1);
+  }
+
+  public int add(ReceiverInfo info) {
+    return add(info.getCommitment(), info.getRecipientAddress(), info.getTokenContractOtherBlockchain(),
+        info.getRelayerAddress(), info.getAmount(), info.getTimeLock().longValue(), info.getState(), -1);
+  }
+
+  /**
+   * Add a transfer, or update it if the commitment is already in the table.
+   *
+   * @param relayer Relayer which posted a destination transfer, or null.
+   * @param blockNumber Block the transfer was initiated in, or -1 if not known.
+   * @return The transfer's row.
+   */
+  public int add(byte[] commitment, String account, String token, String relayer, BigInteger amount,
+                 long timeLock, TransferState state, long blockNumber) {
+    if (commitment.length != COMMITMENT_LEN) {
+      throw new IllegalArgumentException("Commitment must be " + COMMITMENT_LEN + " bytes: " + commitment.length);
+    }
+    if (amount.signum() < 0) {
+      throw new IllegalArgumentException("Negative amount: " + amount);
+    }
+    int row = row(commitment, 0);
+    this.accounts[row] = this.addresses.encode(account);
+    this.tokens[row] = this.addresses.encode(token);
+    this.relayers[row] = relayer == null ? -1 : this.addresses.encode(relayer);
+    if (amount.bitLength() > 128) {
+      this.amountsLow[row] = 0;
+      this.amountsHigh[row] = 0;
+      this.largeAmounts.put(row, amount);
+    }
+    else {
+      this.amountsLow[row] = amount.longValue();
+      this.amountsHigh[row] = amount.shiftRight(64).longValue();
+      this.largeAmounts.remove(row);
+    }
+    this.timeLocks[row] = timeLock;
+    this.states[row] = (byte) state.ordinal();
+    if (blockNumber != -1) {
+      this.blockNumbers[row] = blockNumber;
+    }
+    return row;
+  }
+
+  /**
+   * @return The row of the transfer, or -1 if it isn't in the table.
+   */
+  public int findRow(byte[] commitment) {
+    int mask = this.index.length - 1;
+    int slot = hash(commitment, 0) & mask;
+    while (this.index[slot] != 0) {
+      int row = this.index[slot] - 1;
+      if (commitmentEquals(row, commitment, 0)) {
+        return row;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  public void setState(int row, TransferState state) {
+    checkRow(row);
+    this.states[row] = (byte) state.ordinal();
+  }
+
+  public BitSet selectState(TransferState state) {
+    byte code = (byte) state.ordinal();
+    long[] words = new long[(this.size + 63) >>> 6];
+    for (int i = 0; i < this.size; i++) {
+      words[i >>> 6] |= (this.states[i] == code ? 1L : 0L) << i;
+    }
+    return BitSet.valueOf(words);
+  }
+
+  public BitSet selectToken(String token) {
+    return selectAddress(this.tokens, this.addresses.find(token));
+  }
+
+  public BitSet selectAccount(String account) {
+    return selectAddress(this.accounts, this.addresses.find(account));
+  }
+
+  private BitSet selectAddress(int[] column, int id) {
+    long[] words = new long[(this.size + 63) >>> 6];
+    if (id >= 0) {
+      for (int i = 0; i < this.size; i++) {
+        words[i >>> 6] |= (column[i] == id ? 1L : 0L) << i;
+      }
+    }
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * @return Rows with a timeLock from fromTime to toTime inclusive.
+   */
+  public BitSet selectTimeLockBetween(long fromTime, long toTime) {
+    long[] words = new long[(this.size + 63) >>> 6];
+    for (int i = 0; i < this.size; i++) {
+      long timeLock = this.timeLocks[i];
+      words[i >>> 6] |= (timeLock >= fromTime && timeLock <= toTime ? 1L : 0L) << i;
+    }
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * @return Open transfers whose timeLock passes within window seconds of now, including
+   *   those whose timeLock has already passed and which are waiting to be refunded.
+   */
+  public BitSet selectOpenNearExpiry(long now, long window) {
+    BitSet rows = selectTimeLockBetween(Long.MIN_VALUE, now + window);
+    rows.and(selectState(TransferState.OPEN));
+    return rows;
+  }
+
+  /**
+   * @param rows Rows to include, or null for all rows.
+   * @return Total amount of each token, in the order the tokens were first seen.
+   */
+  public Map<String, BigInteger> volumeByToken(BitSet rows) {
+    int numIds = this.addresses.size();
+    long[] low = new long[numIds];
+    long[] high = new long[numIds];
+    long[] top = new long[numIds];
+    boolean[] seen = new boolean[numIds];
+    if (rows == null) {
+      for (int i = 0; i < this.size; i++) {
+        accumulate(i, low, high, top, seen);
+      }
+    }
+    else {
+      for (int i = rows.nextSetBit(0); i >= 0 && i < this.size; i = rows.nextSetBit(i + 1)) {
+        accumulate(i, low, high, top, seen);
+      }
+    }
+
+    Map<String, BigInteger> volumes = new LinkedHashMap<>();
+    for (int id = 0; id < numIds; id++) {
+      if (seen[id]) {
+        volumes.put(this.addresses.decode(id), toBigInteger(top[id], high[id], low[id]));
+      }
+    }
+    for (Map.Entry<Integer, BigInteger> entry: this.largeAmounts.entrySet()) {
+      int row = entry.getKey();
+      if (rows == null || rows.get(row)) {
+        volumes.merge(this.addresses.decode(this.tokens[row]), entry.getValue(), BigInteger::add);
+      }
+    }
+    return volumes;
+  }
+
+  // 192 bit addition of the row's amount to its token's total, without branches.
+  private void accumulate(int row, long[] low, long[] high, long[] top, boolean[] seen) {
+    int token = this.tokens[row];
+    long a = low[token];
+    long b = this.amountsLow[row];
+    long sum = a + b;
+    long carry = ((a & b) | ((a | b) & ~sum)) >>> 63;
+    low[token] = sum;
+    a = high[token];
+    b = this.amountsHigh[row];
+    sum = a + b;
+    long carry2 = ((a & b) | ((a | b) & ~sum)) >>> 63;
+    long sum2 = sum + carry;
+    carry2 += ((sum & carry) | ((sum | carry) & ~sum2)) >>> 63;
+    high[token] = sum2;
+    top[token] += carry2;
+    seen[token] = true;
+  }
+
+  /**
+   * @param rows Rows to include, or null for all rows.
+   * @return Number of transfers in each state.
+   */
+  public Map<TransferState, Integer> countByState(BitSet rows) {
+    int[] counts = new int[STATES.length];
+    if (rows == null) {
+      for (int i = 0; i < this.size; i++) {
+        counts[this.states[i]]++;
+      }
+    }
+    else {
+      for (int i = rows.nextSetBit(0); i >= 0 && i < this.size; i = rows.nextSetBit(i + 1)) {
+        counts[this.states[i]]++;
+      }
+    }
+    Map<TransferState, Integer> result = new EnumMap<>(TransferState.class);
+    for (TransferState state: STATES) {
+      if (counts[state.ordinal()] != 0) {
+        result.put(state, counts[state.ordinal()]);
+      }
+    }
+    return result;
+  }
+
+  public byte[] getCommitment(int row) {
+    checkRow(row);
+    return Arrays.copyOfRange(this.commitments, row * COMMITMENT_LEN, (row + 1) * COMMITMENT_LEN);
+  }
+
+  public String getAccount(int row) {
+    checkRow(row);
+    return this.addresses.decode(this.accounts[row]);
+  }
+
+  public String getToken(int row) {
+    checkRow(row);
+    return this.addresses.decode(this.tokens[row]);
+  }
+
+  public String getRelayer(int row) {
+    checkRow(row);
+    return this.addresses.decode(this.relayers[row]);
+  }
+
+  public BigInteger getAmount(int row) {
+    checkRow(row);
+    BigInteger large = this.largeAmounts.get(row);
+    return large != null ? large : toBigInteger(0, this.amountsHigh[row], this.amountsLow[row]);
+  }
+
+  public long getTimeLock(int row) {
+    checkRow(row);
+    return this.timeLocks[row];
+  }
+
+  public TransferState getState(int row) {
+    checkRow(row);
+    return STATES[this.states[row]];
+  }
+
+  public long getBlockNumber(int row) {
+    checkRow(row);
+    return this.blockNumbers[row];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return Number of distinct addresses in the table.
+   */
+  public int getNumAddresses() {
+    return this.addresses.size();
+  }
+
+  /**
+   * @return The row of the commitment, adding a row if it isn't in the table.
+   */
+  private int row(byte[] commitment, int offset) {
+    int mask = this.index.length - 1;
+    int slot = hash(commitment, offset) & mask;
+    while (this.index[slot] != 0) {
+      int row = this.index[slot] - 1;
+      if (commitmentEquals(row, commitment, offset)) {
+        return row;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int row = this.size;
+    if (row == this.states.length) {
+      grow();
+      return row(commitment, offset);
+    }
+    System.arraycopy(commitment, offset, this.commitments, row * COMMITMENT_LEN, COMMITMENT_LEN);
+    this.index[slot] = row + 1;
+    this.states[row] = (byte) TransferState.OPEN.ordinal();
+    this.blockNumbers[row] = -1;
+    this.size++;
+    return row;
+  }
+
+  private void grow() {
+    int capacity = this.states.length * 2;
+    this.commitments = Arrays.copyOf(this.commitments, capacity * COMMITMENT_LEN);
+    this.accounts = Arrays.copyOf(this.accounts, capacity);
+    this.tokens = Arrays.copyOf(this.tokens, capacity);
+    this.relayers = Arrays.copyOf(this.relayers, capacity);
+    this.amountsLow = Arrays.copyOf(this.amountsLow, capacity);
+    this.amountsHigh = Arrays.copyOf(this.amountsHigh, capacity);
+    this.timeLocks = Arrays.copyOf(this.timeLocks, capacity);
+    this.states = Arrays.copyOf(this.states, capacity);
+    this.blockNumbers = Arrays.copyOf(this.blockNumbers, capacity);
+
+    this.index = new int[this.index.length * 2];
+    int mask = this.index.length - 1;
+    for (int row = 0; row < this.size; row++) {
+      int slot = hash(this.commitments, row * COMMITMENT_LEN) & mask;
+      while (this.index[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      this.index[slot] = row + 1;
+    }
+  }
+
+  private void setAmount(int row, byte[] data, int offset) {
+    boolean large = false;
+    for (int i = offset; i < offset + 16; i++) {
+      large |= data[i] != 0;
+    }
+    if (large) {
+      this.amountsLow[row] = 0;
+      this.amountsHigh[row] = 0;
+      this.largeAmounts.put(row, new BigInteger(1, Arrays.copyOfRange(data, offset, offset + 32)));
+    }
+    else {
+      this.amountsHigh[row] = getLong(data, offset + 16);
+      this.amountsLow[row] = getLong(data, offset + 24);
+      this.largeAmounts.remove(row);
+    }
+  }
+
+  private boolean commitmentEquals(int row, byte[] commitment, int offset) {
+    int base = row * COMMITMENT_LEN;
+    for (int i = 0; i < COMMITMENT_LEN; i++) {
+      if (this.commitments[base + i] != commitment[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Commitments are Keccak hashes, so any four bytes are well distributed.
+  private static int hash(byte[] commitment, int offset) {
+    return (commitment[offset] & 0xff) << 24 | (commitment[offset + 1] & 0xff) << 16 |
+        (commitment[offset + 2] & 0xff) << 8 | (commitment[offset + 3] & 0xff);
+  }
+
+  private static long getLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xff);
+    }
+    return result;
+  }
+
+  private static BigInteger toBigInteger(long top, long high, long low) {
+    BigInteger result = BigInteger.valueOf(top);
+    result = result.multiply(TWO_64).add(new BigInteger(Long.toUnsignedString(high)));
+    return result.multiply(TWO_64).add(new BigInteger(Long.toUnsignedString(low)));
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= this.size) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + this.size);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer;
+
+import net.consensys.htlcbridge.common.Hash;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CommitmentCalculatorTest {
+  static final String USER = "0x627306090abaB3A6e1400e9345bC60c78a8BEf57";
+  static final String TOKEN = "f17f52151EbEF6C7334FAD080c5704D77216b732";
+
+  // The encoding the calculator used before it had a fast path: each field converted through hex.
+  static Bytes slowPath(Bytes salt, String user, String token, BigInteger amount) throws Exception {
+    return Hash.keccak256(Bytes.concatenate(salt,
+        CommitmentCalculator.addressToFixedLengthByteArray(user),
+        CommitmentCalculator.addressToFixedLengthByteArray(token),
+        CommitmentCalculator.numberToFixedLengthByteArray(amount)));
+  }
+
+  @Test
+  public void matchesSlowPath() throws Exception {
+    Random random = new Random(1);
+    BigInteger[] amounts = {
+        BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(0xff), BigInteger.valueOf(0x10f),
+        BigInteger.valueOf(Long.MAX_VALUE), BigInteger.ONE.shiftLeft(63), new BigInteger("ffffffffffffffff", 16),
+        BigInteger.ONE.shiftLeft(255), BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE),
+        new BigInteger(200, random)};
+    byte[] commitment = new byte[40];
+    for (BigInteger amount: amounts) {
+      Bytes32 salt = Bytes32.random(random);
+      Bytes expected = slowPath(salt, USER, TOKEN, amount);
+      assertEquals(expected, CommitmentCalculator.calculate(salt, USER, TOKEN, amount));
+
+      byte[] saltArray = new byte[40];
+      System.arraycopy(salt.toArrayUnsafe(), 0, saltArray, 5, 32);
+      CommitmentCalculator.calculate(saltArray, 5, USER, TOKEN, amount, commitment, 8);
+      assertArrayEquals(expected.toArray(), Arrays.copyOfRange(commitment, 8, 40));
+    }
+  }
+
+  @Test
+  public void shortAndLongAddresses() throws Exception {
+    Bytes32 salt = Bytes32.random(new Random(2));
+    for (String address: new String[]{"0x", "0x01", "0x00" + USER.substring(2), "0xaabb" + TOKEN}) {
+      assertEquals(slowPath(salt, address, TOKEN, BigInteger.TEN),
+          CommitmentCalculator.calculate(salt, address, TOKEN, BigInteger.TEN));
+    }
+  }
+
+  @Test
+  public void binaryFields() throws Exception {
+    Random random = new Random(3);
+    Bytes32 salt = Bytes32.random(random);
+    BigInteger amount = new BigInteger(128, random);
+    byte[] preimage = new byte[CommitmentCalculator.PREIMAGE_LEN];
+    CommitmentCalculator.encodePreimage(salt.toArray(), 0, USER, TOKEN, amount, preimage, 0);
+    assertArrayEquals(CommitmentCalculator.addressToFixedLengthByteArray(USER).toArray(),
+        Arrays.copyOfRange(preimage, CommitmentCalculator.USER_OFFSET, CommitmentCalculator.TOKEN_OFFSET));
+
+    byte[] commitment = new byte[32];
+    CommitmentCalculator.calculate(preimage, CommitmentCalculator.SALT_OFFSET, preimage, CommitmentCalculator.USER_OFFSET,
+        preimage, CommitmentCalculator.TOKEN_OFFSET, preimage, CommitmentCalculator.AMOUNT_OFFSET, commitment, 0);
+    assertArrayEquals(slowPath(salt, USER, TOKEN, amount).toArray(), commitment);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badHex() {
+    CommitmentCalculator.calculate(new byte[32], 0, "0x12g4", TOKEN, BigInteger.ONE, new byte[32], 0);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommitmentVerifierTest {
+  static class Columns {
+    final int count;
+    final byte[] salts;
+    final byte[] users;
+    final byte[] tokens;
+    final byte[] amounts;
+    final byte[] commitments;
+
+    Columns(int count, long seed) {
+      this.count = count;
+      Random random = new Random(seed);
+      this.salts = new byte[count * 32];
+      this.users = new byte[count * 20];
+      this.tokens = new byte[count * 20];
+      this.amounts = new byte[count * 32];
+      this.commitments = new byte[count * 32];
+      random.nextBytes(this.salts);
+      random.nextBytes(this.users);
+      random.nextBytes(this.tokens);
+      for (int i = 0; i < count; i++) {
+        // Amounts up to 2^64.
+        for (int j = 24; j < 32; j++) {
+          this.amounts[i * 32 + j] = (byte) random.nextInt();
+        }
+        CommitmentCalculator.calculate(this.salts, i * 32, this.users, i * 20, this.tokens, i * 20,
+            this.amounts, i * 32, this.commitments, i * 32);
+      }
+    }
+  }
+
+  @Test
+  public void allMatch() {
+    Columns columns = new Columns(1000, 1);
+    BitSet matches = new CommitmentVerifier().verify(columns.salts, columns.users, columns.tokens,
+        columns.amounts, columns.commitments, columns.count);
+    assertEquals(1000, matches.cardinality());
+    assertEquals(1000, matches.nextClearBit(0));
+  }
+
+  @Test
+  public void mismatchesInEachColumn() {
+    Columns columns = new Columns(1000, 2);
+    columns.salts[3 * 32] ^= 1;
+    columns.users[63 * 20 + 19] ^= 1;
+    columns.tokens[64 * 20] ^= 1;
+    columns.amounts[500 * 32 + 31] ^= 1;
+    columns.commitments[999 * 32 + 7] ^= 1;
+
+    // Small tasks, so that the rows are split across many of them.
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      BitSet matches = new CommitmentVerifier(pool, 100).verify(columns.salts, columns.users, columns.tokens,
+          columns.amounts, columns.commitments, columns.count);
+      assertEquals(995, matches.cardinality());
+      BitSet mismatches = new BitSet();
+      mismatches.set(0, 1000);
+      mismatches.andNot(matches);
+      assertEquals("{3, 63, 64, 500, 999}", mismatches.toString());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void fewerRowsThanColumns() {
+    Columns columns = new Columns(10, 3);
+    BitSet matches = new CommitmentVerifier().verify(columns.salts, columns.users, columns.tokens,
+        columns.amounts, columns.commitments, 5);
+    assertEquals(5, matches.cardinality());
+    assertEquals(0, new CommitmentVerifier().verify(columns.salts, columns.users, columns.tokens,
+        columns.amounts, columns.commitments, 0).cardinality());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shortColumn() {
+    Columns columns = new Columns(10, 4);
+    new CommitmentVerifier().verify(columns.salts, new byte[9 * 20], columns.tokens,
+        columns.amounts, columns.commitments, 10);
+  }
+}
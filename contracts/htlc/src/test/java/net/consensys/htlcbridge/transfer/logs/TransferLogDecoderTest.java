@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.logs;
+
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.junit.Test;
+import org.web3j.abi.EventValues;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.tx.Contract;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransferLogDecoderTest {
+  static final String COMMITMENT = "0x5a1c5a7a8f2b2d0ef0c1e3b5b5a0dc9c1c8e6b0a2e9d9d1f0c8b3a2f1e0d9c8b";
+  static final String SENDER_TOPIC = "0x000000000000000000000000a1b2c3d4e5f60718293a4b5c6d7e8f9012345678";
+  static final String TOKEN = "0x00000000000000000000000011223344556677889900aabbccddeeff00112233";
+  static final String AMOUNT = "00000000000000000000000000000000000000000000000000000000000f4240";
+  static final String TIMELOCK = "0000000000000000000000000000000000000000000000000000000061a8c0b0";
+  static final String RECIPIENT_TOPIC = "0x000000000000000000000000f1e2d3c4b5a6978879605a4b3c2d1e0f98765432";
+  static final String PREIMAGE = "0x0102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f20";
+
+  static String sourceTransferInitLog(int logIndex) {
+    return "{\"address\":\"0x1234567890123456789012345678901234567890\"," +
+        "\"topics\":[\"" + TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC + "\",\"" + COMMITMENT + "\",\"" + SENDER_TOPIC + "\"]," +
+        "\"data\":\"" + TOKEN + AMOUNT + TIMELOCK + "\"," +
+        "\"blockNumber\":\"0x1b4\",\"transactionHash\":\"0xaa\",\"transactionIndex\":\"0x0\"," +
+        "\"blockHash\":\"0xbb\",\"logIndex\":\"0x" + Integer.toHexString(logIndex) + "\",\"removed\":false}";
+  }
+
+  static String destTransferCompletedLog(int logIndex) {
+    return "{\"address\":\"0x1234567890123456789012345678901234567890\"," +
+        "\"topics\":[\"" + TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC + "\",\"" + COMMITMENT + "\"]," +
+        "\"data\":\"" + PREIMAGE + "\"," +
+        "\"blockNumber\":\"0x1b5\",\"transactionHash\":\"0xaa\",\"transactionIndex\":\"0x0\"," +
+        "\"blockHash\":\"0xbb\",\"logIndex\":\"0x" + Integer.toHexString(logIndex) + "\",\"removed\":false}";
+  }
+
+  static String destTransferInitLog(int logIndex) {
+    return "{\"address\":\"0x1234567890123456789012345678901234567890\"," +
+        "\"topics\":[\"" + TransferLogDecoder.DEST_TRANSFER_INIT_TOPIC + "\",\"" + COMMITMENT + "\",\"" + SENDER_TOPIC + "\",\"" + RECIPIENT_TOPIC + "\"]," +
+        "\"data\":\"" + TOKEN + AMOUNT + TIMELOCK + "\"," +
+        "\"blockNumber\":\"0x1b6\",\"transactionHash\":\"0xaa\",\"transactionIndex\":\"0x0\"," +
+        "\"blockHash\":\"0xbb\",\"logIndex\":\"0x" + Integer.toHexString(logIndex) + "\",\"removed\":false}";
+  }
+
+  static String settledLog(String topic, int logIndex) {
+    return "{\"address\":\"0x1234567890123456789012345678901234567890\"," +
+        "\"topics\":[\"" + topic + "\",\"" + COMMITMENT + "\"]," +
+        "\"data\":\"0x\"," +
+        "\"blockNumber\":\"0x1b7\",\"transactionHash\":\"0xaa\",\"transactionIndex\":\"0x0\"," +
+        "\"blockHash\":\"0xbb\",\"logIndex\":\"0x" + Integer.toHexString(logIndex) + "\",\"removed\":false}";
+  }
+
+  static String response(String... logs) {
+    return "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[" + String.join(",", logs) + "]}";
+  }
+
+  @Test
+  public void sourceTransferInitMatchesGenericDecoding() throws Exception {
+    String json = response(sourceTransferInitLog(0), sourceTransferInitLog(1));
+
+    List<SourceTransferInitLog> decoded = new ArrayList<>();
+    int numLogs = decode(json, new TransferLogHandler() {
+      @Override
+      public void onSourceTransferInit(SourceTransferInitLog log) {
+        decoded.add(log);
+      }
+    });
+    assertEquals(2, numLogs);
+    assertEquals(2, decoded.size());
+
+    List<Log> logs = genericLogs(json);
+    for (int i = 0; i < logs.size(); i++) {
+      EventValues expected = Contract.staticExtractEventParameters(Erc20HtlcTransfer.SOURCETRANSFERINIT_EVENT, logs.get(i));
+      SourceTransferInitLog actual = decoded.get(i);
+      assertArrayEquals((byte[]) expected.getIndexedValues().get(0).getValue(), actual.getCommitment());
+      assertEquals(expected.getIndexedValues().get(1).getValue(), actual.getSenderAddress());
+      assertEquals(expected.getNonIndexedValues().get(0).getValue(), actual.getTokenContract());
+      assertEquals(expected.getNonIndexedValues().get(1).getValue(), actual.getAmount());
+      assertEquals(((BigInteger) expected.getNonIndexedValues().get(2).getValue()).longValue(), actual.getTimeLock());
+      assertEquals(0x1b4, actual.getBlockNumber());
+      assertEquals(i, actual.getLogIndex());
+    }
+  }
+
+  @Test
+  public void destTransferCompletedMatchesGenericDecoding() throws Exception {
+    String json = response(destTransferCompletedLog(3));
+
+    List<DestTransferCompletedLog> decoded = new ArrayList<>();
+    decode(json, new TransferLogHandler() {
+      @Override
+      public void onDestTransferCompleted(DestTransferCompletedLog log) {
+        decoded.add(log);
+      }
+    });
+    assertEquals(1, decoded.size());
+
+    EventValues expected = Contract.staticExtractEventParameters(Erc20HtlcTransfer.DESTTRANSFERCOMPLETED_EVENT, genericLogs(json).get(0));
+    assertArrayEquals((byte[]) expected.getIndexedValues().get(0).getValue(), decoded.get(0).getCommitment());
+    assertArrayEquals((byte[]) expected.getNonIndexedValues().get(0).getValue(), decoded.get(0).getPreimage());
+    assertEquals(3, decoded.get(0).getLogIndex());
+  }
+
+  @Test
+  public void destTransferInitMatchesGenericDecoding() throws Exception {
+    String json = response(destTransferInitLog(2));
+
+    List<DestTransferInitLog> decoded = new ArrayList<>();
+    decode(json, new TransferLogHandler() {
+      @Override
+      public void onDestTransferInit(DestTransferInitLog log) {
+        decoded.add(log);
+      }
+    });
+    assertEquals(1, decoded.size());
+
+    EventValues expected = Contract.staticExtractEventParameters(Erc20HtlcTransfer.DESTTRANSFERINIT_EVENT, genericLogs(json).get(0));
+    DestTransferInitLog actual = decoded.get(0);
+    assertArrayEquals((byte[]) expected.getIndexedValues().get(0).getValue(), actual.getCommitment());
+    assertEquals(expected.getIndexedValues().get(1).getValue(), actual.getRelayerAddress());
+    assertEquals(expected.getIndexedValues().get(2).getValue(), actual.getRecipientAddress());
+    assertEquals(expected.getNonIndexedValues().get(0).getValue(), actual.getTokenContract());
+    assertEquals(expected.getNonIndexedValues().get(1).getValue(), actual.getAmount());
+    assertEquals(((BigInteger) expected.getNonIndexedValues().get(2).getValue()).longValue(), actual.getTimeLock());
+    assertEquals(2, actual.getLogIndex());
+  }
+
+  @Test
+  public void settledLogs() throws Exception {
+    String json = response(
+        settledLog(TransferLogDecoder.SOURCE_TRANSFER_COMPLETED_TOPIC, 0),
+        settledLog(TransferLogDecoder.SOURCE_TRANSFER_REFUNDED_TOPIC, 1),
+        settledLog(TransferLogDecoder.DEST_TRANSFER_REFUNDED_TOPIC, 2));
+
+    List<TransferSettledLog> decoded = new ArrayList<>();
+    decode(json, new TransferLogHandler() {
+      @Override
+      public void onTransferSettled(TransferSettledLog log) {
+        decoded.add(log);
+      }
+    });
+    assertEquals(3, decoded.size());
+    assertEquals(TransferSettledLog.Event.SOURCE_TRANSFER_COMPLETED, decoded.get(0).getEvent());
+    assertEquals(TransferSettledLog.Event.SOURCE_TRANSFER_REFUNDED, decoded.get(1).getEvent());
+    assertEquals(TransferSettledLog.Event.DEST_TRANSFER_REFUNDED, decoded.get(2).getEvent());
+    assertArrayEquals(Numeric.hexStringToByteArray(COMMITMENT), decoded.get(2).getCommitment());
+    assertEquals(0x1b7, decoded.get(2).getBlockNumber());
+  }
+
+  @Test
+  public void otherAndRemovedLogsSkipped() throws Exception {
+    String other = sourceTransferInitLog(0).replace(TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC, COMMITMENT);
+    String removed = destTransferCompletedLog(1).replace("\"removed\":false", "\"removed\":true");
+    List<Object> decoded = new ArrayList<>();
+    int numLogs = decode(response(other, removed), new TransferLogHandler() {
+      @Override
+      public void onSourceTransferInit(SourceTransferInitLog log) {
+        decoded.add(log);
+      }
+
+      @Override
+      public void onDestTransferCompleted(DestTransferCompletedLog log) {
+        decoded.add(log);
+      }
+    });
+    assertEquals(2, numLogs);
+    assertTrue(decoded.isEmpty());
+  }
+
+  @Test
+  public void errorResponse() throws Exception {
+    String json = "{\"jsonrpc\":\"2.0\",\"id\":1,\"error\":{\"code\":-32005,\"message\":\"query returned more than 10000 results\"}}";
+    try {
+      decode(json, new TransferLogHandler() { });
+      fail("Expected an IOException");
+    } catch (IOException ex) {
+      assertTrue(ex.getMessage().contains("-32005"));
+    }
+  }
+
+  private static int decode(String json, TransferLogHandler handler) throws IOException {
+    return TransferLogDecoder.decodeResponse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), handler);
+  }
+
+  private static List<Log> genericLogs(String json) throws IOException {
+    EthLog ethLog = ObjectMapperFactory.getObjectMapper().readValue(json, EthLog.class);
+    List<Log> logs = new ArrayList<>();
+    for (EthLog.LogResult<?> result : ethLog.getLogs()) {
+      logs.add((Log) result.get());
+    }
+    return logs;
+  }
+}
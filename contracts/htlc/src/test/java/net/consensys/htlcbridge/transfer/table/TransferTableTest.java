@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.transfer.table;
+
+import net.consensys.htlcbridge.transfer.TransferState;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransferTableTest {
+  private static final String TOKEN_A = "0x00000000000000000000000000000000000000aa";
+  private static final String TOKEN_B = "0x00000000000000000000000000000000000000bb";
+  private static final String SENDER = "0x00000000000000000000000000000000000000cc";
+
+  private static byte[] commitment(int i) {
+    byte[] commitment = new byte[32];
+    // Keep the hash of the commitments distinct, as real commitments are.
+    commitment[0] = (byte) (i >> 24);
+    commitment[1] = (byte) (i >> 16);
+    commitment[2] = (byte) (i >> 8);
+    commitment[3] = (byte) i;
+    commitment[31] = 1;
+    return commitment;
+  }
+
+  @Test
+  public void filtersAndAggregates() {
+    TransferTable table = new TransferTable(16);
+    BigInteger big = BigInteger.ONE.shiftLeft(70);
+    for (int i = 0; i < 5000; i++) {
+      TransferState state = i % 4 == 0 ? TransferState.FINALILISED : TransferState.OPEN;
+      table.add(commitment(i), SENDER, i % 2 == 0 ? TOKEN_A : TOKEN_B, null,
+          big.add(BigInteger.valueOf(i)), 1000 + i, state, i);
+    }
+    assertEquals(5000, table.size());
+    assertEquals(3, table.getNumAddresses());
+
+    BigInteger expectedA = BigInteger.ZERO;
+    BigInteger expectedB = BigInteger.ZERO;
+    for (int i = 0; i < 5000; i++) {
+      if (i % 2 == 0) {
+        expectedA = expectedA.add(big.add(BigInteger.valueOf(i)));
+      }
+      else {
+        expectedB = expectedB.add(big.add(BigInteger.valueOf(i)));
+      }
+    }
+    Map<String, BigInteger> volumes = table.volumeByToken(null);
+    assertEquals(expectedA, volumes.get(TOKEN_A));
+    assertEquals(expectedB, volumes.get(TOKEN_B));
+
+    // Rows 0 to 99 have timeLocks up to 1099. A quarter of them are finalised.
+    BitSet nearExpiry = table.selectOpenNearExpiry(1000, 99);
+    assertEquals(75, nearExpiry.cardinality());
+    assertEquals(75, (int) table.countByState(nearExpiry).get(TransferState.OPEN));
+    assertNull(table.countByState(nearExpiry).get(TransferState.FINALILISED));
+
+    BitSet tokenB = table.selectToken(TOKEN_B.toUpperCase().replace("0X", "0x"));
+    assertEquals(2500, tokenB.cardinality());
+    assertEquals(1, table.volumeByToken(tokenB).size());
+    assertEquals(0, table.selectToken("0x0000000000000000000000000000000000000001").cardinality());
+  }
+
+  @Test
+  public void addingExistingCommitmentUpdatesRow() {
+    TransferTable table = new TransferTable();
+    int row = table.add(commitment(1), SENDER, TOKEN_A, null, BigInteger.TEN, 100, TransferState.OPEN, 7);
+    assertEquals(row, table.add(commitment(1), SENDER, TOKEN_A, null, BigInteger.TEN, 100, TransferState.REFUNDED, -1));
+    assertEquals(1, table.size());
+    assertEquals(TransferState.REFUNDED, table.getState(row));
+    assertEquals(7, table.getBlockNumber(row));
+    assertEquals(row, table.findRow(commitment(1)));
+    assertEquals(-1, table.findRow(commitment(2)));
+  }
+
+  @Test
+  public void loadsSourceTransferInitLogs() {
+    BigInteger huge = BigInteger.ONE.shiftLeft(200);
+    TransferTable table = new TransferTable();
+    table.onSourceTransferInit(log(1, BigInteger.valueOf(5)));
+    table.onSourceTransferInit(log(2, huge));
+    table.onSourceTransferInit(log(3, BigInteger.valueOf(6)));
+    assertEquals(3, table.size());
+    assertEquals(huge, table.getAmount(table.findRow(commitment(2))));
+    assertEquals(SENDER, table.getAccount(0));
+    assertEquals(huge.add(BigInteger.valueOf(11)), table.volumeByToken(null).get(TOKEN_A));
+  }
+
+  @Test
+  public void volumeCarriesPast128Bits() {
+    BigInteger max = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+    TransferTable table = new TransferTable();
+    for (int i = 0; i < 3; i++) {
+      table.add(commitment(i), SENDER, TOKEN_A, null, max, 100, TransferState.OPEN, -1);
+    }
+    assertEquals(max.multiply(BigInteger.valueOf(3)), table.volumeByToken(null).get(TOKEN_A));
+  }
+
+  private static SourceTransferInitLog log(int i, BigInteger amount) {
+    byte[] data = new byte[104];
+    System.arraycopy(commitment(i), 0, data, 0, 32);
+    data[32 + 19] = (byte) 0xcc;
+    data[52 + 19] = (byte) 0xaa;
+    byte[] amountBytes = amount.toByteArray();
+    System.arraycopy(amountBytes, 0, data, 104 - amountBytes.length, amountBytes.length);
+    return SourceTransferInitLog.fromRawData(100 + i, 0, 2000 + i, data);
+  }
+}
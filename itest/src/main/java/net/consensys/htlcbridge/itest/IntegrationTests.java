@@ -5,10 +5,12 @@ import net.consensys.htlcbridge.admin.commands.AuthoriseERC20ForReceiver;
 import net.consensys.htlcbridge.admin.commands.AuthoriseERC20ForTransfer;
 import net.consensys.htlcbridge.admin.commands.DeployERC20Contract;
 import net.consensys.htlcbridge.admin.commands.DeployTransferContract;
+import net.consensys.htlcbridge.common.BlockingExecutors;
 import net.consensys.htlcbridge.common.DynamicGasProvider;
 import net.consensys.htlcbridge.common.KeyPairGen;
 import net.consensys.htlcbridge.common.PRNG;
 import net.consensys.htlcbridge.common.RevertReason;
+import net.consensys.htlcbridge.common.TaskScope;
 import net.consensys.htlcbridge.openzeppelin.soliditywrappers.ERC20PresetFixedSupply;
 import net.consensys.htlcbridge.relayer.Relayer;
 import net.consensys.htlcbridge.relayer.RelayerConfig;
@@ -36,7 +38,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 public class IntegrationTests {
@@ -67,7 +69,9 @@ public class IntegrationTests {
   String transferSidechain;
   String transferMainNet;
 
-  public static final int NUM_USERS = 3;
+  // Number of concurrent users. Set itest.users to simulate many users, for example with
+  // -Ditest.users=1000 -Dhtlcbridge.blocking.mode=VIRTUAL.
+  public static final int NUM_USERS = Integer.getInteger("itest.users", 3);
   public static final int NUM_TRANFERS = 10;
   String[] userPKeys;
   String[] userAddresses;
@@ -166,11 +170,13 @@ public class IntegrationTests {
     launchRelayer("relayer1.config");
 //    this.relayerToSidechain.setRelayers(2, 0);
 
-    for (int i = 0; i < NUM_USERS; i++) {
-      int user = i;
-      Executors.newSingleThreadExecutor().execute(new Runnable() {
-        @Override
-        public void run() {
+    // Each user's transfers are a blocking flow. Run them concurrently, on virtual threads
+    // if htlcbridge.blocking.mode is VIRTUAL, and wait for all of them to finish.
+    ExecutorService userExecutor = BlockingExecutors.newExecutor("itest-user", NUM_USERS);
+    try (TaskScope<Void> scope = new TaskScope<>(userExecutor)) {
+      for (int u = 0; u < NUM_USERS; u++) {
+        int user = u;
+        scope.fork(() -> {
           String userAddress = userAddresses[user];
           String userPKey = userPKeys[user];
           LOG.info("Started thread for user {}: {}", user, userAddress);
@@ -235,11 +241,16 @@ public class IntegrationTests {
             }
 
           } catch (Exception ex) {
-              LOG.error("Error executing for user {}: {}", user, userAddress);
-
+            LOG.error("Error executing for user {}: {}: {}", user, userAddress, ex.toString());
+            throw ex;
           }
-        }
-      });
+          return null;
+        });
+      }
+      scope.join();
+    }
+    finally {
+      userExecutor.shutdown();
     }
 
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.web3j.utils.Async;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes a block of transfers, each needing a chain of blocking calls, the way the
+ * observers do. Compares the previous approach, in which continuations looked up a context
+ * with vertx.getOrCreateContext() on the web3j thread the call completed on, with
+ * ObserverExecutor, which runs calls on a worker pool and continuations on the verticle's
+ * context.<p>
+ * The auxiliary counters report, totalled over each iteration, the number of distinct contexts
+ * and threads continuations ran on in each operation (each extra thread is a context switch
+ * away from the verticle's event loop), and the number of continuations that did not run on
+ * the verticle's context.<p>
+ * Run with: gradle :relayer:jmh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObserverContinuationBenchmark {
+  // Simulated cost of a blocking call, such as fetching and decoding logs.
+  private static final long CALL_WORK = 2000;
+
+  @Param({"getOrCreateContext", "observerExecutor"})
+  String mode;
+
+  @Param({"100"})
+  int numTransfers;
+
+  // Blocking calls made per transfer, such as destTransferExists then newTransferFromOtherBlockchain.
+  @Param({"2"})
+  int callsPerTransfer;
+
+  Vertx vertx;
+  Context context;
+  ObserverExecutor executor;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long contexts;
+    public long threads;
+    public long offContextContinuations;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    this.vertx = Vertx.vertx();
+    CountDownLatch deployed = new CountDownLatch(1);
+    this.vertx.deployVerticle(new AbstractVerticle() {
+      @Override
+      public void start() {
+        ObserverContinuationBenchmark.this.context = this.context;
+        deployed.countDown();
+      }
+    });
+    deployed.await();
+    this.executor = new ObserverExecutor(this.vertx, this.context);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.vertx.close();
+  }
+
+  @Benchmark
+  public void processBlock(Counters counters) throws Exception {
+    Set<Object> contexts = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    Set<Object> threads = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    AtomicLong offContext = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(this.numTransfers);
+
+    this.context.runOnContext(v -> {
+      for (int i = 0; i < this.numTransfers; i++) {
+        Step step = new Step(this.callsPerTransfer, done, contexts, threads, offContext);
+        if (this.mode.equals("observerExecutor")) {
+          step.viaObserverExecutor();
+        }
+        else {
+          step.viaGetOrCreateContext();
+        }
+      }
+    });
+    done.await();
+
+    counters.contexts += contexts.size();
+    counters.threads += threads.size();
+    counters.offContextContinuations += offContext.get();
+  }
+
+  private static Object blockingCall() {
+    Blackhole.consumeCPU(CALL_WORK);
+    return null;
+  }
+
+  private class Step {
+    private int remaining;
+    private final CountDownLatch done;
+    private final Set<Object> contexts;
+    private final Set<Object> threads;
+    private final AtomicLong offContext;
+
+    Step(int remaining, CountDownLatch done, Set<Object> contexts, Set<Object> threads, AtomicLong offContext) {
+      this.remaining = remaining;
+      this.done = done;
+      this.contexts = contexts;
+      this.threads = threads;
+      this.offContext = offContext;
+    }
+
+    void viaGetOrCreateContext() {
+      Async.run(ObserverContinuationBenchmark::blockingCall).handle((result, th) -> {
+        Context continuationContext = vertx.getOrCreateContext();
+        continuationContext.runOnContext(event -> {
+          if (continued()) {
+            viaGetOrCreateContext();
+          }
+        });
+        return null;
+      });
+    }
+
+    void viaObserverExecutor() {
+      executor.execute(RpcCallContext.OBSERVER, null, ObserverContinuationBenchmark::blockingCall, (result, th) -> {
+        if (continued()) {
+          viaObserverExecutor();
+        }
+      });
+    }
+
+    // Record where the continuation ran. Returns true if there is another call to make.
+    private boolean continued() {
+      Context current = Vertx.currentContext();
+      this.contexts.add(current);
+      this.threads.add(Thread.currentThread());
+      if (current != context) {
+        this.offContext.incrementAndGet();
+      }
+      if (--this.remaining > 0) {
+        return true;
+      }
+      this.done.countDown();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import net.consensys.htlcbridge.store.archive.EventArchive;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * How transfer logs are held in an event archive.<p>
+ * Each entry is a decoded log: its kind, block number and log index, and the packed fields
+ * returned by rawData, rather than the JSON log returned by the node. The decoder streams
+ * topics and data into these records without keeping the JSON, and the observer handlers
+ * only take decoded logs, so replay needs no decoding. Topics other than the event's
+ * indexed fields, the transaction hash, and the removed flag are not archived.
+ */
+public abstract class ArchivedLogs {
+  static final byte SOURCE_TRANSFER_INIT = 1;
+  static final byte DEST_TRANSFER_COMPLETED = 2;
+
+  private ArchivedLogs() {
+  }
+
+  public static void append(EventArchive archive, SourceTransferInitLog log) throws IOException {
+    // The time lock isn't part of the log data, so is archived in front of it.
+    byte[] data = log.rawData();
+    byte[] payload = ByteBuffer.allocate(8 + data.length).putLong(log.getTimeLock()).put(data).array();
+    archive.append(SOURCE_TRANSFER_INIT, log.getBlockNumber(), log.getLogIndex(), payload);
+  }
+
+  public static void append(EventArchive archive, DestTransferCompletedLog log) throws IOException {
+    archive.append(DEST_TRANSFER_COMPLETED, log.getBlockNumber(), log.getLogIndex(), log.rawData());
+  }
+
+  /**
+   * Pass the archived logs for blocks fromBlock to toBlock inclusive to the handler.
+   *
+   * @return Number of logs replayed.
+   */
+  public static long replay(EventArchive archive, long fromBlock, long toBlock, TransferLogHandler handler) throws Exception {
+    return archive.replay(fromBlock, toBlock, (kind, blockNumber, logIndex, payload) -> {
+      if (kind == SOURCE_TRANSFER_INIT) {
+        long timeLock = payload.getLong();
+        byte[] data = new byte[payload.remaining()];
+        payload.get(data);
+        handler.onSourceTransferInit(SourceTransferInitLog.fromRawData(blockNumber, logIndex, timeLock, data));
+      }
+      else if (kind == DEST_TRANSFER_COMPLETED) {
+        byte[] data = new byte[payload.remaining()];
+        payload.get(data);
+        handler.onDestTransferCompleted(DestTransferCompletedLog.fromRawData(blockNumber, logIndex, data));
+      }
+    });
+  }
+}
@@ -14,34 +14,66 @@
  */
 package net.consensys.htlcbridge.relayer;
 
-import io.vertx.core.Context;
 import io.vertx.core.Vertx;
-import net.consensys.htlcbridge.common.DynamicGasProvider;
+import net.consensys.htlcbridge.relayer.ha.Checkpoint;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.relayer.watchtower.PostingVerifier;
+import net.consensys.htlcbridge.store.TransferEvent;
+import net.consensys.htlcbridge.store.TransferStage;
+import net.consensys.htlcbridge.store.TransferStore;
+import net.consensys.htlcbridge.store.archive.EventArchive;
+import net.consensys.htlcbridge.store.offheap.CommitmentSet;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
 import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.web3j.crypto.Credentials;
+import org.apache.tuweni.bytes.Bytes;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthBlockNumber;
-import org.web3j.protocol.http.HttpService;
-import org.web3j.tx.FastRawTransactionManager;
 import org.web3j.tx.RawTransactionManager;
-import org.web3j.tx.TransactionManager;
-import org.web3j.tx.gas.ContractGasProvider;
-import org.web3j.tx.response.PollingTransactionReceiptProcessor;
-import org.web3j.tx.response.TransactionReceiptProcessor;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class BlockchainObserver {
   private static final Logger LOG = LogManager.getLogger(BlockchainObserver.class);
 
+  /**
+   * What happened to a transfer once a submission verticle finished with it.
+   */
+  public enum Outcome {
+    // This relayer posted or finalised the transfer.
+    SUBMITTED,
+    // There was nothing to do: the transfer had already been posted or finalised, for
+    // instance by another relayer, or was no longer open.
+    ALREADY_SUBMITTED,
+    // The transfer was not posted for now, as the destination contract doesn't hold enough of
+    // the token to pay it out. The transfer stays in flight, and is submitted again later.
+    DEFERRED,
+    FAILED
+  }
+
+  // Number of completed transfers remembered, for snapshots.
+  static final int MAX_KNOWN_TRANSFERS = 10000;
+  // Initial size of the set of all submitted transfers. It grows as needed.
+  private static final int INITIAL_SUBMITTED_TRANSFERS = 1024;
+  // Milliseconds between removing transfers whose timeLock has passed from the set.
+  private static final long SUBMITTED_TRANSFERS_EXPIRY_PERIOD = 60000;
+
   Vertx vertx;
+  // Runs the ingestion verticle's blocking calls on a worker pool, and continuations on its event loop.
+  protected ObserverExecutor executor;
 
+  protected final String routeName;
   protected final int sourceConfirmations;
   protected final int destConfirmations;
 
@@ -49,92 +81,147 @@ public abstract class BlockchainObserver {
   protected final Erc20HtlcTransfer destTransferContract;
   protected final Web3j sourceWeb3j;
   protected final Web3j destWeb3j;
+  protected final TransferLogFetcher sourceLogFetcher;
+  protected final TransferLogFetcher destLogFetcher;
 
-  // TODO volitile or atomic reference compareAndUpdate
+  // All blocks up to and including this block have been processed. Only updated on the
+  // ingestion verticle's context, and read by the checkpoint writer.
   protected AtomicLong lastBlockChecked;
+  private volatile boolean rangeInProgress;
+  // Lifecycle of the transfers seen, or null if not configured.
+  protected TransferStore transferStore;
+  // Raw logs ingested, or null if not configured.
+  protected EventArchive eventArchive;
+  // Checks the postings of transfers against the source transfers, or null if not configured.
+  protected PostingVerifier postingVerifier;
+  // Transfers sent to the submission verticles and not yet completed: commitment to block number.
+  private final Map<String, Long> inFlight = new ConcurrentHashMap<>();
+  // Recently completed transfers: commitment to outcome, oldest first.
+  private final Map<String, Outcome> knownTransfers = Collections.synchronizedMap(
+      new LinkedHashMap<String, Outcome>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+          return size() > MAX_KNOWN_TRANSFERS;
+        }
+      });
+  // All transfers posted or finalised, until their timeLock passes and they can no longer
+  // be acted on. Held off-heap, so that it doesn't need to be bounded like knownTransfers.
+  private final CommitmentSet submittedTransfers = new CommitmentSet(INITIAL_SUBMITTED_TRANSFERS);
+  private volatile long lastSubmittedTransfersExpiry = System.currentTimeMillis();
+  // Source contract's time lock period in seconds.
+  protected long timeLockPeriod;
 
   protected boolean isSourceObserver;
 
-  public BlockchainObserver(
-      String sourceUri, String transferContractAddress, int sourceBlockPeriod, int sourceConfirmations,
-      String sourcePKey, int sourceRetries, long sourceBcId, String sourceGasStrategy,
-      String destUri, String receiverContractAddress, int destBlockPeriod, int destConfirmations,
-      String destPKey, int destRetries, long destBcId, String destGasStrategy) throws Exception {
+  public BlockchainObserver(String routeName,
+      ChainResources source, String transferContractAddress, int sourceConfirmations,
+      ChainResources dest, String receiverContractAddress, int destConfirmations) {
+    this.routeName = routeName;
     this.sourceConfirmations = sourceConfirmations;
     this.destConfirmations = destConfirmations;
-    this.sourceWeb3j = Web3j.build(new HttpService(sourceUri), sourceBlockPeriod, new ScheduledThreadPoolExecutor(5));
-    ContractGasProvider sourceGasProvider = new DynamicGasProvider(this.sourceWeb3j, sourceUri, sourceGasStrategy);
-    this.destWeb3j = Web3j.build(new HttpService(destUri), destBlockPeriod, new ScheduledThreadPoolExecutor(5));
-    ContractGasProvider destGasProvider = new DynamicGasProvider(this.destWeb3j, destUri, destGasStrategy);
+    this.sourceWeb3j = source.getWeb3j();
+    this.destWeb3j = dest.getWeb3j();
 
-    Credentials sourceCredentials = Credentials.create(sourcePKey);
-    Credentials destCredentials = Credentials.create(destPKey);
-    TransactionReceiptProcessor sourceTxrProcessor = new PollingTransactionReceiptProcessor(this.sourceWeb3j, sourceBlockPeriod, sourceRetries);
-    TransactionManager sourceTm = new FastRawTransactionManager(this.sourceWeb3j, sourceCredentials, sourceBcId, sourceTxrProcessor);
-    TransactionReceiptProcessor destTxrProcessor = new PollingTransactionReceiptProcessor(this.destWeb3j, destBlockPeriod, destRetries);
-    TransactionManager destTm = new FastRawTransactionManager(this.destWeb3j, destCredentials, destBcId, destTxrProcessor);
+    this.srcTransferContract = source.loadTransferContract(transferContractAddress);
+    this.destTransferContract = dest.loadTransferContract(receiverContractAddress);
 
-    this.srcTransferContract = Erc20HtlcTransfer.load(transferContractAddress, sourceWeb3j, sourceTm, sourceGasProvider);
-    this.destTransferContract = Erc20HtlcTransfer.load(receiverContractAddress, destWeb3j, destTm, destGasProvider);
+    this.sourceLogFetcher = source.createLogFetcher(transferContractAddress);
+    this.destLogFetcher = dest.createLogFetcher(receiverContractAddress);
   }
 
-  public void init(Vertx vertx) {
+  /**
+   * @param vertx The Vert.x instance.
+   * @param executor Executor of the ingestion verticle. All processing of new blocks
+   *   happens on its context.
+   */
+  public void init(Vertx vertx, ObserverExecutor executor) {
     this.vertx = vertx;
+    this.executor = executor;
   }
 
 
 
 
-  public abstract void checkNewBlock();
-
-  protected void checkNewBlock(final Web3j web3j) {
-    CompletableFuture<EthBlockNumber> futureEthBlockNumber = web3j.ethBlockNumber().sendAsync();
-    Context context = vertx.getOrCreateContext();
-    futureEthBlockNumber.handle((ethBlockNumber, th) -> {
-      context.runOnContext(event -> {
-        if (th == null) {
-          processNextBlock(ethBlockNumber);
-        } else {
-          LOG.error("{}: Get block number failed: Error: {}", observerName(), th.toString());
-        }
-      });
-      return null;
-    });
-  }
-
+  /**
+   * Process the blocks up to the new block number, less the number of confirmations.
+   * Called by the ingestion verticle of the chain being observed.
+   */
   protected abstract void processNextBlock(final EthBlockNumber ethBlockNumber);
 
-  protected DefaultBlockParameter[] determineIfBlockToProcess(final EthBlockNumber ethBlockNumber, final int confirmations) {
+  /**
+   * Determine the range of blocks that have enough confirmations and haven't yet been processed.
+   * The watermark is not advanced until the range has been processed: call rangeProcessed or
+   * rangeFailed once the logs for the range have been fetched and dispatched, or failed.
+   * Only one range is processed at a time.
+   *
+   * @return The first and last block to process, or null if there are no new blocks to process,
+   *   or a range is still being processed.
+   */
+  protected long[] determineIfBlockToProcess(final EthBlockNumber ethBlockNumber, final int confirmations) {
     BigInteger blockNumber = ethBlockNumber.getBlockNumber();
     long currentBlockNumber = blockNumber.longValue();
 
+    if (this.rangeInProgress) {
+      LOG.info("{}: Current Block: {}. Previous blocks still being processed", observerName(), blockNumber);
+      return null;
+    }
     // Check for events between last block checked and current block - number of confirmations
     long endBlockNumber = currentBlockNumber - confirmations;
-    boolean successful;
-    long startBlockNumber;
-    do {
-      long theLastBlockChecked = this.lastBlockChecked.get();
-      startBlockNumber = theLastBlockChecked + 1;
-      if (startBlockNumber > endBlockNumber) {
-        LOG.info("{}: Current Block: {}. No new blocks to process", observerName(), blockNumber);
-        return null;
-      }
-      // Update lastBlockChecked, indicating that the block(s) lastBlockChecked and before are
-      // being of will be processed.
-      successful = this.lastBlockChecked.compareAndSet(theLastBlockChecked, endBlockNumber);
-    } while (!successful);
+    long startBlockNumber = this.lastBlockChecked.get() + 1;
+    if (startBlockNumber > endBlockNumber) {
+      LOG.info("{}: Current Block: {}. No new blocks to process", observerName(), blockNumber);
+      return null;
+    }
+    this.rangeInProgress = true;
 
     LOG.info("{}: Current Block: {}. Processing blocks {} to {}", observerName(), currentBlockNumber, startBlockNumber, endBlockNumber);
-    DefaultBlockParameter startBlock = DefaultBlockParameter.valueOf(BigInteger.valueOf(startBlockNumber));
-    DefaultBlockParameter endBlock = DefaultBlockParameter.valueOf(BigInteger.valueOf(endBlockNumber));
-    return new DefaultBlockParameter[]{startBlock, endBlock};
+    return new long[]{startBlockNumber, endBlockNumber};
+  }
+
+  /**
+   * The transfers in the blocks up to and including endBlockNumber have been dispatched.
+   */
+  protected void rangeProcessed(long endBlockNumber) {
+    this.lastBlockChecked.set(endBlockNumber);
+    this.rangeInProgress = false;
+    long now = System.currentTimeMillis();
+    if (now - this.lastSubmittedTransfersExpiry > SUBMITTED_TRANSFERS_EXPIRY_PERIOD) {
+      this.lastSubmittedTransfersExpiry = now;
+      int expired = this.submittedTransfers.expire(now / 1000);
+      LOG.debug("{}: Expired {} submitted transfers, {} remaining", observerName(), expired, this.submittedTransfers.size());
+    }
+  }
+
+  /**
+   * Processing of the range failed. The range will be processed again on the next new block.
+   */
+  protected void rangeFailed() {
+    this.rangeInProgress = false;
+  }
+
+  /**
+   * @return true if the logs for a range of blocks are being fetched.
+   */
+  public boolean isRangeInProgress() {
+    return this.rangeInProgress;
   }
 
 
   protected void setLackBlockCheckedInitialValue(
       final int blockPeriod, final int confirmations, final Erc20HtlcTransfer transferContract, final Web3j web3j) throws Exception {
-    BigInteger timeLockPeriod = transferContract.sourceTimeLockPeriod().send();
-    BigInteger currentBlockNumber = web3j.ethBlockNumber().send().getBlockNumber();
+    // Issue both calls concurrently.
+    CompletableFuture<BigInteger> timeLockPeriodFuture =
+        RpcCallContext.sendAsync(RpcCallContext.OBSERVER, null, transferContract.sourceTimeLockPeriod()::send);
+    CompletableFuture<BigInteger> currentBlockNumberFuture =
+        RpcCallContext.sendAsync(RpcCallContext.OBSERVER, null, () -> web3j.ethBlockNumber().send().getBlockNumber());
+    BigInteger timeLockPeriod;
+    BigInteger currentBlockNumber;
+    try {
+      timeLockPeriod = timeLockPeriodFuture.get();
+      currentBlockNumber = currentBlockNumberFuture.get();
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    }
     long earliestBlockToCheck = currentBlockNumber.longValue() - (timeLockPeriod.longValue() * 1000 / blockPeriod);
     long lastBlockCheckedL;
     if (earliestBlockToCheck < 0) {
@@ -146,9 +233,227 @@ public abstract class BlockchainObserver {
     LOG.info("{}: Init: Current: {}, Earliest: {}, Last: {}, TimeLock: {} Period: {}, Confirmations: {}",
         observerName(), currentBlockNumber, earliestBlockToCheck, lastBlockCheckedL, timeLockPeriod, blockPeriod, confirmations);
     this.lastBlockChecked = new AtomicLong(lastBlockCheckedL);
+    this.timeLockPeriod = timeLockPeriod.longValue();
+  }
+
+  /**
+   * @return The source contract's time lock period in seconds.
+   */
+  public long getTimeLockPeriod() {
+    return this.timeLockPeriod;
+  }
+
+  public void setTransferStore(TransferStore transferStore) {
+    this.transferStore = transferStore;
+  }
+
+  /**
+   * Write a lifecycle event through to the transfer store, if there is one.
+   */
+  protected void record(TransferEvent event) {
+    if (this.transferStore == null) {
+      return;
+    }
+    try {
+      this.transferStore.append(event);
+    } catch (IOException ex) {
+      LOG.error("{}: Error writing transfer {} {} to store: {}",
+          observerName(), event.getCommitment(), event.getStage(), ex.toString());
+    }
+  }
+
+  public void setEventArchive(EventArchive eventArchive) {
+    this.eventArchive = eventArchive;
+  }
+
+  public EventArchive getEventArchive() {
+    return this.eventArchive;
+  }
+
+  public void setPostingVerifier(PostingVerifier postingVerifier) {
+    this.postingVerifier = postingVerifier;
+  }
+
+  /**
+   * @return The last block in the event archive, before a range of logs is archived. Logs
+   *   in this block or earlier are already archived, as ranges are re-fetched after a restart.
+   */
+  protected long archivedUpTo() {
+    return this.eventArchive == null ? Long.MAX_VALUE : this.eventArchive.lastBlock();
+  }
+
+  /**
+   * Write a raw log through to the event archive, if there is one.
+   */
+  protected void archive(ArchiveWrite write, long blockNumber, int logIndex) {
+    if (this.eventArchive == null) {
+      return;
+    }
+    try {
+      write.append(this.eventArchive);
+    } catch (IOException ex) {
+      LOG.error("{}: Error archiving log {} of block {}: {}", observerName(), logIndex, blockNumber, ex.toString());
+    }
+  }
+
+  protected interface ArchiveWrite {
+    void append(EventArchive archive) throws IOException;
+  }
+
+  /**
+   * Pass the archived logs for a range of blocks back through this observer's log handler,
+   * to rebuild the transfer store, or to test changes to the pipeline against real traffic.
+   *
+   * @param fromBlock First block to replay.
+   * @param toBlock Last block to replay.
+   * @param dispatch True to also send the transfers to the submission verticles. This
+   *   requires the relayer to be active.
+   * @return Number of logs replayed.
+   */
+  public abstract long replay(long fromBlock, long toBlock, boolean dispatch) throws Exception;
+
+  /**
+   * @return The state of the transfer in the transfer store, or null if there is no store,
+   *   or the store knows nothing about the transfer.
+   */
+  protected TransferStage storedState(String commitment) {
+    return this.transferStore == null ? null : this.transferStore.getState(commitment);
+  }
+
+  /**
+   * Record that a transfer has been sent to the submission verticles.
+   */
+  protected void transferDispatched(String commitment, long blockNumber) {
+    this.inFlight.put(commitment, blockNumber);
+  }
+
+  /**
+   * Record that a submission verticle has finished with a transfer, whether or not it succeeded.
+   */
+  protected void transferCompleted(String commitment, Outcome outcome) {
+    transferCompleted(commitment, outcome, 0);
+  }
+
+  /**
+   * @param timeLock The transfer's timeLock in seconds, or zero if it isn't known, in which
+   *   case the longest timeLock a transfer completed now could have is used.
+   */
+  protected void transferCompleted(String commitment, Outcome outcome, long timeLock) {
+    this.knownTransfers.put(commitment, outcome);
+    if (outcome != Outcome.FAILED) {
+      long expiry = timeLock > 0 ? timeLock : System.currentTimeMillis() / 1000 + this.timeLockPeriod;
+      this.submittedTransfers.add(Bytes.fromHexString(commitment).toArrayUnsafe(), expiry);
+    }
+    this.inFlight.remove(commitment);
+  }
+
+  /**
+   * @return true if the transfer is known to have been posted or finalised, so that the
+   *   submission verticle doesn't need to check the chain.
+   */
+  protected boolean isKnownSubmitted(String commitment) {
+    Outcome outcome = this.knownTransfers.get(commitment);
+    if (outcome != null) {
+      return outcome == Outcome.SUBMITTED || outcome == Outcome.ALREADY_SUBMITTED;
+    }
+    return this.submittedTransfers.contains(Bytes.fromHexString(commitment).toArrayUnsafe());
+  }
+
+  public int getNumInFlight() {
+    return this.inFlight.size();
+  }
+
+  /**
+   * @return The watermark below which all transfers have been processed, and the transfers in flight.
+   */
+  public Checkpoint.ObserverCheckpoint checkpoint() {
+    long watermark = this.lastBlockChecked.get();
+    Map<String, Long> inFlightCopy = new LinkedHashMap<>(this.inFlight);
+    for (Long blockNumber: inFlightCopy.values()) {
+      watermark = Math.min(watermark, blockNumber - 1);
+    }
+    return new Checkpoint.ObserverCheckpoint(watermark, inFlightCopy);
+  }
+
+  /**
+   * @return A checkpoint which also includes the hash of the watermark block and the
+   *   recently completed transfers.
+   */
+  public Checkpoint.ObserverCheckpoint snapshot() throws IOException {
+    Checkpoint.ObserverCheckpoint snapshot = checkpoint();
+    if (snapshot.watermark >= 0) {
+      snapshot.watermarkBlockHash = blockHash(snapshot.watermark);
+    }
+    snapshot.knownTransfers = new LinkedHashMap<>();
+    synchronized (this.knownTransfers) {
+      for (Map.Entry<String, Outcome> entry: this.knownTransfers.entrySet()) {
+        snapshot.knownTransfers.put(entry.getKey(), entry.getValue().name());
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Continue from a snapshot exported by another relayer. The snapshot is used only if the
+   * hash of its watermark block matches the chain. The last tailBlocks blocks before the
+   * watermark are processed again, so that only the tail of the snapshot is trusted.
+   *
+   * @return true if the snapshot was used.
+   */
+  public boolean bootstrap(Checkpoint.ObserverCheckpoint snapshot, int tailBlocks) throws IOException {
+    if (snapshot.watermark >= 0) {
+      String hash = blockHash(snapshot.watermark);
+      if (snapshot.watermarkBlockHash == null || !snapshot.watermarkBlockHash.equalsIgnoreCase(hash)) {
+        LOG.warn("{}: Snapshot block {} hash {} does not match chain: {}",
+            observerName(), snapshot.watermark, snapshot.watermarkBlockHash, hash);
+        return false;
+      }
+    }
+    if (snapshot.knownTransfers != null) {
+      for (Map.Entry<String, String> entry: snapshot.knownTransfers.entrySet()) {
+        this.knownTransfers.put(entry.getKey(), Outcome.valueOf(entry.getValue()));
+      }
+    }
+    restore(new Checkpoint.ObserverCheckpoint(Math.max(-1, snapshot.watermark - tailBlocks), snapshot.inFlight));
+    return true;
+  }
+
+  private String blockHash(long blockNumber) throws IOException {
+    Web3j web3j = this.isSourceObserver ? this.sourceWeb3j : this.destWeb3j;
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.OBSERVER, (String) null)) {
+      EthBlock.Block block = web3j.ethGetBlockByNumber(
+          DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), false).send().getBlock();
+      return block == null ? null : block.getHash();
+    }
+  }
+
+  /**
+   * Continue from a checkpoint, if it is later than the start of the time lock window.
+   * Transfers in flight when the checkpoint was written are at or above the watermark,
+   * and so are fetched and submitted again. Submission is idempotent: transfers already
+   * posted or finalised are skipped.
+   */
+  public void restore(Checkpoint.ObserverCheckpoint checkpoint) {
+    long current = this.lastBlockChecked.get();
+    if (checkpoint.watermark > current) {
+      this.lastBlockChecked.set(checkpoint.watermark);
+      LOG.info("{}: Restored watermark {} ({} transfers in flight), was {}",
+          observerName(), checkpoint.watermark, checkpoint.inFlight.size(), current);
+    }
+    else {
+      LOG.info("{}: Checkpoint watermark {} is before the time lock window, starting from {}",
+          observerName(), checkpoint.watermark, current);
+    }
+  }
+
+  /**
+   * @return Name used for this observer in checkpoints.
+   */
+  public String checkpointName() {
+    return this.routeName + (this.isSourceObserver ? "/source" : "/dest");
   }
 
-  private String observerName() {
-    return this.isSourceObserver ? "Source Observer" : "Dest Observer";
+  protected String observerName() {
+    return (this.isSourceObserver ? "Source Observer " : "Dest Observer ") + this.routeName;
   }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+/**
+ * Configuration of a blockchain the relayer connects to. Routes refer to chains by name.
+ */
+public class ChainConfig {
+  public String name;
+  public String bcUri;
+  public long bcId;
+  public int blockPeriod;
+  public int confirmations;
+  public int retries;
+  public String relayerPKey;
+  public String gasStrategy;
+  // How often to check for new blocks, in milliseconds. Defaults to the block period.
+  public int pollPeriod;
+
+  // Default constructor needed for loading from JSON.
+  public ChainConfig() { }
+
+  public ChainConfig(String name, String bcUri, long bcId, int blockPeriod, int confirmations,
+                     int retries, String relayerPKey, String gasStrategy) {
+    this.name = name;
+    this.bcUri = bcUri;
+    this.bcId = bcId;
+    this.blockPeriod = blockPeriod;
+    this.confirmations = confirmations;
+    this.retries = retries;
+    this.relayerPKey = relayerPKey;
+    this.gasStrategy = gasStrategy;
+  }
+}
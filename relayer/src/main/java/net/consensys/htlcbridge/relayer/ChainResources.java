@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import net.consensys.htlcbridge.common.DynamicGasProvider;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.relayer.rpc.RpcTransport;
+import net.consensys.htlcbridge.relayer.rpc.TaggedGasProvider;
+import net.consensys.htlcbridge.relayer.rpc.TaggedTransactionReceiptProcessor;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import okhttp3.OkHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.tx.FastRawTransactionManager;
+import org.web3j.tx.TransactionManager;
+import org.web3j.tx.gas.ContractGasProvider;
+import org.web3j.tx.response.PollingTransactionReceiptProcessor;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Resources for one blockchain, shared by all routes which use the chain: the Web3j client,
+ * the HTTP client used to fetch logs, the gas oracle, and the transaction manager, which
+ * allocates nonces for the relayer's account. New blocks on the chain are detected by the
+ * chain's ingestion verticle.
+ */
+public class ChainResources {
+  private static final Logger LOG = LogManager.getLogger(ChainResources.class);
+
+  private final ChainConfig config;
+  private final Web3j web3j;
+  private final OkHttpClient logClient;
+  private final ContractGasProvider gasProvider;
+  private final TransactionManager transactionManager;
+
+  public ChainResources(ChainConfig config) throws Exception {
+    this.config = config;
+    this.web3j = Web3j.build(RpcTransport.createHttpService(config.bcUri), config.blockPeriod, new ScheduledThreadPoolExecutor(5));
+    this.logClient = RpcTransport.createHttpClient(config.bcUri);
+
+    // The gas oracle is initialised when the first transaction is submitted, so creating
+    // the chain's resources doesn't make any JSON RPC calls. The gas oracle fetches
+    // transactions on its own threads, so propagate the caller's tag to them.
+    Executor gasOracleExecutor = RpcCallContext.propagating(DynamicGasProvider.DEFAULT_EXECUTOR);
+    this.gasProvider = new TaggedGasProvider(
+        new DynamicGasProvider(this.web3j, config.bcUri, config.gasStrategy, gasOracleExecutor, true));
+
+    Credentials credentials = Credentials.create(config.relayerPKey);
+    TransactionReceiptProcessor txrProcessor = new TaggedTransactionReceiptProcessor(this.web3j,
+        new PollingTransactionReceiptProcessor(this.web3j, config.blockPeriod, config.retries));
+    // One transaction manager per chain, so that all routes share the relayer account's nonce.
+    this.transactionManager = new FastRawTransactionManager(this.web3j, credentials, config.bcId, txrProcessor);
+    LOG.info("Chain {}: URI: {}, Chain Id: {}, Relayer: {}", config.name, config.bcUri, config.bcId, credentials.getAddress());
+  }
+
+  public String getName() {
+    return this.config.name;
+  }
+
+  public ChainConfig getConfig() {
+    return this.config;
+  }
+
+  public Web3j getWeb3j() {
+    return this.web3j;
+  }
+
+  public int getBlockPeriod() {
+    return this.config.blockPeriod;
+  }
+
+  public int getPollPeriod() {
+    return this.config.pollPeriod > 0 ? this.config.pollPeriod : this.config.blockPeriod;
+  }
+
+  public Erc20HtlcTransfer loadTransferContract(String contractAddress) {
+    return Erc20HtlcTransfer.load(contractAddress, this.web3j, this.transactionManager, this.gasProvider);
+  }
+
+  public TransferLogFetcher createLogFetcher(String contractAddress) {
+    return new TransferLogFetcher(this.logClient, this.config.bcUri, contractAddress);
+  }
+}
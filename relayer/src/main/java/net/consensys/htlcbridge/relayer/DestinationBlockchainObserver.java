@@ -14,111 +14,199 @@
  */
 package net.consensys.htlcbridge.relayer;
 
-import io.reactivex.Flowable;
-import io.vertx.core.Context;
 import net.consensys.htlcbridge.common.RevertReason;
+import net.consensys.htlcbridge.relayer.bus.EventBusAddresses;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.relayer.watchtower.PostingVerifier;
 import net.consensys.htlcbridge.transfer.TransferState;
-import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogDecoder;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import net.consensys.htlcbridge.store.TransferEvent;
+import net.consensys.htlcbridge.store.TransferRecord;
+import net.consensys.htlcbridge.store.TransferStage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
-import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.RemoteFunctionCall;
 import org.web3j.protocol.core.methods.response.EthBlockNumber;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
 
+import java.io.IOException;
 import java.math.BigInteger;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 public class DestinationBlockchainObserver extends BlockchainObserver {
   private static final Logger LOG = LogManager.getLogger(DestinationBlockchainObserver.class);
 
-  public DestinationBlockchainObserver(
-      String sourceUri, String transferContractAddress, int sourceBlockPeriod, int sourceConfirmations,
-      String sourcePKey, int sourceRetries, long sourceBcId, String sourceGasStrategy,
-      String destUri, String receiverContractAddress, int destBlockPeriod, int destConfirmations,
-      String destPKey, int destRetries, long destBcId, String destGasStrategy) throws Exception {
-    super(
-        sourceUri, transferContractAddress, sourceBlockPeriod, sourceConfirmations,
-        sourcePKey, sourceRetries, sourceBcId, sourceGasStrategy,
-        destUri, receiverContractAddress, destBlockPeriod, destConfirmations,
-        destPKey, destRetries, destBcId, destGasStrategy);
+  public DestinationBlockchainObserver(String routeName,
+      ChainResources source, String transferContractAddress, int sourceConfirmations,
+      ChainResources dest, String receiverContractAddress, int destConfirmations) throws Exception {
+    super(routeName, source, transferContractAddress, sourceConfirmations, dest, receiverContractAddress, destConfirmations);
 
     this.isSourceObserver = false;
-    setLackBlockCheckedInitialValue(destBlockPeriod, destConfirmations, this.destTransferContract, this.destWeb3j);
+    setLackBlockCheckedInitialValue(dest.getBlockPeriod(), destConfirmations, this.destTransferContract, this.destWeb3j);
   }
 
-
-  public void checkNewBlock() {
-    checkNewBlock(this.destWeb3j);
+  protected void processNextBlock(EthBlockNumber ethBlockNumber) {
+    long[] range = determineIfBlockToProcess(ethBlockNumber, this.destConfirmations);
+    if (range == null) {
+      return;
+    }
+    final long startBlock = range[0];
+    final long endBlock = range[1];
+
+    // Postings are only fetched if they are being verified.
+    PostingVerifier verifier = this.postingVerifier;
+    List<DestTransferInitLog> postings = new ArrayList<>();
+    Callable<List<DestTransferCompletedLog>> fetchLogs = verifier == null
+        ? () -> this.destLogFetcher.fetchDestTransferCompleted(startBlock, endBlock)
+        : () -> fetchCompletedAndPostings(startBlock, endBlock, postings);
+    this.executor.execute(RpcCallContext.OBSERVER, null, fetchLogs, (logs, th) -> {
+      if (th == null) {
+        long archivedUpTo = archivedUpTo();
+        for (DestTransferCompletedLog txCompleteEvent: logs) {
+          if (txCompleteEvent.getBlockNumber() > archivedUpTo) {
+            archive(archive -> ArchivedLogs.append(archive, txCompleteEvent), txCompleteEvent.getBlockNumber(), txCompleteEvent.getLogIndex());
+          }
+          handleTransferCompleted(txCompleteEvent, true);
+        }
+        if (verifier != null) {
+          for (DestTransferInitLog posting: postings) {
+            verifier.onDestTransferInit(posting);
+          }
+          verifier.destBlockProcessed(endBlock);
+        }
+        rangeProcessed(endBlock);
+      } else {
+        rangeFailed();
+        LOG.error("{}: Get logs for blocks {} to {} failed: Error: {}", observerName(), startBlock, endBlock, th.toString());
+      }
+    });
   }
 
+  private List<DestTransferCompletedLog> fetchCompletedAndPostings(long startBlock, long endBlock,
+                                                                  List<DestTransferInitLog> postings) throws IOException {
+    List<DestTransferCompletedLog> completed = new ArrayList<>();
+    this.destLogFetcher.fetch(startBlock, endBlock, new TransferLogHandler() {
+      @Override
+      public void onDestTransferCompleted(DestTransferCompletedLog log) {
+        completed.add(log);
+      }
 
-  protected void processNextBlock(EthBlockNumber ethBlockNumber) {
-    DefaultBlockParameter[] result = determineIfBlockToProcess(ethBlockNumber, this.destConfirmations);
-    if (result == null) {
-      return;
+      @Override
+      public void onDestTransferInit(DestTransferInitLog log) {
+        postings.add(log);
+      }
+    }, TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC, TransferLogDecoder.DEST_TRANSFER_INIT_TOPIC);
+    return completed;
+  }
+
+  private void handleTransferCompleted(DestTransferCompletedLog txCompleteEvent, boolean dispatch) {
+    String commitmentS = Bytes.wrap(txCompleteEvent.getCommitment()).toHexString();
+    record(TransferEvent.stage(TransferStage.DEST_COMPLETED, commitmentS, txCompleteEvent.getBlockNumber(), System.currentTimeMillis()));
+    if (dispatch) {
+      transferDispatched(commitmentS, txCompleteEvent.getBlockNumber());
+      this.vertx.eventBus().send(EventBusAddresses.finaliseAtSource(this.routeName), txCompleteEvent);
     }
-    DefaultBlockParameter startBlock = result[0];
-    DefaultBlockParameter endBlock = result[1];
+  }
 
-    Flowable<Erc20HtlcTransfer.DestTransferCompletedEventResponse> transferCompletedEvents =
-        this.destTransferContract.destTransferCompletedEventFlowable(startBlock, endBlock);
-    transferCompletedEvents.subscribe(new io.reactivex.functions.Consumer<Erc20HtlcTransfer.DestTransferCompletedEventResponse>() {
+  @Override
+  public long replay(long fromBlock, long toBlock, boolean dispatch) throws Exception {
+    if (this.eventArchive == null) {
+      throw new IllegalStateException(observerName() + ": No event archive configured");
+    }
+    if (dispatch && this.vertx == null) {
+      throw new IllegalStateException(observerName() + ": Can not dispatch replayed transfers until active");
+    }
+    return ArchivedLogs.replay(this.eventArchive, fromBlock, toBlock, new TransferLogHandler() {
       @Override
-      public void accept(Erc20HtlcTransfer.DestTransferCompletedEventResponse txCompleteEvent) {
-        byte[] commitment = txCompleteEvent.commitment;
-        byte[] preimageSalt = txCompleteEvent.preimage;
-        String commitmentS = Bytes.wrap(commitment).toHexString();
-        String preimageSaltS = Bytes.wrap(preimageSalt).toHexString();
-        LOG.info("Detected Transfer {}: PreimageSalt: {}", commitmentS, preimageSaltS);
-
-        // Check whether another relayer has already submitted this transfer.
-        CompletableFuture<BigInteger> futureState = srcTransferContract.sourceTransferState(commitment).sendAsync();
-        Context context = vertx.getOrCreateContext();
-        futureState.handle((state, th) -> {
-          context.runOnContext(event -> {
-            if (th == null) {
-              if (!TransferState.OPEN.equals(state)) {
-                LOG.info(" Transfer {} state is: {}", commitmentS, TransferState.create(state));
-              } else {
-                finalseTransferAtSource(commitmentS, commitment, preimageSalt);
-              }
-            } else {
-              LOG.error("Transfer {}: Error: {}", commitmentS, th.toString());
-            }
-          });
-          return null;
-        });
+      public void onDestTransferCompleted(DestTransferCompletedLog log) {
+        handleTransferCompleted(log, dispatch);
       }
     });
   }
 
-  private void finalseTransferAtSource(final String commitmentS, final byte[] commitment, final byte[] preimageSalt) {
-    LOG.info("Finalising transfer {}", commitmentS);
-
-    CompletableFuture<TransactionReceipt> futureTxr = srcTransferContract.finaliseTransferToOtherBlockchain(commitment, preimageSalt).sendAsync();
-    Context context = vertx.getOrCreateContext();
-    futureTxr.handle((txr, th) -> {
-      context.runOnContext(event -> {
-        if (th == null) {
-          if (txr.isStatusOK()) {
-            LOG.info("Transfer {} finalised", commitmentS);
-          }
-          else {
-            LOG.error("Transfer {} failed: {}", commitmentS, txr.getStatus());
+  /**
+   * Finalise a transfer on the source blockchain, unless it is no longer open. Called by
+   * the submission verticles.
+   *
+   * @param txCompleteEvent The completed transfer.
+   * @param executor Executor of the calling verticle.
+   * @return Completes once the transfer has been finalised, skipped, or has failed.
+   */
+  public Future<Void> finaliseTransfer(DestTransferCompletedLog txCompleteEvent, ObserverExecutor executor) {
+    byte[] commitment = txCompleteEvent.getCommitment();
+    byte[] preimageSalt = txCompleteEvent.getPreimage();
+    String commitmentS = Bytes.wrap(commitment).toHexString();
+    String preimageSaltS = Bytes.wrap(preimageSalt).toHexString();
+    LOG.info("Detected Transfer {}: PreimageSalt: {}", commitmentS, preimageSaltS);
+    TransferStage storedState = storedState(commitmentS);
+    if (isKnownSubmitted(commitmentS) || (storedState != null && storedState.isFinal())) {
+      LOG.info("Transfer {} already known to be finalised or refunded", commitmentS);
+      transferCompleted(commitmentS, Outcome.ALREADY_SUBMITTED);
+      return Future.succeededFuture();
+    }
+    Promise<Outcome> done = Promise.promise();
+
+    // Check whether another relayer has already submitted this transfer.
+    RemoteFunctionCall<BigInteger> stateCall = srcTransferContract.sourceTransferState(commitment);
+    executor.execute(RpcCallContext.OBSERVER, commitment, stateCall::send, (state, th) -> {
+      if (th == null) {
+        if (!TransferState.OPEN.equals(state)) {
+          TransferState transferState = TransferState.create(state);
+          LOG.info(" Transfer {} state is: {}", commitmentS, transferState);
+          if (transferState == TransferState.FINALILISED || transferState == TransferState.REFUNDED) {
+            TransferStage stage = transferState == TransferState.FINALILISED ? TransferStage.SOURCE_FINALISED : TransferStage.SOURCE_REFUNDED;
+            record(TransferEvent.stage(stage, commitmentS, TransferRecord.UNKNOWN_BLOCK, System.currentTimeMillis()));
           }
+          done.complete(Outcome.ALREADY_SUBMITTED);
         } else {
-          if (th instanceof TransactionException) {
-            TransactionException ex = (TransactionException) th;
-            LOG.error("Transfer {} failed: Revert Reason: {}", commitmentS, RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
-          }
-          else {
-            LOG.error("Transfer {} failed: Error: {}", commitmentS, th.toString());
-          }
+          finalseTransferAtSource(commitmentS, commitment, preimageSalt, executor, done);
         }
-      });
-      return null;
+      } else {
+        LOG.error("Transfer {}: Error: {}", commitmentS, th.toString());
+        done.fail(th);
+      }
+    });
+    return done.future()
+        .onComplete(ar -> transferCompleted(commitmentS, ar.succeeded() ? ar.result() : Outcome.FAILED))
+        .mapEmpty();
+  }
+
+  private void finalseTransferAtSource(final String commitmentS, final byte[] commitment, final byte[] preimageSalt,
+                                       ObserverExecutor executor, Promise<Outcome> done) {
+    LOG.info("Finalising transfer {}", commitmentS);
+
+    RemoteFunctionCall<TransactionReceipt> finaliseCall =
+        srcTransferContract.finaliseTransferToOtherBlockchain(commitment, preimageSalt);
+    executor.execute(RpcCallContext.OBSERVER, commitment, finaliseCall::send, (txr, th) -> {
+      if (th == null) {
+        if (txr.isStatusOK()) {
+          LOG.info("Transfer {} finalised", commitmentS);
+          record(TransferEvent.stage(TransferStage.SOURCE_FINALISED, commitmentS, txr.getBlockNumber().longValue(), System.currentTimeMillis()));
+          done.complete(Outcome.SUBMITTED);
+        }
+        else {
+          LOG.error("Transfer {} failed: {}", commitmentS, txr.getStatus());
+          done.complete(Outcome.FAILED);
+        }
+      } else {
+        if (th instanceof TransactionException) {
+          TransactionException ex = (TransactionException) th;
+          LOG.error("Transfer {} failed: Revert Reason: {}", commitmentS, RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
+        }
+        else {
+          LOG.error("Transfer {} failed: Error: {}", commitmentS, th.toString());
+        }
+        done.fail(th);
+      }
     });
   }
 
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Waits, without blocking the event loop, for work to finish during shutdown.
+ */
+public abstract class Drain {
+  public static final int DEFAULT_DRAIN_TIMEOUT = 30000;
+  static final long POLL_PERIOD_MS = 50;
+
+  /**
+   * @param vertx The Vert.x instance.
+   * @param idle Returns true once there is no more work.
+   * @param timeoutMs Maximum time to wait.
+   * @return Completes with true if the work finished, or false if the timeout expired first.
+   */
+  public static Future<Boolean> awaitIdle(Vertx vertx, BooleanSupplier idle, long timeoutMs) {
+    Promise<Boolean> promise = Promise.promise();
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    poll(vertx, idle, deadline, promise);
+    return promise.future();
+  }
+
+  private static void poll(Vertx vertx, BooleanSupplier idle, long deadline, Promise<Boolean> promise) {
+    if (idle.getAsBoolean()) {
+      promise.complete(true);
+    }
+    else if (System.currentTimeMillis() >= deadline) {
+      promise.complete(false);
+    }
+    else {
+      vertx.setTimer(POLL_PERIOD_MS, id -> poll(vertx, idle, deadline, promise));
+    }
+  }
+
+  private Drain() {
+  }
+}
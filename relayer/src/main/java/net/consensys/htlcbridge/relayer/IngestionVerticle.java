@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Tracks the head of one blockchain, and passes each new block number to the observers of
+ * all routes which use the chain. The observers fetch and decode the transfer events in
+ * the new blocks, and send them over the event bus to the submission verticles.
+ */
+public class IngestionVerticle extends AbstractVerticle {
+  private static final Logger LOG = LogManager.getLogger(IngestionVerticle.class);
+
+  private final ChainResources chain;
+  private final List<BlockchainObserver> observers;
+  private final int workerPoolSize;
+  private final long drainTimeoutMs;
+  private ObserverExecutor executor;
+  private long timerId;
+
+  /**
+   * @param chain Chain to track.
+   * @param observers Observers of the routes which use the chain.
+   * @param workerPoolSize Threads of the ingestion worker pool, shared by all chains.
+   * @param drainTimeoutMs Maximum time to wait when stopping for blocks being processed.
+   */
+  public IngestionVerticle(ChainResources chain, List<BlockchainObserver> observers, int workerPoolSize, long drainTimeoutMs) {
+    this.chain = chain;
+    this.observers = observers;
+    this.workerPoolSize = workerPoolSize;
+    this.drainTimeoutMs = drainTimeoutMs;
+  }
+
+  @Override
+  public void start() {
+    this.executor = new ObserverExecutor(this.vertx, this.context, ObserverExecutor.INGESTION_POOL_NAME, this.workerPoolSize);
+    for (BlockchainObserver observer: this.observers) {
+      observer.init(this.vertx, this.executor);
+    }
+    this.timerId = this.vertx.setPeriodic(this.chain.getPollPeriod(), id -> checkNewBlock());
+    LOG.info("Chain {}: Ingestion started: Poll period: {} ms, Observers: {}",
+        this.chain.getName(), this.chain.getPollPeriod(), this.observers.size());
+  }
+
+  /**
+   * Stop polling for new blocks, and wait for the blocks being processed to be dispatched
+   * to the submission verticles.
+   */
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    this.vertx.cancelTimer(this.timerId);
+    Drain.awaitIdle(this.vertx, this::isIdle, this.drainTimeoutMs)
+        .onSuccess(drained -> LOG.info("Chain {}: Ingestion stopped{}", this.chain.getName(),
+            drained ? "" : ": Timed out waiting for blocks being processed"))
+        .<Void>mapEmpty()
+        .onComplete(stopPromise);
+  }
+
+  private boolean isIdle() {
+    for (BlockchainObserver observer: this.observers) {
+      if (observer.isRangeInProgress()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkNewBlock() {
+    this.executor.execute(RpcCallContext.OBSERVER, null, this.chain.getWeb3j().ethBlockNumber()::send, (ethBlockNumber, th) -> {
+      if (th == null) {
+        for (BlockchainObserver observer: this.observers) {
+          observer.processNextBlock(ethBlockNumber);
+        }
+      } else {
+        LOG.error("Chain {}: Get block number failed: Error: {}", this.chain.getName(), th.toString());
+      }
+    });
+  }
+}
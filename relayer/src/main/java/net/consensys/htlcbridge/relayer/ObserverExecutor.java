@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs blocking calls (JSON RPC requests, waiting for transaction receipts, decoding logs)
+ * on a worker pool, and runs the continuations on the event loop of the verticle the
+ * observers were deployed by. Continuations therefore never run on web3j or OkHttp threads,
+ * and the event loop never blocks.<p>
+ * Ingestion and submission use separate pools, so that submissions waiting minutes for
+ * transaction receipts can't hold up polling for new blocks and fetching logs. Each route
+ * has its own submission pool, sized by the number of submission verticle instances.
+ */
+public class ObserverExecutor {
+  public static final String INGESTION_POOL_NAME = "relayer-ingestion-worker";
+  public static final String SUBMISSION_POOL_NAME = "relayer-submission-worker";
+  public static final int DEFAULT_INGESTION_POOL_SIZE = 8;
+  // Worker threads in a route's submission pool for each submission verticle instance.
+  public static final int SUBMISSION_THREADS_PER_INSTANCE = 4;
+  // Waiting for a transaction receipt can legitimately take several minutes, so only
+  // warn about worker threads that have been blocked for longer than this.
+  private static final long MAX_EXECUTE_TIME_MINUTES = 10;
+
+  private final Context context;
+  private final WorkerExecutor workerExecutor;
+
+  public ObserverExecutor(Vertx vertx, Context context) {
+    this(vertx, context, INGESTION_POOL_NAME, DEFAULT_INGESTION_POOL_SIZE);
+  }
+
+  /**
+   * @param poolName Name of the worker pool. Executors with the same pool name share the
+   *   pool, which is sized by the first of them to be created.
+   * @param poolSize Number of threads in the worker pool.
+   */
+  public ObserverExecutor(Vertx vertx, Context context, String poolName, int poolSize) {
+    this(context, vertx.createSharedWorkerExecutor(poolName, poolSize, MAX_EXECUTE_TIME_MINUTES, TimeUnit.MINUTES));
+  }
+
+  public ObserverExecutor(Context context, WorkerExecutor workerExecutor) {
+    this.context = context;
+    this.workerExecutor = workerExecutor;
+  }
+
+  /**
+   * Run a blocking call on the worker pool, and then the continuation on the verticle's
+   * context. Calls are not ordered with respect to each other.
+   *
+   * @param tag Caller tag for RPC accounting.
+   * @param commitment Commitment of the transfer the call is for, or null.
+   * @param call The blocking call.
+   * @param continuation Called with the result, or with the exception the call threw.
+   */
+  public <T> void execute(String tag, byte[] commitment, Callable<T> call, BiConsumer<T, Throwable> continuation) {
+    if (Vertx.currentContext() == this.context) {
+      submit(tag, commitment, call, continuation);
+    }
+    else {
+      // executeBlocking delivers the result to the context it is called from.
+      this.context.runOnContext(v -> submit(tag, commitment, call, continuation));
+    }
+  }
+
+  /**
+   * Run a task on the verticle's context.
+   */
+  public void runOnContext(Runnable task) {
+    this.context.runOnContext(v -> task.run());
+  }
+
+  public Context getContext() {
+    return this.context;
+  }
+
+  private <T> void submit(String tag, byte[] commitment, Callable<T> call, BiConsumer<T, Throwable> continuation) {
+    this.workerExecutor.<T>executeBlocking(promise -> {
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(tag, commitment)) {
+        promise.complete(call.call());
+      } catch (Throwable th) {
+        promise.fail(th);
+      }
+    }, false, result -> continuation.accept(result.result(), result.cause()));
+  }
+}
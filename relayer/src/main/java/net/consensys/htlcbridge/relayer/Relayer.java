@@ -16,50 +16,131 @@ package net.consensys.htlcbridge.relayer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.Context;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.http.HttpServer;
 import io.vertx.ext.web.Router;
+import net.consensys.htlcbridge.common.BlockingExecutors;
+import net.consensys.htlcbridge.common.TaskScope;
 import net.consensys.htlcbridge.relayer.api.RestAPI;
+import net.consensys.htlcbridge.relayer.bus.DestTransferCompletedLogCodec;
+import net.consensys.htlcbridge.relayer.bus.EventBusAddresses;
+import net.consensys.htlcbridge.relayer.bus.SourceTransferInitLogCodec;
+import net.consensys.htlcbridge.relayer.ha.Checkpoint;
+import net.consensys.htlcbridge.relayer.ha.CheckpointStore;
+import net.consensys.htlcbridge.relayer.ha.LeaderLease;
+import net.consensys.htlcbridge.relayer.liquidity.LiquidityIndexer;
+import net.consensys.htlcbridge.relayer.recon.ReconciliationEngine;
+import net.consensys.htlcbridge.relayer.recon.RouteReconciler;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.relayer.watchtower.PostingVerifier;
+import net.consensys.htlcbridge.relayer.watchtower.RefundWatchtower;
+import net.consensys.htlcbridge.store.TransferStage;
+import net.consensys.htlcbridge.store.TransferStore;
+import net.consensys.htlcbridge.store.archive.EventArchive;
+import net.consensys.htlcbridge.transfer.TransferState;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.table.TransferTable;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.web3j.tx.gas.ContractGasProvider;
+import org.apache.tuweni.bytes.Bytes;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Relayer extends AbstractVerticle {
   private static final Logger LOG = LogManager.getLogger(Relayer.class);
 
-  public SourceBlockchainObserver sourceBlockchainObserver;
-  public int sourceBlockPeriod;
-  public DestinationBlockchainObserver destBlockchainObserver;
-  public int destBlockPeriod;
+  public static final int DEFAULT_CHECKPOINT_PERIOD = 1000;
+  public static final int DEFAULT_LEASE_POLL_PERIOD = 1000;
+  public static final int DEFAULT_BOOTSTRAP_TAIL_BLOCKS = 100;
+  public static final int DEFAULT_RECONCILIATION_GRACE_BLOCKS = 50;
+  public static final int DEFAULT_RECONCILIATION_EXPIRY_WINDOW = 3600;
+  // Threads fetching the partitions of a reconciliation pass concurrently.
+  private static final int RECONCILIATION_THREADS = 4;
+  public static final int DEFAULT_WATCHTOWER_PERIOD = 15000;
+  public static final int DEFAULT_WATCHTOWER_BATCH_SIZE = 20;
+  public static final int DEFAULT_LIQUIDITY_REFRESH_PERIOD = 5000;
+  public static final int DEFAULT_LIQUIDITY_DEFER_PERIOD = 30000;
+
+  // Routes and the chains they use, in configuration order.
+  public List<Route> routes;
+  public Map<String, ChainResources> chains;
+  // Lifecycle of the transfers seen, or null if not configured.
+  public TransferStore transferStore;
 
   RestAPI api;
   int port;
   public RelayerConfig conf;
 
+  // Set if a state directory is configured.
+  LeaderLease lease;
+  CheckpointStore checkpointStore;
+  private volatile boolean active;
+  private long checkpointTimerId = -1;
+
+  // Reconciliation of each route's source and destination events, or empty if not configured.
+  private Map<String, RouteReconciler> reconcilers = Collections.emptyMap();
+  private ExecutorService reconciliationExecutor;
+  private long reconciliationTimerId = -1;
+  private volatile boolean reconciling;
+
+  // Refund watchtower of each route, or empty if not configured.
+  private Map<String, RefundWatchtower> watchtowers = Collections.emptyMap();
+  private ExecutorService watchtowerExecutor;
+  private long watchtowerTimerId = -1;
+  private volatile boolean watching;
+
+  // Verification of the transfers posted on each route, or empty if not configured.
+  private Map<String, PostingVerifier> postingVerifiers = Collections.emptyMap();
+
+  // Liquidity of each destination contract, by chain and contract, or empty if not configured.
+  private Map<String, LiquidityIndexer> liquidityIndexers = Collections.emptyMap();
+  private long liquidityTimerId = -1;
+  private volatile boolean refreshingLiquidity;
+
+  // Configuration loaded from a file, applied by start once the REST API is up.
+  private RelayerConfig startupConfig;
+  // REST API of a running relayer to import a snapshot from, or null.
+  private String bootstrapPeer;
+  // Readiness: ready once the relayer is active or standby, or waiting for configuration via the REST API.
+  private volatile boolean ready;
+  private volatile String startupPhase = "created";
+  private volatile String startupError;
+  // Duration of each startup phase in milliseconds, in the order the phases finished.
+  private final Map<String, Long> startupTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+
   public Relayer(File configFile) throws Exception {
     this((RelayerConfig) (new ObjectMapper().readerFor(RelayerConfig.class).readValue(configFile)));
   }
 
   public Relayer(RelayerConfig config) throws Exception {
     this(config.apiPort);
-    this.sourceBlockchainObserver = new SourceBlockchainObserver(
-        config.sourceBcUri, config.sourceTransferContract, config.sourceBlockPeriod, config.sourceConfirmations,
-        config.sourceRelayerPKey, config.sourceRetries, config.sourceBcId, config.sourceGasStrategy,
-        config.destBcUri, config.destTransferContract, config.destBlockPeriod, config.destConfirmations,
-        config.destRelayerPKey, config.destRetries, config.destBcId, config.destGasStrategy);
-    this.sourceBlockPeriod = config.sourceBlockPeriod;
-
-    this.destBlockchainObserver = new DestinationBlockchainObserver(
-        config.sourceBcUri, config.sourceTransferContract, config.sourceBlockPeriod, config.sourceConfirmations,
-        config.sourceRelayerPKey, config.sourceRetries, config.sourceBcId, config.sourceGasStrategy,
-        config.destBcUri, config.destTransferContract, config.destBlockPeriod, config.destConfirmations,
-        config.destRelayerPKey, config.destRetries, config.destBcId, config.destGasStrategy);
-    this.destBlockPeriod = config.destBlockPeriod;
-
-    this.conf = config;
+    this.startupConfig = config;
   }
 
   public Relayer(int port) throws Exception {
@@ -69,50 +150,869 @@ public class Relayer extends AbstractVerticle {
   }
 
   public void resetConfig() {
-    this.sourceBlockchainObserver = null;
-    this.sourceBlockPeriod = 0;
-    this.destBlockchainObserver = null;
-    this.destBlockPeriod = 0;
+    this.routes = null;
+    this.chains = null;
 
     this.conf = new RelayerConfig();
   }
 
   /**
-   * Initialise the verticle.<p>
-   * This is called by Vert.x when the verticle instance is deployed. Don't call it yourself.
-   * @param vertx  the deploying Vert.x instance
-   * @param context  the context of the verticle
+   * Create the resources for each chain, and the observers for each route. Chains are
+   * shared by all of the routes which use them.
+   *
+   * @param config Relayer configuration.
+   * @throws Exception If the configuration is invalid, or a connection can not be set-up.
    */
-  @Override
-  public void init(Vertx vertx, Context context) {
-    super.init(vertx, context);
-    this.sourceBlockchainObserver.init(vertx);
-    this.destBlockchainObserver.init(vertx);
+  public void configure(RelayerConfig config) throws Exception {
+    long start = System.nanoTime();
+    Map<String, ChainResources> chains = new LinkedHashMap<>();
+    for (ChainConfig chainConfig: config.chainConfigs()) {
+      if (chainConfig.name == null || chains.containsKey(chainConfig.name)) {
+        throw new IllegalArgumentException("Missing or duplicate chain name: " + chainConfig.name);
+      }
+      chains.put(chainConfig.name, new ChainResources(chainConfig));
+    }
+
+    List<RouteConfig> routeConfigs = config.routeConfigs();
+    Set<String> routeNames = new HashSet<>();
+    for (RouteConfig routeConfig: routeConfigs) {
+      if (!chains.containsKey(routeConfig.sourceChain) || !chains.containsKey(routeConfig.destChain)) {
+        throw new IllegalArgumentException("Route " + routeConfig.routeName() + ": Unknown chain: " +
+            (chains.containsKey(routeConfig.sourceChain) ? routeConfig.destChain : routeConfig.sourceChain));
+      }
+      if (!routeNames.add(routeConfig.routeName())) {
+        throw new IllegalArgumentException("Duplicate route name: " + routeConfig.routeName());
+      }
+    }
+    startupPhase("chains", start);
+
+    // Creating the observers makes JSON RPC calls, so create all of them concurrently.
+    start = System.nanoTime();
+    List<Route> routes = new ArrayList<>();
+    ExecutorService executor = BlockingExecutors.newExecutor("relayer-startup", Math.max(1, 2 * routeConfigs.size()));
+    try (TaskScope<BlockchainObserver> scope = new TaskScope<>(executor)) {
+      for (RouteConfig routeConfig: routeConfigs) {
+        ChainResources source = chains.get(routeConfig.sourceChain);
+        ChainResources dest = chains.get(routeConfig.destChain);
+        scope.fork(() -> Route.createSourceObserver(routeConfig, source, dest));
+        scope.fork(() -> Route.createDestObserver(routeConfig, source, dest));
+      }
+      List<BlockchainObserver> observers = scope.join();
+      if (observers.size() != 2 * routeConfigs.size()) {
+        throw new IllegalStateException("Created " + observers.size() + " of " + 2 * routeConfigs.size() + " observers");
+      }
+      for (int i = 0; i < routeConfigs.size(); i++) {
+        RouteConfig routeConfig = routeConfigs.get(i);
+        routes.add(new Route(routeConfig, chains.get(routeConfig.sourceChain), chains.get(routeConfig.destChain),
+            config.submissionInstances,
+            (SourceBlockchainObserver) observers.get(2 * i), (DestinationBlockchainObserver) observers.get(2 * i + 1)));
+      }
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    } finally {
+      executor.shutdown();
+    }
+    startupPhase("observers", start);
+
+    if (config.storeDirectory != null) {
+      start = System.nanoTime();
+      if (this.transferStore != null) {
+        this.transferStore.close();
+      }
+      this.transferStore = new TransferStore(Paths.get(config.storeDirectory));
+      for (Route route: routes) {
+        route.getSourceObserver().setTransferStore(this.transferStore);
+        route.getDestObserver().setTransferStore(this.transferStore);
+      }
+      startupPhase("store", start);
+    }
+
+    if (config.archiveDirectory != null) {
+      start = System.nanoTime();
+      closeArchives();
+      int segmentSize = config.archiveSegmentSize == 0 ? EventArchive.DEFAULT_SEGMENT_SIZE : config.archiveSegmentSize;
+      for (Route route: routes) {
+        for (BlockchainObserver observer: Arrays.asList(route.getSourceObserver(), route.getDestObserver())) {
+          Path dir = Paths.get(config.archiveDirectory, observer.checkpointName());
+          observer.setEventArchive(new EventArchive(dir, segmentSize));
+        }
+      }
+      startupPhase("archive", start);
+    }
+
+    Map<String, PostingVerifier> postingVerifiers = new LinkedHashMap<>();
+    if (config.verifyPostings) {
+      int graceBlocks = config.verificationGraceBlocks > 0 ? config.verificationGraceBlocks : PostingVerifier.DEFAULT_GRACE_BLOCKS;
+      int capacity = config.verificationCapacity > 0 ? config.verificationCapacity : PostingVerifier.DEFAULT_CAPACITY;
+      for (Route route: routes) {
+        PostingVerifier verifier = new PostingVerifier(route.getName(), graceBlocks, capacity);
+        route.getSourceObserver().setPostingVerifier(verifier);
+        route.getDestObserver().setPostingVerifier(verifier);
+        postingVerifiers.put(route.getName(), verifier);
+      }
+    }
+    this.postingVerifiers = postingVerifiers;
+
+    // The liquidity, reconciliation and watchtower set-up start from each chain's head.
+    Map<String, Long> heads = Collections.emptyMap();
+    if (config.liquidityTracking || config.reconciliationPeriod > 0 || config.watchtowerMode != null) {
+      start = System.nanoTime();
+      heads = chainHeads(chains);
+      startupPhase("heads", start);
+    }
+
+    stopLiquidityTracking();
+    if (config.liquidityTracking) {
+      start = System.nanoTime();
+      int deferPeriod = config.liquidityDeferPeriod > 0 ? config.liquidityDeferPeriod : DEFAULT_LIQUIDITY_DEFER_PERIOD;
+      Map<String, LiquidityIndexer> indexers = new LinkedHashMap<>();
+      for (int i = 0; i < routes.size(); i++) {
+        RouteConfig routeConfig = routeConfigs.get(i);
+        Route route = routes.get(i);
+        // Routes to the same destination contract share its liquidity.
+        String key = route.getDest().getName() + ":" + routeConfig.destTransferContract.toLowerCase();
+        LiquidityIndexer indexer = indexers.get(key);
+        if (indexer == null) {
+          ChainResources dest = route.getDest();
+          int confirmations = Route.destConfirmations(routeConfig, dest);
+          long head = heads.get(dest.getName());
+          indexer = new LiquidityIndexer(key, dest.getWeb3j(),
+              dest.createLogFetcher(routeConfig.destTransferContract),
+              dest.loadTransferContract(routeConfig.destTransferContract), confirmations,
+              firstBlockOfTimeLockWindow(dest, head, route.getSourceObserver().getTimeLockPeriod()), head - confirmations);
+          indexers.put(key, indexer);
+        }
+        route.getSourceObserver().setLiquidityIndexer(indexer, deferPeriod);
+      }
+      this.liquidityIndexers = indexers;
+      int period = config.liquidityRefreshPeriod > 0 ? config.liquidityRefreshPeriod : DEFAULT_LIQUIDITY_REFRESH_PERIOD;
+      this.liquidityTimerId = this.vertx.setPeriodic(period, id -> refreshLiquidity());
+      startupPhase("liquidity", start);
+    }
+
+    stopReconciliation();
+    if (config.reconciliationPeriod > 0) {
+      start = System.nanoTime();
+      this.reconciliationExecutor = BlockingExecutors.newExecutor("reconciler", RECONCILIATION_THREADS);
+      Map<String, RouteReconciler> reconcilers = new LinkedHashMap<>();
+      for (int i = 0; i < routes.size(); i++) {
+        reconcilers.put(routes.get(i).getName(), createReconciler(config, routeConfigs.get(i), routes.get(i), heads));
+      }
+      this.reconcilers = reconcilers;
+      this.reconciliationTimerId = this.vertx.setPeriodic(config.reconciliationPeriod, id -> reconcile());
+      startupPhase("reconciliation", start);
+    }
+
+    stopWatchtowers();
+    if (config.watchtowerMode != null) {
+      start = System.nanoTime();
+      RefundWatchtower.Mode mode = RefundWatchtower.Mode.valueOf(config.watchtowerMode.toUpperCase());
+      int batchSize = config.watchtowerBatchSize > 0 ? config.watchtowerBatchSize : DEFAULT_WATCHTOWER_BATCH_SIZE;
+      this.watchtowerExecutor = BlockingExecutors.newExecutor("watchtower", batchSize);
+      Map<String, RefundWatchtower> watchtowers = new LinkedHashMap<>();
+      for (int i = 0; i < routes.size(); i++) {
+        RouteConfig routeConfig = routeConfigs.get(i);
+        Route route = routes.get(i);
+        ChainResources source = route.getSource();
+        watchtowers.put(route.getName(), new RefundWatchtower(route.getName(), source.getWeb3j(),
+            source.createLogFetcher(routeConfig.sourceTransferContract),
+            source.loadTransferContract(routeConfig.sourceTransferContract),
+            route.getDest().loadTransferContract(routeConfig.destTransferContract),
+            Route.sourceConfirmations(routeConfig, source),
+            firstBlockOfTimeLockWindow(source, heads.get(source.getName()), route.getSourceObserver().getTimeLockPeriod()),
+            mode, batchSize, this.watchtowerExecutor));
+      }
+      this.watchtowers = watchtowers;
+      int period = config.watchtowerPeriod > 0 ? config.watchtowerPeriod : DEFAULT_WATCHTOWER_PERIOD;
+      this.watchtowerTimerId = this.vertx.setPeriodic(period, id -> watch());
+      startupPhase("watchtower", start);
+    }
+
+    this.chains = chains;
+    this.routes = routes;
+    this.conf = config;
+  }
+
+  /**
+   * Reconcile the route's events from the start of the time lock window of each chain.
+   */
+  private RouteReconciler createReconciler(RelayerConfig config, RouteConfig routeConfig, Route route,
+                                          Map<String, Long> heads) throws IOException {
+    long timeLockPeriod = route.getSourceObserver().getTimeLockPeriod();
+    int graceBlocks = config.reconciliationGraceBlocks > 0 ? config.reconciliationGraceBlocks : DEFAULT_RECONCILIATION_GRACE_BLOCKS;
+    int expiryWindow = config.reconciliationExpiryWindow > 0 ? config.reconciliationExpiryWindow : DEFAULT_RECONCILIATION_EXPIRY_WINDOW;
+    RouteReconciler.Side[] sides = new RouteReconciler.Side[2];
+    for (int i = 0; i < 2; i++) {
+      ChainResources chain = i == 0 ? route.getSource() : route.getDest();
+      long firstBlock = firstBlockOfTimeLockWindow(chain, heads.get(chain.getName()), timeLockPeriod);
+      sides[i] = i == 0
+          ? new RouteReconciler.Side(chain.getWeb3j(), chain.createLogFetcher(routeConfig.sourceTransferContract),
+              RouteReconciler.SOURCE_TOPICS, Route.sourceConfirmations(routeConfig, chain), firstBlock)
+          : new RouteReconciler.Side(chain.getWeb3j(), chain.createLogFetcher(routeConfig.destTransferContract),
+              RouteReconciler.DEST_TOPICS, Route.destConfirmations(routeConfig, chain), firstBlock);
+    }
+    return new RouteReconciler(route.getName(), sides[0], sides[1],
+        new ReconciliationEngine(graceBlocks, graceBlocks, expiryWindow), this.reconciliationExecutor);
   }
 
+  /**
+   * @param head The chain's current block.
+   * @param timeLockPeriod Time lock period in seconds.
+   * @return The block the time lock period before the chain's current block.
+   */
+  private static long firstBlockOfTimeLockWindow(ChainResources chain, long head, long timeLockPeriod) {
+    return Math.max(0, head - timeLockPeriod * 1000 / chain.getBlockPeriod());
+  }
 
+  /**
+   * Read the current block of each chain. The calls are made concurrently.
+   *
+   * @return Chain name to current block.
+   */
+  private static Map<String, Long> chainHeads(Map<String, ChainResources> chains) throws Exception {
+    List<ChainResources> chainList = new ArrayList<>(chains.values());
+    ExecutorService executor = BlockingExecutors.newExecutor("relayer-startup", Math.max(1, chainList.size()));
+    try (TaskScope<Long> scope = new TaskScope<>(executor)) {
+      for (ChainResources chain: chainList) {
+        scope.fork(() -> {
+          try (RpcCallContext.Scope rpcScope = RpcCallContext.enter(RpcCallContext.OBSERVER, (String) null)) {
+            return chain.getWeb3j().ethBlockNumber().send().getBlockNumber().longValue();
+          }
+        });
+      }
+      List<Long> results = scope.join();
+      if (results.size() != chainList.size()) {
+        throw new IllegalStateException("Read the heads of " + results.size() + " of " + chainList.size() + " chains");
+      }
+      Map<String, Long> heads = new HashMap<>();
+      for (int i = 0; i < chainList.size(); i++) {
+        heads.put(chainList.get(i).getName(), results.get(i));
+      }
+      return heads;
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Update the liquidity index of each destination contract on a worker thread, unless the
+   * previous update is still running.
+   */
+  private void refreshLiquidity() {
+    if (this.refreshingLiquidity) {
+      return;
+    }
+    this.refreshingLiquidity = true;
+    Map<String, LiquidityIndexer> indexers = this.liquidityIndexers;
+    this.vertx.executeBlocking(promise -> {
+      for (LiquidityIndexer indexer: indexers.values()) {
+        try {
+          indexer.refresh();
+        } catch (Exception ex) {
+          LOG.error("{}: Liquidity update failed: {}", indexer.getName(), ex.toString());
+        }
+      }
+      promise.complete();
+    }, false, ar -> this.refreshingLiquidity = false);
+  }
+
+  private void stopLiquidityTracking() {
+    if (this.liquidityTimerId != -1) {
+      this.vertx.cancelTimer(this.liquidityTimerId);
+      this.liquidityTimerId = -1;
+    }
+    this.liquidityIndexers = Collections.emptyMap();
+  }
+
+  /**
+   * @return The liquidity index of each destination contract, by chain and contract, or an
+   *   empty map if liquidity isn't tracked.
+   */
+  public Map<String, LiquidityIndexer> getLiquidityIndexers() {
+    return this.liquidityIndexers;
+  }
+
+  /**
+   * Run a reconciliation pass for each route on a worker thread, unless the previous pass
+   * is still running.
+   */
+  private void reconcile() {
+    if (this.reconciling) {
+      return;
+    }
+    this.reconciling = true;
+    Map<String, RouteReconciler> reconcilers = this.reconcilers;
+    this.vertx.executeBlocking(promise -> {
+      for (RouteReconciler reconciler: reconcilers.values()) {
+        try {
+          reconciler.pass();
+        } catch (Exception ex) {
+          LOG.error("{}: Reconciliation pass failed: {}", reconciler.getRouteName(), ex.toString());
+        }
+      }
+      promise.complete();
+    }, false, ar -> this.reconciling = false);
+  }
+
+  private void stopReconciliation() {
+    if (this.reconciliationTimerId != -1) {
+      this.vertx.cancelTimer(this.reconciliationTimerId);
+      this.reconciliationTimerId = -1;
+    }
+    if (this.reconciliationExecutor != null) {
+      this.reconciliationExecutor.shutdownNow();
+      this.reconciliationExecutor = null;
+    }
+    this.reconcilers = Collections.emptyMap();
+  }
+
+  /**
+   * Run a watchtower pass for each route on a worker thread, unless the previous pass is
+   * still running. Only the active relayer submits refunds.
+   */
+  private void watch() {
+    if (this.watching) {
+      return;
+    }
+    this.watching = true;
+    Map<String, RefundWatchtower> watchtowers = this.watchtowers;
+    boolean submit = this.active;
+    this.vertx.executeBlocking(promise -> {
+      for (RefundWatchtower watchtower: watchtowers.values()) {
+        try {
+          watchtower.pass(submit);
+        } catch (Exception ex) {
+          LOG.error("{}: Watchtower pass failed: {}", watchtower.getRouteName(), ex.toString());
+        }
+      }
+      promise.complete();
+    }, false, ar -> this.watching = false);
+  }
+
+  private void stopWatchtowers() {
+    if (this.watchtowerTimerId != -1) {
+      this.vertx.cancelTimer(this.watchtowerTimerId);
+      this.watchtowerTimerId = -1;
+    }
+    if (this.watchtowerExecutor != null) {
+      this.watchtowerExecutor.shutdownNow();
+      this.watchtowerExecutor = null;
+    }
+    this.watchtowers = Collections.emptyMap();
+  }
+
+  /**
+   * @return The posting verifier of each route, by route name, or an empty map if postings are not verified.
+   */
+  public Map<String, PostingVerifier> getPostingVerifiers() {
+    return this.postingVerifiers;
+  }
+
+  /**
+   * @param routeName Route, or null if there is only one route.
+   * @return The refund watchtower of the route.
+   */
+  public RefundWatchtower getWatchtower(String routeName) {
+    Route route = findRoute(routeName);
+    RefundWatchtower watchtower = this.watchtowers.get(route.getName());
+    if (watchtower == null) {
+      throw new IllegalStateException("Watchtower not configured");
+    }
+    return watchtower;
+  }
+
+  /**
+   * @param routeName Route, or null if there is only one route.
+   * @return The reconciliation of the route's source and destination events.
+   */
+  public RouteReconciler getReconciler(String routeName) {
+    Route route = findRoute(routeName);
+    RouteReconciler reconciler = this.reconcilers.get(route.getName());
+    if (reconciler == null) {
+      throw new IllegalStateException("Reconciliation not configured");
+    }
+    return reconciler;
+  }
+
+  /**
+   * Start the REST API, and then configure and activate the relayer in the background.
+   * The REST API is available immediately: GET /ready reports when the relayer is ready.
+   */
   @Override
-  public void start() {
+  public void start(Promise<Void> startPromise) {
     LOG.info("Started");
+    long start = System.nanoTime();
 
-    // Check for new blocks each 100ms.
-    this.vertx.setPeriodic(1000, counter -> {
-      this.sourceBlockchainObserver.checkNewBlock();
+    HttpServer server = this.vertx.createHttpServer();
+    Router router = Router.router(this.vertx);
+    this.api.createAPI(router);
+    server.requestHandler(router).listen(this.port, ar -> {
+      if (ar.failed()) {
+        startPromise.fail(ar.cause());
+        return;
+      }
+      startupPhase("rest-api", start);
+      startPromise.complete();
+      startUp();
     });
+  }
 
-    this.vertx.setPeriodic(5000, counter -> {
-      this.destBlockchainObserver.checkNewBlock();
+  private void startUp() {
+    if (this.startupConfig == null) {
+      // Configuration will be supplied via the REST API.
+      this.startupPhase = "waiting for configuration";
+      this.ready = true;
+      return;
+    }
+
+    long start = System.nanoTime();
+    RelayerConfig config = this.startupConfig;
+    this.vertx.<Void>executeBlocking(promise -> {
+      try {
+        configure(config);
+        if (this.bootstrapPeer != null) {
+          bootstrap(this.bootstrapPeer);
+        }
+        promise.complete();
+      } catch (Exception ex) {
+        promise.fail(ex);
+      }
+    }).compose(v -> {
+      if (this.conf.stateDirectory == null) {
+        return activate();
+      }
+      Promise<Void> roleDecided = Promise.promise();
+      try {
+        Path directory = Paths.get(this.conf.stateDirectory);
+        this.lease = new LeaderLease(directory, ManagementFactory.getRuntimeMXBean().getName() + ":" + this.port);
+        this.checkpointStore = new CheckpointStore(directory);
+      } catch (IOException ex) {
+        return Future.failedFuture(ex);
+      }
+      pollLease(roleDecided);
+      return roleDecided.future();
+    }).onComplete(ar -> {
+      if (ar.succeeded()) {
+        startupPhase("total", start);
+        this.startupPhase = this.active ? "active" : "standby";
+        this.ready = true;
+      }
+      else {
+        this.startupError = ar.cause().toString();
+        LOG.error("Startup failed in phase {}: {}", this.startupPhase, this.startupError);
+      }
     });
+  }
 
-    HttpServer server = this.vertx.createHttpServer();
-    Router router = Router.router(this.vertx);
-    this.api.createAPI(router);
-    server.requestHandler(router).listen(this.port);
+  /**
+   * @param peerUri URI of the REST API of a running relayer to import a snapshot from at start-up.
+   */
+  public void setBootstrapPeer(String peerUri) {
+    this.bootstrapPeer = peerUri;
+  }
+
+  /**
+   * Import a snapshot from a running relayer, so that the observers continue from its
+   * watermarks rather than scanning the whole time lock window. Each observer checks the
+   * snapshot against its chain, and uses the time lock window if the check fails. Failure
+   * to fetch the snapshot is not fatal.
+   */
+  private void bootstrap(String peerUri) {
+    long start = System.nanoTime();
+    Checkpoint snapshot;
+    OkHttpClient client = new OkHttpClient();
+    Request request = new Request.Builder().url(peerUri.replaceAll("/+$", "") + "/snapshot").build();
+    try (Response response = client.newCall(request).execute()) {
+      if (!response.isSuccessful() || response.body() == null) {
+        LOG.warn("Bootstrap: Snapshot request to {} failed: HTTP {}", peerUri, response.code());
+        return;
+      }
+      snapshot = new ObjectMapper().readerFor(Checkpoint.class).readValue(response.body().byteStream());
+    } catch (IOException ex) {
+      LOG.warn("Bootstrap: Snapshot request to {} failed: {}", peerUri, ex.toString());
+      return;
+    }
+
+    int tailBlocks = this.conf.bootstrapTailBlocks > 0 ? this.conf.bootstrapTailBlocks : DEFAULT_BOOTSTRAP_TAIL_BLOCKS;
+    int used = 0;
+    int total = 0;
+    for (Route route: this.routes) {
+      for (BlockchainObserver observer: Arrays.asList(route.getSourceObserver(), route.getDestObserver())) {
+        Checkpoint.ObserverCheckpoint observerSnapshot = snapshot.observers.get(observer.checkpointName());
+        total++;
+        if (observerSnapshot == null) {
+          LOG.warn("Bootstrap: No snapshot for {}", observer.checkpointName());
+          continue;
+        }
+        try {
+          if (observer.bootstrap(observerSnapshot, tailBlocks)) {
+            used++;
+          }
+        } catch (IOException ex) {
+          LOG.warn("Bootstrap: Unable to check snapshot for {}: {}", observer.checkpointName(), ex.toString());
+        }
+      }
+    }
+    LOG.info("Bootstrap: Used snapshot from {} ({}) for {} of {} observers", peerUri, snapshot.owner, used, total);
+    startupPhase("bootstrap", start);
+  }
+
+  /**
+   * Replay archived logs through one of a route's observers, on a worker thread.
+   *
+   * @param routeName Route, or null if there is only one route.
+   * @param source True for the source observer, false for the destination observer.
+   * @param fromBlock First block to replay.
+   * @param toBlock Last block to replay.
+   * @param dispatch True to also send the transfers to the submission verticles.
+   * @return The number of logs replayed.
+   */
+  public Future<Long> replay(String routeName, boolean source, long fromBlock, long toBlock, boolean dispatch) {
+    Route route;
+    try {
+      route = findRoute(routeName);
+    } catch (RuntimeException ex) {
+      return Future.failedFuture(ex);
+    }
+    BlockchainObserver observer = source ? route.getSourceObserver() : route.getDestObserver();
+    return this.vertx.executeBlocking(promise -> {
+      try {
+        long start = System.nanoTime();
+        long count = observer.replay(fromBlock, toBlock, dispatch);
+        LOG.info("{}: Replayed {} archived logs for blocks {} to {} in {} ms", observer.observerName(),
+            count, fromBlock, toBlock, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        promise.complete(count);
+      } catch (Exception ex) {
+        promise.fail(ex);
+      }
+    }, false);
+  }
+
+  /**
+   * Load the transfers a route's source observer archived for a range of blocks into a
+   * transfer table, on a worker thread. The states of the transfers are taken from the
+   * transfer store, if there is one, and are otherwise OPEN.
+   *
+   * @param routeName Route, or null if there is only one route.
+   */
+  public Future<TransferTable> transferTable(String routeName, long fromBlock, long toBlock) {
+    Route route;
+    try {
+      route = findRoute(routeName);
+    } catch (RuntimeException ex) {
+      return Future.failedFuture(ex);
+    }
+    EventArchive archive = route.getSourceObserver().getEventArchive();
+    if (archive == null) {
+      return Future.failedFuture(new IllegalStateException("Event archive not configured"));
+    }
+    TransferStore store = this.transferStore;
+    return this.vertx.executeBlocking(promise -> {
+      try {
+        TransferTable table = new TransferTable();
+        ArchivedLogs.replay(archive, fromBlock, toBlock, table);
+        if (store != null) {
+          for (int row = 0; row < table.size(); row++) {
+            TransferStage stage = store.getState(Bytes.wrap(table.getCommitment(row)).toHexString());
+            if (stage == TransferStage.SOURCE_FINALISED) {
+              table.setState(row, TransferState.FINALILISED);
+            }
+            else if (stage == TransferStage.SOURCE_REFUNDED) {
+              table.setState(row, TransferState.REFUNDED);
+            }
+          }
+        }
+        promise.complete(table);
+      } catch (Exception ex) {
+        promise.fail(ex);
+      }
+    }, false);
+  }
+
+  private Route findRoute(String routeName) {
+    if (this.routes == null) {
+      throw new IllegalStateException("Relayer not configured");
+    }
+    for (Route route: this.routes) {
+      if (routeName == null ? this.routes.size() == 1 : route.getName().equals(routeName)) {
+        return route;
+      }
+    }
+    throw new IllegalArgumentException("Unknown route: " + routeName);
+  }
+
+  /**
+   * @return The watermarks, transfers in flight and recently completed transfers of each
+   *   observer, with the hashes of the watermark blocks.
+   */
+  public Future<Checkpoint> snapshot() {
+    if (this.routes == null) {
+      return Future.failedFuture("Not configured");
+    }
+    return this.vertx.executeBlocking(promise -> {
+      Checkpoint snapshot = checkpoint();
+      try {
+        for (Route route: this.routes) {
+          snapshot.observers.put(route.getSourceObserver().checkpointName(), route.getSourceObserver().snapshot());
+          snapshot.observers.put(route.getDestObserver().checkpointName(), route.getDestObserver().snapshot());
+        }
+        promise.complete(snapshot);
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+    }, false);
+  }
+
+  private void startupPhase(String phase, long startNanos) {
+    long millis = (System.nanoTime() - startNanos) / 1_000_000;
+    this.startupTimings.put(phase, millis);
+    this.startupPhase = phase;
+    LOG.info("Startup phase {}: {} ms", phase, millis);
+  }
+
+  public boolean isReady() {
+    return this.ready;
+  }
+
+  public String getStartupPhase() {
+    return this.startupPhase;
+  }
+
+  /**
+   * @return Why startup failed, or null if it hasn't failed.
+   */
+  public String getStartupError() {
+    return this.startupError;
+  }
+
+  public Map<String, Long> getStartupTimings() {
+    synchronized (this.startupTimings) {
+      return new LinkedHashMap<>(this.startupTimings);
+    }
+  }
+
+  /**
+   * Try to acquire the lease. The relayer holding the lease becomes active. Other relayers
+   * are hot standbys: their observers are set up, and they keep polling for the lease.
+   *
+   * @param roleDecided Completed once this relayer is known to be active or standby.
+   */
+  private void pollLease(Promise<Void> roleDecided) {
+    this.vertx.<Boolean>executeBlocking(promise -> {
+      try {
+        promise.complete(this.lease.tryAcquire());
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+    }, ar -> {
+      if (ar.succeeded() && ar.result()) {
+        Future<Void> takeOver = takeOver();
+        if (roleDecided != null) {
+          takeOver.onComplete(roleDecided);
+        }
+        return;
+      }
+      if (ar.failed()) {
+        LOG.error("Error acquiring lease: {}", ar.cause().toString());
+      }
+      if (roleDecided != null) {
+        LOG.info("Standby: Lease held by another relayer");
+        roleDecided.complete();
+      }
+      int period = this.conf.leasePollPeriod > 0 ? this.conf.leasePollPeriod : DEFAULT_LEASE_POLL_PERIOD;
+      this.vertx.setTimer(period, id -> pollLease(null));
+    });
+  }
+
+  /**
+   * Continue from the last checkpoint written by the previously active relayer, and start
+   * writing checkpoints.
+   */
+  private Future<Void> takeOver() {
+    long start = System.currentTimeMillis();
+    return this.vertx.<Checkpoint>executeBlocking(promise -> {
+      try {
+        promise.complete(this.checkpointStore.read());
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+    }).compose(checkpoint -> {
+      if (checkpoint != null) {
+        for (Route route: this.routes) {
+          restore(route.getSourceObserver(), checkpoint);
+          restore(route.getDestObserver(), checkpoint);
+        }
+      }
+      return activate();
+    }).onSuccess(v -> {
+      int period = this.conf.checkpointPeriod > 0 ? this.conf.checkpointPeriod : DEFAULT_CHECKPOINT_PERIOD;
+      this.checkpointTimerId = this.vertx.setPeriodic(period, id -> writeCheckpoint());
+      LOG.info("Active: Took over in {} ms", System.currentTimeMillis() - start);
+    });
+  }
+
+  private void restore(BlockchainObserver observer, Checkpoint checkpoint) {
+    Checkpoint.ObserverCheckpoint observerCheckpoint = checkpoint.observers.get(observer.checkpointName());
+    if (observerCheckpoint != null) {
+      observer.restore(observerCheckpoint);
+    }
+  }
+
+  private void writeCheckpoint() {
+    Checkpoint checkpoint = checkpoint();
+    this.vertx.executeBlocking(promise -> {
+      try {
+        this.checkpointStore.write(checkpoint);
+        promise.complete();
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+    }, ar -> {
+      if (ar.failed()) {
+        LOG.error("Error writing checkpoint: {}", ar.cause().toString());
+      }
+    });
+  }
+
+  /**
+   * @return The watermark and transfers in flight for each observer.
+   */
+  public Checkpoint checkpoint() {
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.owner = this.lease != null ? this.lease.getOwner() : null;
+    checkpoint.timestamp = System.currentTimeMillis();
+    if (this.routes != null) {
+      for (Route route: this.routes) {
+        checkpoint.observers.put(route.getSourceObserver().checkpointName(), route.getSourceObserver().checkpoint());
+        checkpoint.observers.put(route.getDestObserver().checkpointName(), route.getDestObserver().checkpoint());
+      }
+    }
+    return checkpoint;
   }
 
+  public boolean isActive() {
+    return this.active;
+  }
+
+  public LeaderLease getLease() {
+    return this.lease;
+  }
+
+  /**
+   * Deploy the submission and ingestion verticles.
+   */
+  private Future<Void> activate() {
+    long start = System.nanoTime();
+    EventBus eventBus = this.vertx.eventBus();
+    eventBus.registerDefaultCodec(SourceTransferInitLog.class, new SourceTransferInitLogCodec());
+    eventBus.registerDefaultCodec(DestTransferCompletedLog.class, new DestTransferCompletedLogCodec());
+
+    // Deploy the submission verticles before the ingestion verticles, so that there are
+    // consumers for the first transfers found.
+    long drainTimeout = drainTimeout();
+    int ingestionThreads = this.conf.ingestionWorkerThreads > 0 ? this.conf.ingestionWorkerThreads : ObserverExecutor.DEFAULT_INGESTION_POOL_SIZE;
+    List<Future> submission = new ArrayList<>();
+    Map<String, List<BlockchainObserver>> observersByChain = new LinkedHashMap<>();
+    for (String chainName: this.chains.keySet()) {
+      observersByChain.put(chainName, new ArrayList<>());
+    }
+    for (Route route: this.routes) {
+      DeploymentOptions submissionOptions = new DeploymentOptions().setInstances(route.getSubmissionInstances());
+      // The instances of both submission verticles of a route share a pool sized to match them.
+      String poolName = ObserverExecutor.SUBMISSION_POOL_NAME + "-" + route.getName();
+      int poolSize = 2 * route.getSubmissionInstances() * ObserverExecutor.SUBMISSION_THREADS_PER_INSTANCE;
+      SourceBlockchainObserver sourceObserver = route.getSourceObserver();
+      DestinationBlockchainObserver destObserver = route.getDestObserver();
+      submission.add(this.vertx.deployVerticle(() -> new SubmissionVerticle<SourceTransferInitLog>(
+          EventBusAddresses.submitToDestination(route.getName()), sourceObserver::submitTransfer, poolName, poolSize, drainTimeout),
+          submissionOptions));
+      submission.add(this.vertx.deployVerticle(() -> new SubmissionVerticle<DestTransferCompletedLog>(
+          EventBusAddresses.finaliseAtSource(route.getName()), destObserver::finaliseTransfer, poolName, poolSize, drainTimeout),
+          submissionOptions));
+      observersByChain.get(route.getSource().getName()).add(sourceObserver);
+      observersByChain.get(route.getDest().getName()).add(destObserver);
+    }
+
+    return CompositeFuture.all(submission)
+        .compose(v -> {
+          // One ingestion verticle per chain, shared by all of the routes which use the chain.
+          List<Future> ingestion = new ArrayList<>();
+          for (Map.Entry<String, List<BlockchainObserver>> entry: observersByChain.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+              ingestion.add(this.vertx.deployVerticle(
+                  new IngestionVerticle(this.chains.get(entry.getKey()), entry.getValue(), ingestionThreads, drainTimeout)));
+            }
+          }
+          return CompositeFuture.all(ingestion);
+        })
+        .onSuccess(v -> {
+          this.active = true;
+          LOG.info("Deployed {} route(s) across {} chain(s)", this.routes.size(), this.chains.size());
+          startupPhase("deploy", start);
+        })
+        .<Void>mapEmpty();
+  }
+
+  private long drainTimeout() {
+    return this.conf.drainTimeout > 0 ? this.conf.drainTimeout : Drain.DEFAULT_DRAIN_TIMEOUT;
+  }
+
+  private void closeArchives() throws IOException {
+    if (this.routes == null) {
+      return;
+    }
+    for (Route route: this.routes) {
+      for (BlockchainObserver observer: Arrays.asList(route.getSourceObserver(), route.getDestObserver())) {
+        if (observer.getEventArchive() != null) {
+          observer.getEventArchive().close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Called once the ingestion and submission verticles, which are deployed by this verticle,
+   * have stopped. By then no new transfers are being found, and the transfers being processed
+   * have been drained. Write the final checkpoint, and release the lease so that a standby
+   * relayer can take over immediately.
+   */
   @Override
-  public void stop() {
+  public void stop(Promise<Void> stopPromise) {
     LOG.info("Shutting down");
+    if (this.checkpointTimerId != -1) {
+      this.vertx.cancelTimer(this.checkpointTimerId);
+    }
+    stopReconciliation();
+    stopWatchtowers();
+    stopLiquidityTracking();
+    Checkpoint checkpoint = checkpoint();
+    for (Map.Entry<String, Checkpoint.ObserverCheckpoint> entry: checkpoint.observers.entrySet()) {
+      LOG.info("{}: Safe watermark: {}, Transfers in flight: {}",
+          entry.getKey(), entry.getValue().watermark, entry.getValue().inFlight.size());
+    }
+    this.vertx.executeBlocking(promise -> {
+      try {
+        if (this.transferStore != null) {
+          this.transferStore.close();
+        }
+        closeArchives();
+        if (this.active && this.checkpointStore != null) {
+          this.checkpointStore.write(checkpoint);
+          LOG.info("Final checkpoint written to {}", this.checkpointStore.getFile());
+        }
+        promise.complete();
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+      finally {
+        this.active = false;
+        if (this.lease != null) {
+          this.lease.release();
+        }
+      }
+    }, stopPromise);
   }
 
 
@@ -120,10 +1020,12 @@ public class Relayer extends AbstractVerticle {
   public static void main (String[] args) throws Exception {
     System.out.println("Starting Relayer");
     LOG.info("Relayer start-up commenced");
-    if (args.length != 2) {
+    if (args.length != 2 && !(args.length == 4 && args[2].equalsIgnoreCase("BOOTSTRAP"))) {
       LOG.error("Two parameters reqired:");
       LOG.error(" sh relayer CONF <config file name>");
       LOG.error(" sh relayer PORT <port number>");
+      LOG.error("Optionally followed by a running relayer to import a snapshot from:");
+      LOG.error(" sh relayer CONF <config file name> BOOTSTRAP <relayer REST API URI>");
       System.exit(-1);
       return; // Seems to be needed to allow static analysis tools to work.
     }
@@ -153,8 +1055,23 @@ public class Relayer extends AbstractVerticle {
       System.exit(-1);
       return; // Seems to be needed to allow static analysis tools to work.
     }
+    if (args.length == 4) {
+      LOG.info("Bootstrapping from snapshot of relayer: {}", args[3]);
+      relayer.setBootstrapPeer(args[3]);
+    }
 
     Vertx vertx = Vertx.vertx();
     vertx.deployVerticle(relayer);
+
+    // Drain and checkpoint on SIGTERM or Ctrl-C.
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      CountDownLatch closed = new CountDownLatch(1);
+      vertx.close(ar -> closed.countDown());
+      try {
+        closed.await(relayer.drainTimeout() * 2L, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }, "relayer-shutdown"));
   }
 }
@@ -14,8 +14,21 @@
  */
 package net.consensys.htlcbridge.relayer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Relayer configuration. Either list the chains and the routes between them, or use the
+ * source* and dest* fields to configure a single route between two chains.
+ */
 public class RelayerConfig {
+  public static final String SOURCE_CHAIN = "source";
+  public static final String DEST_CHAIN = "dest";
+
+  public List<ChainConfig> chains;
+  public List<RouteConfig> routes;
+
   public String sourceBcUri;
   public String sourceTransferContract;
   public int sourceBlockPeriod;
@@ -38,6 +51,59 @@ public class RelayerConfig {
 
   public int apiPort;
 
+  // Number of instances of each submission verticle. Defaults to one.
+  public int submissionInstances;
+  // Threads of the worker pool which polls for new blocks and fetches logs. Defaults to 8.
+  public int ingestionWorkerThreads;
+
+  // Directory shared by an active and a standby relayer, holding the lease and the
+  // checkpoint. Null to run without a standby, and without a checkpoint.
+  public String stateDirectory;
+  // Milliseconds between checkpoints. Defaults to one second.
+  public int checkpointPeriod;
+  // Milliseconds between attempts by a standby relayer to acquire the lease. Defaults to one second.
+  public int leasePollPeriod;
+  // Milliseconds to wait on shutdown for transfers being processed. Defaults to 30 seconds.
+  public int drainTimeout;
+  // Blocks before the watermark of a bootstrap snapshot which are processed again. Defaults to 100.
+  public int bootstrapTailBlocks;
+  // Directory of the transfer lifecycle store. Null to run without a store.
+  public String storeDirectory;
+  // Directory of the archive of raw logs ingested, with a sub-directory per route and
+  // observer. Null to run without an archive.
+  public String archiveDirectory;
+  // Size in bytes of each memory-mapped archive segment. Defaults to 64 MB.
+  public int archiveSegmentSize;
+  // Milliseconds between reconciliation passes, which join the source and destination events
+  // of each route to find stuck transfers. Zero to not reconcile.
+  public int reconciliationPeriod;
+  // Blocks a transfer may wait to be relayed or finalised before it is reported. Defaults to 50.
+  public int reconciliationGraceBlocks;
+  // Seconds before its timeLock that an open transfer is reported. Defaults to one hour.
+  public int reconciliationExpiryWindow;
+  // REFUND to refund open transfers on the source chain once their timeLock passes, or ALERT
+  // to only log them. Null to not watch for expired transfers.
+  public String watchtowerMode;
+  // Milliseconds between watchtower passes. Defaults to 15 seconds.
+  public int watchtowerPeriod;
+  // Maximum refunds submitted per watchtower pass. Defaults to 20.
+  public int watchtowerBatchSize;
+  // True to check the transfers posted to the destination chain, by any relayer, against
+  // the source transfers.
+  public boolean verifyPostings;
+  // Blocks a transfer may wait to be posted, or a posting for its source transfer, before it
+  // is reported. Defaults to 20.
+  public int verificationGraceBlocks;
+  // Maximum transfers waiting for the other chain, for each route. Defaults to 100000.
+  public int verificationCapacity;
+  // True to track the liquidity of each destination contract, and defer posting transfers
+  // whose amount the contract couldn't pay out.
+  public boolean liquidityTracking;
+  // Milliseconds between updates of the liquidity index. Defaults to five seconds.
+  public int liquidityRefreshPeriod;
+  // Milliseconds before a deferred transfer is submitted again. Defaults to 30 seconds.
+  public int liquidityDeferPeriod;
+
   // Default constructor needed for loading from JSON.
   public RelayerConfig() { }
 
@@ -84,4 +150,30 @@ public class RelayerConfig {
 
     this.apiPort = apiPort;
   }
+
+  /**
+   * @return The configured chains, or the source and destination chains if no list of chains is configured.
+   */
+  public List<ChainConfig> chainConfigs() {
+    if (this.chains != null && !this.chains.isEmpty()) {
+      return this.chains;
+    }
+    List<ChainConfig> chainConfigs = new ArrayList<>();
+    chainConfigs.add(new ChainConfig(SOURCE_CHAIN, this.sourceBcUri, this.sourceBcId, this.sourceBlockPeriod,
+        this.sourceConfirmations, this.sourceRetries, this.sourceRelayerPKey, this.sourceGasStrategy));
+    chainConfigs.add(new ChainConfig(DEST_CHAIN, this.destBcUri, this.destBcId, this.destBlockPeriod,
+        this.destConfirmations, this.destRetries, this.destRelayerPKey, this.destGasStrategy));
+    return chainConfigs;
+  }
+
+  /**
+   * @return The configured routes, or a route from the source to the destination chain if no list of routes is configured.
+   */
+  public List<RouteConfig> routeConfigs() {
+    if (this.routes != null && !this.routes.isEmpty()) {
+      return this.routes;
+    }
+    return Collections.singletonList(new RouteConfig(null,
+        SOURCE_CHAIN, this.sourceTransferContract, DEST_CHAIN, this.destTransferContract));
+  }
 }
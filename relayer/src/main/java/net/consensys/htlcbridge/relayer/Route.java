@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+/**
+ * The observers for a route between two chains. The source observer finds new transfers on
+ * the source chain and posts them to the destination chain. The destination observer finds
+ * completed transfers on the destination chain and finalises them on the source chain.
+ */
+public class Route {
+  private final String name;
+  private final ChainResources source;
+  private final ChainResources dest;
+  private final SourceBlockchainObserver sourceObserver;
+  private final DestinationBlockchainObserver destObserver;
+  private final int submissionInstances;
+
+  /**
+   * @param config Route configuration.
+   * @param source Source chain.
+   * @param dest Destination chain.
+   * @param defaultSubmissionInstances Submission instances if not configured for the route.
+   * @param sourceObserver Observer created with createSourceObserver.
+   * @param destObserver Observer created with createDestObserver.
+   */
+  public Route(RouteConfig config, ChainResources source, ChainResources dest, int defaultSubmissionInstances,
+               SourceBlockchainObserver sourceObserver, DestinationBlockchainObserver destObserver) {
+    this.name = config.routeName();
+    this.source = source;
+    this.dest = dest;
+    this.sourceObserver = sourceObserver;
+    this.destObserver = destObserver;
+    this.submissionInstances = Math.max(1, config.submissionInstances > 0 ? config.submissionInstances : defaultSubmissionInstances);
+  }
+
+  /**
+   * Create the source observer for a route. This makes JSON RPC calls, so the observers
+   * for several routes can be created concurrently.
+   */
+  public static SourceBlockchainObserver createSourceObserver(RouteConfig config, ChainResources source, ChainResources dest) throws Exception {
+    return new SourceBlockchainObserver(config.routeName(),
+        source, config.sourceTransferContract, sourceConfirmations(config, source),
+        dest, config.destTransferContract, destConfirmations(config, dest));
+  }
+
+  /**
+   * Create the destination observer for a route. This makes JSON RPC calls, so the observers
+   * for several routes can be created concurrently.
+   */
+  public static DestinationBlockchainObserver createDestObserver(RouteConfig config, ChainResources source, ChainResources dest) throws Exception {
+    return new DestinationBlockchainObserver(config.routeName(),
+        source, config.sourceTransferContract, sourceConfirmations(config, source),
+        dest, config.destTransferContract, destConfirmations(config, dest));
+  }
+
+  static int sourceConfirmations(RouteConfig config, ChainResources source) {
+    return config.sourceConfirmations > 0 ? config.sourceConfirmations : source.getConfig().confirmations;
+  }
+
+  static int destConfirmations(RouteConfig config, ChainResources dest) {
+    return config.destConfirmations > 0 ? config.destConfirmations : dest.getConfig().confirmations;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public ChainResources getSource() {
+    return this.source;
+  }
+
+  public ChainResources getDest() {
+    return this.dest;
+  }
+
+  public SourceBlockchainObserver getSourceObserver() {
+    return this.sourceObserver;
+  }
+
+  public DestinationBlockchainObserver getDestObserver() {
+    return this.destObserver;
+  }
+
+  public int getSubmissionInstances() {
+    return this.submissionInstances;
+  }
+}
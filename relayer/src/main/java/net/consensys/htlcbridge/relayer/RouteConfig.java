@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+/**
+ * Configuration of a route: transfers started on the transfer contract of the source chain
+ * are relayed to the transfer contract on the destination chain, and finalised back on the
+ * source chain once completed. Zero values mean use the value configured for the chain or
+ * the relayer.
+ */
+public class RouteConfig {
+  // Defaults to <sourceChain>-<destChain>.
+  public String name;
+  public String sourceChain;
+  public String sourceTransferContract;
+  public String destChain;
+  public String destTransferContract;
+
+  public int sourceConfirmations;
+  public int destConfirmations;
+  public int submissionInstances;
+
+  // Default constructor needed for loading from JSON.
+  public RouteConfig() { }
+
+  public RouteConfig(String name, String sourceChain, String sourceTransferContract,
+                     String destChain, String destTransferContract) {
+    this.name = name;
+    this.sourceChain = sourceChain;
+    this.sourceTransferContract = sourceTransferContract;
+    this.destChain = destChain;
+    this.destTransferContract = destTransferContract;
+  }
+
+  public String routeName() {
+    return this.name != null ? this.name : this.sourceChain + "-" + this.destChain;
+  }
+}
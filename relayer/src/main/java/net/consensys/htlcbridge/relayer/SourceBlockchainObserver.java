@@ -14,114 +14,278 @@
  */
 package net.consensys.htlcbridge.relayer;
 
-import io.reactivex.Flowable;
-import io.vertx.core.Context;
 import net.consensys.htlcbridge.common.RevertReason;
-import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import net.consensys.htlcbridge.relayer.bus.EventBusAddresses;
+import net.consensys.htlcbridge.relayer.liquidity.LiquidityIndexer;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import net.consensys.htlcbridge.store.TransferEvent;
+import net.consensys.htlcbridge.store.TransferRecord;
+import net.consensys.htlcbridge.store.TransferStage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
-import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.RemoteFunctionCall;
 import org.web3j.protocol.core.methods.response.EthBlockNumber;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutionException;
 
 public class SourceBlockchainObserver extends BlockchainObserver {
   private static final Logger LOG = LogManager.getLogger(SourceBlockchainObserver.class);
 
-  public SourceBlockchainObserver(
-      String sourceUri, String transferContractAddress, int sourceBlockPeriod, int sourceConfirmations,
-      String sourcePKey, int sourceRetries, long sourceBcId, String sourceGasStrategy,
-      String destUri, String receiverContractAddress, int destBlockPeriod, int destConfirmations,
-      String destPKey, int destRetries, long destBcId, String destGasStrategy) throws Exception {
-    super(
-        sourceUri, transferContractAddress, sourceBlockPeriod, sourceConfirmations,
-        sourcePKey, sourceRetries, sourceBcId, sourceGasStrategy,
-        destUri, receiverContractAddress, destBlockPeriod, destConfirmations,
-        destPKey, destRetries, destBcId, destGasStrategy);
+  // Seconds allowed for a deferred transfer to be posted, beyond the destination time lock
+  // period, before the source timeLock.
+  public static final long DEFER_SAFETY_MARGIN = 600;
 
-    this.isSourceObserver = true;
-    setLackBlockCheckedInitialValue(sourceBlockPeriod, sourceConfirmations, this.srcTransferContract, this.sourceWeb3j);
-  }
+  // Liquidity of the destination contract, or null if it isn't checked before posting transfers.
+  private LiquidityIndexer liquidityIndexer;
+  // Milliseconds before a transfer deferred for lack of liquidity is submitted again.
+  private long liquidityDeferPeriod;
+  // The destination contract's time lock period in seconds.
+  private final long destTimeLockPeriod;
 
+  public SourceBlockchainObserver(String routeName,
+      ChainResources source, String transferContractAddress, int sourceConfirmations,
+      ChainResources dest, String receiverContractAddress, int destConfirmations) throws Exception {
+    super(routeName, source, transferContractAddress, sourceConfirmations, dest, receiverContractAddress, destConfirmations);
 
-  public void checkNewBlock() {
-    checkNewBlock(this.sourceWeb3j);
+    this.isSourceObserver = true;
+    CompletableFuture<BigInteger> destTimeLockPeriodFuture =
+        RpcCallContext.sendAsync(RpcCallContext.OBSERVER, null, this.destTransferContract.destTimeLockPeriod()::send);
+    setLackBlockCheckedInitialValue(source.getBlockPeriod(), sourceConfirmations, this.srcTransferContract, this.sourceWeb3j);
+    try {
+      this.destTimeLockPeriod = destTimeLockPeriodFuture.get().longValue();
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    }
   }
 
   protected void processNextBlock(EthBlockNumber ethBlockNumber) {
-    DefaultBlockParameter[] result = determineIfBlockToProcess(ethBlockNumber, this.sourceConfirmations);
-    if (result == null) {
+    long[] range = determineIfBlockToProcess(ethBlockNumber, this.sourceConfirmations);
+    if (range == null) {
       return;
     }
-    DefaultBlockParameter startBlock = result[0];
-    DefaultBlockParameter endBlock = result[1];
-    Flowable<Erc20HtlcTransfer.SourceTransferInitEventResponse> transferInitEvents =
-        this.srcTransferContract.sourceTransferInitEventFlowable(startBlock, endBlock);
+    final long startBlock = range[0];
+    final long endBlock = range[1];
 
-    transferInitEvents.subscribe(new io.reactivex.functions.Consumer<Erc20HtlcTransfer.SourceTransferInitEventResponse>() {
-      @Override
-      public void accept(Erc20HtlcTransfer.SourceTransferInitEventResponse txInitEvent) {
-        String commitmentS = Bytes.wrap(txInitEvent.commitment).toHexString();
-
-        if (txInitEvent.amount.compareTo(BigInteger.ZERO) == 0) {
-          LOG.info("Ignoring transfer ({}) as amount is 0", commitmentS);
-          return;
+    Callable<List<SourceTransferInitLog>> fetchLogs = () -> this.sourceLogFetcher.fetchSourceTransferInit(startBlock, endBlock);
+    this.executor.execute(RpcCallContext.OBSERVER, null, fetchLogs, (logs, th) -> {
+      if (th == null) {
+        long archivedUpTo = archivedUpTo();
+        for (SourceTransferInitLog txInitEvent: logs) {
+          if (txInitEvent.getBlockNumber() > archivedUpTo) {
+            archive(archive -> ArchivedLogs.append(archive, txInitEvent), txInitEvent.getBlockNumber(), txInitEvent.getLogIndex());
+          }
+          handleTransferInit(txInitEvent, true);
         }
+        if (this.postingVerifier != null) {
+          this.postingVerifier.sourceBlockProcessed(endBlock);
+        }
+        rangeProcessed(endBlock);
+      } else {
+        rangeFailed();
+        LOG.error("{}: Get logs for blocks {} to {} failed: Error: {}", observerName(), startBlock, endBlock, th.toString());
+      }
+    });
+  }
+
+  private void handleTransferInit(SourceTransferInitLog txInitEvent, boolean dispatch) {
+    if (txInitEvent.isAmountZero()) {
+      LOG.info("Ignoring transfer ({}) as amount is 0", Bytes.wrap(txInitEvent.getCommitment()).toHexString());
+      return;
+    }
+    String commitmentS = Bytes.wrap(txInitEvent.getCommitment()).toHexString();
+    record(TransferEvent.sourceInit(commitmentS, txInitEvent.getBlockNumber(), System.currentTimeMillis(),
+        txInitEvent.getSenderAddress(), txInitEvent.getTokenContract(), txInitEvent.getAmount(), txInitEvent.getTimeLock()));
+    if (dispatch) {
+      if (this.postingVerifier != null) {
+        this.postingVerifier.onSourceTransferInit(txInitEvent);
+      }
+      transferDispatched(commitmentS, txInitEvent.getBlockNumber());
+      this.vertx.eventBus().send(EventBusAddresses.submitToDestination(this.routeName), txInitEvent);
+    }
+  }
 
-        // Check whether another relayer has already submitted this transfer.
-        CompletableFuture<Boolean> futureTransferExists = destTransferContract.destTransferExists(txInitEvent.commitment).sendAsync();
-        Context context = vertx.getOrCreateContext();
-        futureTransferExists.handle((transferExists, th) -> {
-          context.runOnContext(event -> {
-            if (th == null) {
-              if (transferExists) {
-                LOG.info("Ignoring transfer ({}) already communicated to destination", commitmentS);
-              } else {
-                postCommitmentToDestination(txInitEvent, commitmentS);
-              }
-            } else {
-              LOG.error("Error processing DestTransferExists: Commitment: {}, Error: {}", commitmentS, th.toString());
-            }
-          });
-          return null;
-        });
+  @Override
+  public long replay(long fromBlock, long toBlock, boolean dispatch) throws Exception {
+    if (this.eventArchive == null) {
+      throw new IllegalStateException(observerName() + ": No event archive configured");
+    }
+    if (dispatch && this.vertx == null) {
+      throw new IllegalStateException(observerName() + ": Can not dispatch replayed transfers until active");
+    }
+    return ArchivedLogs.replay(this.eventArchive, fromBlock, toBlock, new TransferLogHandler() {
+      @Override
+      public void onSourceTransferInit(SourceTransferInitLog log) {
+        handleTransferInit(log, dispatch);
       }
     });
   }
 
-  private void postCommitmentToDestination(Erc20HtlcTransfer.SourceTransferInitEventResponse txInitEvent, String commitmentS) {
-    LOG.info("Submitting transfer: Commitment: {}, Sender: {}, Token Contract: {}, Amount: {}, TimeLock: {}",
-        commitmentS, txInitEvent.sender, txInitEvent.tokenContract, txInitEvent.amount, txInitEvent.timeLock);
-
-    CompletableFuture<TransactionReceipt> futureTxr = destTransferContract.newTransferFromOtherBlockchain(txInitEvent.tokenContract, txInitEvent.sender, txInitEvent.amount, txInitEvent.commitment).sendAsync();
-    Context context = vertx.getOrCreateContext();
-    futureTxr.handle((txr, th) -> {
-      context.runOnContext(event -> {
-        if (th == null) {
-          if (txr.isStatusOK()) {
-            LOG.info("Transfer {} commitment posted", commitmentS);
-          }
-          else {
-            LOG.error("Transfer {} failed: {}", commitmentS, txr.getStatus());
-          }
+  /**
+   * Check that the destination contract can pay out a transfer before posting it.
+   *
+   * @param liquidityIndexer Liquidity of the destination contract.
+   * @param deferPeriod Milliseconds before a transfer whose amount isn't available is submitted again.
+   */
+  public void setLiquidityIndexer(LiquidityIndexer liquidityIndexer, long deferPeriod) {
+    this.liquidityIndexer = liquidityIndexer;
+    this.liquidityDeferPeriod = deferPeriod;
+  }
+
+  /**
+   * Post a transfer to the destination blockchain, unless it is already there. Called by
+   * the submission verticles.
+   *
+   * @param txInitEvent The transfer.
+   * @param executor Executor of the calling verticle.
+   * @return Completes once the transfer has been posted, skipped, or has failed.
+   */
+  public Future<Void> submitTransfer(SourceTransferInitLog txInitEvent, ObserverExecutor executor) {
+    final byte[] commitment = txInitEvent.getCommitment();
+    String commitmentS = Bytes.wrap(commitment).toHexString();
+    TransferStage storedState = storedState(commitmentS);
+    if (isKnownSubmitted(commitmentS) || (storedState != null && storedState != TransferStage.SOURCE_INIT)) {
+      LOG.info("Ignoring transfer ({}) already known to be communicated to destination", commitmentS);
+      transferCompleted(commitmentS, Outcome.ALREADY_SUBMITTED, txInitEvent.getTimeLock());
+      return Future.succeededFuture();
+    }
+    Promise<Outcome> done = Promise.promise();
+
+    // Check whether another relayer has already submitted this transfer.
+    RemoteFunctionCall<Boolean> transferExistsCall = destTransferContract.destTransferExists(commitment);
+    executor.execute(RpcCallContext.OBSERVER, commitment, transferExistsCall::send, (transferExists, th) -> {
+      if (th == null) {
+        if (transferExists) {
+          LOG.info("Ignoring transfer ({}) already communicated to destination", commitmentS);
+          record(TransferEvent.stage(TransferStage.DEST_POSTED, commitmentS, TransferRecord.UNKNOWN_BLOCK, System.currentTimeMillis()));
+          done.complete(Outcome.ALREADY_SUBMITTED);
         } else {
-          if (th instanceof TransactionException) {
-            TransactionException ex = (TransactionException) th;
-            LOG.error("Transfer {} failed: Revert Reason: {}", commitmentS, RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
+          postCommitmentToDestination(txInitEvent, commitment, commitmentS, executor, done);
+        }
+      } else {
+        LOG.error("Error processing DestTransferExists: Commitment: {}, Error: {}", commitmentS, th.toString());
+        done.fail(th);
+      }
+    });
+    return done.future()
+        .onComplete(ar -> {
+          if (ar.succeeded() && ar.result() == Outcome.DEFERRED) {
+            deferTransfer(txInitEvent, commitmentS);
           }
           else {
-            LOG.error("Transfer {} failed: Error: {}", commitmentS, th.toString());
+            transferCompleted(commitmentS, ar.succeeded() ? ar.result() : Outcome.FAILED, txInitEvent.getTimeLock());
           }
-        }
-      });
-      return null;
+        })
+        .mapEmpty();
+  }
+
+  /**
+   * Submit a transfer whose amount isn't available at the destination again later, unless
+   * it could then be posted too late, in which case it is not posted.
+   */
+  private void deferTransfer(SourceTransferInitLog txInitEvent, String commitmentS) {
+    long now = System.currentTimeMillis() / 1000;
+    long remaining = txInitEvent.getTimeLock() - now;
+    if (!canDefer(txInitEvent.getTimeLock(), now, this.liquidityDeferPeriod, this.destTimeLockPeriod)) {
+      LOG.error("Transfer {} not posted: Destination liquidity not available with {} seconds of time lock remaining",
+          commitmentS, remaining);
+      this.liquidityIndexer.flagged();
+      transferCompleted(commitmentS, Outcome.FAILED, txInitEvent.getTimeLock());
+      return;
+    }
+    LOG.info("Transfer {} deferred for {} ms: Destination liquidity not available", commitmentS, this.liquidityDeferPeriod);
+    this.vertx.setTimer(this.liquidityDeferPeriod,
+        id -> this.vertx.eventBus().send(EventBusAddresses.submitToDestination(this.routeName), txInitEvent));
+  }
+
+  /**
+   * A transfer posted at the destination can be finalised until the destination time lock
+   * period after it is posted. That must be before the source timeLock, after which the
+   * sender can refund the transfer.
+   *
+   * @param timeLock Source timeLock of the transfer, in seconds.
+   * @param now Current time in seconds.
+   * @param deferPeriod Milliseconds before the transfer is submitted again.
+   * @param destTimeLockPeriod Destination time lock period in seconds.
+   * @return true if the transfer can be submitted again after the defer period.
+   */
+  static boolean canDefer(long timeLock, long now, long deferPeriod, long destTimeLockPeriod) {
+    long postedBy = now + (deferPeriod + 999) / 1000 + DEFER_SAFETY_MARGIN;
+    return postedBy + destTimeLockPeriod <= timeLock;
+  }
+
+  private void postCommitmentToDestination(SourceTransferInitLog txInitEvent, byte[] commitment, String commitmentS,
+                                           ObserverExecutor executor, Promise<Outcome> done) {
+    LiquidityIndexer liquidity = this.liquidityIndexer;
+    if (liquidity == null) {
+      postCommitment(txInitEvent, commitment, commitmentS, executor, done);
+      return;
+    }
+    String tokenContract = txInitEvent.getTokenContract();
+    BigInteger amount = txInitEvent.getAmount();
+    executor.execute(RpcCallContext.OBSERVER, commitment, () -> liquidity.tryReserve(commitment, tokenContract, amount), (reserved, th) -> {
+      if (th != null) {
+        LOG.warn("Transfer {}: Unable to check destination liquidity, posting anyway: {}", commitmentS, th.toString());
+        postCommitment(txInitEvent, commitment, commitmentS, executor, done);
+      }
+      else if (reserved) {
+        postCommitment(txInitEvent, commitment, commitmentS, executor, done);
+      }
+      else {
+        done.complete(Outcome.DEFERRED);
+      }
     });
   }
 
+  private void postCommitment(SourceTransferInitLog txInitEvent, byte[] commitment, String commitmentS,
+                              ObserverExecutor executor, Promise<Outcome> done) {
+    String sender = txInitEvent.getSenderAddress();
+    String tokenContract = txInitEvent.getTokenContract();
+    BigInteger amount = txInitEvent.getAmount();
+    LOG.info("Submitting transfer: Commitment: {}, Sender: {}, Token Contract: {}, Amount: {}, TimeLock: {}",
+        commitmentS, sender, tokenContract, amount, txInitEvent.getTimeLock());
+
+    RemoteFunctionCall<TransactionReceipt> newTransferCall =
+        destTransferContract.newTransferFromOtherBlockchain(tokenContract, sender, amount, commitment);
+    executor.execute(RpcCallContext.OBSERVER, commitment, newTransferCall::send, (txr, th) -> {
+      if (th == null) {
+        if (txr.isStatusOK()) {
+          LOG.info("Transfer {} commitment posted", commitmentS);
+          record(TransferEvent.stage(TransferStage.DEST_POSTED, commitmentS, txr.getBlockNumber().longValue(), System.currentTimeMillis()));
+          done.complete(Outcome.SUBMITTED);
+        }
+        else {
+          LOG.error("Transfer {} failed: {}", commitmentS, txr.getStatus());
+          releaseLiquidity(commitment);
+          done.complete(Outcome.FAILED);
+        }
+      } else {
+        releaseLiquidity(commitment);
+        if (th instanceof TransactionException) {
+          TransactionException ex = (TransactionException) th;
+          LOG.error("Transfer {} failed: Revert Reason: {}", commitmentS, RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
+        }
+        else {
+          LOG.error("Transfer {} failed: Error: {}", commitmentS, th.toString());
+        }
+        done.fail(th);
+      }
+    });
+  }
 
+  private void releaseLiquidity(byte[] commitment) {
+    if (this.liquidityIndexer != null) {
+      this.liquidityIndexer.release(commitment);
+    }
+  }
 }
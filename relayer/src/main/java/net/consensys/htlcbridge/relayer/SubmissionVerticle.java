@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.MessageConsumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.function.BiFunction;
+
+/**
+ * Consumes transfers sent over the event bus by an ingestion verticle, and checks and
+ * submits them to a blockchain. Several instances can be deployed for the same address:
+ * the event bus delivers each transfer to one of them.
+ *
+ * @param <T> Type of message consumed.
+ */
+public class SubmissionVerticle<T> extends AbstractVerticle {
+  private static final Logger LOG = LogManager.getLogger(SubmissionVerticle.class);
+
+  private final String address;
+  private final BiFunction<T, ObserverExecutor, Future<Void>> submitter;
+  private final String workerPoolName;
+  private final int workerPoolSize;
+  private final long drainTimeoutMs;
+  private MessageConsumer<T> consumer;
+  // Transfers being processed. Only accessed on this verticle's context.
+  private int pending;
+
+  /**
+   * @param address Event bus address to consume transfers from.
+   * @param submitter Processes a transfer, running blocking calls using the executor. The
+   *   future completes when the transfer has been processed.
+   * @param workerPoolName Worker pool for the blocking calls, shared by the instances.
+   * @param workerPoolSize Threads of the worker pool.
+   * @param drainTimeoutMs Maximum time to wait when stopping for transfers being processed.
+   */
+  public SubmissionVerticle(String address, BiFunction<T, ObserverExecutor, Future<Void>> submitter,
+                            String workerPoolName, int workerPoolSize, long drainTimeoutMs) {
+    this.address = address;
+    this.submitter = submitter;
+    this.workerPoolName = workerPoolName;
+    this.workerPoolSize = workerPoolSize;
+    this.drainTimeoutMs = drainTimeoutMs;
+  }
+
+  @Override
+  public void start() {
+    ObserverExecutor executor = new ObserverExecutor(this.vertx, this.context, this.workerPoolName, this.workerPoolSize);
+    this.consumer = this.vertx.eventBus().<T>consumer(this.address, message -> {
+      this.pending++;
+      this.submitter.apply(message.body(), executor).onComplete(ar -> this.pending--);
+    });
+    LOG.info("Submission started: Address: {}", this.address);
+  }
+
+  /**
+   * Stop taking new transfers, and wait for the transfers being processed. Transfers which
+   * are not processed stay in flight in the checkpoint, and are processed again on restart.
+   */
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    this.consumer.unregister()
+        .compose(v -> Drain.awaitIdle(this.vertx, () -> this.pending == 0, this.drainTimeoutMs))
+        .onSuccess(drained -> {
+          if (drained) {
+            LOG.info("Submission stopped: Address: {}", this.address);
+          }
+          else {
+            LOG.warn("Submission stopped: Address: {}: {} transfers still being processed", this.address, this.pending);
+          }
+        })
+        .<Void>mapEmpty()
+        .onComplete(stopPromise);
+  }
+}
@@ -2,16 +2,36 @@ package net.consensys.htlcbridge.relayer.api;
 
 import io.vertx.core.Future;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
-import net.consensys.htlcbridge.relayer.DestinationBlockchainObserver;
 import net.consensys.htlcbridge.relayer.Relayer;
 import net.consensys.htlcbridge.relayer.RelayerConfig;
-import net.consensys.htlcbridge.relayer.SourceBlockchainObserver;
+import net.consensys.htlcbridge.relayer.ha.LeaderLease;
+import net.consensys.htlcbridge.relayer.liquidity.LiquidityIndex;
+import net.consensys.htlcbridge.relayer.liquidity.LiquidityIndexer;
+import net.consensys.htlcbridge.relayer.recon.ReconciliationEngine;
+import net.consensys.htlcbridge.relayer.recon.RouteReconciler;
+import net.consensys.htlcbridge.relayer.rpc.AdaptiveConcurrencyLimiter;
+import net.consensys.htlcbridge.relayer.rpc.RpcAccounting;
+import net.consensys.htlcbridge.relayer.rpc.RpcTransport;
+import net.consensys.htlcbridge.relayer.watchtower.PostingVerifier;
+import net.consensys.htlcbridge.relayer.watchtower.RefundWatchtower;
+import net.consensys.htlcbridge.store.TransferRecord;
+import net.consensys.htlcbridge.store.TransferStage;
+import net.consensys.htlcbridge.store.TransferStore;
+import net.consensys.htlcbridge.transfer.TransferState;
+import net.consensys.htlcbridge.transfer.table.TransferTable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.tuweni.bytes.Bytes32;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class RestAPI {
   private static final Logger LOG = LogManager.getLogger(RestAPI.class);
@@ -33,6 +53,25 @@ public class RestAPI {
     // TODO block confirmations
     // TODO block periods
 
+    router.get("/metrics/rpc").handler(this::getRpcCalls);
+    router.get("/metrics/rpc/limits").handler(this::getRpcLimits);
+    router.get("/metrics/rpc/transfers").handler(this::getRpcTransferCosts);
+    router.get("/metrics/verification").handler(this::getVerificationMetrics);
+
+    router.get("/ha/status").handler(this::getHaStatus);
+    router.get("/ready").handler(this::getReadiness);
+    router.get("/snapshot").handler(this::getSnapshot);
+
+    router.post("/archive/replay").handler(this::replayArchive);
+    router.get("/archive/summary").handler(this::getArchiveSummary);
+
+    router.get("/reconciliation").handler(this::getReconciliation);
+    router.get("/watchtower").handler(this::getWatchtower);
+    router.get("/liquidity").handler(this::getLiquidity);
+
+    router.get("/transfers").handler(this::findTransfers);
+    router.get("/transfers/:commitment").handler(this::getTransfer);
+
     router
         .get("/ver")
         // this handler will ensure that the response is serialized to json
@@ -122,19 +161,7 @@ public class RestAPI {
 //    }
 
     try {
-      relayer.sourceBlockchainObserver = new SourceBlockchainObserver(
-          config.sourceBcUri, config.sourceTransferContract, config.sourceBlockPeriod, config.sourceConfirmations,
-          config.sourceRelayerPKey, config.sourceRetries, config.sourceBcId, config.sourceGasStrategy,
-          config.destBcUri, config.destTransferContract, config.destBlockPeriod, config.destConfirmations,
-          config.destRelayerPKey, config.destRetries, config.destBcId, config.destGasStrategy);
-      relayer.sourceBlockPeriod = config.sourceBlockPeriod;
-
-      relayer.destBlockchainObserver = new DestinationBlockchainObserver(
-          config.sourceBcUri, config.sourceTransferContract, config.sourceBlockPeriod, config.sourceConfirmations,
-          config.sourceRelayerPKey, config.sourceRetries, config.sourceBcId, config.sourceGasStrategy,
-          config.destBcUri, config.destTransferContract, config.destBlockPeriod, config.destConfirmations,
-          config.destRelayerPKey, config.destRetries, config.destBcId, config.destGasStrategy);
-      relayer.destBlockPeriod = config.destBlockPeriod;
+      this.relayer.configure(config);
     }
     catch (Exception ex) {
       relayer.resetConfig();
@@ -146,7 +173,6 @@ public class RestAPI {
       return;
     }
 
-    this.relayer.conf = config;
     LOG.info("Config all: Configured");
 
     routingContext.response()
@@ -155,6 +181,476 @@ public class RestAPI {
         .end(Json.encodePrettily(config));
   }
 
+  private void getRpcLimits(RoutingContext routingContext) {
+    JsonArray limits = new JsonArray();
+    for (AdaptiveConcurrencyLimiter limiter: RpcTransport.allLimiters()) {
+      limits.add(new JsonObject()
+          .put("endpoint", limiter.getName())
+          .put("limit", limiter.getLimit())
+          .put("inFlight", limiter.getInFlight())
+          .put("waiting", limiter.getWaiting())
+          .put("avgQueueDelayMs", limiter.getAverageQueueDelayMillis())
+          .put("maxQueueDelayMs", limiter.getMaxQueueDelayMillis())
+          .put("baselineLatencyMs", limiter.getBaselineLatencyMillis())
+          .put("timeouts", limiter.getNumTimeouts())
+          .put("latencySpikes", limiter.getNumLatencySpikes()));
+    }
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(limits.encodePrettily());
+  }
+
+  private void getRpcCalls(RoutingContext routingContext) {
+    JsonArray calls = new JsonArray();
+    for (RpcAccounting.MethodStats stats: RpcAccounting.allMethodStats()) {
+      JsonArray histogram = new JsonArray();
+      long[] counts = stats.getLatencyHistogram();
+      for (int i = 0; i < counts.length; i++) {
+        String bucket = i < RpcAccounting.LATENCY_BUCKETS_MS.length ?
+            Long.toString(RpcAccounting.LATENCY_BUCKETS_MS[i]) : "+Inf";
+        histogram.add(new JsonObject().put("leMs", bucket).put("count", counts[i]));
+      }
+      calls.add(new JsonObject()
+          .put("method", stats.getMethod())
+          .put("endpoint", stats.getEndpoint())
+          .put("caller", stats.getTag())
+          .put("count", stats.getCount())
+          .put("errors", stats.getErrors())
+          .put("errorsByKind", new JsonObject(new LinkedHashMap<>(stats.getErrorsByKind())))
+          .put("lastError", stats.getLastError())
+          .put("bytesOut", stats.getBytesOut())
+          .put("bytesIn", stats.getBytesIn())
+          .put("avgLatencyMs", stats.getAverageLatencyMillis())
+          .put("latencyHistogram", histogram));
+    }
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(calls.encodePrettily());
+  }
+
+  private void getRpcTransferCosts(RoutingContext routingContext) {
+    JsonObject costs = new JsonObject()
+        .put("transfers", RpcAccounting.getNumTransfers())
+        .put("avgCallsPerTransfer", RpcAccounting.getAverageCallsPerTransfer())
+        .put("avgBytesPerTransfer", RpcAccounting.getAverageBytesPerTransfer());
+
+    String commitment = routingContext.request().getParam("commitment");
+    if (commitment != null) {
+      RpcAccounting.TransferStats stats = RpcAccounting.getTransferStats(commitment.toLowerCase());
+      if (stats != null) {
+        costs.put("commitment", new JsonObject()
+            .put("commitment", stats.getCommitment())
+            .put("calls", stats.getCalls())
+            .put("bytes", stats.getBytes()));
+      }
+    }
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(costs.encodePrettily());
+  }
+
+  private void getReadiness(RoutingContext routingContext) {
+    JsonObject timings = new JsonObject();
+    for (Map.Entry<String, Long> entry: this.relayer.getStartupTimings().entrySet()) {
+      timings.put(entry.getKey(), entry.getValue());
+    }
+    JsonObject readiness = new JsonObject()
+        .put("ready", this.relayer.isReady())
+        .put("phase", this.relayer.getStartupPhase())
+        .put("error", this.relayer.getStartupError())
+        .put("timingsMs", timings);
+
+    routingContext.response()
+        .setStatusCode(this.relayer.isReady() ? 200 : 503)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(readiness.encodePrettily());
+  }
+
+  private static final int DEFAULT_TRANSFERS_LIMIT = 100;
+  // Seconds from now within which open transfers are reported as near expiry.
+  private static final long DEFAULT_EXPIRY_WINDOW = 3600;
+  // Transfers listed for each reconciliation issue.
+  private static final int DEFAULT_RECONCILIATION_LIMIT = 100;
+
+  /**
+   * Find transfers in the transfer store by sender, token contract, or state. Parameters:
+   * sender, token or state (one of them), and optionally limit.
+   */
+  private void findTransfers(RoutingContext routingContext) {
+    TransferStore store = this.relayer.transferStore;
+    if (store == null) {
+      storeNotConfigured(routingContext);
+      return;
+    }
+    String sender = routingContext.request().getParam("sender");
+    String token = routingContext.request().getParam("token");
+    String state = routingContext.request().getParam("state");
+    String limitS = routingContext.request().getParam("limit");
+    List<TransferRecord> records;
+    try {
+      int limit = limitS == null ? DEFAULT_TRANSFERS_LIMIT : Integer.parseInt(limitS);
+      if (sender != null) {
+        records = store.findBySender(sender, limit);
+      }
+      else if (token != null) {
+        records = store.findByToken(token, limit);
+      }
+      else if (state != null) {
+        records = store.findByState(TransferStage.valueOf(state.toUpperCase()), limit);
+      }
+      else {
+        JsonObject counts = new JsonObject();
+        for (Map.Entry<TransferStage, Integer> entry: store.countByState().entrySet()) {
+          counts.put(entry.getKey().name(), entry.getValue());
+        }
+        routingContext.response()
+            .setStatusCode(200)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(counts.encodePrettily());
+        return;
+      }
+    } catch (IllegalArgumentException ex) {
+      routingContext.response()
+          .setStatusCode(400)
+          .putHeader("content-type", "application/json; charset=utf-8")
+          .end(new JsonObject().put("Issue", ex.getMessage()).toString());
+      return;
+    }
+
+    JsonArray result = new JsonArray();
+    for (TransferRecord record: records) {
+      result.add(toJson(record));
+    }
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(result.encodePrettily());
+  }
+
+  private void getTransfer(RoutingContext routingContext) {
+    TransferStore store = this.relayer.transferStore;
+    if (store == null) {
+      storeNotConfigured(routingContext);
+      return;
+    }
+    TransferRecord record;
+    try {
+      record = store.get(routingContext.pathParam("commitment"));
+    } catch (IllegalArgumentException ex) {
+      record = null;
+    }
+    if (record == null) {
+      routingContext.response()
+          .setStatusCode(404)
+          .putHeader("content-type", "application/json; charset=utf-8")
+          .end(new JsonObject().put("Issue", "unknown transfer").toString());
+      return;
+    }
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(toJson(record).encodePrettily());
+  }
+
+  private static void storeNotConfigured(RoutingContext routingContext) {
+    routingContext.response()
+        .setStatusCode(503)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(new JsonObject().put("Issue", "transfer store not configured").toString());
+  }
+
+  private static JsonObject toJson(TransferRecord record) {
+    JsonObject stages = new JsonObject();
+    for (TransferStage stage: TransferStage.values()) {
+      if (record.hasReached(stage)) {
+        stages.put(stage.name(), new JsonObject()
+            .put("blockNumber", record.getBlockNumber(stage))
+            .put("timestamp", record.getTimestamp(stage)));
+      }
+    }
+    return new JsonObject()
+        .put("commitment", record.getCommitment())
+        .put("state", record.getState().name())
+        .put("sender", record.getSender())
+        .put("tokenContract", record.getTokenContract())
+        .put("amount", record.getAmount() == null ? null : record.getAmount().toString())
+        .put("timeLock", record.getTimeLock())
+        .put("stages", stages);
+  }
+
+  /**
+   * Replay archived logs through an observer. Parameters: observer (source or dest), from,
+   * to, and optionally route and dispatch (true to also submit the transfers).
+   */
+  private void replayArchive(RoutingContext routingContext) {
+    String route = routingContext.request().getParam("route");
+    String observer = routingContext.request().getParam("observer");
+    String from = routingContext.request().getParam("from");
+    String to = routingContext.request().getParam("to");
+    boolean dispatch = Boolean.parseBoolean(routingContext.request().getParam("dispatch"));
+    Future<Long> replayed;
+    try {
+      if (!"source".equals(observer) && !"dest".equals(observer)) {
+        throw new IllegalArgumentException("observer must be source or dest");
+      }
+      if (from == null || to == null) {
+        throw new IllegalArgumentException("from and to blocks must be specified");
+      }
+      replayed = this.relayer.replay(route, "source".equals(observer), Long.parseLong(from), Long.parseLong(to), dispatch);
+    } catch (IllegalArgumentException ex) {
+      replayed = Future.failedFuture(ex);
+    }
+    replayed.onComplete(ar -> {
+      if (ar.succeeded()) {
+        routingContext.response()
+            .setStatusCode(200)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(new JsonObject().put("replayed", ar.result()).toString());
+      }
+      else {
+        LOG.error("Replay: {}", ar.cause().toString());
+        routingContext.response()
+            .setStatusCode(ar.cause() instanceof IllegalArgumentException ? 400 : 503)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(new JsonObject().put("Issue", ar.cause().getMessage()).toString());
+      }
+    });
+  }
+
+  /**
+   * Summarise the transfers archived by a route's source observer. Parameters: from, to,
+   * and optionally route, and window: seconds from now for open transfers to be counted
+   * as near expiry (default one hour).
+   */
+  private void getArchiveSummary(RoutingContext routingContext) {
+    String route = routingContext.request().getParam("route");
+    String from = routingContext.request().getParam("from");
+    String to = routingContext.request().getParam("to");
+    String window = routingContext.request().getParam("window");
+    Future<TransferTable> loaded;
+    long windowSeconds;
+    try {
+      if (from == null || to == null) {
+        throw new IllegalArgumentException("from and to blocks must be specified");
+      }
+      windowSeconds = window == null ? DEFAULT_EXPIRY_WINDOW : Long.parseLong(window);
+      loaded = this.relayer.transferTable(route, Long.parseLong(from), Long.parseLong(to));
+    } catch (IllegalArgumentException ex) {
+      windowSeconds = 0;
+      loaded = Future.failedFuture(ex);
+    }
+    final long expiryWindow = windowSeconds;
+    loaded.onComplete(ar -> {
+      if (ar.failed()) {
+        LOG.error("Archive summary: {}", ar.cause().toString());
+        routingContext.response()
+            .setStatusCode(ar.cause() instanceof IllegalArgumentException ? 400 : 503)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(new JsonObject().put("Issue", ar.cause().getMessage()).toString());
+        return;
+      }
+      TransferTable table = ar.result();
+      JsonObject states = new JsonObject();
+      for (Map.Entry<TransferState, Integer> entry: table.countByState(null).entrySet()) {
+        states.put(entry.getKey().name(), entry.getValue());
+      }
+      JsonObject volumes = new JsonObject();
+      for (Map.Entry<String, BigInteger> entry: table.volumeByToken(null).entrySet()) {
+        volumes.put(entry.getKey(), entry.getValue().toString());
+      }
+      long now = System.currentTimeMillis() / 1000;
+      JsonObject summary = new JsonObject()
+          .put("transfers", table.size())
+          .put("states", states)
+          .put("volumeByToken", volumes)
+          .put("openNearExpiry", table.selectOpenNearExpiry(now, expiryWindow).cardinality());
+      routingContext.response()
+          .setStatusCode(200)
+          .putHeader("content-type", "application/json; charset=utf-8")
+          .end(summary.encodePrettily());
+    });
+  }
+
+  private void getReconciliation(RoutingContext routingContext) {
+    String limitParam = routingContext.request().getParam("limit");
+    RouteReconciler reconciler;
+    int limit;
+    try {
+      limit = limitParam == null ? DEFAULT_RECONCILIATION_LIMIT : Integer.parseInt(limitParam);
+      reconciler = this.relayer.getReconciler(routingContext.request().getParam("route"));
+    } catch (RuntimeException ex) {
+      LOG.error("Reconciliation: {}", ex.toString());
+      routingContext.response()
+          .setStatusCode(ex instanceof IllegalStateException ? 503 : 400)
+          .putHeader("content-type", "application/json; charset=utf-8")
+          .end(new JsonObject().put("Issue", ex.getMessage()).toString());
+      return;
+    }
+
+    ReconciliationEngine engine = reconciler.getEngine();
+    JsonObject counts = new JsonObject();
+    for (Map.Entry<ReconciliationEngine.Issue, Integer> entry: engine.countByIssue().entrySet()) {
+      counts.put(entry.getKey().name(), entry.getValue());
+    }
+    JsonObject issues = new JsonObject();
+    for (ReconciliationEngine.Issue issue: ReconciliationEngine.Issue.values()) {
+      JsonArray transfers = new JsonArray();
+      for (ReconciliationEngine.Entry entry: engine.getTransfers(issue, limit)) {
+        transfers.add(new JsonObject()
+            .put("commitment", entry.getCommitment().toHexString())
+            .put("sourceInitBlock", entry.getSourceInitBlock())
+            .put("destInitBlock", entry.getDestInitBlock())
+            .put("destCompletedBlock", entry.getDestCompletedBlock())
+            .put("timeLock", entry.getTimeLock()));
+      }
+      issues.put(issue.name(), transfers);
+    }
+    JsonObject result = new JsonObject()
+        .put("route", reconciler.getRouteName())
+        .put("passes", reconciler.getNumPasses())
+        .put("sourceBlock", engine.getSourceHead())
+        .put("destBlock", engine.getDestHead())
+        .put("transfers", engine.size())
+        .put("counts", counts)
+        .put("issues", issues);
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(result.encodePrettily());
+  }
+
+  private void getVerificationMetrics(RoutingContext routingContext) {
+    JsonArray routes = new JsonArray();
+    for (PostingVerifier verifier: this.relayer.getPostingVerifiers().values()) {
+      JsonObject findings = new JsonObject();
+      for (Map.Entry<PostingVerifier.Finding, Long> entry: verifier.getFindingCounts().entrySet()) {
+        findings.put(entry.getKey().name(), entry.getValue());
+      }
+      JsonObject byRelayer = new JsonObject();
+      for (Map.Entry<String, Long> entry: verifier.getMismatchesByRelayer().entrySet()) {
+        byRelayer.put(entry.getKey(), entry.getValue());
+      }
+      JsonArray recent = new JsonArray();
+      for (PostingVerifier.Result result: verifier.getRecent()) {
+        recent.add(new JsonObject()
+            .put("finding", result.getFinding().name())
+            .put("commitment", result.getCommitment().toHexString())
+            .put("relayer", result.getRelayer())
+            .put("detail", result.getDetail()));
+      }
+      routes.add(new JsonObject()
+          .put("route", verifier.getRouteName())
+          .put("verified", verifier.getNumVerified())
+          .put("findings", findings)
+          .put("mismatchesByRelayer", byRelayer)
+          .put("waiting", verifier.getNumWaiting())
+          .put("evicted", verifier.getNumEvicted())
+          .put("meanVerificationMicros", verifier.getMeanVerificationNanos() / 1000.0)
+          .put("recent", recent));
+    }
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(routes.encodePrettily());
+  }
+
+  private void getLiquidity(RoutingContext routingContext) {
+    JsonArray contracts = new JsonArray();
+    for (LiquidityIndexer indexer: this.relayer.getLiquidityIndexers().values()) {
+      JsonObject tokens = new JsonObject();
+      for (Map.Entry<String, LiquidityIndex.TokenLiquidity> entry: indexer.getIndex().snapshot().entrySet()) {
+        LiquidityIndex.TokenLiquidity liquidity = entry.getValue();
+        tokens.put(entry.getKey(), new JsonObject()
+            .put("balance", liquidity.getBalance().toString())
+            .put("reserved", liquidity.getReserved().toString())
+            .put("available", liquidity.getAvailable().toString())
+            .put("openTransfers", liquidity.getNumReservations()));
+      }
+      contracts.add(new JsonObject()
+          .put("contract", indexer.getName())
+          .put("block", indexer.getLastBlockApplied())
+          .put("tokens", tokens)
+          .put("deferred", indexer.getNumDeferred())
+          .put("flagged", indexer.getNumFlagged()));
+    }
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(contracts.encodePrettily());
+  }
+
+  private void getWatchtower(RoutingContext routingContext) {
+    RefundWatchtower watchtower;
+    try {
+      watchtower = this.relayer.getWatchtower(routingContext.request().getParam("route"));
+    } catch (RuntimeException ex) {
+      LOG.error("Watchtower: {}", ex.toString());
+      routingContext.response()
+          .setStatusCode(ex instanceof IllegalStateException ? 503 : 400)
+          .putHeader("content-type", "application/json; charset=utf-8")
+          .end(new JsonObject().put("Issue", ex.getMessage()).toString());
+      return;
+    }
+
+    JsonArray recent = new JsonArray();
+    for (Bytes32 commitment: watchtower.getRecent()) {
+      recent.add(commitment.toHexString());
+    }
+    JsonObject result = new JsonObject()
+        .put("route", watchtower.getRouteName())
+        .put("mode", watchtower.getMode().name())
+        .put("open", watchtower.getNumOpen())
+        .put("expired", watchtower.getNumExpired())
+        .put("refunded", watchtower.getNumRefunded())
+        .put("finalised", watchtower.getNumFinalised())
+        .put("failed", watchtower.getNumFailed())
+        .put("alerts", watchtower.getNumAlerts())
+        .put("recent", recent);
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(result.encodePrettily());
+  }
+
+  private void getSnapshot(RoutingContext routingContext) {
+    this.relayer.snapshot().onComplete(ar -> {
+      if (ar.succeeded()) {
+        routingContext.response()
+            .setStatusCode(200)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(Json.encode(ar.result()));
+      }
+      else {
+        LOG.error("Snapshot: {}", ar.cause().toString());
+        routingContext.response()
+            .setStatusCode(503)
+            .putHeader("content-type", "application/json; charset=utf-8")
+            .end(new JsonObject().put("Issue", "snapshot not available").toString());
+      }
+    });
+  }
+
+  private void getHaStatus(RoutingContext routingContext) {
+    LeaderLease lease = this.relayer.getLease();
+    JsonObject status = new JsonObject()
+        .put("active", this.relayer.isActive())
+        .put("lease", lease == null ? null : lease.getOwner())
+        .put("checkpoint", JsonObject.mapFrom(this.relayer.checkpoint()));
+
+    routingContext.response()
+        .setStatusCode(200)
+        .putHeader("content-type", "application/json; charset=utf-8")
+        .end(status.encodePrettily());
+  }
+
   private void getConfigAll(RoutingContext routingContext) {
 
     routingContext.response()
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.bus;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+
+/**
+ * Event bus codec for DestTransferCompletedLog. Logs are immutable, so local delivery passes
+ * the same object. On the wire a log is its block number, log index and the 64 byte packed
+ * commitment and preimage.
+ */
+public class DestTransferCompletedLogCodec implements MessageCodec<DestTransferCompletedLog, DestTransferCompletedLog> {
+  public static final String NAME = "DestTransferCompletedLog";
+  private static final int DATA_LEN = 64;
+
+  @Override
+  public void encodeToWire(Buffer buffer, DestTransferCompletedLog log) {
+    buffer.appendLong(log.getBlockNumber());
+    buffer.appendInt(log.getLogIndex());
+    buffer.appendBytes(log.rawData());
+  }
+
+  @Override
+  public DestTransferCompletedLog decodeFromWire(int pos, Buffer buffer) {
+    long blockNumber = buffer.getLong(pos);
+    int logIndex = buffer.getInt(pos + 8);
+    byte[] data = buffer.getBytes(pos + 12, pos + 12 + DATA_LEN);
+    return DestTransferCompletedLog.fromRawData(blockNumber, logIndex, data);
+  }
+
+  @Override
+  public DestTransferCompletedLog transform(DestTransferCompletedLog log) {
+    return log;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
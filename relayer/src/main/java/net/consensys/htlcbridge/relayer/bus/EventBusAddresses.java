@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.bus;
+
+/**
+ * Event bus addresses used to pass transfers from the ingestion verticles to the
+ * submission verticles. Each route has its own addresses.
+ */
+public abstract class EventBusAddresses {
+  private static final String SUBMIT_TO_DESTINATION = "htlcbridge.relayer.submit.destination.";
+  private static final String FINALISE_AT_SOURCE = "htlcbridge.relayer.finalise.source.";
+
+  private EventBusAddresses() {
+  }
+
+  /**
+   * Address for SourceTransferInitLog messages: transfers to post to the route's destination blockchain.
+   */
+  public static String submitToDestination(String routeName) {
+    return SUBMIT_TO_DESTINATION + routeName;
+  }
+
+  /**
+   * Address for DestTransferCompletedLog messages: transfers to finalise on the route's source blockchain.
+   */
+  public static String finaliseAtSource(String routeName) {
+    return FINALISE_AT_SOURCE + routeName;
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.bus;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+
+/**
+ * Event bus codec for SourceTransferInitLog. Logs are immutable, so local delivery passes
+ * the same object. On the wire a log is its block number, log index, time lock and the
+ * 104 byte packed commitment, sender, token and amount.
+ */
+public class SourceTransferInitLogCodec implements MessageCodec<SourceTransferInitLog, SourceTransferInitLog> {
+  public static final String NAME = "SourceTransferInitLog";
+  private static final int DATA_LEN = 104;
+
+  @Override
+  public void encodeToWire(Buffer buffer, SourceTransferInitLog log) {
+    buffer.appendLong(log.getBlockNumber());
+    buffer.appendInt(log.getLogIndex());
+    buffer.appendLong(log.getTimeLock());
+    buffer.appendBytes(log.rawData());
+  }
+
+  @Override
+  public SourceTransferInitLog decodeFromWire(int pos, Buffer buffer) {
+    long blockNumber = buffer.getLong(pos);
+    int logIndex = buffer.getInt(pos + 8);
+    long timeLock = buffer.getLong(pos + 12);
+    byte[] data = buffer.getBytes(pos + 20, pos + 20 + DATA_LEN);
+    return SourceTransferInitLog.fromRawData(blockNumber, logIndex, timeLock, data);
+  }
+
+  @Override
+  public SourceTransferInitLog transform(SourceTransferInitLog log) {
+    return log;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
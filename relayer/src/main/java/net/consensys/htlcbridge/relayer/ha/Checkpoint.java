@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.ha;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Processing state of a relayer, written by the active relayer so that a standby relayer,
+ * or the same relayer after a restart, can continue where it stopped. Also exported as a
+ * snapshot for bootstrapping new relayers.
+ */
+public class Checkpoint {
+  // Relayer which wrote the checkpoint.
+  public String owner;
+  // Time the checkpoint was written, in milliseconds since the epoch.
+  public long timestamp;
+  // Keyed by observer name: <route>/source or <route>/dest.
+  public Map<String, ObserverCheckpoint> observers = new LinkedHashMap<>();
+
+  public static class ObserverCheckpoint {
+    // All blocks up to and including this block have been processed.
+    public long watermark;
+    // Transfers sent for submission and not yet completed: commitment to block number.
+    public Map<String, Long> inFlight = new LinkedHashMap<>();
+    // Only in snapshots: hash of the watermark block, so that the importer can check it
+    // is following the same chain.
+    public String watermarkBlockHash;
+    // Only in snapshots: recently completed transfers, commitment to outcome.
+    public Map<String, String> knownTransfers;
+
+    // Default constructor needed for loading from JSON.
+    public ObserverCheckpoint() { }
+
+    public ObserverCheckpoint(long watermark, Map<String, Long> inFlight) {
+      this.watermark = watermark;
+      this.inFlight = inFlight;
+    }
+  }
+}
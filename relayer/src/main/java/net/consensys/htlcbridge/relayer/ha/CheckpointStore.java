@@ -0,0 +1,65 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.ha;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores the checkpoint as a JSON file. Each checkpoint is written to a temporary file
+ * and then moved over the previous one, so readers never see a partly written checkpoint.
+ */
+public class CheckpointStore {
+  private static final Logger LOG = LogManager.getLogger(CheckpointStore.class);
+
+  public static final String CHECKPOINT_FILE = "relayer.checkpoint.json";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Path file;
+  private final Path tempFile;
+
+  public CheckpointStore(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.file = directory.resolve(CHECKPOINT_FILE);
+    this.tempFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+  }
+
+  public synchronized void write(Checkpoint checkpoint) throws IOException {
+    this.mapper.writeValue(this.tempFile.toFile(), checkpoint);
+    Files.move(this.tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return The last checkpoint written, or null if there is none.
+   */
+  public synchronized Checkpoint read() throws IOException {
+    if (!Files.exists(this.file)) {
+      return null;
+    }
+    Checkpoint checkpoint = this.mapper.readerFor(Checkpoint.class).readValue(this.file.toFile());
+    LOG.info("Read checkpoint written by {} at {}", checkpoint.owner, checkpoint.timestamp);
+    return checkpoint;
+  }
+
+  public Path getFile() {
+    return this.file;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.ha;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lease held by the active relayer, implemented as an exclusive lock on a file in a
+ * directory shared by the relayers. The operating system releases the lock when the
+ * process holding it exits, so a standby relayer polling tryAcquire takes over within
+ * one poll period of the active relayer stopping.
+ */
+public class LeaderLease {
+  private static final Logger LOG = LogManager.getLogger(LeaderLease.class);
+
+  public static final String LEASE_FILE = "relayer.lease";
+
+  private final Path file;
+  private final String owner;
+  private FileChannel channel;
+  private FileLock lock;
+
+  public LeaderLease(Path directory, String owner) throws IOException {
+    Files.createDirectories(directory);
+    this.file = directory.resolve(LEASE_FILE);
+    this.owner = owner;
+  }
+
+  /**
+   * @return true if this relayer holds the lease.
+   */
+  public synchronized boolean tryAcquire() throws IOException {
+    if (this.lock != null) {
+      return true;
+    }
+    FileChannel ch = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock fileLock;
+    try {
+      fileLock = ch.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      // Held by another lease in this JVM.
+      fileLock = null;
+    }
+    if (fileLock == null) {
+      ch.close();
+      return false;
+    }
+    this.channel = ch;
+    this.lock = fileLock;
+    ch.truncate(0);
+    ch.write(ByteBuffer.wrap(this.owner.getBytes(StandardCharsets.UTF_8)));
+    ch.force(false);
+    LOG.info("Lease {} acquired by {}", this.file, this.owner);
+    return true;
+  }
+
+  public synchronized boolean isHeld() {
+    return this.lock != null && this.lock.isValid();
+  }
+
+  public synchronized void release() {
+    if (this.lock == null) {
+      return;
+    }
+    try {
+      this.lock.release();
+      this.channel.close();
+      LOG.info("Lease {} released by {}", this.file, this.owner);
+    } catch (IOException ex) {
+      LOG.error("Lease {}: Error releasing: {}", this.file, ex.toString());
+    }
+    this.lock = null;
+    this.channel = null;
+  }
+
+  public String getOwner() {
+    return this.owner;
+  }
+}
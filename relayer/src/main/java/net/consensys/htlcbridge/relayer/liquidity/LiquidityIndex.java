@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.liquidity;
+
+import org.apache.tuweni.bytes.Bytes32;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Liquidity of a destination transfer contract: for each token, the contract's balance, and
+ * the amounts reserved by transfers posted to the contract which have neither completed nor
+ * been refunded. A transfer can only be finalised if the contract holds its amount when it
+ * completes, so a transfer should only be posted if its amount is available: not more than
+ * the balance less the amounts already reserved.<p>
+ * Tokens are the token contracts on the destination chain, as lower case hex strings.
+ * Methods are synchronized, as reservations are made by the submission verticles while the
+ * index is being updated.
+ */
+public class LiquidityIndex {
+
+  /**
+   * Balance and reservations of one token.
+   */
+  public static class TokenLiquidity {
+    private BigInteger balance;
+    private BigInteger reserved = BigInteger.ZERO;
+    private int numReservations;
+
+    TokenLiquidity(BigInteger balance) {
+      this.balance = balance;
+    }
+
+    public BigInteger getBalance() {
+      return this.balance;
+    }
+
+    public BigInteger getReserved() {
+      return this.reserved;
+    }
+
+    public BigInteger getAvailable() {
+      return this.balance.subtract(this.reserved);
+    }
+
+    public int getNumReservations() {
+      return this.numReservations;
+    }
+
+    TokenLiquidity copy() {
+      TokenLiquidity copy = new TokenLiquidity(this.balance);
+      copy.reserved = this.reserved;
+      copy.numReservations = this.numReservations;
+      return copy;
+    }
+  }
+
+  private static class Reservation {
+    final String token;
+    final BigInteger amount;
+
+    Reservation(String token, BigInteger amount) {
+      this.token = token;
+      this.amount = amount;
+    }
+  }
+
+  private final Map<String, TokenLiquidity> tokens = new LinkedHashMap<>();
+  private final Map<Bytes32, Reservation> reservations = new HashMap<>();
+
+  /**
+   * Start tracking a token.
+   *
+   * @param balance The contract's balance of the token at the block up to which transfers have been applied.
+   */
+  public synchronized void track(String token, BigInteger balance) {
+    if (!this.tokens.containsKey(token)) {
+      this.tokens.put(token, new TokenLiquidity(balance));
+    }
+  }
+
+  public synchronized boolean isTracked(String token) {
+    return this.tokens.containsKey(token);
+  }
+
+  /**
+   * @return The tokens being tracked.
+   */
+  public synchronized String[] getTokens() {
+    return this.tokens.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Apply a transfer of a tracked token to or from the contract. Transfers of other tokens are ignored.
+   *
+   * @param incoming true if the contract received the tokens, false if it sent them.
+   */
+  public synchronized void onTokenTransfer(String token, boolean incoming, BigInteger value) {
+    TokenLiquidity liquidity = this.tokens.get(token);
+    if (liquidity != null) {
+      liquidity.balance = incoming ? liquidity.balance.add(value) : liquidity.balance.subtract(value);
+    }
+  }
+
+  /**
+   * Reserve a transfer's amount, if it is available.
+   *
+   * @return false if the token isn't tracked, or the amount isn't available. true if the
+   *   amount was reserved, or the transfer already had a reservation.
+   */
+  public synchronized boolean tryReserve(Bytes32 commitment, String token, BigInteger amount) {
+    if (this.reservations.containsKey(commitment)) {
+      return true;
+    }
+    TokenLiquidity liquidity = this.tokens.get(token);
+    if (liquidity == null || liquidity.getAvailable().compareTo(amount) < 0) {
+      return false;
+    }
+    add(commitment, token, amount, liquidity);
+    return true;
+  }
+
+  /**
+   * Reserve a transfer's amount whether or not it is available, as the transfer has been
+   * posted, for example by another relayer.
+   */
+  public synchronized void reserve(Bytes32 commitment, String token, BigInteger amount) {
+    TokenLiquidity liquidity = this.tokens.get(token);
+    if (liquidity != null && !this.reservations.containsKey(commitment)) {
+      add(commitment, token, amount, liquidity);
+    }
+  }
+
+  private void add(Bytes32 commitment, String token, BigInteger amount, TokenLiquidity liquidity) {
+    this.reservations.put(commitment, new Reservation(token, amount));
+    liquidity.reserved = liquidity.reserved.add(amount);
+    liquidity.numReservations++;
+  }
+
+  /**
+   * Release a transfer's reservation, once it has completed or been refunded, or if posting it failed.
+   */
+  public synchronized void release(Bytes32 commitment) {
+    Reservation reservation = this.reservations.remove(commitment);
+    if (reservation != null) {
+      TokenLiquidity liquidity = this.tokens.get(reservation.token);
+      liquidity.reserved = liquidity.reserved.subtract(reservation.amount);
+      liquidity.numReservations--;
+    }
+  }
+
+  /**
+   * @return A copy of the liquidity of the token, or null if it isn't tracked.
+   */
+  public synchronized TokenLiquidity get(String token) {
+    TokenLiquidity liquidity = this.tokens.get(token);
+    return liquidity == null ? null : liquidity.copy();
+  }
+
+  /**
+   * @return A copy of the liquidity of each tracked token.
+   */
+  public synchronized Map<String, TokenLiquidity> snapshot() {
+    Map<String, TokenLiquidity> snapshot = new LinkedHashMap<>();
+    for (Map.Entry<String, TokenLiquidity> entry: this.tokens.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().copy());
+    }
+    return snapshot;
+  }
+}
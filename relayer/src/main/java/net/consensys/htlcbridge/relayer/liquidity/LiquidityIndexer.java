@@ -0,0 +1,351 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.liquidity;
+
+import net.consensys.htlcbridge.openzeppelin.soliditywrappers.ERC20PresetFixedSupply;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogBuffer;
+import net.consensys.htlcbridge.transfer.logs.TransferLogDecoder;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tuweni.bytes.Bytes32;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.tx.ReadonlyTransactionManager;
+import org.web3j.tx.gas.DefaultGasProvider;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the liquidity index of a destination transfer contract up to date. Each refresh
+ * applies the confirmed blocks since the previous refresh: the ERC20 Transfer events to and
+ * from the contract of the tokens being tracked, and the contract's own events, which
+ * reserve the amounts of transfers posted and release them once the transfers complete or
+ * are refunded.<p>
+ * The first refresh replays the contract's events from the start of the time lock window,
+ * to reserve the transfers posted before the relayer started. A token is tracked from the
+ * first time a transfer of it is seen, starting from its balance at the last block refreshed.
+ */
+public class LiquidityIndexer {
+  private static final Logger LOG = LogManager.getLogger(LiquidityIndexer.class);
+
+  public static final String ERC20_TRANSFER_TOPIC = EventEncoder.encode(ERC20PresetFixedSupply.TRANSFER_EVENT);
+  private static final String[] CONTRACT_TOPICS = {
+      TransferLogDecoder.DEST_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_REFUNDED_TOPIC};
+  // Blocks fetched by each eth_getLogs request.
+  public static final int BLOCKS_PER_REQUEST = 5000;
+  private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+  private final String name;
+  private final Web3j web3j;
+  private final TransferLogFetcher fetcher;
+  private final Erc20HtlcTransfer destContract;
+  private final String contractAddress;
+  private final String contractTopic;
+  private final int confirmations;
+  private final LiquidityIndex index = new LiquidityIndex();
+  // Token contract on the other blockchain to token contract on this blockchain.
+  private final Map<String, String> tokenMap = new ConcurrentHashMap<>();
+
+  // Serialises refreshes. The indexer's own lock is only held to apply their results.
+  private final Object refreshLock = new Object();
+  // Last block whose contract events have been applied.
+  private long contractEventsApplied;
+  // Last block whose token transfers have been applied. Balances are read at this block.
+  private long tokenTransfersApplied;
+
+  private final AtomicLong numDeferred = new AtomicLong();
+  private final AtomicLong numFlagged = new AtomicLong();
+
+  /**
+   * @param firstBlock First block to replay the contract's events from.
+   * @param startBlock Last confirmed block when the indexer is created: the balances of the
+   *   tokens tracked are read at this block until the first refresh.
+   */
+  public LiquidityIndexer(String name, Web3j web3j, TransferLogFetcher fetcher, Erc20HtlcTransfer destContract,
+                          int confirmations, long firstBlock, long startBlock) {
+    this.name = name;
+    this.web3j = web3j;
+    this.fetcher = fetcher;
+    this.destContract = destContract;
+    this.contractAddress = fetcher.getContractAddress().toLowerCase();
+    this.contractTopic = "0x" + Numeric.toHexStringNoPrefixZeroPadded(Numeric.toBigInt(this.contractAddress), 64);
+    this.confirmations = confirmations;
+    this.contractEventsApplied = firstBlock - 1;
+    this.tokenTransfersApplied = startBlock;
+  }
+
+  /**
+   * Apply the blocks confirmed since the previous refresh. The JSON RPC calls are made
+   * without holding the indexer's lock, which is only taken to apply their results, so
+   * refreshing doesn't hold up tryReserve.
+   */
+  public void refresh() throws IOException {
+    synchronized (this.refreshLock) {
+      long head;
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.LIQUIDITY, (String) null)) {
+        head = this.web3j.ethBlockNumber().send().getBlockNumber().longValue();
+      }
+      long to = head - this.confirmations;
+      refreshTokenTransfers(to);
+      refreshContractEvents(to);
+    }
+  }
+
+  private void refreshTokenTransfers(long to) throws IOException {
+    long from;
+    String[] tokens;
+    synchronized (this) {
+      from = this.tokenTransfersApplied + 1;
+      tokens = this.index.getTokens();
+    }
+    for (; from <= to; from += BLOCKS_PER_REQUEST) {
+      long end = Math.min(to, from + BLOCKS_PER_REQUEST - 1);
+      List<Log> incoming = Collections.emptyList();
+      List<Log> outgoing = Collections.emptyList();
+      if (tokens.length != 0) {
+        incoming = fetchTokenTransfers(from, end, tokens, true);
+        outgoing = fetchTokenTransfers(from, end, tokens, false);
+      }
+      synchronized (this) {
+        // A token tracked since the logs were fetched has its balance read at the last
+        // block applied, so its transfers must be fetched. Do so on the next refresh.
+        if (!Arrays.equals(tokens, this.index.getTokens())) {
+          return;
+        }
+        applyTokenTransfers(incoming, true);
+        applyTokenTransfers(outgoing, false);
+        this.tokenTransfersApplied = end;
+      }
+    }
+  }
+
+  private void refreshContractEvents(long to) throws IOException {
+    long from;
+    synchronized (this) {
+      from = this.contractEventsApplied + 1;
+    }
+    for (; from <= to; from += BLOCKS_PER_REQUEST) {
+      long end = Math.min(to, from + BLOCKS_PER_REQUEST - 1);
+      TransferLogBuffer logs = new TransferLogBuffer();
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.LIQUIDITY, (String) null)) {
+        this.fetcher.fetch(from, end, logs, CONTRACT_TOPICS);
+      }
+      // Tracking a new token makes calls, so track the tokens of the logs before applying them.
+      Map<String, String> tokens = new HashMap<>();
+      IOException[] failure = new IOException[1];
+      logs.replay(new TransferLogHandler() {
+        @Override
+        public void onDestTransferInit(DestTransferInitLog log) {
+          try {
+            if (failure[0] == null && !tokens.containsKey(log.getTokenContract())) {
+              tokens.put(log.getTokenContract(), trackedToken(log.getTokenContract()));
+            }
+          } catch (IOException ex) {
+            failure[0] = ex;
+          }
+        }
+      });
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      synchronized (this) {
+        logs.replay(new TransferLogHandler() {
+          @Override
+          public void onDestTransferInit(DestTransferInitLog log) {
+            String token = tokens.get(log.getTokenContract());
+            if (token != null) {
+              index.reserve(Bytes32.wrap(log.getCommitment()), token, log.getAmount());
+            }
+          }
+
+          @Override
+          public void onDestTransferCompleted(DestTransferCompletedLog log) {
+            index.release(Bytes32.wrap(log.getCommitment()));
+          }
+
+          @Override
+          public void onTransferSettled(TransferSettledLog log) {
+            index.release(Bytes32.wrap(log.getCommitment()));
+          }
+        });
+        this.contractEventsApplied = end;
+      }
+    }
+  }
+
+  private List<Log> fetchTokenTransfers(long from, long to, String[] tokens, boolean incoming) throws IOException {
+    EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(to)), Arrays.asList(tokens));
+    filter.addSingleTopic(ERC20_TRANSFER_TOPIC);
+    if (incoming) {
+      filter.addNullTopic();
+    }
+    filter.addSingleTopic(this.contractTopic);
+    EthLog response;
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.LIQUIDITY, (String) null)) {
+      response = this.web3j.ethGetLogs(filter).send();
+    }
+    if (response.hasError()) {
+      throw new IOException("eth_getLogs failed: " + response.getError().getMessage());
+    }
+    List<Log> logs = new ArrayList<>();
+    for (EthLog.LogResult<?> result: response.getLogs()) {
+      logs.add((Log) result.get());
+    }
+    return logs;
+  }
+
+  private void applyTokenTransfers(List<Log> logs, boolean incoming) {
+    for (Log log: logs) {
+      if (!log.isRemoved()) {
+        this.index.onTokenTransfer(log.getAddress().toLowerCase(), incoming, Numeric.toBigInt(log.getData()));
+      }
+    }
+  }
+
+  /**
+   * Reserve the amount of a transfer about to be posted, if it is available. Called by the
+   * submission verticles, on a worker thread.
+   *
+   * @param otherBlockchainToken Token contract on the source blockchain.
+   * @return true if the amount was reserved, or the token isn't transferable, in which case
+   *   the contract will reject the transfer.
+   */
+  public boolean tryReserve(byte[] commitment, String otherBlockchainToken, BigInteger amount) throws IOException {
+    String token = this.tokenMap.get(otherBlockchainToken);
+    if (token == null || !this.index.isTracked(token)) {
+      token = trackedToken(otherBlockchainToken);
+    }
+    if (token == null) {
+      return true;
+    }
+    boolean reserved = this.index.tryReserve(Bytes32.wrap(commitment), token, amount);
+    if (!reserved) {
+      this.numDeferred.incrementAndGet();
+      LiquidityIndex.TokenLiquidity liquidity = this.index.get(token);
+      LOG.warn("{}: Transfer {} of {} {} exceeds available liquidity: {}", this.name,
+          Bytes32.wrap(commitment), amount, token, liquidity.getAvailable());
+    }
+    return reserved;
+  }
+
+  /**
+   * Release the reservation of a transfer which failed to post.
+   */
+  public void release(byte[] commitment) {
+    this.index.release(Bytes32.wrap(commitment));
+  }
+
+  /**
+   * A transfer has been deferred for too long, and won't be posted.
+   */
+  public void flagged() {
+    this.numFlagged.incrementAndGet();
+  }
+
+  /**
+   * @return The token on this blockchain, tracked, or null if the token isn't transferable.
+   */
+  private String trackedToken(String otherBlockchainToken) throws IOException {
+    String token = this.tokenMap.get(otherBlockchainToken);
+    if (token == null) {
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.LIQUIDITY, (String) null)) {
+        token = this.destContract.destAllowedTokens(otherBlockchainToken).send().toLowerCase();
+      } catch (IOException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new IOException(ex);
+      }
+      this.tokenMap.put(otherBlockchainToken, token);
+    }
+    if (ZERO_ADDRESS.equals(token)) {
+      return null;
+    }
+    while (!this.index.isTracked(token)) {
+      long block;
+      synchronized (this) {
+        block = this.tokenTransfersApplied;
+      }
+      ERC20PresetFixedSupply erc20 = ERC20PresetFixedSupply.load(token, this.web3j,
+          new ReadonlyTransactionManager(this.web3j, this.contractAddress), new DefaultGasProvider());
+      erc20.setDefaultBlockParameter(DefaultBlockParameter.valueOf(BigInteger.valueOf(block)));
+      BigInteger balance;
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.LIQUIDITY, (String) null)) {
+        balance = erc20.balanceOf(this.contractAddress).send();
+      } catch (IOException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new IOException(ex);
+      }
+      synchronized (this) {
+        // If token transfers were applied while the balance was read, read it again.
+        if (block == this.tokenTransfersApplied && !this.index.isTracked(token)) {
+          this.index.track(token, balance);
+          LOG.info("{}: Tracking liquidity of {}: Balance: {} at block {}", this.name, token, balance, block);
+        }
+      }
+    }
+    return token;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public LiquidityIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * @return The number of times a transfer was deferred as its amount wasn't available.
+   */
+  public long getNumDeferred() {
+    return this.numDeferred.get();
+  }
+
+  /**
+   * @return The number of transfers not posted as their amount didn't become available in time.
+   */
+  public long getNumFlagged() {
+    return this.numFlagged.get();
+  }
+
+  public synchronized long getLastBlockApplied() {
+    return Math.min(this.contractEventsApplied, this.tokenTransfersApplied);
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.recon;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import org.apache.tuweni.bytes.Bytes32;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Joins the events of a route's source and destination contracts by commitment, and tracks
+ * the transfers which need attention:
+ * <ul>
+ *   <li>UNRELAYED: SourceTransferInit with no DestTransferInit after the grace period.</li>
+ *   <li>ORPHANED: DestTransferInit with no SourceTransferInit after the grace period.</li>
+ *   <li>UNFINALISED: DestTransferCompleted with no SourceTransferCompleted after the grace period.</li>
+ *   <li>NEAR_EXPIRY: SourceTransferInit neither completed nor refunded, with its timeLock
+ *     less than the expiry window away, or passed.</li>
+ * </ul>
+ * Events are applied as the blocks they are in are scanned. Each check is queued when the
+ * event that starts it is applied, due at a block number or time, and advance only looks at
+ * the checks which have become due. The work done is proportional to the number of new
+ * events, not to the number of transfers tracked. Transfers are forgotten once both sides
+ * have settled.<p>
+ * The events of each chain must be applied in block order. The events of the two chains
+ * can be interleaved in any order. Methods are synchronized, so that reports can be read
+ * while events are applied.
+ */
+public class ReconciliationEngine implements TransferLogHandler {
+  public enum Issue {
+    UNRELAYED,
+    ORPHANED,
+    UNFINALISED,
+    NEAR_EXPIRY
+  }
+
+  /**
+   * What is known about one transfer. Block numbers are -1 until the event is seen.
+   */
+  public static class Entry {
+    private final Bytes32 commitment;
+    private long sourceInitBlock = -1;
+    private long timeLock;
+    private long destInitBlock = -1;
+    private long destCompletedBlock = -1;
+    private long sourceSettledBlock = -1;
+    private boolean destRefunded;
+
+    Entry(Bytes32 commitment) {
+      this.commitment = commitment;
+    }
+
+    public Bytes32 getCommitment() {
+      return this.commitment;
+    }
+
+    public long getSourceInitBlock() {
+      return this.sourceInitBlock;
+    }
+
+    public long getTimeLock() {
+      return this.timeLock;
+    }
+
+    public long getDestInitBlock() {
+      return this.destInitBlock;
+    }
+
+    public long getDestCompletedBlock() {
+      return this.destCompletedBlock;
+    }
+
+    boolean isSourceSettled() {
+      return this.sourceSettledBlock != -1;
+    }
+  }
+
+  // A check on one transfer which becomes due at a block number or time.
+  private static class Check {
+    final long due;
+    final Bytes32 commitment;
+    final Issue issue;
+
+    Check(long due, Bytes32 commitment, Issue issue) {
+      this.due = due;
+      this.commitment = commitment;
+      this.issue = issue;
+    }
+  }
+
+  private static final Comparator<Check> BY_DUE = Comparator.comparingLong(c -> c.due);
+
+  private final long sourceGraceBlocks;
+  private final long destGraceBlocks;
+  private final long expiryWindow;
+
+  private final Map<Bytes32, Entry> entries = new HashMap<>();
+  private final Map<Issue, Set<Bytes32>> issues = new EnumMap<>(Issue.class);
+  // Checks due at a source block number, a destination block number, and a time.
+  private final PriorityQueue<Check> sourceChecks = new PriorityQueue<>(BY_DUE);
+  private final PriorityQueue<Check> destChecks = new PriorityQueue<>(BY_DUE);
+  private final PriorityQueue<Check> timeChecks = new PriorityQueue<>(BY_DUE);
+
+  private long sourceHead = -1;
+  private long destHead = -1;
+  private long now;
+
+  /**
+   * @param sourceGraceBlocks Source blocks a transfer may remain unrelayed.
+   * @param destGraceBlocks Destination blocks a transfer may remain orphaned or unfinalised.
+   * @param expiryWindow Seconds before the timeLock that an open transfer is near expiry.
+   */
+  public ReconciliationEngine(long sourceGraceBlocks, long destGraceBlocks, long expiryWindow) {
+    this.sourceGraceBlocks = sourceGraceBlocks;
+    this.destGraceBlocks = destGraceBlocks;
+    this.expiryWindow = expiryWindow;
+    for (Issue issue: Issue.values()) {
+      this.issues.put(issue, new LinkedHashSet<>());
+    }
+  }
+
+  @Override
+  public synchronized void onSourceTransferInit(SourceTransferInitLog log) {
+    Entry entry = entry(log.getCommitment());
+    entry.sourceInitBlock = log.getBlockNumber();
+    entry.timeLock = log.getTimeLock();
+    resolve(entry, Issue.ORPHANED);
+    if (entry.destInitBlock == -1) {
+      this.sourceChecks.add(new Check(entry.sourceInitBlock + this.sourceGraceBlocks, entry.commitment, Issue.UNRELAYED));
+    }
+    this.timeChecks.add(new Check(entry.timeLock - this.expiryWindow, entry.commitment, Issue.NEAR_EXPIRY));
+  }
+
+  @Override
+  public synchronized void onDestTransferInit(DestTransferInitLog log) {
+    Entry entry = entry(log.getCommitment());
+    entry.destInitBlock = log.getBlockNumber();
+    resolve(entry, Issue.UNRELAYED);
+    if (entry.sourceInitBlock == -1) {
+      this.destChecks.add(new Check(entry.destInitBlock + this.destGraceBlocks, entry.commitment, Issue.ORPHANED));
+    }
+  }
+
+  @Override
+  public synchronized void onDestTransferCompleted(DestTransferCompletedLog log) {
+    Entry entry = entry(log.getCommitment());
+    entry.destCompletedBlock = log.getBlockNumber();
+    if (entry.isSourceSettled()) {
+      forgetIfSettled(entry);
+    }
+    else {
+      this.destChecks.add(new Check(entry.destCompletedBlock + this.destGraceBlocks, entry.commitment, Issue.UNFINALISED));
+    }
+  }
+
+  @Override
+  public synchronized void onTransferSettled(TransferSettledLog log) {
+    Entry entry = entry(log.getCommitment());
+    if (log.getEvent() == TransferSettledLog.Event.DEST_TRANSFER_REFUNDED) {
+      entry.destRefunded = true;
+    }
+    else {
+      entry.sourceSettledBlock = log.getBlockNumber();
+      resolve(entry, Issue.UNRELAYED);
+      resolve(entry, Issue.UNFINALISED);
+      resolve(entry, Issue.NEAR_EXPIRY);
+    }
+    forgetIfSettled(entry);
+  }
+
+  /**
+   * Run the checks which have become due.
+   *
+   * @param sourceHead Last source block whose events have been applied.
+   * @param destHead Last destination block whose events have been applied.
+   * @param now Current time in seconds.
+   * @return The number of checks run.
+   */
+  public synchronized int advance(long sourceHead, long destHead, long now) {
+    this.sourceHead = Math.max(this.sourceHead, sourceHead);
+    this.destHead = Math.max(this.destHead, destHead);
+    this.now = Math.max(this.now, now);
+    return runDue(this.sourceChecks, this.sourceHead) + runDue(this.destChecks, this.destHead) +
+        runDue(this.timeChecks, this.now);
+  }
+
+  private int runDue(PriorityQueue<Check> checks, long reached) {
+    int run = 0;
+    while (!checks.isEmpty() && checks.peek().due <= reached) {
+      Check check = checks.poll();
+      run++;
+      Entry entry = this.entries.get(check.commitment);
+      // Checks on transfers which have been forgotten are discarded.
+      if (entry != null && isOutstanding(entry, check.issue)) {
+        this.issues.get(check.issue).add(entry.commitment);
+      }
+    }
+    return run;
+  }
+
+  private static boolean isOutstanding(Entry entry, Issue issue) {
+    switch (issue) {
+      case UNRELAYED:
+        return entry.destInitBlock == -1 && !entry.isSourceSettled();
+      case ORPHANED:
+        return entry.sourceInitBlock == -1;
+      case UNFINALISED:
+        return !entry.isSourceSettled();
+      default:
+        return entry.sourceInitBlock != -1 && !entry.isSourceSettled();
+    }
+  }
+
+  private Entry entry(byte[] commitment) {
+    return this.entries.computeIfAbsent(Bytes32.wrap(commitment), Entry::new);
+  }
+
+  private void resolve(Entry entry, Issue issue) {
+    this.issues.get(issue).remove(entry.commitment);
+  }
+
+  // Both sides are done once the source is completed or refunded, and the destination is
+  // completed, refunded or never initiated. A destination refund without a source transfer
+  // also ends an orphan.
+  private void forgetIfSettled(Entry entry) {
+    boolean destDone = entry.destCompletedBlock != -1 || entry.destRefunded || entry.destInitBlock == -1;
+    boolean settled = entry.isSourceSettled() ? destDone : entry.sourceInitBlock == -1 && entry.destRefunded;
+    if (settled) {
+      this.entries.remove(entry.commitment);
+      for (Set<Bytes32> commitments: this.issues.values()) {
+        commitments.remove(entry.commitment);
+      }
+    }
+  }
+
+  /**
+   * @return The first limit transfers with the issue, in the order they were found.
+   */
+  public synchronized List<Entry> getTransfers(Issue issue, int limit) {
+    List<Entry> result = new ArrayList<>();
+    for (Bytes32 commitment: this.issues.get(issue)) {
+      if (result.size() == limit) {
+        break;
+      }
+      result.add(this.entries.get(commitment));
+    }
+    return result;
+  }
+
+  public synchronized Map<Issue, Integer> countByIssue() {
+    Map<Issue, Integer> counts = new EnumMap<>(Issue.class);
+    for (Map.Entry<Issue, Set<Bytes32>> entry: this.issues.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().size());
+    }
+    return Collections.unmodifiableMap(counts);
+  }
+
+  /**
+   * @return The number of transfers being tracked.
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * @return The number of checks not yet due.
+   */
+  public synchronized int getNumPendingChecks() {
+    return this.sourceChecks.size() + this.destChecks.size() + this.timeChecks.size();
+  }
+
+  public synchronized long getSourceHead() {
+    return this.sourceHead;
+  }
+
+  public synchronized long getDestHead() {
+    return this.destHead;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.recon;
+
+import net.consensys.htlcbridge.common.TaskScope;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.transfer.logs.TransferLogBuffer;
+import net.consensys.htlcbridge.transfer.logs.TransferLogDecoder;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.Web3j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Feeds the events of one route into a ReconciliationEngine. Each pass fetches the logs of
+ * the blocks which have gained enough confirmations since the previous pass. The first pass
+ * covers the time lock window of both chains, so it is split into partitions which are
+ * fetched concurrently, and applied in block order.<p>
+ * Passes must not overlap.
+ */
+public class RouteReconciler {
+  private static final Logger LOG = LogManager.getLogger(RouteReconciler.class);
+
+  public static final String[] SOURCE_TOPICS = {
+      TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_REFUNDED_TOPIC};
+  public static final String[] DEST_TOPICS = {
+      TransferLogDecoder.DEST_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.DEST_TRANSFER_REFUNDED_TOPIC};
+
+  // Blocks fetched by each eth_getLogs request.
+  public static final int BLOCKS_PER_REQUEST = 5000;
+
+  /**
+   * One side of the route: the chain, the contract's log fetcher, and how far it has been scanned.
+   */
+  public static class Side {
+    final Web3j web3j;
+    final TransferLogFetcher fetcher;
+    final String[] topics;
+    final int confirmations;
+    long lastBlockScanned;
+
+    /**
+     * @param firstBlock First block to scan.
+     */
+    public Side(Web3j web3j, TransferLogFetcher fetcher, String[] topics, int confirmations, long firstBlock) {
+      this.web3j = web3j;
+      this.fetcher = fetcher;
+      this.topics = topics;
+      this.confirmations = confirmations;
+      this.lastBlockScanned = firstBlock - 1;
+    }
+  }
+
+  private final String routeName;
+  private final Side source;
+  private final Side dest;
+  private final ReconciliationEngine engine;
+  private final ExecutorService executor;
+  private volatile long numPasses;
+
+  /**
+   * @param executor Runs the requests for the partitions of large ranges.
+   */
+  public RouteReconciler(String routeName, Side source, Side dest, ReconciliationEngine engine, ExecutorService executor) {
+    this.routeName = routeName;
+    this.source = source;
+    this.dest = dest;
+    this.engine = engine;
+    this.executor = executor;
+  }
+
+  /**
+   * Scan the new confirmed blocks of both chains, and run the checks which have become due.
+   *
+   * @return The number of logs applied.
+   */
+  public int pass() throws Exception {
+    long start = System.currentTimeMillis();
+    int logs = scan(this.source) + scan(this.dest);
+    int checks = this.engine.advance(this.source.lastBlockScanned, this.dest.lastBlockScanned, System.currentTimeMillis() / 1000);
+    this.numPasses++;
+    LOG.debug("{}: Reconciled to source block {}, dest block {}: {} logs, {} checks in {} ms",
+        this.routeName, this.source.lastBlockScanned, this.dest.lastBlockScanned, logs, checks,
+        System.currentTimeMillis() - start);
+    return logs;
+  }
+
+  private int scan(Side side) throws Exception {
+    long head;
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.RECONCILER, (String) null)) {
+      head = side.web3j.ethBlockNumber().send().getBlockNumber().longValue();
+    }
+    long from = side.lastBlockScanned + 1;
+    long to = head - side.confirmations;
+    if (from > to) {
+      return 0;
+    }
+
+    List<TransferLogBuffer> batches = new ArrayList<>();
+    if (to - from < BLOCKS_PER_REQUEST) {
+      batches.add(fetch(side, from, to));
+    }
+    else {
+      int partitions = 0;
+      try (TaskScope<TransferLogBuffer> scope = new TaskScope<>(this.executor)) {
+        for (long partition = from; partition <= to; partition += BLOCKS_PER_REQUEST) {
+          long partitionFrom = partition;
+          long partitionTo = Math.min(to, partition + BLOCKS_PER_REQUEST - 1);
+          scope.fork(() -> fetch(side, partitionFrom, partitionTo));
+          partitions++;
+        }
+        batches = scope.join();
+      } catch (ExecutionException ex) {
+        throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+      }
+      // Only advance past blocks whose logs were all fetched, so that none are skipped.
+      if (batches.size() != partitions) {
+        throw new IllegalStateException("Fetched " + batches.size() + " of " + partitions +
+            " partitions of blocks " + from + " to " + to);
+      }
+      LOG.info("{}: Fetched blocks {} to {} in {} partitions", this.routeName, from, to, batches.size());
+    }
+
+    int logs = 0;
+    for (TransferLogBuffer batch: batches) {
+      logs += batch.replay(this.engine);
+    }
+    side.lastBlockScanned = to;
+    return logs;
+  }
+
+  private TransferLogBuffer fetch(Side side, long from, long to) throws Exception {
+    TransferLogBuffer batch = new TransferLogBuffer();
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.RECONCILER, (String) null)) {
+      side.fetcher.fetch(from, to, batch, side.topics);
+    }
+    return batch;
+  }
+
+  public String getRouteName() {
+    return this.routeName;
+  }
+
+  public ReconciliationEngine getEngine() {
+    return this.engine;
+  }
+
+  public long getNumPasses() {
+    return this.numPasses;
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits the number of concurrent JSON RPC requests sent to an Ethereum client.<p>
+ * The limit is adjusted using additive increase / multiplicative decrease (AIMD): while
+ * requests complete with latency close to the baseline latency of the node, the limit grows
+ * by one request per window. When a request times out, or takes much longer than the
+ * baseline, the limit is multiplied by the back-off ratio.<p>
+ * Methods differ widely in cost: eth_getLogs is many times slower than eth_blockNumber. So
+ * the baseline is kept per method, and a request is only compared with its own method.
+ */
+public class AdaptiveConcurrencyLimiter {
+  private static final Logger LOG = LogManager.getLogger(AdaptiveConcurrencyLimiter.class);
+
+  public enum Outcome {
+    SUCCESS,
+    TIMEOUT,
+    ERROR
+  }
+
+  public static final int DEFAULT_INITIAL_LIMIT = 4;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 64;
+  // Method of requests released without one.
+  public static final String UNKNOWN_METHOD = "unknown";
+
+  // Multiplier applied to the limit when a timeout or a latency spike is detected.
+  public static final double BACKOFF_RATIO = 0.75;
+  // A request whose latency is more than this many times the baseline latency is a latency spike.
+  public static final double LATENCY_TOLERANCE = 2.0;
+  // The baseline latency is re-measured after this many samples, so that it can track a node
+  // which becomes slower over time.
+  private static final int BASELINE_WINDOW_SAMPLES = 1000;
+  // Weight of a new sample in the moving average of the queueing delay.
+  private static final double QUEUE_DELAY_SMOOTHING = 0.1;
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+
+  private double limit;
+  private int inFlight;
+  private int waiting;
+
+  private final Map<String, Baseline> baselines = new HashMap<>();
+  private long lastDecrease;
+
+  private double avgQueueDelay;
+  private long maxQueueDelay;
+  private long numTimeouts;
+  private long numSpikes;
+
+  public AdaptiveConcurrencyLimiter(String name) {
+    this(name, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+  }
+
+  public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("Invalid concurrency limits: initial: " + initialLimit +
+          ", min: " + minLimit + ", max: " + maxLimit);
+    }
+    this.name = name;
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.lastDecrease = System.nanoTime();
+  }
+
+  /**
+   * Wait until a request can be sent without exceeding the limit.
+   *
+   * @return The time in nanoseconds the caller was queued for.
+   * @throws InterruptedIOException If the thread is interrupted while waiting.
+   */
+  public synchronized long acquire() throws InterruptedIOException {
+    long start = System.nanoTime();
+    this.waiting++;
+    try {
+      while (this.inFlight >= (int) this.limit) {
+        wait();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for RPC slot: " + this.name);
+    } finally {
+      this.waiting--;
+    }
+    this.inFlight++;
+
+    long queueDelay = System.nanoTime() - start;
+    this.avgQueueDelay += (queueDelay - this.avgQueueDelay) * QUEUE_DELAY_SMOOTHING;
+    if (queueDelay > this.maxQueueDelay) {
+      this.maxQueueDelay = queueDelay;
+    }
+    return queueDelay;
+  }
+
+  /**
+   * Indicate that a request that was allowed by acquire has completed.
+   *
+   * @param latency Time in nanoseconds the request took, excluding queueing delay.
+   * @param outcome Whether the request succeeded, timed out, or failed for another reason.
+   */
+  public void release(long latency, Outcome outcome) {
+    release(UNKNOWN_METHOD, latency, outcome);
+  }
+
+  /**
+   * Indicate that a request that was allowed by acquire has completed.
+   *
+   * @param method JSON RPC method of the request, whose baseline latency it is compared with.
+   * @param latency Time in nanoseconds the request took, excluding queueing delay.
+   * @param outcome Whether the request succeeded, timed out, or failed for another reason.
+   */
+  public synchronized void release(String method, long latency, Outcome outcome) {
+    this.inFlight--;
+    long now = System.nanoTime();
+    // Only react to one congestion signal per window: requests that were already in flight
+    // when the limit was last decreased don't decrease it again.
+    boolean sentAfterLastDecrease = now - latency > this.lastDecrease;
+
+    switch (outcome) {
+      case TIMEOUT:
+        this.numTimeouts++;
+        if (sentAfterLastDecrease) {
+          decrease(now);
+        }
+        break;
+      case SUCCESS:
+        long baselineLatency = updateBaseline(method, latency);
+        if (latency > baselineLatency * LATENCY_TOLERANCE) {
+          this.numSpikes++;
+          if (sentAfterLastDecrease) {
+            decrease(now);
+          }
+        }
+        else if (this.inFlight + 1 >= this.limit / 2) {
+          // Only grow the limit if it is being used.
+          this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+        }
+        break;
+      default:
+        // Other errors say nothing about whether the node is overloaded.
+        break;
+    }
+    notifyAll();
+  }
+
+  private void decrease(long now) {
+    double newLimit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+    LOG.debug("{}: Reducing RPC concurrency limit from {} to {}", this.name, (int) this.limit, (int) newLimit);
+    this.limit = newLimit;
+    this.lastDecrease = now;
+  }
+
+  /**
+   * @return The method's baseline latency, including this request.
+   */
+  private long updateBaseline(String method, long latency) {
+    Baseline baseline = this.baselines.computeIfAbsent(method, m -> new Baseline());
+    if (latency < baseline.latency) {
+      baseline.latency = latency;
+    }
+    if (latency < baseline.windowMinLatency) {
+      baseline.windowMinLatency = latency;
+    }
+    long baselineLatency = baseline.latency;
+    if (++baseline.windowSamples >= BASELINE_WINDOW_SAMPLES) {
+      baseline.latency = baseline.windowMinLatency;
+      baseline.windowMinLatency = Long.MAX_VALUE;
+      baseline.windowSamples = 0;
+    }
+    return baselineLatency;
+  }
+
+  private static final class Baseline {
+    long latency = Long.MAX_VALUE;
+    long windowMinLatency = Long.MAX_VALUE;
+    int windowSamples;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public synchronized int getLimit() {
+    return (int) this.limit;
+  }
+
+  public synchronized int getInFlight() {
+    return this.inFlight;
+  }
+
+  public synchronized int getWaiting() {
+    return this.waiting;
+  }
+
+  public synchronized double getAverageQueueDelayMillis() {
+    return this.avgQueueDelay / 1_000_000.0;
+  }
+
+  public synchronized double getMaxQueueDelayMillis() {
+    return this.maxQueueDelay / 1_000_000.0;
+  }
+
+  /**
+   * @return The baseline latency of the fastest method.
+   */
+  public synchronized double getBaselineLatencyMillis() {
+    long min = Long.MAX_VALUE;
+    for (Baseline baseline: this.baselines.values()) {
+      min = Math.min(min, baseline.latency);
+    }
+    return min == Long.MAX_VALUE ? 0 : min / 1_000_000.0;
+  }
+
+  /**
+   * @return The baseline latency of a method, or 0 if no request of the method has succeeded.
+   */
+  public synchronized double getBaselineLatencyMillis(String method) {
+    Baseline baseline = this.baselines.get(method);
+    return baseline == null || baseline.latency == Long.MAX_VALUE ? 0 : baseline.latency / 1_000_000.0;
+  }
+
+  public synchronized long getNumTimeouts() {
+    return this.numTimeouts;
+  }
+
+  public synchronized long getNumLatencySpikes() {
+    return this.numSpikes;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * OkHttp interceptor which holds each HTTP request until the adaptive concurrency limiter
+ * allows it to be sent, and reports the request's latency and outcome back to the limiter.
+ * The JSON RPC method is taken from the tag set by RpcAccountingInterceptor.
+ */
+public class ConcurrencyLimitInterceptor implements Interceptor {
+  private final AdaptiveConcurrencyLimiter limiter;
+
+  public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    String tag = chain.request().tag(String.class);
+    String method = tag != null ? tag : AdaptiveConcurrencyLimiter.UNKNOWN_METHOD;
+    this.limiter.acquire();
+    long start = System.nanoTime();
+    try {
+      Response response = chain.proceed(chain.request());
+      this.limiter.release(method, System.nanoTime() - start, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+      return response;
+    } catch (SocketTimeoutException ex) {
+      this.limiter.release(method, System.nanoTime() - start, AdaptiveConcurrencyLimiter.Outcome.TIMEOUT);
+      throw ex;
+    } catch (InterruptedIOException ex) {
+      // OkHttp reports call timeouts as InterruptedIOException.
+      this.limiter.release(method, System.nanoTime() - start, AdaptiveConcurrencyLimiter.Outcome.TIMEOUT);
+      throw ex;
+    } catch (IOException | RuntimeException ex) {
+      this.limiter.release(method, System.nanoTime() - start, AdaptiveConcurrencyLimiter.Outcome.ERROR);
+      throw ex;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the count, bytes sent and received, latency and errors of JSON RPC calls, per
+ * method, per endpoint and per caller tag. Errors are counted by kind, such as the HTTP
+ * status or the exception, and the most recent error is kept. Calls made on behalf of a transfer are also attributed
+ * to its commitment, so that the average cost of relaying a transfer can be reported.
+ */
+public abstract class RpcAccounting {
+  // Upper bounds of the latency histogram buckets, in milliseconds. The last bucket is unbounded.
+  public static final long[] LATENCY_BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+  // Number of transfers for which individual statistics are retained.
+  private static final int MAX_TRANSFERS_TRACKED = 100_000;
+
+  private static final Map<Key, MethodStats> methodStats = new ConcurrentHashMap<>();
+
+  private static final Map<String, TransferStats> transferStats = new LinkedHashMap<String, TransferStats>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, TransferStats> eldest) {
+      return size() > MAX_TRANSFERS_TRACKED;
+    }
+  };
+  private static long numTransfers;
+  private static long transferCalls;
+  private static long transferBytes;
+
+  private RpcAccounting() {
+  }
+
+  /**
+   * @param error Description of the error, starting with its kind and a colon, or null if
+   *   the call succeeded.
+   */
+  public static void record(String method, String endpoint, RpcCallContext context,
+                            long bytesOut, long bytesIn, long latencyNanos, String error) {
+    Key key = new Key(method, endpoint, context.getTag());
+    methodStats.computeIfAbsent(key, MethodStats::new).record(bytesOut, bytesIn, latencyNanos, error);
+
+    String commitment = context.getCommitment();
+    if (commitment != null) {
+      synchronized (transferStats) {
+        TransferStats stats = transferStats.get(commitment);
+        if (stats == null) {
+          stats = new TransferStats(commitment);
+          transferStats.put(commitment, stats);
+          numTransfers++;
+        }
+        stats.calls++;
+        stats.bytes += bytesOut + bytesIn;
+        transferCalls++;
+        transferBytes += bytesOut + bytesIn;
+      }
+    }
+  }
+
+  public static List<MethodStats> allMethodStats() {
+    return new ArrayList<>(methodStats.values());
+  }
+
+  public static TransferStats getTransferStats(String commitment) {
+    synchronized (transferStats) {
+      return transferStats.get(commitment);
+    }
+  }
+
+  /**
+   * Number of distinct transfers calls have been attributed to. A transfer whose statistics
+   * have been evicted is counted again if more calls are made for it.
+   */
+  public static long getNumTransfers() {
+    synchronized (transferStats) {
+      return numTransfers;
+    }
+  }
+
+  public static double getAverageCallsPerTransfer() {
+    synchronized (transferStats) {
+      return numTransfers == 0 ? 0 : (double) transferCalls / numTransfers;
+    }
+  }
+
+  public static double getAverageBytesPerTransfer() {
+    synchronized (transferStats) {
+      return numTransfers == 0 ? 0 : (double) transferBytes / numTransfers;
+    }
+  }
+
+
+  public static class MethodStats {
+    private final Key key;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> errorsByKind = new ConcurrentHashMap<>();
+    private volatile String lastError;
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+    private MethodStats(Key key) {
+      this.key = key;
+    }
+
+    private void record(long bytesOut, long bytesIn, long latencyNanos, String error) {
+      this.count.increment();
+      if (error != null) {
+        this.errors.increment();
+        int colon = error.indexOf(':');
+        String kind = colon < 0 ? error : error.substring(0, colon);
+        this.errorsByKind.computeIfAbsent(kind, k -> new LongAdder()).increment();
+        this.lastError = error;
+      }
+      this.bytesOut.add(bytesOut);
+      this.bytesIn.add(bytesIn);
+      this.totalLatencyNanos.add(latencyNanos);
+
+      long latencyMs = latencyNanos / 1_000_000;
+      int bucket = 0;
+      while (bucket < LATENCY_BUCKETS_MS.length && latencyMs >= LATENCY_BUCKETS_MS[bucket]) {
+        bucket++;
+      }
+      this.latencyHistogram.incrementAndGet(bucket);
+    }
+
+    public String getMethod() {
+      return this.key.method;
+    }
+
+    public String getEndpoint() {
+      return this.key.endpoint;
+    }
+
+    public String getTag() {
+      return this.key.tag;
+    }
+
+    public long getCount() {
+      return this.count.sum();
+    }
+
+    public long getErrors() {
+      return this.errors.sum();
+    }
+
+    /**
+     * @return Count of errors of each kind, for example "HTTP 503" or "SocketTimeoutException".
+     */
+    public Map<String, Long> getErrorsByKind() {
+      Map<String, Long> counts = new LinkedHashMap<>();
+      for (Map.Entry<String, LongAdder> entry: this.errorsByKind.entrySet()) {
+        counts.put(entry.getKey(), entry.getValue().sum());
+      }
+      return counts;
+    }
+
+    /**
+     * @return The most recent error, or null if there has been none.
+     */
+    public String getLastError() {
+      return this.lastError;
+    }
+
+    public long getBytesOut() {
+      return this.bytesOut.sum();
+    }
+
+    public long getBytesIn() {
+      return this.bytesIn.sum();
+    }
+
+    public double getAverageLatencyMillis() {
+      long count = this.count.sum();
+      return count == 0 ? 0 : this.totalLatencyNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * @return Count of calls in each latency bucket. Entry i counts calls with latency
+     *   less than LATENCY_BUCKETS_MS[i] milliseconds, and not in an earlier bucket.
+     */
+    public long[] getLatencyHistogram() {
+      long[] histogram = new long[this.latencyHistogram.length()];
+      for (int i = 0; i < histogram.length; i++) {
+        histogram[i] = this.latencyHistogram.get(i);
+      }
+      return histogram;
+    }
+  }
+
+  public static class TransferStats {
+    private final String commitment;
+    private long calls;
+    private long bytes;
+
+    private TransferStats(String commitment) {
+      this.commitment = commitment;
+    }
+
+    public String getCommitment() {
+      return commitment;
+    }
+
+    public long getCalls() {
+      synchronized (transferStats) {
+        return calls;
+      }
+    }
+
+    public long getBytes() {
+      synchronized (transferStats) {
+        return bytes;
+      }
+    }
+  }
+
+  private static class Key {
+    final String method;
+    final String endpoint;
+    final String tag;
+
+    Key(String method, String endpoint, String tag) {
+      this.method = method;
+      this.endpoint = endpoint;
+      this.tag = tag;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.method.equals(other.method) && this.endpoint.equals(other.endpoint) && this.tag.equals(other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.method, this.endpoint, this.tag);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * OkHttp interceptor which records each JSON RPC call with RpcAccounting. The call is
+ * recorded when the response body is closed, so that the bytes received and the latency
+ * include reading the whole response. The request is tagged with its JSON RPC method, as a
+ * String, for the concurrency limiter.
+ */
+public class RpcAccountingInterceptor implements Interceptor {
+  private static final String METHOD_FIELD = "\"method\":\"";
+  // Characters of the body of a response which isn't 2xx kept in its error.
+  static final int MAX_ERROR_BODY = 200;
+
+  private final String endpoint;
+
+  public RpcAccountingInterceptor(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    RpcCallContext context = RpcCallContext.current();
+    RequestBody requestBody = request.body();
+    long bytesOut = 0;
+    String method = "unknown";
+    if (requestBody != null) {
+      Buffer buffer = new Buffer();
+      requestBody.writeTo(buffer);
+      bytesOut = buffer.size();
+      method = methodName(buffer.readString(StandardCharsets.UTF_8));
+      // Tag the request with its method for the interceptors after this one.
+      request = request.newBuilder().tag(String.class, method).build();
+    }
+
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException | RuntimeException ex) {
+      RpcAccounting.record(method, this.endpoint, context, bytesOut, 0, System.nanoTime() - start,
+          ex.getClass().getSimpleName() + ": " + ex.getMessage());
+      throw ex;
+    }
+
+    String error = response.isSuccessful() ? null : httpError(response);
+    ResponseBody body = response.body();
+    if (body == null) {
+      RpcAccounting.record(method, this.endpoint, context, bytesOut, 0, System.nanoTime() - start, error);
+      return response;
+    }
+    CountingSource countingSource = new CountingSource(body, method, context, bytesOut, start, error);
+    return response.newBuilder()
+        .body(ResponseBody.create(Okio.buffer(countingSource), body.contentType(), body.contentLength()))
+        .build();
+  }
+
+  /**
+   * @return The status of a response which isn't 2xx, and the start of its body, which is
+   *   peeked so that the caller can still read it.
+   */
+  static String httpError(Response response) throws IOException {
+    String error = "HTTP " + response.code() + ": " + response.message();
+    if (response.body() != null) {
+      String body = response.peekBody(MAX_ERROR_BODY).string().trim();
+      if (!body.isEmpty()) {
+        error += ": " + body;
+      }
+    }
+    return error;
+  }
+
+  static String methodName(String payload) {
+    if (payload.startsWith("[")) {
+      return "batch";
+    }
+    int start = payload.indexOf(METHOD_FIELD);
+    if (start < 0) {
+      return "unknown";
+    }
+    start += METHOD_FIELD.length();
+    int end = payload.indexOf('"', start);
+    return end < 0 ? "unknown" : payload.substring(start, end);
+  }
+
+  private class CountingSource extends ForwardingSource {
+    private final String method;
+    private final RpcCallContext context;
+    private final long bytesOut;
+    private final long start;
+    private final String error;
+    private long bytesIn;
+    private boolean recorded;
+
+    CountingSource(ResponseBody body, String method, RpcCallContext context, long bytesOut, long start, String error) {
+      super(body.source());
+      this.method = method;
+      this.context = context;
+      this.bytesOut = bytesOut;
+      this.start = start;
+      this.error = error;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+      long read = super.read(sink, byteCount);
+      if (read > 0) {
+        this.bytesIn += read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!this.recorded) {
+        this.recorded = true;
+        RpcAccounting.record(this.method, endpoint, this.context, this.bytesOut, this.bytesIn, System.nanoTime() - this.start, this.error);
+      }
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.web3j.utils.Async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Identifies which part of the relayer is making JSON RPC calls on the current thread,
+ * and which transfer (commitment) the calls are being made for. The transport level
+ * accounting uses this to attribute calls to callers and transfers.<p>
+ * Web3j's sendAsync methods run requests on a thread pool that the context is not
+ * propagated to, so callers should use RpcCallContext.sendAsync instead.
+ */
+public class RpcCallContext {
+  public static final String OBSERVER = "observer";
+  public static final String GAS_ORACLE = "gas-oracle";
+  public static final String RECEIPT_TRACKER = "receipt-tracker";
+  public static final String RECONCILER = "reconciler";
+  public static final String WATCHTOWER = "watchtower";
+  public static final String LIQUIDITY = "liquidity";
+  public static final String UNTAGGED = "untagged";
+
+  private static final RpcCallContext NONE = new RpcCallContext(UNTAGGED, null);
+  private static final ThreadLocal<RpcCallContext> current = ThreadLocal.withInitial(() -> NONE);
+
+  private final String tag;
+  private final String commitment;
+
+  private RpcCallContext(String tag, String commitment) {
+    this.tag = tag;
+    this.commitment = commitment;
+  }
+
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * @return The commitment as a hex string, or null if the calls are not for a particular transfer.
+   */
+  public String getCommitment() {
+    return commitment;
+  }
+
+  public static RpcCallContext current() {
+    return current.get();
+  }
+
+  /**
+   * Set the context for the current thread until the returned scope is closed.
+   */
+  public static Scope enter(String tag, String commitment) {
+    RpcCallContext previous = current.get();
+    current.set(new RpcCallContext(tag, commitment));
+    return new Scope(previous);
+  }
+
+  public static Scope enter(String tag, byte[] commitment) {
+    return enter(tag, commitment == null ? null : Bytes.wrap(commitment).toHexString());
+  }
+
+  /**
+   * Run a blocking call on the web3j async thread pool, with the context set for the call.
+   */
+  public static <T> CompletableFuture<T> sendAsync(String tag, byte[] commitment, Callable<T> call) {
+    String commitmentS = commitment == null ? null : Bytes.wrap(commitment).toHexString();
+    return Async.run(() -> {
+      try (Scope scope = enter(tag, commitmentS)) {
+        return call.call();
+      }
+    });
+  }
+
+  /**
+   * Wrap an executor so that tasks run with the context of the thread that submitted them.
+   */
+  public static Executor propagating(Executor executor) {
+    return task -> {
+      RpcCallContext submitter = current.get();
+      executor.execute(() -> {
+        RpcCallContext previous = current.get();
+        current.set(submitter);
+        try {
+          task.run();
+        } finally {
+          current.set(previous);
+        }
+      });
+    };
+  }
+
+  public static class Scope implements AutoCloseable {
+    private final RpcCallContext previous;
+
+    private Scope(RpcCallContext previous) {
+      this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+      current.set(this.previous);
+    }
+  }
+}
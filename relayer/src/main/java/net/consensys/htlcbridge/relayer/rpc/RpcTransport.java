@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import okhttp3.OkHttpClient;
+import org.web3j.protocol.http.HttpService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the HTTP transports used to talk to Ethereum clients. All transports for the same
+ * Ethereum client share one adaptive concurrency limiter, so that the limit reflects the
+ * capacity of the node rather than of an individual Web3j instance. Each call is recorded
+ * by RpcAccounting, including any time it spends queued by the limiter.
+ */
+public abstract class RpcTransport {
+  private static final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  private RpcTransport() {
+  }
+
+  public static HttpService createHttpService(String uri) {
+    return new HttpService(uri, createHttpClient(uri));
+  }
+
+  public static OkHttpClient createHttpClient(String uri) {
+    return new OkHttpClient.Builder()
+        .addInterceptor(new RpcAccountingInterceptor(uri))
+        .addInterceptor(new ConcurrencyLimitInterceptor(limiterFor(uri)))
+        .build();
+  }
+
+  public static AdaptiveConcurrencyLimiter limiterFor(String uri) {
+    return limiters.computeIfAbsent(uri, AdaptiveConcurrencyLimiter::new);
+  }
+
+  public static List<AdaptiveConcurrencyLimiter> allLimiters() {
+    return new ArrayList<>(limiters.values());
+  }
+}
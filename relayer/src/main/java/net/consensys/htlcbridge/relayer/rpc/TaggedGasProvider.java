@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import org.web3j.tx.gas.ContractGasProvider;
+
+import java.math.BigInteger;
+
+/**
+ * Attributes the JSON RPC calls made by a gas provider to the gas oracle, rather than to
+ * the transfer being submitted when the gas price is needed. This matters for gas
+ * providers which fetch prices lazily.
+ */
+public class TaggedGasProvider implements ContractGasProvider {
+  private final ContractGasProvider gasProvider;
+
+  public TaggedGasProvider(ContractGasProvider gasProvider) {
+    this.gasProvider = gasProvider;
+  }
+
+  @Override
+  public BigInteger getGasPrice(String contractFunc) {
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.GAS_ORACLE, (String) null)) {
+      return this.gasProvider.getGasPrice(contractFunc);
+    }
+  }
+
+  @Override
+  public BigInteger getGasPrice() {
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.GAS_ORACLE, (String) null)) {
+      return this.gasProvider.getGasPrice();
+    }
+  }
+
+  @Override
+  public BigInteger getGasLimit(String contractFunc) {
+    return this.gasProvider.getGasLimit(contractFunc);
+  }
+
+  @Override
+  public BigInteger getGasLimit() {
+    return this.gasProvider.getGasLimit();
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.io.IOException;
+
+/**
+ * Attributes the calls made while waiting for a transaction receipt to the receipt
+ * tracker, keeping the commitment of the transfer the transaction was sent for.
+ */
+public class TaggedTransactionReceiptProcessor extends TransactionReceiptProcessor {
+  private final TransactionReceiptProcessor delegate;
+
+  public TaggedTransactionReceiptProcessor(Web3j web3j, TransactionReceiptProcessor delegate) {
+    super(web3j);
+    this.delegate = delegate;
+  }
+
+  @Override
+  public TransactionReceipt waitForTransactionReceipt(String transactionHash) throws IOException, TransactionException {
+    String commitment = RpcCallContext.current().getCommitment();
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.RECEIPT_TRACKER, commitment)) {
+      return this.delegate.waitForTransactionReceipt(transactionHash);
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tuweni.bytes.Bytes32;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the transfers relayers post to the destination chain against the transfers on the
+ * source chain. The source observer passes each SourceTransferInit, and the destination
+ * observer each DestTransferInit, as it processes them. They are joined by commitment:
+ * <ul>
+ *   <li>MISMATCH: the recipient, token or amount posted differs from the source transfer.</li>
+ *   <li>UNPOSTED: no posting within the grace period, in destination blocks.</li>
+ *   <li>UNMATCHED: a posting with no source transfer within the grace period, in source blocks.</li>
+ * </ul>
+ * Transfers waiting for the other side are held in insertion ordered maps, which are also
+ * in deadline order, so the overdue transfers are found at the head of the maps. The maps
+ * are bounded: if one is full, the oldest transfer is dropped without a verdict, and counted
+ * as evicted. The fields are compared in place, so verifying a posting doesn't allocate.<p>
+ * The observers of the two chains run on different threads, so methods are synchronized.
+ */
+public class PostingVerifier {
+  private static final Logger LOG = LogManager.getLogger(PostingVerifier.class);
+
+  public enum Finding {
+    MISMATCH,
+    UNPOSTED,
+    UNMATCHED
+  }
+
+  public static final int DEFAULT_GRACE_BLOCKS = 20;
+  public static final int DEFAULT_CAPACITY = 100000;
+  // Findings remembered for the REST API.
+  private static final int MAX_RECENT = 100;
+
+  /**
+   * A finding about one transfer.
+   */
+  public static class Result {
+    private final Finding finding;
+    private final Bytes32 commitment;
+    private final String relayer;
+    private final String detail;
+
+    Result(Finding finding, Bytes32 commitment, String relayer, String detail) {
+      this.finding = finding;
+      this.commitment = commitment;
+      this.relayer = relayer;
+      this.detail = detail;
+    }
+
+    public Finding getFinding() {
+      return this.finding;
+    }
+
+    public Bytes32 getCommitment() {
+      return this.commitment;
+    }
+
+    /**
+     * @return The relayer which posted the transfer, or null if it wasn't posted.
+     */
+    public String getRelayer() {
+      return this.relayer;
+    }
+
+    public String getDetail() {
+      return this.detail;
+    }
+  }
+
+  private static class Waiting<T> {
+    final T log;
+    long deadline;
+
+    Waiting(T log, long deadline) {
+      this.log = log;
+      this.deadline = deadline;
+    }
+  }
+
+  private final String routeName;
+  private final long graceBlocks;
+  private final int capacity;
+
+  private final LinkedHashMap<Bytes32, Waiting<SourceTransferInitLog>> awaitingPosting = new LinkedHashMap<>();
+  private final LinkedHashMap<Bytes32, Waiting<DestTransferInitLog>> awaitingSource = new LinkedHashMap<>();
+  private long sourceBlock = -1;
+  private long destBlock = -1;
+
+  private long numVerified;
+  private long numEvicted;
+  private long numEvents;
+  private long verificationNanos;
+  private final Map<Finding, Long> findings = new EnumMap<>(Finding.class);
+  private final Map<String, Long> mismatchesByRelayer = new LinkedHashMap<>();
+  private final Deque<Result> recent = new ArrayDeque<>();
+
+  public PostingVerifier(String routeName, long graceBlocks, int capacity) {
+    this.routeName = routeName;
+    this.graceBlocks = graceBlocks;
+    this.capacity = capacity;
+    for (Finding finding: Finding.values()) {
+      this.findings.put(finding, 0L);
+    }
+  }
+
+  public synchronized void onSourceTransferInit(SourceTransferInitLog log) {
+    long start = System.nanoTime();
+    Bytes32 commitment = Bytes32.wrap(log.getCommitment());
+    Waiting<DestTransferInitLog> posted = this.awaitingSource.remove(commitment);
+    if (posted != null) {
+      verify(commitment, log, posted.log);
+    }
+    else if (!this.awaitingPosting.containsKey(commitment)) {
+      if (this.awaitingPosting.size() == this.capacity) {
+        evictEldest(this.awaitingPosting);
+      }
+      this.awaitingPosting.put(commitment, new Waiting<>(log, this.destBlock + this.graceBlocks));
+    }
+    account(start);
+  }
+
+  public synchronized void onDestTransferInit(DestTransferInitLog log) {
+    long start = System.nanoTime();
+    Bytes32 commitment = Bytes32.wrap(log.getCommitment());
+    Waiting<SourceTransferInitLog> source = this.awaitingPosting.remove(commitment);
+    if (source != null) {
+      verify(commitment, source.log, log);
+    }
+    else if (!this.awaitingSource.containsKey(commitment)) {
+      if (this.awaitingSource.size() == this.capacity) {
+        evictEldest(this.awaitingSource);
+      }
+      this.awaitingSource.put(commitment, new Waiting<>(log, this.sourceBlock + this.graceBlocks));
+    }
+    account(start);
+  }
+
+  /**
+   * The source observer has processed all blocks up to and including the block. Postings
+   * whose source transfer is overdue are reported.
+   */
+  public synchronized void sourceBlockProcessed(long blockNumber) {
+    if (this.sourceBlock == -1) {
+      startGracePeriods(this.awaitingSource, blockNumber);
+    }
+    this.sourceBlock = blockNumber;
+    Iterator<Map.Entry<Bytes32, Waiting<DestTransferInitLog>>> overdue = this.awaitingSource.entrySet().iterator();
+    while (overdue.hasNext()) {
+      Map.Entry<Bytes32, Waiting<DestTransferInitLog>> entry = overdue.next();
+      if (entry.getValue().deadline > blockNumber) {
+        break;
+      }
+      overdue.remove();
+      DestTransferInitLog log = entry.getValue().log;
+      report(new Result(Finding.UNMATCHED, entry.getKey(), log.getRelayerAddress(),
+          "No source transfer by source block " + blockNumber));
+    }
+  }
+
+  /**
+   * The destination observer has processed all blocks up to and including the block.
+   * Source transfers whose posting is overdue are reported.
+   */
+  public synchronized void destBlockProcessed(long blockNumber) {
+    if (this.destBlock == -1) {
+      startGracePeriods(this.awaitingPosting, blockNumber);
+    }
+    this.destBlock = blockNumber;
+    Iterator<Map.Entry<Bytes32, Waiting<SourceTransferInitLog>>> overdue = this.awaitingPosting.entrySet().iterator();
+    while (overdue.hasNext()) {
+      Map.Entry<Bytes32, Waiting<SourceTransferInitLog>> entry = overdue.next();
+      if (entry.getValue().deadline > blockNumber) {
+        break;
+      }
+      overdue.remove();
+      report(new Result(Finding.UNPOSTED, entry.getKey(), null, "Not posted by destination block " + blockNumber));
+    }
+  }
+
+  // Transfers seen before the other chain's observer processed its first range have no
+  // deadline yet: start their grace period from the first block processed.
+  private void startGracePeriods(LinkedHashMap<Bytes32, ? extends Waiting<?>> waiting, long blockNumber) {
+    for (Waiting<?> entry: waiting.values()) {
+      entry.deadline = blockNumber + graceBlocks;
+    }
+  }
+
+  private void verify(Bytes32 commitment, SourceTransferInitLog source, DestTransferInitLog posted) {
+    boolean recipient = posted.recipientMatches(source);
+    boolean token = posted.tokenMatches(source);
+    boolean amount = posted.amountMatches(source);
+    if (recipient && token && amount) {
+      this.numVerified++;
+      return;
+    }
+    StringBuilder detail = new StringBuilder();
+    if (!recipient) {
+      detail.append("Recipient: ").append(posted.getRecipientAddress()).append(" expected: ").append(source.getSenderAddress()).append(". ");
+    }
+    if (!token) {
+      detail.append("Token: ").append(posted.getTokenContract()).append(" expected: ").append(source.getTokenContract()).append(". ");
+    }
+    if (!amount) {
+      detail.append("Amount: ").append(posted.getAmount()).append(" expected: ").append(source.getAmount()).append(". ");
+    }
+    String relayer = posted.getRelayerAddress();
+    this.mismatchesByRelayer.merge(relayer, 1L, Long::sum);
+    report(new Result(Finding.MISMATCH, commitment, relayer, detail.toString().trim()));
+  }
+
+  private void report(Result result) {
+    LOG.warn("{}: Transfer {}: {}: {}{}", this.routeName, result.commitment, result.finding,
+        result.relayer == null ? "" : "Relayer " + result.relayer + ": ", result.detail);
+    this.findings.merge(result.finding, 1L, Long::sum);
+    if (this.recent.size() == MAX_RECENT) {
+      this.recent.poll();
+    }
+    this.recent.add(result);
+  }
+
+  private void evictEldest(LinkedHashMap<Bytes32, ?> waiting) {
+    Iterator<Bytes32> eldest = waiting.keySet().iterator();
+    eldest.next();
+    eldest.remove();
+    this.numEvicted++;
+  }
+
+  private void account(long start) {
+    this.numEvents++;
+    this.verificationNanos += System.nanoTime() - start;
+  }
+
+  public String getRouteName() {
+    return this.routeName;
+  }
+
+  public synchronized long getNumVerified() {
+    return this.numVerified;
+  }
+
+  public synchronized Map<Finding, Long> getFindingCounts() {
+    return new EnumMap<>(this.findings);
+  }
+
+  public synchronized Map<String, Long> getMismatchesByRelayer() {
+    return new LinkedHashMap<>(this.mismatchesByRelayer);
+  }
+
+  /**
+   * @return The number of transfers dropped because the join was full.
+   */
+  public synchronized long getNumEvicted() {
+    return this.numEvicted;
+  }
+
+  /**
+   * @return The number of source transfers waiting to be posted, and postings waiting for their source transfer.
+   */
+  public synchronized int getNumWaiting() {
+    return this.awaitingPosting.size() + this.awaitingSource.size();
+  }
+
+  /**
+   * @return The mean time to join and verify an event, in nanoseconds.
+   */
+  public synchronized double getMeanVerificationNanos() {
+    return this.numEvents == 0 ? 0 : (double) this.verificationNanos / this.numEvents;
+  }
+
+  /**
+   * @return The most recent findings, oldest first.
+   */
+  public synchronized List<Result> getRecent() {
+    return new ArrayList<>(this.recent);
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import net.consensys.htlcbridge.common.TaskScope;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import net.consensys.htlcbridge.transfer.TransferState;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferLogDecoder;
+import net.consensys.htlcbridge.transfer.logs.TransferLogFetcher;
+import net.consensys.htlcbridge.transfer.logs.TransferLogHandler;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import net.consensys.htlcbridge.transfer.soliditywrappers.Erc20HtlcTransfer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tuweni.bytes.Bytes32;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tuples.generated.Tuple7;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches a route's source contract for open transfers, and refunds them, or raises an
+ * alert, once their timeLock passes. Transfers are indexed by timeLock in a timing wheel,
+ * so the cost of a pass depends on the new logs and the transfers expiring, not on the
+ * number of open transfers. Time is the timestamp of the latest source block, which is
+ * what the contract checks the timeLock against.<p>
+ * The source contract still allows a transfer to be finalised after its timeLock, so before
+ * refunding, the watchtower checks the transfer on the destination contract. If the recipient
+ * has been paid there, the transfer is finalised with the preimage revealed. If the recipient
+ * can still be paid there, the transfer is checked again once the destination timeLock passes.
+ * Otherwise it is refunded.<p>
+ * Anyone can call refundTransferToOtherBlockchain. At most batchSize refunds are submitted
+ * per pass, concurrently. The rest wait for the next pass. A refund which fails is retried
+ * after RETRY_DELAY seconds. A pass which may not submit keeps at most MAX_STANDBY_EXPIRED
+ * expired transfers, dropping the oldest, which the submitting relayer is expected to refund.<p>
+ * Passes must not overlap.
+ */
+public class RefundWatchtower implements TransferLogHandler {
+  private static final Logger LOG = LogManager.getLogger(RefundWatchtower.class);
+
+  public enum Mode {
+    REFUND,
+    ALERT
+  }
+
+  // What to do with a transfer whose timeLock has passed.
+  enum Action {
+    // The source transfer is no longer open.
+    NONE,
+    REFUND,
+    // The recipient was paid on the destination.
+    FINALISE,
+    // The recipient can still be paid on the destination.
+    WAIT
+  }
+
+  public static final String[] TOPICS = {
+      TransferLogDecoder.SOURCE_TRANSFER_INIT_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_COMPLETED_TOPIC,
+      TransferLogDecoder.SOURCE_TRANSFER_REFUNDED_TOPIC};
+
+  // Blocks fetched by each eth_getLogs request.
+  public static final int BLOCKS_PER_REQUEST = 5000;
+  // Seconds before a failed refund is tried again.
+  public static final long RETRY_DELAY = 60;
+  // Expired transfers remembered for the REST API.
+  private static final int MAX_RECENT = 100;
+  // Expired transfers kept by a pass which may not submit refunds.
+  public static final int MAX_STANDBY_EXPIRED = 10000;
+
+  private final String routeName;
+  private final Web3j web3j;
+  private final TransferLogFetcher fetcher;
+  private final Erc20HtlcTransfer transferContract;
+  private final Erc20HtlcTransfer destContract;
+  private final int confirmations;
+  private final Mode mode;
+  private final int batchSize;
+  private final ExecutorService executor;
+
+  private long lastBlockScanned;
+  private TimingWheel<Bytes32> wheel;
+  private final Map<Bytes32, TimingWheel.Timer<Bytes32>> timers = new HashMap<>();
+  // Transfers whose timeLock has passed, waiting to be refunded or alerted on, oldest first.
+  private final LinkedHashSet<Bytes32> expired = new LinkedHashSet<>();
+  private final Deque<Bytes32> recent = new ArrayDeque<>();
+
+  private final AtomicLong numRefunded = new AtomicLong();
+  private final AtomicLong numFinalised = new AtomicLong();
+  private final AtomicLong numFailed = new AtomicLong();
+  private volatile long numAlerts;
+  private volatile int numOpen;
+  private volatile int numExpired;
+
+  /**
+   * @param transferContract Source transfer contract.
+   * @param destContract Destination transfer contract of the route.
+   * @param firstBlock First block to scan for transfers.
+   * @param executor Runs the refunds of a batch.
+   */
+  public RefundWatchtower(String routeName, Web3j web3j, TransferLogFetcher fetcher, Erc20HtlcTransfer transferContract,
+                          Erc20HtlcTransfer destContract, int confirmations, long firstBlock, Mode mode, int batchSize,
+                          ExecutorService executor) {
+    this.routeName = routeName;
+    this.web3j = web3j;
+    this.fetcher = fetcher;
+    this.transferContract = transferContract;
+    this.destContract = destContract;
+    this.confirmations = confirmations;
+    this.lastBlockScanned = firstBlock - 1;
+    this.mode = mode;
+    this.batchSize = batchSize;
+    this.executor = executor;
+  }
+
+  /**
+   * Scan the new confirmed blocks, expire the transfers whose timeLock has passed, and
+   * refund or alert on the next batch of them.
+   *
+   * @param submit false to not submit refunds, for example on a standby relayer. Expired
+   *   transfers wait until a pass which may submit.
+   */
+  public void pass(boolean submit) throws Exception {
+    EthBlock.Block latest;
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.WATCHTOWER, (String) null)) {
+      latest = this.web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send().getBlock();
+    }
+    long now = latest.getTimestamp().longValue();
+    if (this.wheel == null) {
+      this.wheel = new TimingWheel<>(now);
+    }
+
+    long to = latest.getNumber().longValue() - this.confirmations;
+    for (long from = this.lastBlockScanned + 1; from <= to; from += BLOCKS_PER_REQUEST) {
+      long end = Math.min(to, from + BLOCKS_PER_REQUEST - 1);
+      try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.WATCHTOWER, (String) null)) {
+        this.fetcher.fetch(from, end, this, TOPICS);
+      }
+      this.lastBlockScanned = end;
+    }
+
+    int count = this.wheel.advance(now, commitment -> {
+      this.timers.remove(commitment);
+      this.expired.add(commitment);
+    });
+    if (count != 0) {
+      LOG.info("{}: {} transfers passed their timeLock", this.routeName, count);
+    }
+    this.numOpen = this.timers.size();
+
+    if (this.mode == Mode.ALERT) {
+      for (Bytes32 commitment: this.expired) {
+        LOG.warn("{}: Transfer {} passed its timeLock without being finalised or refunded", this.routeName, commitment);
+        remember(commitment);
+        this.numAlerts++;
+      }
+      this.expired.clear();
+    }
+    else if (submit) {
+      if (!this.expired.isEmpty()) {
+        refundBatch(now);
+      }
+    }
+    else if (this.expired.size() > MAX_STANDBY_EXPIRED) {
+      int dropped = this.expired.size() - MAX_STANDBY_EXPIRED;
+      Iterator<Bytes32> oldest = this.expired.iterator();
+      for (int i = 0; i < dropped; i++) {
+        LOG.debug("{}: Dropped expired transfer {} on standby", this.routeName, oldest.next());
+        oldest.remove();
+      }
+      LOG.warn("{}: Dropped {} expired transfers waiting on standby", this.routeName, dropped);
+    }
+    this.numExpired = this.expired.size();
+  }
+
+  private void refundBatch(long now) throws InterruptedException {
+    List<Bytes32> batch = new ArrayList<>();
+    Iterator<Bytes32> next = this.expired.iterator();
+    while (batch.size() < this.batchSize && next.hasNext()) {
+      batch.add(next.next());
+      next.remove();
+    }
+    List<Long> results;
+    try (TaskScope<Long> scope = new TaskScope<>(this.executor)) {
+      for (Bytes32 commitment: batch) {
+        scope.fork(() -> settle(commitment, now));
+      }
+      results = scope.join();
+    } catch (ExecutionException ex) {
+      // settle handles its own errors.
+      throw new IllegalStateException(ex.getCause());
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      remember(batch.get(i));
+      // A transfer without a result is tried again, rather than lost.
+      long retryAt = i < results.size() ? results.get(i) : now + RETRY_DELAY;
+      if (retryAt != 0) {
+        this.timers.put(batch.get(i), this.wheel.schedule(retryAt, batch.get(i)));
+      }
+    }
+  }
+
+  /**
+   * Finalise or refund a transfer whose timeLock has passed, depending on its destination
+   * transfer.
+   *
+   * @return 0 if the transfer has been dealt with, or otherwise the time to try again.
+   */
+  private long settle(Bytes32 commitment, long now) {
+    byte[] commitmentBytes = commitment.toArrayUnsafe();
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.WATCHTOWER, commitmentBytes)) {
+      BigInteger state = this.transferContract.sourceTransferState(commitmentBytes).send();
+      if (!TransferState.OPEN.equals(state)) {
+        LOG.info("{}: Transfer {} no longer open: {}", this.routeName, commitment, TransferState.create(state));
+        return 0;
+      }
+      Tuple7<String, String, String, BigInteger, byte[], BigInteger, BigInteger> destInfo = null;
+      boolean destExpired = true;
+      if (this.destContract.destTransferExists(commitmentBytes).send()) {
+        destInfo = this.destContract.getDestInfo(commitmentBytes).send();
+        destExpired = this.destContract.destTransferExpired(commitmentBytes).send();
+      }
+
+      TransactionReceipt receipt;
+      switch (action(state, destInfo == null ? null : destInfo.component7(), destExpired)) {
+        case NONE:
+          return 0;
+        case WAIT:
+          LOG.info("{}: Transfer {} can still be finalised on the destination until {}",
+              this.routeName, commitment, destInfo.component6());
+          return Math.max(now + RETRY_DELAY, destInfo.component6().longValue() + 1);
+        case FINALISE:
+          receipt = this.transferContract.finaliseTransferToOtherBlockchain(commitmentBytes, destInfo.component5()).send();
+          if (!receipt.isStatusOK()) {
+            LOG.error("{}: Finalising transfer {} failed: {}", this.routeName, commitment, receipt.getStatus());
+            this.numFailed.incrementAndGet();
+            return now + RETRY_DELAY;
+          }
+          LOG.info("{}: Transfer {} finalised, as it completed on the destination", this.routeName, commitment);
+          this.numFinalised.incrementAndGet();
+          return 0;
+        default:
+          receipt = this.transferContract.refundTransferToOtherBlockchain(commitmentBytes).send();
+          if (!receipt.isStatusOK()) {
+            LOG.error("{}: Refund of transfer {} failed: {}", this.routeName, commitment, receipt.getStatus());
+            this.numFailed.incrementAndGet();
+            return now + RETRY_DELAY;
+          }
+          LOG.info("{}: Transfer {} refunded", this.routeName, commitment);
+          this.numRefunded.incrementAndGet();
+          return 0;
+      }
+    } catch (Exception ex) {
+      LOG.error("{}: Refund of transfer {} failed: {}", this.routeName, commitment, ex.toString());
+      this.numFailed.incrementAndGet();
+      return now + RETRY_DELAY;
+    }
+  }
+
+  /**
+   * @param sourceState State of the source transfer.
+   * @param destState State of the destination transfer, as stored by the contract, or null
+   *   if there is no destination transfer.
+   * @param destExpired True if the destination transfer's timeLock has passed.
+   */
+  static Action action(BigInteger sourceState, BigInteger destState, boolean destExpired) {
+    if (!TransferState.OPEN.equals(sourceState)) {
+      return Action.NONE;
+    }
+    if (destState == null) {
+      return Action.REFUND;
+    }
+    if (TransferState.FINALILISED.equals(destState)) {
+      return Action.FINALISE;
+    }
+    if (TransferState.OPEN.equals(destState) && !destExpired) {
+      return Action.WAIT;
+    }
+    return Action.REFUND;
+  }
+
+  private void remember(Bytes32 commitment) {
+    synchronized (this.recent) {
+      if (this.recent.size() == MAX_RECENT) {
+        this.recent.poll();
+      }
+      this.recent.add(commitment);
+    }
+  }
+
+  @Override
+  public void onSourceTransferInit(SourceTransferInitLog log) {
+    Bytes32 commitment = Bytes32.wrap(log.getCommitment());
+    if (!this.timers.containsKey(commitment)) {
+      // The contract only allows a refund once the block timestamp is after the timeLock.
+      this.timers.put(commitment, this.wheel.schedule(log.getTimeLock() + 1, commitment));
+    }
+  }
+
+  @Override
+  public void onTransferSettled(TransferSettledLog log) {
+    if (log.getEvent() == TransferSettledLog.Event.DEST_TRANSFER_REFUNDED) {
+      return;
+    }
+    Bytes32 commitment = Bytes32.wrap(log.getCommitment());
+    TimingWheel.Timer<Bytes32> timer = this.timers.remove(commitment);
+    if (timer != null) {
+      this.wheel.cancel(timer);
+    }
+    else {
+      this.expired.remove(commitment);
+    }
+  }
+
+  public String getRouteName() {
+    return this.routeName;
+  }
+
+  public Mode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * @return The number of open transfers whose timeLock has not passed.
+   */
+  public int getNumOpen() {
+    return this.numOpen;
+  }
+
+  /**
+   * @return The number of transfers whose timeLock has passed, waiting to be refunded.
+   */
+  public int getNumExpired() {
+    return this.numExpired;
+  }
+
+  public long getNumRefunded() {
+    return this.numRefunded.get();
+  }
+
+  /**
+   * @return The number of expired transfers finalised, as they had completed on the destination.
+   */
+  public long getNumFinalised() {
+    return this.numFinalised.get();
+  }
+
+  public long getNumFailed() {
+    return this.numFailed.get();
+  }
+
+  public long getNumAlerts() {
+    return this.numAlerts;
+  }
+
+  /**
+   * @return The transfers most recently refunded or alerted on, oldest first.
+   */
+  public List<Bytes32> getRecent() {
+    synchronized (this.recent) {
+      return new ArrayList<>(this.recent);
+    }
+  }
+}
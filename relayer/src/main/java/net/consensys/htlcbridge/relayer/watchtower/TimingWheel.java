@@ -0,0 +1,220 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: schedules values to expire at a deadline, with constant time
+ * schedule and cancel, and expiry work proportional to the number of timers expiring.<p>
+ * Each level is a ring of 64 slots, and a slot at level L covers 64^L ticks. A timer is placed
+ * at the level of the highest base 64 digit in which its deadline differs from the current
+ * time, so a timer only moves down a level when the current time reaches the start of its
+ * slot. Each level has a bitmap of its occupied slots, so that advancing over idle ticks,
+ * however many there are, doesn't visit empty slots. Eleven levels cover all long deadlines.<p>
+ * Not thread safe.
+ *
+ * @param <T> Type of the values scheduled.
+ */
+public class TimingWheel<T> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+  /**
+   * A scheduled value. Returned by schedule, for use with cancel.
+   */
+  public static class Timer<T> {
+    private final long deadline;
+    private final T value;
+    private Timer<T> prev;
+    private Timer<T> next;
+    // Index of the slot the timer is in, or -1 if it has expired or been cancelled.
+    private int slot = -1;
+
+    private Timer(long deadline, T value) {
+      this.deadline = deadline;
+      this.value = value;
+    }
+
+    public long getDeadline() {
+      return this.deadline;
+    }
+
+    public T getValue() {
+      return this.value;
+    }
+
+    public boolean isScheduled() {
+      return this.slot != -1;
+    }
+  }
+
+  // Heads of the doubly linked list of timers in each slot, level by level.
+  private final Timer<T>[] slots;
+  // Bit s of occupied[L] is set if slot s of level L holds any timers.
+  private final long[] occupied = new long[LEVELS];
+  private long currentTime;
+  private int size;
+
+  /**
+   * @param startTime Current time, in ticks.
+   */
+  @SuppressWarnings("unchecked")
+  public TimingWheel(long startTime) {
+    this.slots = (Timer<T>[]) new Timer[LEVELS * SLOTS];
+    this.currentTime = startTime;
+  }
+
+  /**
+   * Schedule a value to expire once the current time reaches the deadline. Deadlines which
+   * have already passed expire on the next call to advance.
+   */
+  public Timer<T> schedule(long deadline, T value) {
+    Timer<T> timer = new Timer<>(deadline, value);
+    place(timer);
+    this.size++;
+    return timer;
+  }
+
+  /**
+   * @return false if the timer had already expired or been cancelled.
+   */
+  public boolean cancel(Timer<T> timer) {
+    if (timer.slot == -1) {
+      return false;
+    }
+    unlink(timer);
+    this.size--;
+    return true;
+  }
+
+  /**
+   * Advance the current time, expiring the timers whose deadlines are reached, in deadline order.
+   *
+   * @param now New current time. Ignored if it is before the current time.
+   * @param expired Called with the value of each timer expiring.
+   * @return The number of timers which expired.
+   */
+  public int advance(long now, Consumer<T> expired) {
+    int count = 0;
+    while (true) {
+      int level = 0;
+      int slot = -1;
+      for (; level < LEVELS; level++) {
+        int digit = digit(this.currentTime, level);
+        // At level zero the current tick's slot can hold timers. Above level zero timers are
+        // always in a later slot than the current time's.
+        long later = level == 0 ? -1L << digit : digit == SLOTS - 1 ? 0 : -1L << (digit + 1);
+        long candidates = this.occupied[level] & later;
+        if (candidates != 0) {
+          slot = Long.numberOfTrailingZeros(candidates);
+          break;
+        }
+      }
+      if (slot == -1) {
+        this.currentTime = Math.max(this.currentTime, now);
+        return count;
+      }
+
+      int shift = SLOT_BITS * level;
+      long slotStart = level == 0 ? (this.currentTime & ~(SLOTS - 1L)) | slot :
+          (this.currentTime & ~(shift + SLOT_BITS >= Long.SIZE ? -1L : (1L << (shift + SLOT_BITS)) - 1)) | ((long) slot << shift);
+      if (slotStart > now) {
+        this.currentTime = Math.max(this.currentTime, now);
+        return count;
+      }
+      this.currentTime = Math.max(this.currentTime, slotStart);
+
+      // Take the slot's timers, then expire or move them down a level.
+      int index = level * SLOTS + slot;
+      Timer<T> timer = this.slots[index];
+      this.slots[index] = null;
+      this.occupied[level] &= ~(1L << slot);
+      while (timer != null) {
+        Timer<T> next = timer.next;
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+        if (level == 0) {
+          this.size--;
+          count++;
+          expired.accept(timer.value);
+        }
+        else {
+          place(timer);
+        }
+        timer = next;
+      }
+    }
+  }
+
+  private void place(Timer<T> timer) {
+    int level;
+    int slot;
+    if (timer.deadline <= this.currentTime) {
+      level = 0;
+      slot = digit(this.currentTime, 0);
+    }
+    else {
+      int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(timer.deadline ^ this.currentTime);
+      level = highestBit / SLOT_BITS;
+      slot = digit(timer.deadline, level);
+    }
+    int index = level * SLOTS + slot;
+    Timer<T> head = this.slots[index];
+    timer.next = head;
+    if (head != null) {
+      head.prev = timer;
+    }
+    this.slots[index] = timer;
+    timer.slot = index;
+    this.occupied[level] |= 1L << slot;
+  }
+
+  private void unlink(Timer<T> timer) {
+    int index = timer.slot;
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    }
+    else {
+      this.slots[index] = timer.next;
+      if (timer.next == null) {
+        this.occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+      }
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.slot = -1;
+  }
+
+  private static int digit(long time, int level) {
+    return (int) (time >>> (SLOT_BITS * level)) & (SLOTS - 1);
+  }
+
+  public long getCurrentTime() {
+    return this.currentTime;
+  }
+
+  /**
+   * @return The number of timers scheduled.
+   */
+  public int size() {
+    return this.size;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import net.consensys.htlcbridge.relayer.rpc.RpcCallContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ObserverExecutorTest {
+  private Vertx vertx;
+  private Context context;
+  private ObserverExecutor executor;
+
+  @Before
+  public void setup() {
+    this.vertx = Vertx.vertx();
+    this.context = this.vertx.getOrCreateContext();
+    this.executor = new ObserverExecutor(this.vertx, this.context);
+  }
+
+  @After
+  public void tearDown() {
+    this.vertx.close();
+  }
+
+  @Test
+  public void callRunsOnWorkerAndContinuationOnContext() throws Exception {
+    CompletableFuture<Boolean> callOnEventLoop = new CompletableFuture<>();
+    CompletableFuture<String> callTag = new CompletableFuture<>();
+    CompletableFuture<Context> continuationContext = new CompletableFuture<>();
+    // Called from a thread which isn't a Vert.x thread, as a web3j callback would be.
+    this.executor.execute(RpcCallContext.OBSERVER, null, () -> {
+      callOnEventLoop.complete(Context.isOnEventLoopThread());
+      return RpcCallContext.current().getTag();
+    }, (tag, th) -> {
+      callTag.complete(tag);
+      continuationContext.complete(Vertx.currentContext());
+    });
+
+    assertFalse(callOnEventLoop.get(5, TimeUnit.SECONDS));
+    assertSame(this.context, continuationContext.get(5, TimeUnit.SECONDS));
+    assertEquals(RpcCallContext.OBSERVER, callTag.get());
+  }
+
+  @Test
+  public void exceptionIsPassedToContinuation() throws Exception {
+    CompletableFuture<Throwable> failure = new CompletableFuture<>();
+    CompletableFuture<Context> continuationContext = new CompletableFuture<>();
+    this.executor.execute(RpcCallContext.OBSERVER, null, () -> {
+      throw new IOException("connection refused");
+    }, (result, th) -> {
+      continuationContext.complete(Vertx.currentContext());
+      failure.complete(th);
+    });
+
+    Throwable th = failure.get(5, TimeUnit.SECONDS);
+    assertTrue(th instanceof IOException);
+    assertEquals("connection refused", th.getMessage());
+    assertSame(this.context, continuationContext.get());
+  }
+
+  @Test
+  public void blockedSubmissionDoesNotHoldUpIngestion() throws Exception {
+    ObserverExecutor submission = new ObserverExecutor(this.vertx, this.context, ObserverExecutor.SUBMISSION_POOL_NAME, 1);
+    CountDownLatch receipt = new CountDownLatch(1);
+    CompletableFuture<Boolean> submitted = new CompletableFuture<>();
+    // Waits for a receipt, holding the only submission thread.
+    submission.execute(RpcCallContext.OBSERVER, null, () -> receipt.await(5, TimeUnit.SECONDS), (result, th) -> submitted.complete(result));
+
+    CompletableFuture<String> polled = new CompletableFuture<>();
+    this.executor.execute(RpcCallContext.OBSERVER, null, () -> "block", (result, th) -> polled.complete(result));
+    assertEquals("block", polled.get(2, TimeUnit.SECONDS));
+    assertFalse(submitted.isDone());
+
+    receipt.countDown();
+    assertTrue(submitted.get(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RelayerConfigTest {
+
+  @Test
+  public void singleRouteConfigDerivesChainsAndRoute() {
+    RelayerConfig config = new RelayerConfig();
+    config.sourceBcUri = "http://127.0.0.1:8310/";
+    config.sourceBcId = 31;
+    config.sourceConfirmations = 2;
+    config.sourceTransferContract = "0x01";
+    config.destBcUri = "http://127.0.0.1:8320/";
+    config.destBcId = 32;
+    config.destConfirmations = 3;
+    config.destTransferContract = "0x02";
+
+    List<ChainConfig> chains = config.chainConfigs();
+    assertEquals(2, chains.size());
+    assertEquals(RelayerConfig.SOURCE_CHAIN, chains.get(0).name);
+    assertEquals("http://127.0.0.1:8310/", chains.get(0).bcUri);
+    assertEquals(2, chains.get(0).confirmations);
+    assertEquals(RelayerConfig.DEST_CHAIN, chains.get(1).name);
+    assertEquals(32, chains.get(1).bcId);
+
+    List<RouteConfig> routes = config.routeConfigs();
+    assertEquals(1, routes.size());
+    assertEquals("source-dest", routes.get(0).routeName());
+    assertEquals("0x01", routes.get(0).sourceTransferContract);
+    assertEquals("0x02", routes.get(0).destTransferContract);
+  }
+
+  @Test
+  public void meshConfigFromJson() throws Exception {
+    String json = "{" +
+        "\"chains\": [" +
+        "  {\"name\": \"a\", \"bcUri\": \"http://a/\", \"bcId\": 1, \"blockPeriod\": 2000, \"confirmations\": 4}," +
+        "  {\"name\": \"b\", \"bcUri\": \"http://b/\", \"bcId\": 2, \"blockPeriod\": 5000, \"pollPeriod\": 1000}," +
+        "  {\"name\": \"c\", \"bcUri\": \"http://c/\", \"bcId\": 3}]," +
+        "\"routes\": [" +
+        "  {\"sourceChain\": \"a\", \"sourceTransferContract\": \"0x0a\", \"destChain\": \"b\", \"destTransferContract\": \"0x0b\"}," +
+        "  {\"name\": \"fast\", \"sourceChain\": \"a\", \"sourceTransferContract\": \"0x0a\", \"destChain\": \"c\", " +
+        "   \"destTransferContract\": \"0x0c\", \"sourceConfirmations\": 1, \"submissionInstances\": 4}]," +
+        "\"apiPort\": 8080}";
+    RelayerConfig config = new ObjectMapper().readerFor(RelayerConfig.class).readValue(json);
+
+    List<ChainConfig> chains = config.chainConfigs();
+    assertEquals(3, chains.size());
+    assertEquals(1000, chains.get(1).pollPeriod);
+
+    List<RouteConfig> routes = config.routeConfigs();
+    assertEquals(2, routes.size());
+    assertEquals("a-b", routes.get(0).routeName());
+    assertEquals("fast", routes.get(1).routeName());
+    assertEquals(1, routes.get(1).sourceConfirmations);
+    assertEquals(4, routes.get(1).submissionInstances);
+  }
+}
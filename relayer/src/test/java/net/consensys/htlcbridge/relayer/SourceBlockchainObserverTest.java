@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SourceBlockchainObserverTest {
+  private static final long NOW = 1_600_000_000L;
+  private static final long DEST_TIME_LOCK_PERIOD = 3600;
+  private static final long DEFER_PERIOD = 30000;
+
+  @Test
+  public void defersWhileDestTimeLockEndsBeforeSourceTimeLock() {
+    // Posted by the end of the defer period and the safety margin, the destination timeLock
+    // is exactly the source timeLock.
+    long timeLock = NOW + 30 + SourceBlockchainObserver.DEFER_SAFETY_MARGIN + DEST_TIME_LOCK_PERIOD;
+    assertTrue(SourceBlockchainObserver.canDefer(timeLock, NOW, DEFER_PERIOD, DEST_TIME_LOCK_PERIOD));
+    assertFalse(SourceBlockchainObserver.canDefer(timeLock - 1, NOW, DEFER_PERIOD, DEST_TIME_LOCK_PERIOD));
+  }
+
+  @Test
+  public void sourceTimeLockPeriodIsNotTheCutoff() {
+    // Half of a 2 hour source time lock period remains, but a 1 hour destination time lock
+    // period started after the margin would end after the source timeLock.
+    long timeLock = NOW + 3600 + SourceBlockchainObserver.DEFER_SAFETY_MARGIN / 2;
+    assertFalse(SourceBlockchainObserver.canDefer(timeLock, NOW, DEFER_PERIOD, DEST_TIME_LOCK_PERIOD));
+  }
+
+  @Test
+  public void partSecondDeferPeriodIsRoundedUp() {
+    long timeLock = NOW + 1 + SourceBlockchainObserver.DEFER_SAFETY_MARGIN + DEST_TIME_LOCK_PERIOD;
+    assertTrue(SourceBlockchainObserver.canDefer(timeLock, NOW, 1000, DEST_TIME_LOCK_PERIOD));
+    assertFalse(SourceBlockchainObserver.canDefer(timeLock, NOW, 1001, DEST_TIME_LOCK_PERIOD));
+  }
+}
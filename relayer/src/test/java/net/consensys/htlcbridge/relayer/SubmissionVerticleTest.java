@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubmissionVerticleTest {
+  private static final String ADDRESS = "test.submit";
+  private static final String POOL = ObserverExecutor.SUBMISSION_POOL_NAME + "-test";
+
+  private Vertx vertx;
+
+  @Before
+  public void setup() {
+    this.vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    this.vertx.close(ar -> closed.complete(null));
+    closed.get(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * The parent verticle, like the Relayer, is stopped after its child submission verticles
+   * have drained the transfers being processed.
+   */
+  @Test
+  public void drainsPendingTransfersBeforeParentStops() throws Exception {
+    AtomicInteger completed = new AtomicInteger();
+    CompletableFuture<Integer> completedWhenParentStopped = new CompletableFuture<>();
+    CompletableFuture<Void> received = new CompletableFuture<>();
+
+    AbstractVerticle parent = new AbstractVerticle() {
+      @Override
+      public void start(Promise<Void> startPromise) {
+        this.vertx.deployVerticle(() -> new SubmissionVerticle<String>(ADDRESS, (msg, executor) -> {
+          Promise<Void> done = Promise.promise();
+          received.complete(null);
+          this.vertx.setTimer(300, id -> {
+            completed.incrementAndGet();
+            done.complete();
+          });
+          return done.future();
+        }, POOL, 2, 5000), new DeploymentOptions().setInstances(2)).<Void>mapEmpty().onComplete(startPromise);
+      }
+
+      @Override
+      public void stop() {
+        completedWhenParentStopped.complete(completed.get());
+      }
+    };
+
+    String id = deploy(parent);
+    this.vertx.eventBus().send(ADDRESS, "a");
+    this.vertx.eventBus().send(ADDRESS, "b");
+    received.get(5, TimeUnit.SECONDS);
+
+    CompletableFuture<Void> undeployed = new CompletableFuture<>();
+    this.vertx.undeploy(id, ar -> undeployed.complete(null));
+    undeployed.get(10, TimeUnit.SECONDS);
+    assertEquals(2, (int) completedWhenParentStopped.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void stopsAtDrainTimeout() throws Exception {
+    CompletableFuture<Void> received = new CompletableFuture<>();
+    String id = deploy(new SubmissionVerticle<String>(ADDRESS, (msg, executor) -> {
+      received.complete(null);
+      return Promise.<Void>promise().future();
+    }, POOL, 1, 200));
+    this.vertx.eventBus().send(ADDRESS, "a");
+    received.get(5, TimeUnit.SECONDS);
+
+    long start = System.currentTimeMillis();
+    CompletableFuture<Boolean> undeployed = new CompletableFuture<>();
+    this.vertx.undeploy(id, ar -> undeployed.complete(ar.succeeded()));
+    assertTrue(undeployed.get(5, TimeUnit.SECONDS));
+    long took = System.currentTimeMillis() - start;
+    assertTrue(took >= 200 && took < 3000);
+  }
+
+  private String deploy(AbstractVerticle verticle) throws Exception {
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    Future<String> future = this.vertx.deployVerticle(verticle);
+    future.onComplete(ar -> {
+      if (ar.succeeded()) {
+        deployed.complete(ar.result());
+      }
+      else {
+        deployed.completeExceptionally(ar.cause());
+      }
+    });
+    return deployed.get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.bus;
+
+import io.vertx.core.buffer.Buffer;
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TransferLogCodecTest {
+
+  private static byte[] data(int len) {
+    byte[] data = new byte[len];
+    for (int i = 0; i < len; i++) {
+      data[i] = (byte) (i * 7 + 1);
+    }
+    return data;
+  }
+
+  @Test
+  public void sourceTransferInitRoundTrip() {
+    SourceTransferInitLogCodec codec = new SourceTransferInitLogCodec();
+    SourceTransferInitLog log = SourceTransferInitLog.fromRawData(123456789L, 17, 1640995200L, data(104));
+
+    // Prefix the buffer to check decoding honours the position.
+    Buffer buffer = Buffer.buffer().appendInt(42);
+    codec.encodeToWire(buffer, log);
+    SourceTransferInitLog decoded = codec.decodeFromWire(4, buffer);
+
+    assertEquals(log.getBlockNumber(), decoded.getBlockNumber());
+    assertEquals(log.getLogIndex(), decoded.getLogIndex());
+    assertEquals(log.getTimeLock(), decoded.getTimeLock());
+    assertArrayEquals(log.rawData(), decoded.rawData());
+    assertEquals(log.toString(), decoded.toString());
+    assertSame(log, codec.transform(log));
+  }
+
+  @Test
+  public void destTransferCompletedRoundTrip() {
+    DestTransferCompletedLogCodec codec = new DestTransferCompletedLogCodec();
+    DestTransferCompletedLog log = DestTransferCompletedLog.fromRawData(99L, 3, data(64));
+
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, log);
+    DestTransferCompletedLog decoded = codec.decodeFromWire(0, buffer);
+
+    assertEquals(log.getBlockNumber(), decoded.getBlockNumber());
+    assertEquals(log.getLogIndex(), decoded.getLogIndex());
+    assertArrayEquals(log.getCommitment(), decoded.getCommitment());
+    assertArrayEquals(log.getPreimage(), decoded.getPreimage());
+    assertSame(log, codec.transform(log));
+  }
+}
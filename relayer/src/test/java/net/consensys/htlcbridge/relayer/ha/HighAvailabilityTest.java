@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.ha;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.json.Json;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HighAvailabilityTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void onlyOneRelayerHoldsTheLease() throws Exception {
+    Path dir = this.folder.getRoot().toPath();
+    LeaderLease active = new LeaderLease(dir, "active");
+    LeaderLease standby = new LeaderLease(dir, "standby");
+
+    assertTrue(active.tryAcquire());
+    assertFalse(standby.tryAcquire());
+    assertTrue(active.isHeld());
+    assertFalse(standby.isHeld());
+
+    active.release();
+    assertFalse(active.isHeld());
+    assertTrue(standby.tryAcquire());
+    assertFalse(active.tryAcquire());
+    standby.release();
+  }
+
+  @Test
+  public void checkpointRoundTrip() throws Exception {
+    CheckpointStore store = new CheckpointStore(this.folder.getRoot().toPath());
+    assertNull(store.read());
+
+    Map<String, Long> inFlight = new LinkedHashMap<>();
+    inFlight.put("0x01", 100L);
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.owner = "active";
+    checkpoint.timestamp = 1234;
+    checkpoint.observers.put("a-b/source", new Checkpoint.ObserverCheckpoint(99, inFlight));
+    checkpoint.observers.put("a-b/dest", new Checkpoint.ObserverCheckpoint(500, new LinkedHashMap<>()));
+    store.write(checkpoint);
+    checkpoint.observers.get("a-b/dest").watermark = 501;
+    store.write(checkpoint);
+
+    Checkpoint read = store.read();
+    assertEquals("active", read.owner);
+    assertEquals(1234, read.timestamp);
+    assertEquals(99, read.observers.get("a-b/source").watermark);
+    assertEquals(Long.valueOf(100), read.observers.get("a-b/source").inFlight.get("0x01"));
+    assertEquals(501, read.observers.get("a-b/dest").watermark);
+    assertNull(read.observers.get("a-b/dest").knownTransfers);
+  }
+
+  @Test
+  public void snapshotIsReadableByImporter() throws Exception {
+    Checkpoint snapshot = new Checkpoint();
+    snapshot.owner = "peer";
+    Checkpoint.ObserverCheckpoint observer = new Checkpoint.ObserverCheckpoint(99, new LinkedHashMap<>());
+    observer.watermarkBlockHash = "0xabcd";
+    observer.knownTransfers = new LinkedHashMap<>();
+    observer.knownTransfers.put("0x01", "SUBMITTED");
+    snapshot.observers.put("a-b/source", observer);
+
+    // Exported by the REST API using Vert.x's JSON encoder, imported using Jackson.
+    String json = Json.encode(snapshot);
+    Checkpoint read = new ObjectMapper().readerFor(Checkpoint.class).readValue(json);
+    assertEquals("0xabcd", read.observers.get("a-b/source").watermarkBlockHash);
+    assertEquals("SUBMITTED", read.observers.get("a-b/source").knownTransfers.get("0x01"));
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.liquidity;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LiquidityIndexTest {
+  static final String TOKEN = "0x2222222222222222222222222222222222222222";
+  static final String OTHER_TOKEN = "0x3333333333333333333333333333333333333333";
+
+  static Bytes32 commitment(int i) {
+    byte[] data = new byte[32];
+    data[31] = (byte) i;
+    return Bytes32.wrap(data);
+  }
+
+  static BigInteger big(long value) {
+    return BigInteger.valueOf(value);
+  }
+
+  @Test
+  public void untrackedToken() {
+    LiquidityIndex index = new LiquidityIndex();
+    assertFalse(index.isTracked(TOKEN));
+    assertFalse(index.tryReserve(commitment(1), TOKEN, big(1)));
+    assertNull(index.get(TOKEN));
+
+    index.track(TOKEN, big(100));
+    // Tracking again doesn't reset the balance.
+    index.track(TOKEN, big(5));
+    assertTrue(index.isTracked(TOKEN));
+    assertEquals(big(100), index.get(TOKEN).getBalance());
+  }
+
+  @Test
+  public void reserveOnlyWhatIsAvailable() {
+    LiquidityIndex index = new LiquidityIndex();
+    index.track(TOKEN, big(100));
+
+    assertTrue(index.tryReserve(commitment(1), TOKEN, big(60)));
+    // Reserving the same transfer again is a no-op.
+    assertTrue(index.tryReserve(commitment(1), TOKEN, big(60)));
+    assertFalse(index.tryReserve(commitment(2), TOKEN, big(41)));
+    assertTrue(index.tryReserve(commitment(2), TOKEN, big(40)));
+
+    LiquidityIndex.TokenLiquidity liquidity = index.get(TOKEN);
+    assertEquals(big(100), liquidity.getReserved());
+    assertEquals(BigInteger.ZERO, liquidity.getAvailable());
+    assertEquals(2, liquidity.getNumReservations());
+
+    index.release(commitment(1));
+    index.release(commitment(1));
+    liquidity = index.get(TOKEN);
+    assertEquals(big(40), liquidity.getReserved());
+    assertEquals(big(60), liquidity.getAvailable());
+    assertEquals(1, liquidity.getNumReservations());
+  }
+
+  @Test
+  public void postedTransfersAreAlwaysReserved() {
+    LiquidityIndex index = new LiquidityIndex();
+    index.track(TOKEN, big(10));
+    index.reserve(commitment(1), TOKEN, big(30));
+
+    LiquidityIndex.TokenLiquidity liquidity = index.get(TOKEN);
+    assertEquals(big(30), liquidity.getReserved());
+    assertEquals(big(-20), liquidity.getAvailable());
+    assertFalse(index.tryReserve(commitment(2), TOKEN, big(1)));
+  }
+
+  @Test
+  public void tokenTransfers() {
+    LiquidityIndex index = new LiquidityIndex();
+    index.track(TOKEN, big(100));
+    index.onTokenTransfer(TOKEN, true, big(50));
+    index.onTokenTransfer(TOKEN, false, big(30));
+    index.onTokenTransfer(OTHER_TOKEN, true, big(1000));
+
+    assertEquals(big(120), index.get(TOKEN).getBalance());
+    assertFalse(index.isTracked(OTHER_TOKEN));
+    assertEquals(1, index.snapshot().size());
+  }
+}
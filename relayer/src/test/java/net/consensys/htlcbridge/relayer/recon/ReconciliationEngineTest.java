@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.recon;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferCompletedLog;
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.TransferSettledLog;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReconciliationEngineTest {
+  static final long GRACE = 10;
+  static final long WINDOW = 600;
+
+  static byte[] commitment(int i) {
+    byte[] commitment = new byte[32];
+    commitment[31] = (byte) i;
+    return commitment;
+  }
+
+  static SourceTransferInitLog sourceInit(int i, long block, long timeLock) {
+    byte[] data = new byte[104];
+    System.arraycopy(commitment(i), 0, data, 0, 32);
+    return SourceTransferInitLog.fromRawData(block, 0, timeLock, data);
+  }
+
+  static DestTransferInitLog destInit(int i, long block) {
+    byte[] data = new byte[124];
+    System.arraycopy(commitment(i), 0, data, 0, 32);
+    return DestTransferInitLog.fromRawData(block, 0, 0, data);
+  }
+
+  static DestTransferCompletedLog destCompleted(int i, long block) {
+    byte[] data = new byte[64];
+    System.arraycopy(commitment(i), 0, data, 0, 32);
+    return DestTransferCompletedLog.fromRawData(block, 0, data);
+  }
+
+  static TransferSettledLog settled(TransferSettledLog.Event event, int i, long block) {
+    return new TransferSettledLog(event, block, 0, commitment(i));
+  }
+
+  static void assertIssue(ReconciliationEngine engine, ReconciliationEngine.Issue issue, int... transfers) {
+    List<ReconciliationEngine.Entry> entries = engine.getTransfers(issue, 100);
+    assertEquals(issue.name(), transfers.length, entries.size());
+    for (int i = 0; i < transfers.length; i++) {
+      assertEquals(Bytes32.wrap(commitment(transfers[i])), entries.get(i).getCommitment());
+    }
+  }
+
+  @Test
+  public void unrelayedAfterGrace() {
+    ReconciliationEngine engine = new ReconciliationEngine(GRACE, GRACE, WINDOW);
+    engine.onSourceTransferInit(sourceInit(1, 100, 100000));
+    engine.onSourceTransferInit(sourceInit(2, 105, 100000));
+    engine.advance(109, 0, 1000);
+    assertIssue(engine, ReconciliationEngine.Issue.UNRELAYED);
+
+    engine.advance(110, 0, 1000);
+    assertIssue(engine, ReconciliationEngine.Issue.UNRELAYED, 1);
+
+    // Relaying late resolves the issue, and the other check finds nothing.
+    engine.onDestTransferInit(destInit(1, 50));
+    engine.onDestTransferInit(destInit(2, 51));
+    engine.advance(200, 60, 1000);
+    assertIssue(engine, ReconciliationEngine.Issue.UNRELAYED);
+    // Only the expiry checks remain.
+    assertEquals(2, engine.getNumPendingChecks());
+  }
+
+  @Test
+  public void orphanedAndUnfinalised() {
+    ReconciliationEngine engine = new ReconciliationEngine(GRACE, GRACE, WINDOW);
+    engine.onDestTransferInit(destInit(1, 20));
+    engine.onSourceTransferInit(sourceInit(2, 100, 100000));
+    engine.onDestTransferInit(destInit(2, 21));
+    engine.onDestTransferCompleted(destCompleted(2, 25));
+    engine.advance(100, 34, 1000);
+    assertIssue(engine, ReconciliationEngine.Issue.ORPHANED, 1);
+    assertIssue(engine, ReconciliationEngine.Issue.UNFINALISED);
+
+    engine.advance(100, 35, 1000);
+    assertIssue(engine, ReconciliationEngine.Issue.UNFINALISED, 2);
+
+    // Finalising on the source completes the transfer on both sides, so it is forgotten.
+    engine.onTransferSettled(settled(TransferSettledLog.Event.SOURCE_TRANSFER_COMPLETED, 2, 120));
+    assertIssue(engine, ReconciliationEngine.Issue.UNFINALISED);
+    assertEquals(1, engine.size());
+
+    // Refunding the orphan on the destination ends it.
+    engine.onTransferSettled(settled(TransferSettledLog.Event.DEST_TRANSFER_REFUNDED, 1, 40));
+    assertIssue(engine, ReconciliationEngine.Issue.ORPHANED);
+    assertEquals(0, engine.size());
+  }
+
+  @Test
+  public void nearExpiryUntilRefunded() {
+    ReconciliationEngine engine = new ReconciliationEngine(GRACE, GRACE, WINDOW);
+    engine.onSourceTransferInit(sourceInit(1, 100, 5000));
+    engine.onSourceTransferInit(sourceInit(2, 100, 9000));
+    engine.onDestTransferInit(destInit(1, 10));
+    engine.onDestTransferInit(destInit(2, 10));
+    engine.advance(100, 10, 4399);
+    assertIssue(engine, ReconciliationEngine.Issue.NEAR_EXPIRY);
+
+    engine.advance(100, 10, 4400);
+    assertIssue(engine, ReconciliationEngine.Issue.NEAR_EXPIRY, 1);
+
+    engine.onTransferSettled(settled(TransferSettledLog.Event.SOURCE_TRANSFER_REFUNDED, 1, 130));
+    assertIssue(engine, ReconciliationEngine.Issue.NEAR_EXPIRY);
+    // The destination side of the refunded transfer is still open.
+    assertEquals(2, engine.size());
+    engine.onTransferSettled(settled(TransferSettledLog.Event.DEST_TRANSFER_REFUNDED, 1, 30));
+    assertEquals(1, engine.size());
+  }
+
+  @Test
+  public void advanceOnlyRunsDueChecks() {
+    ReconciliationEngine engine = new ReconciliationEngine(GRACE, GRACE, WINDOW);
+    for (int i = 0; i < 100; i++) {
+      engine.onSourceTransferInit(sourceInit(i, i, 100000));
+    }
+    assertEquals(200, engine.getNumPendingChecks());
+    // Only the unrelayed checks of the transfers in blocks 0 to 4 are due.
+    assertEquals(5, engine.advance(14, 0, 0));
+    assertEquals(0, engine.advance(14, 0, 0));
+    assertEquals(195, engine.getNumPendingChecks());
+    assertIssue(engine, ReconciliationEngine.Issue.UNRELAYED, 0, 1, 2, 3, 4);
+    assertEquals(0, (int) engine.countByIssue().get(ReconciliationEngine.Issue.ORPHANED));
+  }
+}
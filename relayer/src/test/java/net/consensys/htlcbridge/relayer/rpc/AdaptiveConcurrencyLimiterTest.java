@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void limitGrowsWhileLatencyIsStable() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 8);
+    for (int i = 0; i < 100; i++) {
+      // Keep the limiter saturated so the limit is seen to be in use.
+      int limit = limiter.getLimit();
+      for (int j = 0; j < limit; j++) {
+        limiter.acquire();
+      }
+      for (int j = 0; j < limit; j++) {
+        limiter.release(10 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+      }
+    }
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void limitCutOnTimeout() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 8);
+    Thread.sleep(1);
+    limiter.acquire();
+    limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.TIMEOUT);
+    assertEquals(6, limiter.getLimit());
+    assertEquals(1, limiter.getNumTimeouts());
+  }
+
+  @Test
+  public void limitCutOnLatencySpike() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 8);
+    limiter.acquire();
+    limiter.release(10 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    // The slow request must have been sent after the limiter was created to count.
+    Thread.sleep(40);
+    limiter.acquire();
+    limiter.release(30 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    assertEquals(6, limiter.getLimit());
+    assertEquals(1, limiter.getNumLatencySpikes());
+  }
+
+  @Test
+  public void slowMethodsAreNotLatencySpikes() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 8);
+    Thread.sleep(40);
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+      limiter.release("eth_blockNumber", 2 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+      limiter.acquire();
+      limiter.release("eth_getLogs", 30 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    }
+    assertEquals(0, limiter.getNumLatencySpikes());
+    assertEquals(8, limiter.getLimit());
+    assertEquals(2.0, limiter.getBaselineLatencyMillis(), 0.001);
+    assertEquals(30.0, limiter.getBaselineLatencyMillis("eth_getLogs"), 0.001);
+
+    // A slow request is still a spike compared with its own method.
+    Thread.sleep(100);
+    limiter.acquire();
+    limiter.release("eth_getLogs", 90 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    assertEquals(1, limiter.getNumLatencySpikes());
+    assertEquals(6, limiter.getLimit());
+  }
+
+  @Test
+  public void limitNeverBelowMinimum() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 2, 8);
+    for (int i = 0; i < 10; i++) {
+      Thread.sleep(1);
+      limiter.acquire();
+      limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.TIMEOUT);
+    }
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void callersQueueWhenLimitReached() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1);
+    limiter.acquire();
+    Thread waiter = new Thread(() -> {
+      try {
+        limiter.acquire();
+        limiter.release(MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    waiter.start();
+    while (limiter.getWaiting() == 0) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(20);
+    limiter.release(MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    waiter.join();
+    assertEquals(0, limiter.getInFlight());
+    assertTrue(limiter.getMaxQueueDelayMillis() >= 20);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.rpc;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RpcAccountingInterceptorTest {
+  private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+  private static final String RESPONSE = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x10\"}";
+
+  private static OkHttpClient client(String endpoint) {
+    return client(endpoint, 200, "OK", RESPONSE);
+  }
+
+  private static OkHttpClient client(String endpoint, int code, String message, String body) {
+    // The last interceptor answers the request, so that no server is needed.
+    return new OkHttpClient.Builder()
+        .addInterceptor(new RpcAccountingInterceptor(endpoint))
+        .addInterceptor(chain -> new Response.Builder()
+            .request(chain.request())
+            .protocol(Protocol.HTTP_1_1)
+            .code(code)
+            .message(message)
+            .body(ResponseBody.create(body, JSON))
+            .build())
+        .build();
+  }
+
+  private static String call(OkHttpClient client, String payload) throws Exception {
+    Request request = new Request.Builder()
+        .url("http://127.0.0.1:8545/")
+        .post(RequestBody.create(payload, JSON))
+        .build();
+    try (Response response = client.newCall(request).execute()) {
+      return response.body().string();
+    }
+  }
+
+  private static RpcAccounting.MethodStats find(String method, String endpoint, String tag) {
+    for (RpcAccounting.MethodStats stats: RpcAccounting.allMethodStats()) {
+      if (stats.getMethod().equals(method) && stats.getEndpoint().equals(endpoint) && stats.getTag().equals(tag)) {
+        return stats;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void recordsMethodBytesAndCaller() throws Exception {
+    String endpoint = "test-endpoint-1";
+    String payload = "{\"jsonrpc\":\"2.0\",\"method\":\"eth_blockNumber\",\"params\":[],\"id\":1}";
+    OkHttpClient client = client(endpoint);
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.OBSERVER, (String) null)) {
+      assertEquals(RESPONSE, call(client, payload));
+      call(client, payload);
+    }
+
+    RpcAccounting.MethodStats stats = find("eth_blockNumber", endpoint, RpcCallContext.OBSERVER);
+    assertNotNull(stats);
+    assertEquals(2, stats.getCount());
+    assertEquals(0, stats.getErrors());
+    assertEquals(2 * payload.getBytes(StandardCharsets.UTF_8).length, stats.getBytesOut());
+    assertEquals(2 * RESPONSE.length(), stats.getBytesIn());
+    long total = 0;
+    for (long count: stats.getLatencyHistogram()) {
+      total += count;
+    }
+    assertEquals(2, total);
+  }
+
+  @Test
+  public void attributesCallsToTransfer() throws Exception {
+    String endpoint = "test-endpoint-2";
+    String payload = "{\"jsonrpc\":\"2.0\",\"method\":\"eth_call\",\"params\":[],\"id\":2}";
+    OkHttpClient client = client(endpoint);
+    byte[] commitment = new byte[32];
+    commitment[31] = 0x42;
+    RpcCallContext.sendAsync(RpcCallContext.OBSERVER, commitment, () -> call(client, payload)).get();
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.OBSERVER, commitment)) {
+      new TaggedTransactionReceiptProcessor(null, new NoOpReceiptProcessor(client, payload))
+          .waitForTransactionReceipt("0x00");
+    }
+
+    String commitmentS = "0x0000000000000000000000000000000000000000000000000000000000000042";
+    RpcAccounting.TransferStats stats = RpcAccounting.getTransferStats(commitmentS);
+    assertNotNull(stats);
+    assertEquals(2, stats.getCalls());
+    assertEquals(2 * (payload.length() + RESPONSE.length()), stats.getBytes());
+    assertEquals(1, find("eth_call", endpoint, RpcCallContext.OBSERVER).getCount());
+    assertEquals(1, find("eth_call", endpoint, RpcCallContext.RECEIPT_TRACKER).getCount());
+  }
+
+  @Test
+  public void recordsStatusAndBodyOfFailedResponse() throws Exception {
+    String endpoint = "test-endpoint-3";
+    String payload = "{\"jsonrpc\":\"2.0\",\"method\":\"eth_getLogs\",\"params\":[],\"id\":3}";
+    String body = "{\"message\":\"rate limited\"}";
+    OkHttpClient client = client(endpoint, 429, "Too Many Requests", body);
+    try (RpcCallContext.Scope scope = RpcCallContext.enter(RpcCallContext.OBSERVER, (String) null)) {
+      // The caller can still read the whole body.
+      assertEquals(body, call(client, payload));
+    }
+    call(client(endpoint), payload.replace("eth_getLogs", "eth_chainId"));
+
+    RpcAccounting.MethodStats stats = find("eth_getLogs", endpoint, RpcCallContext.OBSERVER);
+    assertEquals(1, stats.getErrors());
+    assertEquals(Collections.singletonMap("HTTP 429", 1L), stats.getErrorsByKind());
+    assertEquals("HTTP 429: Too Many Requests: " + body, stats.getLastError());
+    RpcAccounting.MethodStats ok = find("eth_chainId", endpoint, RpcCallContext.UNTAGGED);
+    assertEquals(0, ok.getErrors());
+    assertNull(ok.getLastError());
+  }
+
+  @Test
+  public void methodName() {
+    assertEquals("eth_getLogs", RpcAccountingInterceptor.methodName("{\"jsonrpc\":\"2.0\",\"method\":\"eth_getLogs\",\"params\":[]}"));
+    assertEquals("batch", RpcAccountingInterceptor.methodName("[{\"method\":\"eth_call\"}]"));
+    assertEquals("unknown", RpcAccountingInterceptor.methodName("{}"));
+  }
+
+  // Makes one call in place of polling for a receipt.
+  private static class NoOpReceiptProcessor extends TransactionReceiptProcessor {
+    private final OkHttpClient client;
+    private final String payload;
+
+    NoOpReceiptProcessor(OkHttpClient client, String payload) {
+      super(null);
+      this.client = client;
+      this.payload = payload;
+    }
+
+    @Override
+    public TransactionReceipt waitForTransactionReceipt(String transactionHash) {
+      try {
+        call(this.client, this.payload);
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import net.consensys.htlcbridge.transfer.logs.DestTransferInitLog;
+import net.consensys.htlcbridge.transfer.logs.SourceTransferInitLog;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PostingVerifierTest {
+  static final byte SENDER = 0x11;
+  static final byte TOKEN = 0x22;
+  static final byte AMOUNT = 0x33;
+  static final byte RELAYER = 0x44;
+
+  static SourceTransferInitLog source(int i) {
+    byte[] data = new byte[104];
+    data[31] = (byte) i;
+    data[32 + 19] = SENDER;
+    data[52 + 19] = TOKEN;
+    data[72 + 31] = AMOUNT;
+    return SourceTransferInitLog.fromRawData(100, 0, 5000, data);
+  }
+
+  static DestTransferInitLog posting(int i, byte recipient, byte token, byte amount) {
+    byte[] data = new byte[124];
+    data[31] = (byte) i;
+    data[32 + 19] = RELAYER;
+    data[52 + 19] = recipient;
+    data[72 + 19] = token;
+    data[92 + 31] = amount;
+    return DestTransferInitLog.fromRawData(200, 0, 4000, data);
+  }
+
+  @Test
+  public void matchingPostingsVerified() {
+    PostingVerifier verifier = new PostingVerifier("route", 5, 100);
+    verifier.destBlockProcessed(200);
+    verifier.sourceBlockProcessed(100);
+    verifier.onSourceTransferInit(source(1));
+    verifier.onDestTransferInit(posting(1, SENDER, TOKEN, AMOUNT));
+    // The posting can be seen before the source transfer.
+    verifier.onDestTransferInit(posting(2, SENDER, TOKEN, AMOUNT));
+    verifier.onSourceTransferInit(source(2));
+
+    assertEquals(2, verifier.getNumVerified());
+    assertEquals(0, verifier.getNumWaiting());
+    assertTrue(verifier.getRecent().isEmpty());
+  }
+
+  @Test
+  public void mismatchReportedWithRelayer() {
+    PostingVerifier verifier = new PostingVerifier("route", 5, 100);
+    verifier.onSourceTransferInit(source(1));
+    verifier.onDestTransferInit(posting(1, SENDER, (byte) 0x23, (byte) 0x34));
+
+    List<PostingVerifier.Result> recent = verifier.getRecent();
+    assertEquals(1, recent.size());
+    assertEquals(PostingVerifier.Finding.MISMATCH, recent.get(0).getFinding());
+    assertTrue(recent.get(0).getDetail(), recent.get(0).getDetail().startsWith("Token:"));
+    assertTrue(recent.get(0).getDetail().contains("Amount: 52 expected: 51"));
+    String relayer = "0x0000000000000000000000000000000000000044";
+    assertEquals(relayer, recent.get(0).getRelayer());
+    assertEquals(1L, (long) verifier.getMismatchesByRelayer().get(relayer));
+    assertEquals(0, verifier.getNumVerified());
+  }
+
+  @Test
+  public void unpostedAndUnmatchedAfterGrace() {
+    PostingVerifier verifier = new PostingVerifier("route", 5, 100);
+    // Seen before the destination observer's first range: the grace period starts from its first block.
+    verifier.onSourceTransferInit(source(1));
+    verifier.destBlockProcessed(200);
+    verifier.sourceBlockProcessed(100);
+    verifier.onDestTransferInit(posting(2, SENDER, TOKEN, AMOUNT));
+
+    verifier.destBlockProcessed(204);
+    verifier.sourceBlockProcessed(104);
+    assertTrue(verifier.getRecent().isEmpty());
+
+    verifier.destBlockProcessed(205);
+    verifier.sourceBlockProcessed(105);
+    List<PostingVerifier.Result> recent = verifier.getRecent();
+    assertEquals(2, recent.size());
+    assertEquals(PostingVerifier.Finding.UNPOSTED, recent.get(0).getFinding());
+    assertNull(recent.get(0).getRelayer());
+    assertEquals(PostingVerifier.Finding.UNMATCHED, recent.get(1).getFinding());
+    assertEquals(0, verifier.getNumWaiting());
+  }
+
+  @Test
+  public void joinIsBounded() {
+    PostingVerifier verifier = new PostingVerifier("route", 5, 10);
+    for (int i = 0; i < 15; i++) {
+      verifier.onSourceTransferInit(source(i));
+    }
+    assertEquals(10, verifier.getNumWaiting());
+    assertEquals(5, verifier.getNumEvicted());
+    // The oldest were evicted.
+    verifier.onDestTransferInit(posting(14, SENDER, TOKEN, AMOUNT));
+    verifier.onDestTransferInit(posting(0, SENDER, TOKEN, AMOUNT));
+    assertEquals(1, verifier.getNumVerified());
+  }
+}
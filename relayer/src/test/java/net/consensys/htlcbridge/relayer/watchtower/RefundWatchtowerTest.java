@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import net.consensys.htlcbridge.relayer.watchtower.RefundWatchtower.Action;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RefundWatchtowerTest {
+  private static final BigInteger OPEN = BigInteger.valueOf(0);
+  private static final BigInteger REFUNDED = BigInteger.valueOf(1);
+  private static final BigInteger FINALISED = BigInteger.valueOf(2);
+
+  @Test
+  public void sourceNoLongerOpen() {
+    assertEquals(Action.NONE, RefundWatchtower.action(FINALISED, FINALISED, true));
+    assertEquals(Action.NONE, RefundWatchtower.action(REFUNDED, null, true));
+  }
+
+  @Test
+  public void refundedWhenNoDestTransfer() {
+    assertEquals(Action.REFUND, RefundWatchtower.action(OPEN, null, true));
+  }
+
+  @Test
+  public void finalisedWhenRecipientPaid() {
+    // The destination contract reports a transfer past its timeLock as timed out, whether or
+    // not it was finalised, so the stored state is used.
+    assertEquals(Action.FINALISE, RefundWatchtower.action(OPEN, FINALISED, true));
+    assertEquals(Action.FINALISE, RefundWatchtower.action(OPEN, FINALISED, false));
+  }
+
+  @Test
+  public void waitsWhileRecipientCanBePaid() {
+    assertEquals(Action.WAIT, RefundWatchtower.action(OPEN, OPEN, false));
+  }
+
+  @Test
+  public void refundedWhenDestTransferExpiredOrRefunded() {
+    assertEquals(Action.REFUND, RefundWatchtower.action(OPEN, OPEN, true));
+    assertEquals(Action.REFUND, RefundWatchtower.action(OPEN, REFUNDED, false));
+    assertEquals(Action.REFUND, RefundWatchtower.action(OPEN, REFUNDED, true));
+  }
+}
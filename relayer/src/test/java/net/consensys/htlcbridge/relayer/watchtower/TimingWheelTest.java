@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.relayer.watchtower;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+  @Test
+  public void expiresAtDeadline() {
+    TimingWheel<String> wheel = new TimingWheel<>(1000);
+    wheel.schedule(1005, "a");
+    wheel.schedule(1000 + 64 * 64 + 3, "b");
+    wheel.schedule(999, "overdue");
+    List<String> expired = new ArrayList<>();
+
+    assertEquals(1, wheel.advance(1004, expired::add));
+    assertEquals(Collections.singletonList("overdue"), expired);
+    assertEquals(1, wheel.advance(1005, expired::add));
+    assertEquals("a", expired.get(1));
+    assertEquals(0, wheel.advance(1000 + 64 * 64 + 2, expired::add));
+    assertEquals(1, wheel.advance(1000 + 64 * 64 + 3, expired::add));
+    assertEquals("b", expired.get(2));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void cancel() {
+    TimingWheel<String> wheel = new TimingWheel<>(0);
+    TimingWheel.Timer<String> a = wheel.schedule(100, "a");
+    TimingWheel.Timer<String> b = wheel.schedule(100, "b");
+    assertTrue(wheel.cancel(a));
+    assertFalse(wheel.cancel(a));
+    assertEquals(1, wheel.size());
+
+    List<String> expired = new ArrayList<>();
+    wheel.advance(100, expired::add);
+    assertEquals(Collections.singletonList("b"), expired);
+    assertFalse(b.isScheduled());
+    assertFalse(wheel.cancel(b));
+  }
+
+  @Test
+  public void matchesSortedDeadlines() {
+    Random random = new Random(7);
+    long start = 1_600_000_000L;
+    TimingWheel<Long> wheel = new TimingWheel<>(start);
+    List<Long> deadlines = new ArrayList<>();
+    List<TimingWheel.Timer<Long>> cancelled = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      long deadline = start + (long) (random.nextDouble() * random.nextDouble() * 30 * 24 * 3600);
+      TimingWheel.Timer<Long> timer = wheel.schedule(deadline, deadline);
+      if (i % 10 == 0) {
+        cancelled.add(timer);
+      }
+      else {
+        deadlines.add(deadline);
+      }
+    }
+    for (TimingWheel.Timer<Long> timer: cancelled) {
+      assertTrue(wheel.cancel(timer));
+    }
+    Collections.sort(deadlines);
+
+    // Advance in uneven steps, including large jumps, checking each timer expires at its deadline.
+    List<Long> expired = new ArrayList<>();
+    long now = start;
+    while (wheel.size() > 0) {
+      now += random.nextInt(3) == 0 ? random.nextInt(500000) : random.nextInt(100);
+      final long reached = now;
+      wheel.advance(now, deadline -> {
+        assertTrue(deadline <= reached);
+        expired.add(deadline);
+      });
+      if (expired.size() < deadlines.size()) {
+        assertTrue(deadlines.get(expired.size()) > now);
+      }
+    }
+    assertEquals(deadlines, expired);
+  }
+}
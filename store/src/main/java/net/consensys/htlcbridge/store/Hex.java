@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts between 0x prefixed hex strings, as used by the rest of the relayer, and the
+ * fixed length binary values stored on disk.
+ */
+abstract class Hex {
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * @return The value as lower case hex, with a 0x prefix, left padded with zeros to len bytes.
+   */
+  static String normalise(String hex, int len) {
+    String digits = (hex.startsWith("0x") || hex.startsWith("0X") ? hex.substring(2) : hex).toLowerCase();
+    if (digits.length() > len * 2) {
+      throw new IllegalArgumentException("Value too long: " + hex + ", max bytes: " + len);
+    }
+    StringBuilder sb = new StringBuilder(2 + len * 2).append("0x");
+    for (int i = digits.length(); i < len * 2; i++) {
+      sb.append('0');
+    }
+    return sb.append(digits).toString();
+  }
+
+  /**
+   * Write a hex value as exactly len bytes, left padded with zeros.
+   */
+  static void put(ByteBuffer buf, String hex, int len) {
+    String digits = normalise(hex, len).substring(2);
+    int nibble = 0;
+    int current = 0;
+    for (int i = 0; i < len * 2; i++) {
+      int value = Character.digit(digits.charAt(i), 16);
+      if (value < 0) {
+        throw new IllegalArgumentException("Invalid hex: " + hex);
+      }
+      current = (current << 4) | value;
+      if (++nibble == 2) {
+        buf.put((byte) current);
+        nibble = 0;
+        current = 0;
+      }
+    }
+  }
+
+  static String get(ByteBuffer buf, int len) {
+    char[] chars = new char[2 + len * 2];
+    chars[0] = '0';
+    chars[1] = 'x';
+    for (int i = 0; i < len; i++) {
+      int b = buf.get() & 0xff;
+      chars[2 + i * 2] = DIGITS[b >>> 4];
+      chars[3 + i * 2] = DIGITS[b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  private Hex() {
+  }
+}
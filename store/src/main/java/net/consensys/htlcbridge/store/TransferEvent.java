@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * A change to the lifecycle of a transfer, as appended to the store. Source init events
+ * also carry the details of the transfer.
+ */
+public class TransferEvent {
+  static final int COMMITMENT_LEN = 32;
+  static final int ADDRESS_LEN = 20;
+  static final int AMOUNT_LEN = 32;
+  // stage, commitment, block number, timestamp.
+  static final int HEADER_LEN = 1 + COMMITMENT_LEN + 8 + 8;
+  // sender, token contract, amount, time lock.
+  static final int DETAILS_LEN = ADDRESS_LEN + ADDRESS_LEN + AMOUNT_LEN + 8;
+
+  private final TransferStage stage;
+  private final String commitment;
+  private final long blockNumber;
+  private final long timestamp;
+  private final String sender;
+  private final String tokenContract;
+  private final BigInteger amount;
+  private final long timeLock;
+
+  private TransferEvent(TransferStage stage, String commitment, long blockNumber, long timestamp,
+                        String sender, String tokenContract, BigInteger amount, long timeLock) {
+    this.stage = stage;
+    this.commitment = Hex.normalise(commitment, COMMITMENT_LEN);
+    this.blockNumber = blockNumber;
+    this.timestamp = timestamp;
+    this.sender = sender == null ? null : Hex.normalise(sender, ADDRESS_LEN);
+    this.tokenContract = tokenContract == null ? null : Hex.normalise(tokenContract, ADDRESS_LEN);
+    this.amount = amount;
+    this.timeLock = timeLock;
+  }
+
+  public static TransferEvent sourceInit(String commitment, long blockNumber, long timestamp,
+                                         String sender, String tokenContract, BigInteger amount, long timeLock) {
+    return new TransferEvent(TransferStage.SOURCE_INIT, commitment, blockNumber, timestamp,
+        sender, tokenContract, amount, timeLock);
+  }
+
+  /**
+   * @param stage Any stage other than SOURCE_INIT.
+   * @param blockNumber Block number, or TransferRecord.UNKNOWN_BLOCK.
+   */
+  public static TransferEvent stage(TransferStage stage, String commitment, long blockNumber, long timestamp) {
+    if (stage == TransferStage.SOURCE_INIT) {
+      throw new IllegalArgumentException("Use sourceInit for source init events");
+    }
+    return new TransferEvent(stage, commitment, blockNumber, timestamp, null, null, null, 0);
+  }
+
+  public TransferStage getStage() {
+    return this.stage;
+  }
+
+  public String getCommitment() {
+    return this.commitment;
+  }
+
+  public long getBlockNumber() {
+    return this.blockNumber;
+  }
+
+  public long getTimestamp() {
+    return this.timestamp;
+  }
+
+  public String getSender() {
+    return this.sender;
+  }
+
+  public String getTokenContract() {
+    return this.tokenContract;
+  }
+
+  public BigInteger getAmount() {
+    return this.amount;
+  }
+
+  public long getTimeLock() {
+    return this.timeLock;
+  }
+
+  int encodedLength() {
+    return HEADER_LEN + (this.stage == TransferStage.SOURCE_INIT ? DETAILS_LEN : 0);
+  }
+
+  void encode(ByteBuffer buf) {
+    buf.put((byte) this.stage.ordinal());
+    Hex.put(buf, this.commitment, COMMITMENT_LEN);
+    buf.putLong(this.blockNumber);
+    buf.putLong(this.timestamp);
+    if (this.stage == TransferStage.SOURCE_INIT) {
+      Hex.put(buf, this.sender, ADDRESS_LEN);
+      Hex.put(buf, this.tokenContract, ADDRESS_LEN);
+      byte[] amountBytes = this.amount.toByteArray();
+      // Unsigned 256 bit big endian.
+      int len = Math.min(amountBytes.length, AMOUNT_LEN);
+      for (int i = 0; i < AMOUNT_LEN - len; i++) {
+        buf.put((byte) 0);
+      }
+      buf.put(amountBytes, amountBytes.length - len, len);
+      buf.putLong(this.timeLock);
+    }
+  }
+
+  static TransferEvent decode(ByteBuffer buf) {
+    TransferStage stage = TransferStage.fromOrdinal(buf.get());
+    String commitment = Hex.get(buf, COMMITMENT_LEN);
+    long blockNumber = buf.getLong();
+    long timestamp = buf.getLong();
+    if (stage != TransferStage.SOURCE_INIT) {
+      return new TransferEvent(stage, commitment, blockNumber, timestamp, null, null, null, 0);
+    }
+    String sender = Hex.get(buf, ADDRESS_LEN);
+    String tokenContract = Hex.get(buf, ADDRESS_LEN);
+    byte[] amountBytes = new byte[AMOUNT_LEN];
+    buf.get(amountBytes);
+    BigInteger amount = new BigInteger(1, amountBytes);
+    long timeLock = buf.getLong();
+    return new TransferEvent(stage, commitment, blockNumber, timestamp, sender, tokenContract, amount, timeLock);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Lifecycle of one transfer: the details from the source blockchain, and the block number
+ * and time at which each stage was seen. Addresses and commitments are lower case hex
+ * strings with a 0x prefix.
+ */
+public class TransferRecord {
+  // Block number or timestamp of a stage that has not been recorded.
+  public static final long NOT_SEEN = -1;
+  // Block number of a stage which is known to have happened, but not in which block: for
+  // instance a transfer another relayer had already posted.
+  public static final long UNKNOWN_BLOCK = -2;
+
+  private final String commitment;
+  private String sender;
+  private String tokenContract;
+  private BigInteger amount;
+  private long timeLock;
+  private final long[] blockNumbers = new long[TransferStage.values().length];
+  private final long[] timestamps = new long[TransferStage.values().length];
+  private TransferStage state;
+
+  TransferRecord(String commitment) {
+    this.commitment = commitment;
+    Arrays.fill(this.blockNumbers, NOT_SEEN);
+    Arrays.fill(this.timestamps, NOT_SEEN);
+  }
+
+  /**
+   * Apply an event. Events can arrive out of order, for instance when a relayer only
+   * ingests the destination blockchain from some block onwards, so the state only moves
+   * forward.
+   */
+  void apply(TransferEvent event) {
+    int stage = event.getStage().ordinal();
+    this.blockNumbers[stage] = event.getBlockNumber();
+    this.timestamps[stage] = event.getTimestamp();
+    if (event.getStage() == TransferStage.SOURCE_INIT) {
+      this.sender = event.getSender();
+      this.tokenContract = event.getTokenContract();
+      this.amount = event.getAmount();
+      this.timeLock = event.getTimeLock();
+    }
+    if (this.state == null || (!this.state.isFinal() && event.getStage().ordinal() > this.state.ordinal())) {
+      this.state = event.getStage();
+    }
+  }
+
+  TransferRecord copy() {
+    TransferRecord copy = new TransferRecord(this.commitment);
+    copy.sender = this.sender;
+    copy.tokenContract = this.tokenContract;
+    copy.amount = this.amount;
+    copy.timeLock = this.timeLock;
+    System.arraycopy(this.blockNumbers, 0, copy.blockNumbers, 0, this.blockNumbers.length);
+    System.arraycopy(this.timestamps, 0, copy.timestamps, 0, this.timestamps.length);
+    copy.state = this.state;
+    return copy;
+  }
+
+  public String getCommitment() {
+    return this.commitment;
+  }
+
+  /**
+   * @return The sender, or null if the source transfer has not been seen.
+   */
+  public String getSender() {
+    return this.sender;
+  }
+
+  public String getTokenContract() {
+    return this.tokenContract;
+  }
+
+  public BigInteger getAmount() {
+    return this.amount;
+  }
+
+  public long getTimeLock() {
+    return this.timeLock;
+  }
+
+  public TransferStage getState() {
+    return this.state;
+  }
+
+  public boolean hasReached(TransferStage stage) {
+    return this.blockNumbers[stage.ordinal()] != NOT_SEEN;
+  }
+
+  public long getBlockNumber(TransferStage stage) {
+    return this.blockNumbers[stage.ordinal()];
+  }
+
+  /**
+   * @return When the relayer recorded the stage, in milliseconds since the epoch, or NOT_SEEN.
+   */
+  public long getTimestamp(TransferStage stage) {
+    return this.timestamps[stage.ordinal()];
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+/**
+ * Stages in the lifecycle of a transfer, in the order they happen. The state of a transfer
+ * is the latest stage recorded for it.
+ */
+public enum TransferStage {
+  // The transfer was started on the source blockchain.
+  SOURCE_INIT,
+  // The commitment was posted to the destination blockchain.
+  DEST_POSTED,
+  // The transfer was completed on the destination blockchain, revealing the preimage.
+  DEST_COMPLETED,
+  // The transfer was finalised on the source blockchain.
+  SOURCE_FINALISED,
+  // The transfer was refunded on the source blockchain.
+  SOURCE_REFUNDED;
+
+  private static final TransferStage[] VALUES = values();
+
+  public static TransferStage fromOrdinal(int ordinal) {
+    if (ordinal < 0 || ordinal >= VALUES.length) {
+      throw new IllegalArgumentException("Unknown transfer stage: " + ordinal);
+    }
+    return VALUES[ordinal];
+  }
+
+  public boolean isFinal() {
+    return this == SOURCE_FINALISED || this == SOURCE_REFUNDED;
+  }
+}
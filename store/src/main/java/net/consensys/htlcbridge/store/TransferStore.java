@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded store of transfer lifecycles. Events are appended to a log file, and never
+ * rewritten. The records, and the indexes by sender, token contract and state, are held
+ * in memory and rebuilt from the log when the store is opened.<p>
+ * Each entry in the log is: body length (int), body (a TransferEvent), CRC32 of the body (int).
+ * An entry which was only partly written when the process stopped is discarded on open.<p>
+ * Events are written to the operating system as they are appended, so they survive the
+ * process exiting. Call sync to also force them to disk.
+ */
+public class TransferStore implements AutoCloseable {
+  private static final Logger LOG = LogManager.getLogger(TransferStore.class);
+
+  public static final String LOG_FILE = "transfers.log";
+  private static final int ENTRY_OVERHEAD = 4 + 4;
+  private static final int MAX_BODY_LEN = TransferEvent.HEADER_LEN + TransferEvent.DETAILS_LEN;
+
+  private final Path file;
+  private final FileChannel channel;
+  private final ByteBuffer writeBuffer = ByteBuffer.allocate(ENTRY_OVERHEAD + MAX_BODY_LEN);
+  private final CRC32 crc = new CRC32();
+
+  private final Map<String, TransferRecord> byCommitment = new HashMap<>();
+  private final Map<String, Set<String>> bySender = new HashMap<>();
+  private final Map<String, Set<String>> byToken = new HashMap<>();
+  private final Map<TransferStage, Set<String>> byState = new EnumMap<>(TransferStage.class);
+  private long numEvents;
+
+  public TransferStore(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.file = directory.resolve(LOG_FILE);
+    for (TransferStage stage: TransferStage.values()) {
+      this.byState.put(stage, new LinkedHashSet<>());
+    }
+    this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long start = System.nanoTime();
+    long validLength = load();
+    if (validLength < this.channel.size()) {
+      LOG.warn("Transfer store {}: Discarding {} bytes of partly written entries", this.file, this.channel.size() - validLength);
+      this.channel.truncate(validLength);
+    }
+    this.channel.position(validLength);
+    LOG.info("Transfer store {}: Loaded {} events for {} transfers in {} ms",
+        this.file, this.numEvents, this.byCommitment.size(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Replay the log into the in-memory records and indexes.
+   *
+   * @return Length of the log up to the end of the last complete entry.
+   */
+  private long load() throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+    long position = 0;
+    long validLength = 0;
+    buf.limit(0);
+    while (true) {
+      if (buf.remaining() < ENTRY_OVERHEAD + MAX_BODY_LEN) {
+        buf.compact();
+        int read = this.channel.read(buf, position);
+        buf.flip();
+        if (read > 0) {
+          position += read;
+        }
+      }
+      if (buf.remaining() < 4) {
+        return validLength;
+      }
+      int bodyLen = buf.getInt();
+      if (bodyLen <= 0 || bodyLen > MAX_BODY_LEN || buf.remaining() < bodyLen + 4) {
+        return validLength;
+      }
+      int bodyStart = buf.position();
+      this.crc.reset();
+      this.crc.update(buf.array(), buf.arrayOffset() + bodyStart, bodyLen);
+      int expectedCrc = buf.getInt(bodyStart + bodyLen);
+      if ((int) this.crc.getValue() != expectedCrc) {
+        return validLength;
+      }
+      ByteBuffer body = buf.duplicate();
+      body.limit(bodyStart + bodyLen);
+      index(TransferEvent.decode(body));
+      buf.position(bodyStart + bodyLen + 4);
+      validLength += ENTRY_OVERHEAD + bodyLen;
+    }
+  }
+
+  /**
+   * Append an event to the log, and apply it to the records and indexes.
+   */
+  public synchronized void append(TransferEvent event) throws IOException {
+    int bodyLen = event.encodedLength();
+    this.writeBuffer.clear();
+    this.writeBuffer.putInt(bodyLen);
+    event.encode(this.writeBuffer);
+    this.crc.reset();
+    this.crc.update(this.writeBuffer.array(), 4, bodyLen);
+    this.writeBuffer.putInt((int) this.crc.getValue());
+    this.writeBuffer.flip();
+    while (this.writeBuffer.hasRemaining()) {
+      this.channel.write(this.writeBuffer);
+    }
+    index(event);
+  }
+
+  private void index(TransferEvent event) {
+    this.numEvents++;
+    String commitment = event.getCommitment();
+    TransferRecord record = this.byCommitment.get(commitment);
+    if (record == null) {
+      record = new TransferRecord(commitment);
+      this.byCommitment.put(commitment, record);
+    }
+    TransferStage previousState = record.getState();
+    record.apply(event);
+    if (previousState != record.getState()) {
+      if (previousState != null) {
+        this.byState.get(previousState).remove(commitment);
+      }
+      this.byState.get(record.getState()).add(commitment);
+    }
+    if (event.getStage() == TransferStage.SOURCE_INIT) {
+      this.bySender.computeIfAbsent(event.getSender(), k -> new LinkedHashSet<>()).add(commitment);
+      this.byToken.computeIfAbsent(event.getTokenContract(), k -> new LinkedHashSet<>()).add(commitment);
+    }
+  }
+
+  /**
+   * @return A copy of the transfer's record, or null if nothing is known about the transfer.
+   */
+  public synchronized TransferRecord get(String commitment) {
+    TransferRecord record = this.byCommitment.get(Hex.normalise(commitment, TransferEvent.COMMITMENT_LEN));
+    return record == null ? null : record.copy();
+  }
+
+  /**
+   * @return The state of the transfer, or null if nothing is known about the transfer.
+   */
+  public synchronized TransferStage getState(String commitment) {
+    TransferRecord record = this.byCommitment.get(Hex.normalise(commitment, TransferEvent.COMMITMENT_LEN));
+    return record == null ? null : record.getState();
+  }
+
+  public synchronized List<TransferRecord> findBySender(String sender, int limit) {
+    return copies(this.bySender.get(Hex.normalise(sender, TransferEvent.ADDRESS_LEN)), limit);
+  }
+
+  public synchronized List<TransferRecord> findByToken(String tokenContract, int limit) {
+    return copies(this.byToken.get(Hex.normalise(tokenContract, TransferEvent.ADDRESS_LEN)), limit);
+  }
+
+  public synchronized List<TransferRecord> findByState(TransferStage state, int limit) {
+    return copies(this.byState.get(state), limit);
+  }
+
+  /**
+   * @return The number of transfers in each state.
+   */
+  public synchronized Map<TransferStage, Integer> countByState() {
+    Map<TransferStage, Integer> counts = new LinkedHashMap<>();
+    for (Map.Entry<TransferStage, Set<String>> entry: this.byState.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().size());
+    }
+    return counts;
+  }
+
+  private List<TransferRecord> copies(Set<String> commitments, int limit) {
+    if (commitments == null) {
+      return Collections.emptyList();
+    }
+    List<TransferRecord> records = new ArrayList<>(Math.min(limit, commitments.size()));
+    for (String commitment: commitments) {
+      if (records.size() >= limit) {
+        break;
+      }
+      records.add(this.byCommitment.get(commitment).copy());
+    }
+    return records;
+  }
+
+  public synchronized int size() {
+    return this.byCommitment.size();
+  }
+
+  public synchronized long getNumEvents() {
+    return this.numEvents;
+  }
+
+  /**
+   * Force appended events to disk.
+   */
+  public synchronized void sync() throws IOException {
+    this.channel.force(false);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    this.channel.force(false);
+    this.channel.close();
+  }
+}
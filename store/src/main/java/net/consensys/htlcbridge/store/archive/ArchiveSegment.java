@@ -0,0 +1,237 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped file of an event archive, and its block number index.<p>
+ * Each entry is: body length (int), body, CRC32 of the body (int). The body is: kind (byte),
+ * block number (long), log index (int), payload. The file is created at its full size, so
+ * a zero body length marks the end of the entries. The length is written after the body,
+ * so an entry only becomes visible once it is complete.<p>
+ * The index file holds a (block number, offset) pair for the first entry of each block.
+ */
+class ArchiveSegment {
+  static final String LOG_PREFIX = "segment-";
+  static final String LOG_SUFFIX = ".log";
+  static final String IDX_SUFFIX = ".idx";
+  static final int ENTRY_OVERHEAD = 4 + 1 + 8 + 4 + 4;
+  private static final int IDX_ENTRY_LEN = 8 + 4;
+
+  private final long id;
+  private final Path logFile;
+  private final Path idxFile;
+  private final FileChannel channel;
+  private final MappedByteBuffer map;
+  private final FileChannel idxChannel;
+  private final ByteBuffer idxBuffer = ByteBuffer.allocate(IDX_ENTRY_LEN);
+  private final CRC32 crc = new CRC32();
+
+  // Offset of the end of the last complete entry. Entries before it are immutable.
+  private volatile int writePosition;
+  private long[] indexBlocks = new long[256];
+  private int[] indexOffsets = new int[256];
+  private int indexSize;
+
+  ArchiveSegment(Path directory, long id, int capacity) throws IOException {
+    this.id = id;
+    this.logFile = directory.resolve(String.format("%s%020d%s", LOG_PREFIX, id, LOG_SUFFIX));
+    this.idxFile = directory.resolve(String.format("%s%020d%s", LOG_PREFIX, id, IDX_SUFFIX));
+    this.channel = FileChannel.open(this.logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    int size = (int) Math.max(capacity, this.channel.size());
+    this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    boolean indexValid = Files.exists(this.idxFile) && loadIndex();
+    if (!indexValid) {
+      this.indexSize = 0;
+    }
+    int numPersisted = this.indexSize;
+    this.writePosition = scan();
+    this.idxChannel = FileChannel.open(this.idxFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this.idxChannel.truncate((long) numPersisted * IDX_ENTRY_LEN);
+    this.idxChannel.position(this.idxChannel.size());
+    // Persist index entries found by scan.
+    for (int i = numPersisted; i < this.indexSize; i++) {
+      writeIndexEntry(this.indexBlocks[i], this.indexOffsets[i]);
+    }
+  }
+
+  private boolean loadIndex() throws IOException {
+    byte[] bytes = Files.readAllBytes(this.idxFile);
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    while (buf.remaining() >= IDX_ENTRY_LEN) {
+      addIndexEntry(buf.getLong(), buf.getInt());
+    }
+    return buf.remaining() == 0;
+  }
+
+  /**
+   * Find the end of the entries, starting from the last indexed block, and add any blocks
+   * after it to the index.
+   */
+  private int scan() {
+    int position = 0;
+    long lastBlock = Long.MIN_VALUE;
+    if (this.indexSize > 0) {
+      position = this.indexOffsets[this.indexSize - 1];
+      lastBlock = this.indexBlocks[this.indexSize - 1];
+    }
+    int capacity = this.map.capacity();
+    while (position + 4 <= capacity) {
+      int bodyLen = this.map.getInt(position);
+      if (bodyLen <= 0 || position + 8 + bodyLen > capacity) {
+        break;
+      }
+      this.crc.reset();
+      ByteBuffer body = this.map.duplicate();
+      body.position(position + 4).limit(position + 4 + bodyLen);
+      this.crc.update(body);
+      if ((int) this.crc.getValue() != this.map.getInt(position + 4 + bodyLen)) {
+        break;
+      }
+      long block = this.map.getLong(position + 5);
+      if (block != lastBlock) {
+        addIndexEntry(block, position);
+        lastBlock = block;
+      }
+      position += 8 + bodyLen;
+    }
+    return position;
+  }
+
+  private void addIndexEntry(long block, int offset) {
+    if (this.indexSize == this.indexBlocks.length) {
+      this.indexBlocks = Arrays.copyOf(this.indexBlocks, this.indexSize * 2);
+      this.indexOffsets = Arrays.copyOf(this.indexOffsets, this.indexSize * 2);
+    }
+    this.indexBlocks[this.indexSize] = block;
+    this.indexOffsets[this.indexSize] = offset;
+    this.indexSize++;
+  }
+
+  private void writeIndexEntry(long block, int offset) throws IOException {
+    this.idxBuffer.clear();
+    this.idxBuffer.putLong(block).putInt(offset).flip();
+    while (this.idxBuffer.hasRemaining()) {
+      this.idxChannel.write(this.idxBuffer);
+    }
+  }
+
+  /**
+   * @return false if there isn't room for the entry in this segment.
+   */
+  synchronized boolean append(byte kind, long blockNumber, int logIndex, byte[] payload, int offset, int length) throws IOException {
+    int position = this.writePosition;
+    int bodyLen = 1 + 8 + 4 + length;
+    if (position + 8 + bodyLen > this.map.capacity()) {
+      return false;
+    }
+    if (this.indexSize > 0 && blockNumber < this.indexBlocks[this.indexSize - 1]) {
+      throw new IllegalArgumentException("Block " + blockNumber + " is before the last block archived: " +
+          this.indexBlocks[this.indexSize - 1]);
+    }
+    ByteBuffer body = this.map.duplicate();
+    body.position(position + 4);
+    body.put(kind).putLong(blockNumber).putInt(logIndex).put(payload, offset, length);
+    this.crc.reset();
+    body.flip().position(position + 4);
+    this.crc.update(body);
+    this.map.putInt(position + 4 + bodyLen, (int) this.crc.getValue());
+    // Written last, so that the entry only becomes visible once complete.
+    this.map.putInt(position, bodyLen);
+    if (this.indexSize == 0 || blockNumber != this.indexBlocks[this.indexSize - 1]) {
+      addIndexEntry(blockNumber, position);
+      writeIndexEntry(blockNumber, position);
+    }
+    this.writePosition = position + 8 + bodyLen;
+    return true;
+  }
+
+  /**
+   * @return Offset of the first entry for a block at or after fromBlock, or -1 if there is none.
+   */
+  synchronized int offsetOf(long fromBlock) {
+    int index = Arrays.binarySearch(this.indexBlocks, 0, this.indexSize, fromBlock);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < this.indexSize ? this.indexOffsets[index] : -1;
+  }
+
+  synchronized long firstBlock() {
+    return this.indexSize == 0 ? Long.MAX_VALUE : this.indexBlocks[0];
+  }
+
+  synchronized long lastBlock() {
+    return this.indexSize == 0 ? Long.MIN_VALUE : this.indexBlocks[this.indexSize - 1];
+  }
+
+  /**
+   * Pass the entries for blocks fromBlock to toBlock to the handler.
+   *
+   * @return Number of entries passed to the handler.
+   */
+  long replay(long fromBlock, long toBlock, ArchivedEventHandler handler) throws Exception {
+    int position = offsetOf(fromBlock);
+    if (position < 0) {
+      return 0;
+    }
+    int end = this.writePosition;
+    ByteBuffer view = this.map.asReadOnlyBuffer();
+    long count = 0;
+    while (position < end) {
+      int bodyLen = view.getInt(position);
+      byte kind = view.get(position + 4);
+      long block = view.getLong(position + 5);
+      if (block > toBlock) {
+        break;
+      }
+      int logIndex = view.getInt(position + 13);
+      view.limit(position + 4 + bodyLen).position(position + 17);
+      handler.handle(kind, block, logIndex, view);
+      view.clear();
+      count++;
+      position += 8 + bodyLen;
+    }
+    return count;
+  }
+
+  long getId() {
+    return this.id;
+  }
+
+  int getWritePosition() {
+    return this.writePosition;
+  }
+
+  synchronized void sync() throws IOException {
+    this.map.force();
+    this.idxChannel.force(false);
+  }
+
+  synchronized void close() throws IOException {
+    sync();
+    this.idxChannel.close();
+    this.channel.close();
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.archive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives events replayed from an event archive.
+ */
+public interface ArchivedEventHandler {
+  /**
+   * @param kind Kind of event, as passed to EventArchive.append.
+   * @param blockNumber Block the event was emitted in.
+   * @param logIndex Index of the log in the block.
+   * @param payload View of the event's data in the memory-mapped segment, between its
+   *   position and limit. The buffer is reused for the next event, so must not be kept.
+   */
+  void handle(byte kind, long blockNumber, int logIndex, ByteBuffer payload) throws Exception;
+}
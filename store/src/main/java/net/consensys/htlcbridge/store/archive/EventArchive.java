@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.archive;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append only archive of raw blockchain events, held in memory-mapped segment files.<p>
+ * Events must be appended in block order. Each segment has a block number index, so that
+ * a range of blocks can be replayed without reading the whole archive. Replay reads
+ * directly from the mapped files, without copying the event data.
+ */
+public class EventArchive implements AutoCloseable {
+  private static final Logger LOG = LogManager.getLogger(EventArchive.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+  private ArchiveSegment active;
+  private long numAppended;
+
+  public EventArchive(Path directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public EventArchive(Path directory, int segmentSize) throws IOException {
+    if (segmentSize < ArchiveSegment.ENTRY_OVERHEAD) {
+      throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory);
+
+    List<Long> ids = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+        ArchiveSegment.LOG_PREFIX + "*" + ArchiveSegment.LOG_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        ids.add(Long.parseLong(name.substring(ArchiveSegment.LOG_PREFIX.length(),
+            name.length() - ArchiveSegment.LOG_SUFFIX.length())));
+      }
+    }
+    ids.sort(null);
+    for (long id : ids) {
+      this.segments.add(new ArchiveSegment(directory, id, segmentSize));
+    }
+    if (this.segments.isEmpty()) {
+      this.segments.add(new ArchiveSegment(directory, 0, segmentSize));
+    }
+    this.active = this.segments.get(this.segments.size() - 1);
+    LOG.info("Opened event archive {}: {} segments, last block: {}", directory, this.segments.size(),
+        lastBlock() == Long.MIN_VALUE ? "none" : lastBlock());
+  }
+
+  /**
+   * Append an event to the archive.
+   *
+   * @param kind Application defined kind of event, passed back on replay.
+   * @param blockNumber Block the event was emitted in. Must not be before the last block appended.
+   * @param logIndex Index of the log in the block.
+   * @param payload Event data.
+   */
+  public synchronized void append(byte kind, long blockNumber, int logIndex, byte[] payload) throws IOException {
+    if (payload.length + ArchiveSegment.ENTRY_OVERHEAD > this.segmentSize) {
+      throw new IllegalArgumentException("Event of " + payload.length + " bytes is larger than segment size");
+    }
+    if (blockNumber < this.active.lastBlock()) {
+      throw new IllegalArgumentException("Block " + blockNumber + " is before the last block archived: " +
+          this.active.lastBlock());
+    }
+    if (!this.active.append(kind, blockNumber, logIndex, payload, 0, payload.length)) {
+      this.active.sync();
+      ArchiveSegment next = new ArchiveSegment(this.directory, this.active.getId() + 1, this.segmentSize);
+      this.segments.add(next);
+      this.active = next;
+      this.active.append(kind, blockNumber, logIndex, payload, 0, payload.length);
+    }
+    this.numAppended++;
+  }
+
+  /**
+   * Pass the archived events for blocks fromBlock to toBlock inclusive to the handler,
+   * in the order they were appended.
+   *
+   * @return Number of events replayed.
+   */
+  public long replay(long fromBlock, long toBlock, ArchivedEventHandler handler) throws Exception {
+    long count = 0;
+    for (ArchiveSegment segment : this.segments) {
+      if (segment.lastBlock() < fromBlock) {
+        continue;
+      }
+      if (segment.firstBlock() > toBlock) {
+        break;
+      }
+      count += segment.replay(fromBlock, toBlock, handler);
+    }
+    return count;
+  }
+
+  /**
+   * @return The first block with archived events, or Long.MAX_VALUE if the archive is empty.
+   */
+  public long firstBlock() {
+    return this.segments.get(0).firstBlock();
+  }
+
+  /**
+   * @return The last block with archived events, or Long.MIN_VALUE if the archive is empty.
+   */
+  public synchronized long lastBlock() {
+    return this.active.lastBlock();
+  }
+
+  public int getNumSegments() {
+    return this.segments.size();
+  }
+
+  /**
+   * @return Number of events appended since the archive was opened.
+   */
+  public synchronized long getNumAppended() {
+    return this.numAppended;
+  }
+
+  public synchronized void sync() throws IOException {
+    this.active.sync();
+  }
+
+  public synchronized void close() throws IOException {
+    for (ArchiveSegment segment : this.segments) {
+      segment.close();
+    }
+  }
+}
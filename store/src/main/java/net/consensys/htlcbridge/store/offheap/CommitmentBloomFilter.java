@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.offheap;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * Off-heap Bloom filter of 32 byte commitments. Commitments are Keccak hashes, so the bit
+ * positions are derived directly from the commitment's bytes, mixed with a random seed.
+ */
+public class CommitmentBloomFilter {
+  private static final long MAX_BITS = 1L << 33;
+
+  private final ByteBuffer bits;
+  private final long bitMask;
+  private final int numHashes;
+  private final long seed = new SecureRandom().nextLong();
+
+  /**
+   * @param expectedEntries Number of commitments the filter is sized for.
+   * @param bitsPerEntry Bits per commitment. 10 bits gives a false positive rate of about 1%.
+   */
+  public CommitmentBloomFilter(long expectedEntries, int bitsPerEntry) {
+    if (expectedEntries < 1 || bitsPerEntry < 1) {
+      throw new IllegalArgumentException("Invalid Bloom filter size: entries: " + expectedEntries +
+          ", bits per entry: " + bitsPerEntry);
+    }
+    long numBits = Long.highestOneBit(Math.max(64, expectedEntries * bitsPerEntry - 1)) << 1;
+    if (numBits > MAX_BITS) {
+      throw new IllegalArgumentException("Bloom filter too large: " + numBits + " bits");
+    }
+    this.bits = ByteBuffer.allocateDirect((int) (numBits / 8));
+    this.bitMask = numBits - 1;
+    this.numHashes = Math.max(1, (int) Math.round(bitsPerEntry * Math.log(2)));
+  }
+
+  public void add(byte[] commitment, int offset) {
+    long h1 = CommitmentMap.mix(CommitmentMap.getLong(commitment, offset + 8) ^ this.seed);
+    long h2 = CommitmentMap.mix(CommitmentMap.getLong(commitment, offset + 16) ^ this.seed) | 1;
+    for (int i = 0; i < this.numHashes; i++) {
+      long bit = (h1 + i * h2) & this.bitMask;
+      int word = (int) (bit >>> 6) * 8;
+      this.bits.putLong(word, this.bits.getLong(word) | (1L << bit));
+    }
+  }
+
+  /**
+   * @return false if the commitment has definitely not been added.
+   */
+  public boolean mightContain(byte[] commitment, int offset) {
+    long h1 = CommitmentMap.mix(CommitmentMap.getLong(commitment, offset + 8) ^ this.seed);
+    long h2 = CommitmentMap.mix(CommitmentMap.getLong(commitment, offset + 16) ^ this.seed) | 1;
+    for (int i = 0; i < this.numHashes; i++) {
+      long bit = (h1 + i * h2) & this.bitMask;
+      int word = (int) (bit >>> 6) * 8;
+      if ((this.bits.getLong(word) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void clear() {
+    for (int i = 0; i < this.bits.capacity(); i += 8) {
+      this.bits.putLong(i, 0);
+    }
+  }
+
+  public long getNumBits() {
+    return this.bitMask + 1;
+  }
+
+  public int getNumHashes() {
+    return this.numHashes;
+  }
+}
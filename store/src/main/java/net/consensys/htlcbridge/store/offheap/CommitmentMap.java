@@ -0,0 +1,346 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.offheap;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * Off-heap open addressing hash map from 32 byte commitments to int values, with an expiry
+ * time per entry, usually the transfer's timeLock.<p>
+ * Entries are held in direct buffers, in slots of 40 bytes: the commitment, the expiry in
+ * seconds, and the value. Collisions are resolved by linear probing, and removal shifts
+ * later entries back rather than leaving tombstones. With the load factor between 0.375
+ * and 0.75, an entry takes 53 to 107 bytes, and none of it is on the Java heap. The buffers
+ * count towards -XX:MaxDirectMemorySize.<p>
+ * Commitments are Keccak hashes, so the first eight bytes, mixed with a random seed, are
+ * used as the hash code.<p>
+ * An optional Bloom filter in front of the table answers most lookups of unknown
+ * commitments without probing the table. Expired entries remain visible until expire
+ * is called, which also rebuilds the Bloom filter.
+ */
+public class CommitmentMap {
+  public static final int COMMITMENT_LEN = 32;
+  // Expiry of entries that never expire.
+  public static final long NO_EXPIRY = 0xFFFFFFFFL;
+
+  static final int SLOT_LEN = 40;
+  private static final int EXPIRY_OFS = 32;
+  private static final int VALUE_OFS = 36;
+  // An expiry of zero marks an empty slot.
+  private static final int EMPTY = 0;
+  private static final int MAX_CHUNK_SHIFT = 16;
+  private static final int MIN_CAPACITY = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final double MAX_LOAD = 0.75;
+
+  private final long seed = new SecureRandom().nextLong();
+  private final int bloomBitsPerEntry;
+  private CommitmentBloomFilter bloom;
+
+  private ByteBuffer[] chunks;
+  private int chunkShift;
+  private int chunkMask;
+  private int capacity;
+  private int size;
+
+  public CommitmentMap(int expectedEntries) {
+    this(expectedEntries, 0);
+  }
+
+  /**
+   * @param expectedEntries Number of entries to size the table for. It grows if needed.
+   * @param bloomBitsPerEntry Bits per entry of the Bloom filter, or zero for no Bloom filter.
+   */
+  public CommitmentMap(int expectedEntries, int bloomBitsPerEntry) {
+    if (expectedEntries < 0 || bloomBitsPerEntry < 0) {
+      throw new IllegalArgumentException("Invalid size: entries: " + expectedEntries +
+          ", Bloom filter bits per entry: " + bloomBitsPerEntry);
+    }
+    this.bloomBitsPerEntry = bloomBitsPerEntry;
+    long needed = (long) Math.ceil(expectedEntries / MAX_LOAD);
+    allocate((int) Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, needed - 1)) << 1));
+  }
+
+  private void allocate(int newCapacity) {
+    this.capacity = newCapacity;
+    this.chunkShift = Math.min(MAX_CHUNK_SHIFT, Integer.numberOfTrailingZeros(newCapacity));
+    this.chunkMask = (1 << this.chunkShift) - 1;
+    this.chunks = new ByteBuffer[newCapacity >>> this.chunkShift];
+    for (int i = 0; i < this.chunks.length; i++) {
+      this.chunks[i] = ByteBuffer.allocateDirect((1 << this.chunkShift) * SLOT_LEN);
+    }
+    if (this.bloomBitsPerEntry > 0) {
+      this.bloom = new CommitmentBloomFilter((long) (newCapacity * MAX_LOAD), this.bloomBitsPerEntry);
+    }
+    this.size = 0;
+  }
+
+  /**
+   * Add or replace an entry.
+   *
+   * @param commitment Array holding the commitment.
+   * @param offset Offset of the commitment in the array.
+   * @param value Value to associate with the commitment.
+   * @param expiry Time in seconds after which expire removes the entry, or NO_EXPIRY.
+   * @return true if the commitment wasn't in the map.
+   */
+  public synchronized boolean put(byte[] commitment, int offset, int value, long expiry) {
+    if (expiry <= 0 || expiry > NO_EXPIRY) {
+      throw new IllegalArgumentException("Expiry out of range: " + expiry);
+    }
+    checkLength(commitment, offset);
+    int index = find(commitment, offset);
+    if (index < 0) {
+      if (this.size + 1 > this.capacity * MAX_LOAD) {
+        grow();
+        index = find(commitment, offset);
+      }
+      index = -index - 1;
+      ByteBuffer chunk = this.chunks[index >>> this.chunkShift];
+      int pos = (index & this.chunkMask) * SLOT_LEN;
+      for (int i = 0; i < COMMITMENT_LEN; i += 8) {
+        chunk.putLong(pos + i, getLong(commitment, offset + i));
+      }
+      chunk.putInt(pos + EXPIRY_OFS, (int) expiry);
+      chunk.putInt(pos + VALUE_OFS, value);
+      if (this.bloom != null) {
+        this.bloom.add(commitment, offset);
+      }
+      this.size++;
+      return true;
+    }
+    ByteBuffer chunk = this.chunks[index >>> this.chunkShift];
+    int pos = (index & this.chunkMask) * SLOT_LEN;
+    chunk.putInt(pos + EXPIRY_OFS, (int) expiry);
+    chunk.putInt(pos + VALUE_OFS, value);
+    return false;
+  }
+
+  public boolean put(byte[] commitment, int value, long expiry) {
+    return put(commitment, 0, value, expiry);
+  }
+
+  /**
+   * @return The value associated with the commitment, or defaultValue if there is none.
+   */
+  public synchronized int get(byte[] commitment, int offset, int defaultValue) {
+    checkLength(commitment, offset);
+    if (this.bloom != null && !this.bloom.mightContain(commitment, offset)) {
+      return defaultValue;
+    }
+    int index = find(commitment, offset);
+    if (index < 0) {
+      return defaultValue;
+    }
+    return this.chunks[index >>> this.chunkShift].getInt((index & this.chunkMask) * SLOT_LEN + VALUE_OFS);
+  }
+
+  public int get(byte[] commitment, int defaultValue) {
+    return get(commitment, 0, defaultValue);
+  }
+
+  public synchronized boolean containsKey(byte[] commitment, int offset) {
+    checkLength(commitment, offset);
+    if (this.bloom != null && !this.bloom.mightContain(commitment, offset)) {
+      return false;
+    }
+    return find(commitment, offset) >= 0;
+  }
+
+  public boolean containsKey(byte[] commitment) {
+    return containsKey(commitment, 0);
+  }
+
+  /**
+   * @return true if the commitment was in the map.
+   */
+  public synchronized boolean remove(byte[] commitment, int offset) {
+    checkLength(commitment, offset);
+    int index = find(commitment, offset);
+    if (index < 0) {
+      return false;
+    }
+    delete(index);
+    return true;
+  }
+
+  public boolean remove(byte[] commitment) {
+    return remove(commitment, 0);
+  }
+
+  /**
+   * Remove the entries whose expiry is at or before now, and rebuild the Bloom filter.
+   *
+   * @param now Time in seconds, in the same units as the timeLocks used as expiry.
+   * @return Number of entries removed.
+   */
+  public synchronized int expire(long now) {
+    if (this.bloom != null) {
+      this.bloom.clear();
+    }
+    byte[] key = new byte[COMMITMENT_LEN];
+    int removed = 0;
+    int index = 0;
+    while (index < this.capacity) {
+      ByteBuffer chunk = this.chunks[index >>> this.chunkShift];
+      int pos = (index & this.chunkMask) * SLOT_LEN;
+      int expiry = chunk.getInt(pos + EXPIRY_OFS);
+      if (expiry == EMPTY) {
+        index++;
+      }
+      else if (Integer.toUnsignedLong(expiry) <= now) {
+        // Look at the same slot again, as a later entry may have been shifted into it.
+        delete(index);
+        removed++;
+      }
+      else {
+        if (this.bloom != null) {
+          readKey(chunk, pos, key);
+          this.bloom.add(key, 0);
+        }
+        index++;
+      }
+    }
+    return removed;
+  }
+
+  public synchronized int size() {
+    return this.size;
+  }
+
+  public synchronized int capacity() {
+    return this.capacity;
+  }
+
+  /**
+   * @return Bytes of direct memory used by the table and the Bloom filter.
+   */
+  public synchronized long offHeapBytes() {
+    long bytes = (long) this.capacity * SLOT_LEN;
+    if (this.bloom != null) {
+      bytes += this.bloom.getNumBits() / 8;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return Index of the commitment's slot, or -(index of the empty slot it would go in) - 1.
+   */
+  private int find(byte[] commitment, int offset) {
+    long k0 = getLong(commitment, offset);
+    long k1 = getLong(commitment, offset + 8);
+    long k2 = getLong(commitment, offset + 16);
+    long k3 = getLong(commitment, offset + 24);
+    int mask = this.capacity - 1;
+    int index = home(k0);
+    while (true) {
+      ByteBuffer chunk = this.chunks[index >>> this.chunkShift];
+      int pos = (index & this.chunkMask) * SLOT_LEN;
+      if (chunk.getInt(pos + EXPIRY_OFS) == EMPTY) {
+        return -index - 1;
+      }
+      if (chunk.getLong(pos) == k0 && chunk.getLong(pos + 8) == k1 &&
+          chunk.getLong(pos + 16) == k2 && chunk.getLong(pos + 24) == k3) {
+        return index;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  private int home(long k0) {
+    return (int) mix(k0 ^ this.seed) & (this.capacity - 1);
+  }
+
+  /**
+   * Empty a slot, shifting back later entries of the same probe sequence into the hole.
+   */
+  private void delete(int index) {
+    int mask = this.capacity - 1;
+    int hole = index;
+    int next = (hole + 1) & mask;
+    while (true) {
+      ByteBuffer nextChunk = this.chunks[next >>> this.chunkShift];
+      int nextPos = (next & this.chunkMask) * SLOT_LEN;
+      if (nextChunk.getInt(nextPos + EXPIRY_OFS) == EMPTY) {
+        break;
+      }
+      int home = home(nextChunk.getLong(nextPos));
+      // The entry can move to the hole if the hole is between its home slot and its slot.
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        ByteBuffer holeChunk = this.chunks[hole >>> this.chunkShift];
+        int holePos = (hole & this.chunkMask) * SLOT_LEN;
+        for (int i = 0; i < SLOT_LEN; i += 8) {
+          holeChunk.putLong(holePos + i, nextChunk.getLong(nextPos + i));
+        }
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    ByteBuffer holeChunk = this.chunks[hole >>> this.chunkShift];
+    holeChunk.putInt((hole & this.chunkMask) * SLOT_LEN + EXPIRY_OFS, EMPTY);
+    this.size--;
+  }
+
+  private void grow() {
+    if (this.capacity >= MAX_CAPACITY) {
+      throw new IllegalStateException("Commitment map full: " + this.size + " entries");
+    }
+    ByteBuffer[] oldChunks = this.chunks;
+    int oldChunkSlots = 1 << this.chunkShift;
+    allocate(this.capacity * 2);
+    byte[] key = new byte[COMMITMENT_LEN];
+    for (ByteBuffer chunk: oldChunks) {
+      for (int slot = 0; slot < oldChunkSlots; slot++) {
+        int pos = slot * SLOT_LEN;
+        int expiry = chunk.getInt(pos + EXPIRY_OFS);
+        if (expiry != EMPTY) {
+          readKey(chunk, pos, key);
+          put(key, 0, chunk.getInt(pos + VALUE_OFS), Integer.toUnsignedLong(expiry));
+        }
+      }
+    }
+  }
+
+  private static void readKey(ByteBuffer chunk, int pos, byte[] key) {
+    for (int i = 0; i < COMMITMENT_LEN; i++) {
+      key[i] = chunk.get(pos + i);
+    }
+  }
+
+  private static void checkLength(byte[] commitment, int offset) {
+    if (offset < 0 || offset + COMMITMENT_LEN > commitment.length) {
+      throw new IllegalArgumentException("Commitment must be " + COMMITMENT_LEN + " bytes");
+    }
+  }
+
+  static long getLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xff);
+    }
+    return result;
+  }
+
+  // Finalisation step of MurmurHash3, to spread the seed through the bits used as the index.
+  static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
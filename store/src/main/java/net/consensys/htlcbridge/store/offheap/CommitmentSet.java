@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.offheap;
+
+/**
+ * Off-heap set of 32 byte commitments, each removed by expire once its timeLock has passed.
+ */
+public class CommitmentSet {
+  private final CommitmentMap map;
+
+  public CommitmentSet(int expectedEntries) {
+    this(expectedEntries, 0);
+  }
+
+  /**
+   * @param expectedEntries Number of commitments to size the set for. It grows if needed.
+   * @param bloomBitsPerEntry Bits per entry of the Bloom filter, or zero for no Bloom filter.
+   */
+  public CommitmentSet(int expectedEntries, int bloomBitsPerEntry) {
+    this.map = new CommitmentMap(expectedEntries, bloomBitsPerEntry);
+  }
+
+  /**
+   * @param timeLock Time in seconds after which the commitment can be expired, or CommitmentMap.NO_EXPIRY.
+   * @return true if the commitment wasn't in the set.
+   */
+  public boolean add(byte[] commitment, int offset, long timeLock) {
+    return this.map.put(commitment, offset, 0, timeLock);
+  }
+
+  public boolean add(byte[] commitment, long timeLock) {
+    return add(commitment, 0, timeLock);
+  }
+
+  public boolean contains(byte[] commitment, int offset) {
+    return this.map.containsKey(commitment, offset);
+  }
+
+  public boolean contains(byte[] commitment) {
+    return contains(commitment, 0);
+  }
+
+  public boolean remove(byte[] commitment) {
+    return this.map.remove(commitment, 0);
+  }
+
+  /**
+   * Remove the commitments whose timeLock is at or before now.
+   *
+   * @return Number of commitments removed.
+   */
+  public int expire(long now) {
+    return this.map.expire(now);
+  }
+
+  public int size() {
+    return this.map.size();
+  }
+
+  public long offHeapBytes() {
+    return this.map.offHeapBytes();
+  }
+}
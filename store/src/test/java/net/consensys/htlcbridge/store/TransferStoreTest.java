@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferStoreTest {
+  private static final String SENDER = "0x00000000000000000000000000000000000000aa";
+  private static final String OTHER_SENDER = "0x00000000000000000000000000000000000000bb";
+  private static final String TOKEN = "0x00000000000000000000000000000000000000cc";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String commitment(int i) {
+    return String.format("0x%064x", i);
+  }
+
+  private static void addTransfers(TransferStore store) throws Exception {
+    for (int i = 1; i <= 3; i++) {
+      store.append(TransferEvent.sourceInit(commitment(i), 100 + i, 1000 + i,
+          i == 3 ? OTHER_SENDER : SENDER, TOKEN, BigInteger.TEN.pow(20 + i), 3600));
+    }
+    store.append(TransferEvent.stage(TransferStage.DEST_POSTED, commitment(1), 50, 2000));
+    store.append(TransferEvent.stage(TransferStage.DEST_COMPLETED, commitment(1), 51, 2001));
+    store.append(TransferEvent.stage(TransferStage.SOURCE_FINALISED, commitment(1), 110, 2002));
+    store.append(TransferEvent.stage(TransferStage.DEST_POSTED, commitment(2), TransferRecord.UNKNOWN_BLOCK, 2003));
+  }
+
+  private static void checkTransfers(TransferStore store) {
+    assertEquals(3, store.size());
+    TransferRecord record = store.get(commitment(1));
+    assertEquals(TransferStage.SOURCE_FINALISED, record.getState());
+    assertEquals(101, record.getBlockNumber(TransferStage.SOURCE_INIT));
+    assertEquals(51, record.getBlockNumber(TransferStage.DEST_COMPLETED));
+    assertEquals(2002, record.getTimestamp(TransferStage.SOURCE_FINALISED));
+    assertEquals(BigInteger.TEN.pow(21), record.getAmount());
+    assertEquals(SENDER, record.getSender());
+    assertEquals(3600, record.getTimeLock());
+    assertFalse(record.hasReached(TransferStage.SOURCE_REFUNDED));
+
+    assertEquals(TransferStage.DEST_POSTED, store.getState(commitment(2)));
+    assertEquals(TransferRecord.UNKNOWN_BLOCK, store.get(commitment(2)).getBlockNumber(TransferStage.DEST_POSTED));
+    assertEquals(2, store.findBySender(SENDER, 100).size());
+    assertEquals(1, store.findBySender(OTHER_SENDER.toUpperCase().replace("0X", "0x"), 100).size());
+    assertEquals(3, store.findByToken(TOKEN, 100).size());
+    assertEquals(2, store.findByToken(TOKEN, 2).size());
+    List<TransferRecord> init = store.findByState(TransferStage.SOURCE_INIT, 100);
+    assertEquals(1, init.size());
+    assertEquals(commitment(3), init.get(0).getCommitment());
+    assertEquals(1, (int) store.countByState().get(TransferStage.SOURCE_FINALISED));
+    assertNull(store.get(commitment(4)));
+  }
+
+  @Test
+  public void indexesAreRebuiltOnOpen() throws Exception {
+    Path dir = this.folder.getRoot().toPath();
+    try (TransferStore store = new TransferStore(dir)) {
+      addTransfers(store);
+      checkTransfers(store);
+    }
+    try (TransferStore store = new TransferStore(dir)) {
+      checkTransfers(store);
+      assertEquals(7, store.getNumEvents());
+    }
+  }
+
+  @Test
+  public void stateOnlyMovesForward() throws Exception {
+    try (TransferStore store = new TransferStore(this.folder.getRoot().toPath())) {
+      store.append(TransferEvent.stage(TransferStage.SOURCE_REFUNDED, commitment(1), 200, 1));
+      store.append(TransferEvent.sourceInit(commitment(1), 100, 0, SENDER, TOKEN, BigInteger.ONE, 10));
+      assertEquals(TransferStage.SOURCE_REFUNDED, store.getState(commitment(1)));
+      assertEquals(SENDER, store.get(commitment(1)).getSender());
+      assertEquals(0, store.findByState(TransferStage.SOURCE_INIT, 10).size());
+    }
+  }
+
+  @Test
+  public void partlyWrittenEntryIsDiscarded() throws Exception {
+    Path dir = this.folder.getRoot().toPath();
+    try (TransferStore store = new TransferStore(dir)) {
+      addTransfers(store);
+    }
+    // Simulate the process stopping part way through writing an entry.
+    try (RandomAccessFile file = new RandomAccessFile(dir.resolve(TransferStore.LOG_FILE).toFile(), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    try (TransferStore store = new TransferStore(dir)) {
+      assertEquals(6, store.getNumEvents());
+      assertEquals(TransferStage.SOURCE_INIT, store.getState(commitment(2)));
+      store.append(TransferEvent.stage(TransferStage.DEST_POSTED, commitment(2), 60, 3000));
+    }
+    try (TransferStore store = new TransferStore(dir)) {
+      assertEquals(7, store.getNumEvents());
+      assertTrue(store.get(commitment(2)).hasReached(TransferStage.DEST_POSTED));
+    }
+  }
+
+  @Test
+  public void loadsLogLargerThanReadBuffer() throws Exception {
+    Path dir = this.folder.getRoot().toPath();
+    int num = 5000;
+    try (TransferStore store = new TransferStore(dir)) {
+      for (int i = 0; i < num; i++) {
+        store.append(TransferEvent.sourceInit(commitment(i), i, i, SENDER, TOKEN, BigInteger.valueOf(i), i));
+      }
+    }
+    try (TransferStore store = new TransferStore(dir)) {
+      assertEquals(num, store.size());
+      assertEquals(num, store.findBySender(SENDER, Integer.MAX_VALUE).size());
+      assertEquals(BigInteger.valueOf(num - 1), store.get(commitment(num - 1)).getAmount());
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventArchiveTest {
+  // Room for five 16 byte events per segment.
+  private static final int SEGMENT_SIZE = 5 * (ArchiveSegment.ENTRY_OVERHEAD + 16);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] payload(int i) {
+    byte[] data = new byte[16];
+    data[0] = (byte) i;
+    return data;
+  }
+
+  // Two events per block, in blocks 100 to 109.
+  private static void addEvents(EventArchive archive) throws Exception {
+    for (int i = 0; i < 20; i++) {
+      archive.append((byte) (i % 2), 100 + i / 2, i % 2, payload(i));
+    }
+  }
+
+  private static List<Integer> replay(EventArchive archive, long from, long to) throws Exception {
+    List<Integer> seen = new ArrayList<>();
+    archive.replay(from, to, (kind, blockNumber, logIndex, payload) -> {
+      assertEquals(16, payload.remaining());
+      int i = payload.get(payload.position());
+      assertEquals(100 + i / 2, blockNumber);
+      assertEquals(i % 2, kind);
+      assertEquals(i % 2, logIndex);
+      seen.add(i);
+    });
+    return seen;
+  }
+
+  @Test
+  public void replaysBlockRangeAcrossSegments() throws Exception {
+    try (EventArchive archive = new EventArchive(this.folder.getRoot().toPath(), SEGMENT_SIZE)) {
+      addEvents(archive);
+      assertEquals(4, archive.getNumSegments());
+      assertEquals(100, archive.firstBlock());
+      assertEquals(109, archive.lastBlock());
+      assertEquals(20, replay(archive, 0, Long.MAX_VALUE).size());
+      // Blocks 102 to 104 are split across the first and second segments.
+      assertEquals(List.of(4, 5, 6, 7, 8, 9), replay(archive, 102, 104));
+      assertEquals(0, replay(archive, 110, 200).size());
+    }
+  }
+
+  @Test
+  public void reopensAndAppends() throws Exception {
+    Path dir = this.folder.getRoot().toPath();
+    try (EventArchive archive = new EventArchive(dir, SEGMENT_SIZE)) {
+      addEvents(archive);
+    }
+    // A lost index is rebuilt from the segment.
+    Files.delete(dir.resolve(String.format("segment-%020d.idx", 1)));
+    try (EventArchive archive = new EventArchive(dir, SEGMENT_SIZE)) {
+      assertEquals(109, archive.lastBlock());
+      assertEquals(List.of(6, 7, 8, 9), replay(archive, 103, 104));
+      archive.append((byte) 0, 110, 0, payload(20));
+      assertEquals(List.of(18, 19, 20), replay(archive, 109, 110));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOutOfOrderBlocks() throws Exception {
+    try (EventArchive archive = new EventArchive(this.folder.getRoot().toPath(), SEGMENT_SIZE)) {
+      archive.append((byte) 0, 100, 0, payload(0));
+      archive.append((byte) 0, 99, 0, payload(1));
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.htlcbridge.store.offheap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommitmentMapTest {
+  private static byte[] commitment(Random random) {
+    byte[] commitment = new byte[CommitmentMap.COMMITMENT_LEN];
+    random.nextBytes(commitment);
+    return commitment;
+  }
+
+  @Test
+  public void matchesHashMapThroughGrowthAndRemoval() {
+    Random random = new Random(1);
+    CommitmentMap map = new CommitmentMap(0);
+    Map<ByteBuffer, Integer> expected = new HashMap<>();
+    byte[][] keys = new byte[20000][];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = commitment(random);
+      assertTrue(map.put(keys[i], i, CommitmentMap.NO_EXPIRY));
+      expected.put(ByteBuffer.wrap(keys[i]), i);
+    }
+    // Remove every third key, which shifts entries back within probe sequences.
+    for (int i = 0; i < keys.length; i += 3) {
+      assertTrue(map.remove(keys[i]));
+      expected.remove(ByteBuffer.wrap(keys[i]));
+    }
+    assertFalse(map.remove(keys[0]));
+    assertFalse(map.put(keys[1], -1, CommitmentMap.NO_EXPIRY));
+    expected.put(ByteBuffer.wrap(keys[1]), -1);
+
+    assertEquals(expected.size(), map.size());
+    for (byte[] key: keys) {
+      Integer value = expected.get(ByteBuffer.wrap(key));
+      assertEquals(value != null, map.containsKey(key));
+      assertEquals(value == null ? Integer.MIN_VALUE : value, map.get(key, Integer.MIN_VALUE));
+    }
+    assertFalse(map.containsKey(commitment(random)));
+  }
+
+  @Test
+  public void expiresByTimeLock() {
+    Random random = new Random(2);
+    CommitmentSet set = new CommitmentSet(100, 10);
+    byte[][] keys = new byte[1000][];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = commitment(random);
+      set.add(keys[i], 1000 + i);
+    }
+    assertEquals(500, set.expire(1499));
+    assertEquals(500, set.size());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i >= 500, set.contains(keys[i]));
+    }
+    assertEquals(0, set.expire(1499));
+  }
+
+  @Test
+  public void commitmentAtOffset() {
+    byte[] log = new byte[104];
+    new Random(3).nextBytes(log);
+    byte[] commitment = new byte[CommitmentMap.COMMITMENT_LEN];
+    System.arraycopy(log, 40, commitment, 0, commitment.length);
+    CommitmentMap map = new CommitmentMap(10, 8);
+    map.put(log, 40, 7, 100);
+    assertEquals(7, map.get(commitment, 0));
+    assertFalse(map.containsKey(log, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsShortCommitment() {
+    new CommitmentSet(10).add(new byte[31], 100);
+  }
+}